@@ -0,0 +1,139 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.policy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import com.eucalyptus.auth.principal.Authorization;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+
+/**
+ * Authorizations for a policy, indexed by action.
+ *
+ * <p>Authorizations with only literal actions are indexed by action, other
+ * authorizations (wildcard actions or NotAction) are matched when an action
+ * is first evaluated. The authorizations for each action are cached and are
+ * always in policy order, so evaluation order is the same as for the full
+ * list.</p>
+ */
+final class PolicyAuthorizations {
+
+  private static final int MAX_CACHED_ACTIONS = 1_000;
+  private static final int[] NO_INDEXES = new int[ 0 ];
+
+  private final ImmutableList<Authorization> authorizations;
+  private final ImmutableMap<String,int[]> literalActionIndex;
+  private final int[] patternActionIndex;
+  private final ConcurrentMap<String,ImmutableList<Authorization>> actionAuthorizations = Maps.newConcurrentMap( );
+
+  PolicyAuthorizations( final List<Authorization> authorizations ) {
+    this.authorizations = ImmutableList.copyOf( authorizations );
+    final Map<String,List<Integer>> literalActions = Maps.newHashMap( );
+    final List<Integer> patternActions = Lists.newArrayList( );
+    for ( int i = 0; i < this.authorizations.size( ); i++ ) {
+      final Authorization authorization = this.authorizations.get( i );
+      if ( isLiteral( authorization ) ) {
+        for ( final String action : authorization.getActions( ) ) {
+          List<Integer> indexes = literalActions.get( action );
+          if ( indexes == null ) {
+            literalActions.put( action, indexes = Lists.newArrayList( ) );
+          }
+          indexes.add( i );
+        }
+      } else {
+        patternActions.add( i );
+      }
+    }
+    final ImmutableMap.Builder<String,int[]> literalActionIndexBuilder = ImmutableMap.builder( );
+    for ( final Map.Entry<String,List<Integer>> entry : literalActions.entrySet( ) ) {
+      literalActionIndexBuilder.put( entry.getKey( ), Ints.toArray( entry.getValue( ) ) );
+    }
+    this.literalActionIndex = literalActionIndexBuilder.build( );
+    this.patternActionIndex = Ints.toArray( patternActions );
+  }
+
+  /**
+   * Get all authorizations for the policy.
+   */
+  List<Authorization> getAuthorizations( ) {
+    return authorizations;
+  }
+
+  /**
+   * Get the authorizations whose action element matches the given action.
+   */
+  List<Authorization> getAuthorizations( final String action ) {
+    ImmutableList<Authorization> matched = actionAuthorizations.get( action );
+    if ( matched == null ) {
+      matched = match( action );
+      if ( actionAuthorizations.size( ) < MAX_CACHED_ACTIONS ) {
+        actionAuthorizations.put( action, matched );
+      }
+    }
+    return matched;
+  }
+
+  private ImmutableList<Authorization> match( final String action ) {
+    final int[] literalIndexes = literalActionIndex.containsKey( action ) ? literalActionIndex.get( action ) : NO_INDEXES;
+    final ImmutableList.Builder<Authorization> builder = ImmutableList.builder( );
+    int literal = 0;
+    int pattern = 0;
+    while ( literal < literalIndexes.length || pattern < patternActionIndex.length ) {
+      if ( pattern == patternActionIndex.length ||
+          ( literal < literalIndexes.length && literalIndexes[ literal ] < patternActionIndex[ pattern ] ) ) {
+        builder.add( authorizations.get( literalIndexes[ literal++ ] ) );
+      } else {
+        final Authorization authorization = authorizations.get( patternActionIndex[ pattern++ ] );
+        if ( matchActions( authorization, action ) ) {
+          builder.add( authorization );
+        }
+      }
+    }
+    return builder.build( );
+  }
+
+  static boolean matchActions( final Authorization authorization, final String action ) {
+    boolean matched = false;
+    for ( final String pattern : authorization.getActions( ) ) {
+      if ( PolicyPatterns.matches( pattern, action ) ) {
+        matched = true;
+        break;
+      }
+    }
+    return matched != authorization.isNotAction( );
+  }
+
+  private static boolean isLiteral( final Authorization authorization ) {
+    if ( authorization.isNotAction( ) ) {
+      return false;
+    }
+    for ( final String action : authorization.getActions( ) ) {
+      if ( action == null || !PolicyPatterns.isLiteral( action ) ) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -124,8 +124,8 @@ public class PolicyEngineImpl implements PolicyEngine {
   
   private static final Logger LOG = Logger.getLogger( PolicyEngineImpl.class );
 
-  private static final Cache<String,ImmutableList<Authorization>> authorizationCache = CacheBuilder
-      .<String,ImmutableList<Authorization>>newBuilder()
+  private static final Cache<String,PolicyAuthorizations> authorizationCache = CacheBuilder
+      .<String,PolicyAuthorizations>newBuilder()
       .maximumSize( 10_000 )
       .expireAfterWrite( 1, TimeUnit.HOURS )
       .build( );
@@ -148,11 +148,7 @@ public class PolicyEngineImpl implements PolicyEngine {
   private static final Matcher PATTERN_MATCHER = new Matcher( ) {
     @Override
     public boolean match( String pattern, String instance ) {
-      pattern = PolicyUtils.toJavaPattern( pattern );
-      if ( pattern == null ) {
-        return false;
-      }
-      return Pattern.matches( pattern, instance );
+      return PolicyPatterns.matches( pattern, instance );
     }
   };
   
@@ -256,7 +252,7 @@ public class PolicyEngineImpl implements PolicyEngine {
         // Check resource authorizations
         Decision decision = resourcePolicy == null ?
             Decision.ALLOW :
-            processAuthorizations( AuthEvaluationContextImpl.authorizations( resourcePolicy, true ), AuthorizationMatch.All, action, null, null, evaluationContext.getPrincipalType(), evaluationContext.getPrincipalName(), keyEval, contractEval );
+            processAuthorizations( AuthEvaluationContextImpl.authorizations( resourcePolicy, true ).getAuthorizations( action ), AuthorizationMatch.All, action, null, null, evaluationContext.getPrincipalType(), evaluationContext.getPrincipalName(), keyEval, contractEval );
         // Denied by explicit or default deny
         if ( decision != Decision.ALLOW ) {
           LOG.debug( "Request is rejected by resource authorization check, due to decision " + decision );
@@ -387,7 +383,7 @@ public class PolicyEngineImpl implements PolicyEngine {
     /**
     * Process a list of authorizations against the current request. Collecting contracts from matching authorizations.
     *
-    * @param authorizations The list of authorizations to process
+    * @param authorizations The list of authorizations to process, all authorizations must match the action
     * @param action The request action
     * @param resource The requested resource
     * @param keyEval The key cache for condition evaluation (optimization purpose)
@@ -408,9 +404,6 @@ public class PolicyEngineImpl implements PolicyEngine {
     for ( Authorization auth : authorizations ) {
       if ( auth.getEffect( ) == EffectType.Limit ) continue;
 
-      if ( !matchActions( auth, action ) ) {
-        continue;
-      }
       if ( !matchPrincipal( auth.getPrincipal(), principalType, principalName ) ) {
         continue;
       }
@@ -434,7 +427,7 @@ public class PolicyEngineImpl implements PolicyEngine {
   }
   
   private boolean matchActions( Authorization auth, String action ) throws AuthException {
-    return evaluateElement( matchOne( auth.getActions( ), action, PATTERN_MATCHER ), auth.isNotAction( ) );
+    return PolicyAuthorizations.matchActions( auth, action );
   }
 
   private boolean matchPrincipal( Principal principal, PrincipalType principalType, String principalName ) throws AuthException {
@@ -689,9 +682,12 @@ public class PolicyEngineImpl implements PolicyEngine {
       return systemUser;
     }
 
+    /**
+     * Lookup the authorizations for the action of this context.
+     */
     public List<Authorization> lookupAuthorizations( ) throws AuthException {
       if ( authorizations == null ) {
-        final List<Pair<PolicyVersion,Authorization>> authorizations = authorizations( policies, false );
+        final List<Pair<PolicyVersion,Authorization>> authorizations = authorizations( policies, false, action );
         this.authorizations = ImmutableList.copyOf( Iterables.filter(
             Iterables.transform( authorizations, Pair.<PolicyVersion,Authorization>right( ) ),
             resourceType == null ?
@@ -702,12 +698,12 @@ public class PolicyEngineImpl implements PolicyEngine {
       return authorizations;
     }
 
-    static List<Authorization> authorizations( final PolicyVersion policy, final boolean resourcePolicy ) throws AuthException {
+    static PolicyAuthorizations authorizations( final PolicyVersion policy, final boolean resourcePolicy ) throws AuthException {
       try {
-        return authorizationCache.get( policy.getPolicyHash( ), new Callable<ImmutableList<Authorization>>() {
+        return authorizationCache.get( policy.getPolicyHash( ), new Callable<PolicyAuthorizations>() {
           @Override
-          public ImmutableList<Authorization> call() throws Exception {
-            return ImmutableList.copyOf(  ( resourcePolicy ? PolicyParser.getResourceInstance( ) : PolicyParser.getInstance( ) ).parse( policy.getPolicy( ) ).getAuthorizations( ) );
+          public PolicyAuthorizations call() throws Exception {
+            return new PolicyAuthorizations( ( resourcePolicy ? PolicyParser.getResourceInstance( ) : PolicyParser.getInstance( ) ).parse( policy.getPolicy( ) ).getAuthorizations( ) );
           }
         } );
       } catch ( final ExecutionException e ) {
@@ -715,10 +711,12 @@ public class PolicyEngineImpl implements PolicyEngine {
       }
     }
 
-    static List<Pair<PolicyVersion,Authorization>> authorizations( final List<PolicyVersion> policies, final boolean resourcePolicy ) throws AuthException {
+    static List<Pair<PolicyVersion,Authorization>> authorizations( final List<PolicyVersion> policies,
+                                                                   final boolean resourcePolicy,
+                                                                   final String action ) throws AuthException {
       final List<Pair<PolicyVersion,Authorization>> authorizations = Lists.newArrayList( );
       for ( final PolicyVersion policy : policies ) {
-        Iterables.addAll( authorizations, Iterables.transform( authorizations( policy, resourcePolicy ), Pair.<PolicyVersion,Authorization>pair( ).apply( policy ) ) );
+        Iterables.addAll( authorizations, Iterables.transform( authorizations( policy, resourcePolicy ).getAuthorizations( action ), Pair.<PolicyVersion,Authorization>pair( ).apply( policy ) ) );
       }
       return authorizations;
     }
@@ -726,7 +724,7 @@ public class PolicyEngineImpl implements PolicyEngine {
     public List<Pair<PolicyVersion,Authorization>> lookupQuotas( ) throws AuthException {
       if ( quotaAuthorizations == null ) {
         this.quotaAuthorizations = ImmutableList.copyOf( Iterables.filter(
-            authorizations( policies, false ),
+            authorizations( policies, false, action ),
             Predicates.compose( AuthorizationPredicates.LIMIT_EFFECT, Pair.<PolicyVersion,Authorization>right( ) )
         ) );
       }
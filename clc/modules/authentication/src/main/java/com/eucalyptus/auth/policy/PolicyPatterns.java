@@ -0,0 +1,86 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.policy;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.eucalyptus.util.Exceptions;
+
+/**
+ * Matching for IAM policy patterns (action, principal or resource patterns
+ * with * and ?)
+ *
+ * <p>Patterns without wildcards are compared directly, other patterns are
+ * converted to regular expressions that are compiled once and cached.</p>
+ */
+final class PolicyPatterns {
+
+  private static final Cache<String,Pattern> patternCache = CacheBuilder
+      .<String,Pattern>newBuilder( )
+      .maximumSize( 10_000 )
+      .build( );
+
+  /**
+   * Match an instance against a policy pattern.
+   *
+   * <p>Equivalent to <code>Pattern.matches( PolicyUtils.toJavaPattern( pattern ), instance )</code></p>
+   */
+  static boolean matches( @Nullable final String pattern, final String instance ) {
+    if ( pattern == null ) {
+      return false;
+    } else if ( isLiteral( pattern ) ) {
+      return pattern.equals( instance );
+    } else {
+      return compile( pattern ).matcher( instance ).matches( );
+    }
+  }
+
+  /**
+   * A pattern is literal if it has no wildcards and all other characters are
+   * escaped to match themselves.
+   */
+  static boolean isLiteral( final String pattern ) {
+    for ( int i = 0; i < pattern.length( ); i++ ) {
+      final char character = pattern.charAt( i );
+      if ( character == '*' || character == '?' || character > 127 ) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Pattern compile( final String pattern ) {
+    try {
+      return patternCache.get( pattern, new Callable<Pattern>( ) {
+        @Override
+        public Pattern call( ) {
+          return Pattern.compile( PolicyUtils.toJavaPattern( pattern ) );
+        }
+      } );
+    } catch ( final ExecutionException | UncheckedExecutionException e ) {
+      throw Exceptions.toUndeclared( e.getCause( ) );
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.auth.policy
+
+import static org.junit.Assert.*
+import com.eucalyptus.auth.principal.Authorization
+import groovy.transform.TypeChecked
+import org.junit.Test
+import java.util.regex.Pattern
+
+/**
+ *
+ */
+@TypeChecked
+class PolicyAuthorizationsTest {
+
+  private static final String POLICY = """\
+    {
+      "Statement":[ {
+        "Effect": "Allow",
+        "Action": [ "ec2:describeinstances", "ec2:runinstances" ],
+        "Resource": "*"
+      }, {
+        "Effect": "Deny",
+        "Action": "ec2:terminate*",
+        "Resource": "*"
+      }, {
+        "Effect": "Allow",
+        "NotAction": "iam:*",
+        "Resource": "*"
+      }, {
+        "Effect": "Allow",
+        "Action": "ec2:describeinstances",
+        "Resource": "*"
+      }, {
+        "Effect": "Allow",
+        "Action": "ec2:describe?????nces",
+        "Resource": "*"
+      }, {
+        "Effect": "Deny",
+        "Action": "iam:createuser",
+        "Resource": "*"
+      } ]
+    }
+    """.stripIndent( )
+
+  @Test
+  void testAuthorizationsForAction( ) {
+    List<Authorization> authorizations = PolicyParser.getInstance( ).parse( POLICY ).getAuthorizations( )
+    PolicyAuthorizations policyAuthorizations = new PolicyAuthorizations( authorizations )
+    for ( String action : [ "ec2:describeinstances", "ec2:runinstances", "ec2:terminateinstances",
+                            "ec2:describeimages", "iam:createuser", "iam:listusers", "s3:getobject" ] ) {
+      assertEquals( "Authorizations for " + action,
+          authorizations.findAll{ Authorization authorization -> matchActions( authorization, action ) },
+          policyAuthorizations.getAuthorizations( action ) )
+      assertSame( "Cached authorizations for " + action,
+          policyAuthorizations.getAuthorizations( action ),
+          policyAuthorizations.getAuthorizations( action ) )
+    }
+    assertEquals( "Statements for ec2:describeinstances", 4, policyAuthorizations.getAuthorizations( "ec2:describeinstances" ).size( ) )
+    assertEquals( "Statements for iam:createuser", 1, policyAuthorizations.getAuthorizations( "iam:createuser" ).size( ) )
+  }
+
+  private static boolean matchActions( Authorization authorization, String action ) {
+    boolean matched = authorization.getActions( ).any{ String pattern -> Pattern.matches( PolicyUtils.toJavaPattern( pattern ), action ) }
+    matched != authorization.isNotAction( )
+  }
+}
@@ -0,0 +1,173 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.auth.policy
+
+import static com.eucalyptus.auth.api.PolicyEngine.AuthorizationMatch.All
+import com.eucalyptus.auth.AuthException
+import com.eucalyptus.auth.api.PolicyEngine
+import com.eucalyptus.auth.policy.ern.Ern
+import com.eucalyptus.auth.policy.ern.EuareErnBuilder
+import com.eucalyptus.auth.principal.PolicyScope
+import com.eucalyptus.auth.principal.PolicyVersion
+import com.eucalyptus.auth.principal.TestAccount
+import com.eucalyptus.auth.principal.TestUser
+import com.eucalyptus.auth.principal.User
+import com.eucalyptus.crypto.Digest
+import com.eucalyptus.crypto.util.B64
+import com.google.common.base.Function
+import com.google.common.base.Suppliers
+import groovy.transform.TypeChecked
+import org.apache.log4j.Logger
+import org.junit.BeforeClass
+import org.junit.Ignore
+import org.junit.Test
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * Authorization throughput for a user with user, group and role policies.
+ */
+@Ignore( "Manual benchmark" )
+@TypeChecked
+class PolicyEngineBenchmark {
+  private static final Logger LOG = Logger.getLogger( PolicyEngineBenchmark )
+  private static final int REQUESTS = 200_000
+
+  private static final String USER_POLICY = """\
+    {
+      "Statement":[ {
+        "Effect": "Allow",
+        "Action": [ "ec2:describeinstances", "ec2:describeimages", "ec2:describevolumes", "ec2:describesnapshots" ],
+        "Resource": "*"
+      }, {
+        "Effect": "Allow",
+        "Action": [ "ec2:runinstances", "ec2:startinstances", "ec2:stopinstances" ],
+        "Resource": "*"
+      }, {
+        "Effect": "Deny",
+        "Action": "ec2:terminate*",
+        "Resource": "*"
+      }, {
+        "Effect": "Allow",
+        "Action": [ "iam:getuser", "iam:listaccesskeys", "iam:createaccesskey", "iam:deleteaccesskey" ],
+        "Resource": "arn:aws:iam::111111111111:user/developers/*"
+      } ]
+    }
+    """.stripIndent( )
+
+  private static final String GROUP_POLICY = """\
+    {
+      "Statement":[ {
+        "Effect": "Allow",
+        "Action": [ "s3:get*", "s3:list*" ],
+        "Resource": "*"
+      }, {
+        "Effect": "Deny",
+        "Action": [ "s3:deletebucket", "s3:putbucketpolicy" ],
+        "Resource": "*"
+      }, {
+        "Effect": "Allow",
+        "Action": "iam:list*",
+        "Resource": "arn:aws:iam::111111111111:*"
+      } ]
+    }
+    """.stripIndent( )
+
+  private static final String ROLE_POLICY = """\
+    {
+      "Statement":[ {
+        "Effect": "Allow",
+        "NotAction": "iam:*",
+        "Resource": "*"
+      }, {
+        "Effect": "Deny",
+        "Action": [ "iam:create*", "iam:delete*", "iam:put*" ],
+        "Resource": "*"
+      } ]
+    }
+    """.stripIndent( )
+
+  private static final List<List<String>> REQUESTS_BY_TYPE = [
+      [ "ec2:instance", "ec2:DescribeInstances", "i-12345678" ],
+      [ "ec2:instance", "ec2:RunInstances", "i-12345678" ],
+      [ "ec2:instance", "ec2:TerminateInstances", "i-12345678" ],
+      [ "iam:user", "iam:GetUser", "/developers/test" ],
+      [ "iam:user", "iam:ListUsers", "/developers/test" ],
+      [ "iam:user", "iam:CreateAccessKey", "/admin/test" ],
+  ]
+
+  @BeforeClass
+  static void beforeClass( ){
+    Ern.registerServiceErnBuilder( new EuareErnBuilder( ) )
+  }
+
+  @Test
+  void benchmark( ) {
+    PolicyEngine engine = new PolicyEngineImpl( accountResolver( ), Suppliers.ofInstance( Boolean.FALSE ) )
+    List<PolicyVersion> policies = [
+        policy( PolicyScope.User, USER_POLICY ),
+        policy( PolicyScope.Group, GROUP_POLICY ),
+        policy( PolicyScope.Role, ROLE_POLICY ),
+    ]
+    User user = user( )
+    run( engine, user, policies, REQUESTS / 10 as int ) // warm up
+    long start = System.nanoTime( )
+    int allowed = run( engine, user, policies, REQUESTS )
+    long nanos = System.nanoTime( ) - start
+    LOG.info( String.format( "Evaluated %d requests (%d allowed), %.0f requests/s", REQUESTS, allowed, REQUESTS / ( nanos / 1e9d ) ) )
+  }
+
+  private static int run( PolicyEngine engine, User user, List<PolicyVersion> policies, int requests ) {
+    int allowed = 0
+    for ( int i = 0; i < requests; i++ ) {
+      List<String> request = REQUESTS_BY_TYPE.get( i % REQUESTS_BY_TYPE.size( ) )
+      PolicyEngineImpl.AuthEvaluationContextImpl context = new PolicyEngineImpl.AuthEvaluationContextImpl(
+          request[0], request[1], user, [:] as Map<String,String>, policies ){
+        @Override boolean isSystemUser() { true }
+      }
+      try {
+        engine.evaluateAuthorization( context, All, "111111111111", request[2], [:] )
+        allowed++
+      } catch ( AuthException e ) {
+        // denied
+      }
+    }
+    allowed
+  }
+
+  private static PolicyVersion policy( PolicyScope scope, String policy ) {
+    new PolicyVersion(){
+      @Override String getPolicyVersionId( ) { '1234567890' }
+      @Override String getPolicyName( ) { scope.name( ) }
+      @Override PolicyScope getPolicyScope() { scope }
+      @Override String getPolicy( ) { policy }
+      @Override String getPolicyHash() { B64.standard.encString( Digest.SHA256.digestBinary( getPolicy( ).getBytes( StandardCharsets.UTF_8 ) ) ) }
+    }
+  }
+
+  private static User user( ) {
+    new TestUser( name: "test", accountNumber: "111111111111", account: new TestAccount( accountNumber: "111111111111", name: "test" ) ).activate( )
+  }
+
+  private static Function<String, String> accountResolver( ) {
+    { String account -> account } as Function<String, String>
+  }
+}
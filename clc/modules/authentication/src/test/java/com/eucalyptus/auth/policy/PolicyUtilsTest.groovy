@@ -78,6 +78,8 @@ class PolicyUtilsTest {
   }
 
   boolean matches( String pattern, String value ) {
-    Pattern.matches( PolicyUtils.toJavaPattern( pattern ), value )
+    boolean matched = Pattern.matches( PolicyUtils.toJavaPattern( pattern ), value )
+    assertEquals( "Compiled match " + pattern + "~=" + value, matched, PolicyPatterns.matches( pattern, value ) )
+    matched
   }
 }
@@ -69,6 +69,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -127,6 +128,11 @@ public class BlockDeviceResource extends StorageResource {
     throw new IOException("Failed to open FileOutputStream for " + this.getId() + " mounted at " + this.getPath());
   }
 
+  @Override
+  public FileChannel getWriteChannel() throws Exception {
+    return ((FileOutputStream) getOutputStream()).getChannel();
+  }
+
   @Override
   public Boolean isDownloadSynchronous() {
     return Boolean.TRUE;
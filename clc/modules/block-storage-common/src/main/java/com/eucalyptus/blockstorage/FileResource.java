@@ -67,6 +67,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 public class FileResource extends StorageResource {
 
@@ -89,6 +90,11 @@ public class FileResource extends StorageResource {
     return new FileOutputStream(new File(this.getPath()));
   }
 
+  @Override
+  public FileChannel getWriteChannel() throws Exception {
+    return ((FileOutputStream) getOutputStream()).getChannel();
+  }
+
   @Override
   public Boolean isDownloadSynchronous() {
     return Boolean.TRUE;
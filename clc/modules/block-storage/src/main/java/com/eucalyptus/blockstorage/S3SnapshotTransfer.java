@@ -64,28 +64,43 @@ package com.eucalyptus.blockstorage;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 
 import javax.annotation.Nullable;
 
@@ -158,7 +173,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   private String uploadId;
 
   // Initiate for every request
-  private EucaS3Client eucaS3Client;
+  private volatile EucaS3Client eucaS3Client;
 
   // Instantiate from database for uploads
   private Long partSize;
@@ -177,6 +192,27 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   private static final Integer TX_RETRIES = 20;
   private static final Integer REFRESH_TOKEN_RETRIES = 1;
   private static final String UNCOMPRESSED_SIZE_KEY = "uncompressedsize";
+  private static final int COMPRESSION_BLOCK_SIZE = Integer.parseInt(System.getProperty(
+      "com.eucalyptus.blockstorage.snapshot.compressionBlockSize", String.valueOf(4 * 1024 * 1024)));
+  private static final int COMPRESSION_THREADS = Integer.parseInt(System.getProperty("com.eucalyptus.blockstorage.snapshot.compressionThreads",
+      String.valueOf(Runtime.getRuntime().availableProcessors())));
+  private static final int UPLOAD_THREADS = Integer.parseInt(System.getProperty("com.eucalyptus.blockstorage.snapshot.uploadThreads", "4"));
+  private static final int COMPRESSION_BLOCKS_IN_FLIGHT = Integer.parseInt(System.getProperty(
+      "com.eucalyptus.blockstorage.snapshot.compressionBlocksInFlight", String.valueOf(2 * COMPRESSION_THREADS)));
+  private static final int DOWNLOAD_RANGE_SIZE = Integer.parseInt(System.getProperty("com.eucalyptus.blockstorage.snapshot.downloadRangeSize",
+      String.valueOf(8 * 1024 * 1024)));
+  private static final int DOWNLOAD_THREADS = Integer.parseInt(System.getProperty("com.eucalyptus.blockstorage.snapshot.downloadThreads", "4"));
+  private static final String COMPRESSION_BLOCK_SIZE_KEY = "compressionblocksize";
+  static final int GZIP_HEADER_SIZE = 10;
+  static final int GZIP_TRAILER_SIZE = 8;
+  static final int BLOCK_INDEX_HEADER_SIZE = 16;
+  static final int BLOCK_INDEX_ENTRY_SIZE = 8;
+  static final int BLOCK_INDEX_ENTRIES_PER_MEMBER = 8190;
+  // Empty final deflate block ending the compressed snapshot and each block index member
+  private static final byte[] GZIP_FINAL_BLOCK = {3, 0};
+
+  // Bounds the uncompressed blocks held in memory across all uploads
+  private static final Semaphore compressionBlockPermits = new Semaphore(COMPRESSION_BLOCKS_IN_FLIGHT);
 
   public S3SnapshotTransfer() throws SnapshotTransferException {
     initializeEucaS3Client();
@@ -250,6 +286,11 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
    * {@link StorageInfo}. Bucket name should be configured before invoking this method. It can be looked up and initialized by
    * {@link #prepareForUpload()} or explicitly set using {@link #setBucketName(String)}
    * 
+   * The snapshot is read in fixed size blocks that are compressed concurrently and sync flushed, so that the blocks form a single gzip member
+   * and can still be inflated independently. The compressed size and checksum of each block are appended after the member, see
+   * {@link #getGzipEnd(long, long, byte[])}. Parts are uploaded concurrently as they are cut from the stream. The number of blocks and parts
+   * held at any time is bounded.
+   * 
    * @param sourceFileName absolute path to the snapshot on the file system
    */
   @Override
@@ -264,13 +305,13 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     SnapshotUploadInfo snapUploadInfo = null;
     Future<List<PartETag>> uploadPartsFuture = null;
     Future<String> completeUploadFuture = null;
+    Deque<Future<CompressedBlock>> compressedBlocks = new ArrayDeque<Future<CompressedBlock>>();
 
-    byte[] buffer = new byte[readBufferSize];
     Long readOffset = 0L;
     Long bytesRead = 0L;
     Long bytesWritten = 0L;
-    int len;
     int partNumber = 1;
+    int blockPermits = 0;
 
     try {
       // Get the uncompressed file size for uploading as metadata
@@ -282,25 +323,46 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       part = SnapshotPart.createPart(snapUploadInfo, zipFilePath.toString(), partNumber, readOffset);
 
       InputStream inputStream = storageResource.getInputStream();
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      GZIPOutputStream gzipStream = new GZIPOutputStream(baos);
       FileOutputStream outputStream = new FileOutputStream(zipFilePath.toString());
+      Queue<Integer> blockLengths = new ArrayDeque<Integer>();
+      CRC32 crc = new CRC32();
+      ByteArrayOutputStream blockIndex = new ByteArrayOutputStream();
 
       try {
-        LOG.debug("Reading snapshot " + snapshotId + " and compressing it to disk in chunks of size " + partSize + " bytes or greater");
-        while ((len = inputStream.read(buffer)) > 0) {
-          bytesRead += len;
-          gzipStream.write(buffer, 0, len);
-
-          if ((bytesWritten + baos.size()) < partSize) {
-            baos.writeTo(outputStream);
-            bytesWritten += baos.size();
-            baos.reset();
-          } else {
-            gzipStream.close();
-            baos.writeTo(outputStream); // Order is important. Closing the gzip stream flushes stuff
-            bytesWritten += baos.size();
-            baos.reset();
+        LOG.debug("Reading snapshot " + snapshotId + " and compressing it to disk in chunks of size " + partSize + " bytes or greater using "
+            + COMPRESSION_THREADS + " compression threads");
+
+        outputStream.write(getGzipHeader());
+        bytesWritten += GZIP_HEADER_SIZE;
+
+        // Blocks are compressed in parallel and written out in order, cutting a part whenever the part size is reached. Only wait for memory
+        // held by other uploads when this upload has no blocks of its own to write out
+        boolean endOfInput = false;
+        while (!endOfInput || !compressedBlocks.isEmpty()) {
+          while (!endOfInput && compressedBlocks.size() < 2 * COMPRESSION_THREADS && acquireBlockPermit(compressedBlocks.isEmpty())) {
+            blockPermits++;
+            byte[] block = new byte[COMPRESSION_BLOCK_SIZE];
+            int blockLength = readBlock(inputStream, block);
+            endOfInput = blockLength < block.length;
+            crc.update(block, 0, blockLength);
+            compressedBlocks.add(Threads.enqueue(serviceConfig, CompressBlockTask.class, COMPRESSION_THREADS, new CompressBlockTask(block,
+                blockLength)));
+            blockLengths.add(blockLength);
+          }
+
+          CompressedBlock compressedBlock = null;
+          try {
+            compressedBlock = compressedBlocks.remove().get();
+          } finally {
+            blockPermits--;
+            compressionBlockPermits.release();
+          }
+          compressedBlock.data.writeTo(outputStream);
+          blockIndex.write(getBlockIndexEntry(compressedBlock.data.size(), compressedBlock.crc));
+          bytesWritten += compressedBlock.data.size();
+          bytesRead += blockLengths.remove();
+
+          if (bytesWritten >= partSize && !(endOfInput && compressedBlocks.isEmpty())) {
             outputStream.close();
 
             if (partNumber > 1) {// Update the part status
@@ -334,15 +396,13 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             zipFilePath = Files.createTempFile(keyName + '-', '-' + String.valueOf((++partNumber)));
             part = SnapshotPart.createPart(snapUploadInfo, zipFilePath.toString(), partNumber, readOffset);
 
-            gzipStream = new GZIPOutputStream(baos);
             outputStream = new FileOutputStream(zipFilePath.toString());
           }
         }
 
-        gzipStream.close();
-        baos.writeTo(outputStream);
-        bytesWritten += baos.size();
-        baos.reset();
+        byte[] end = getGzipEnd(crc.getValue(), readOffset + bytesRead, blockIndex.toByteArray());
+        outputStream.write(end);
+        bytesWritten += end.length;
         outputStream.close();
         inputStream.close();
 
@@ -363,13 +423,6 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
           }
         }
-        if (gzipStream != null) {
-          try {
-            gzipStream.close();
-          } catch (Exception e) {
-
-          }
-        }
         if (outputStream != null) {
           try {
             outputStream.close();
@@ -377,7 +430,11 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
           }
         }
-        baos.reset();
+        for (Future<CompressedBlock> compressedBlock : compressedBlocks) {
+          compressedBlock.cancel(true);
+        }
+        compressedBlocks.clear();
+        compressionBlockPermits.release(blockPermits);
       }
 
       if (partNumber > 1) {
@@ -461,21 +518,83 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   }
 
   /**
-   * Downloads the compressed snapshot from objectstorage gateway to the filesystem
+   * Downloads the compressed snapshot from objectstorage gateway to the filesystem. Snapshots larger than the range size are fetched using
+   * concurrent ranged requests. Snapshots compressed in blocks are inflated concurrently using the block index at the end of the object and
+   * each block is written at its uncompressed offset when the storage device supports it, other snapshots are decompressed in order as the
+   * ranges arrive.
    */
   public void download(StorageResource storageResource) throws SnapshotTransferException {
     validateInput();
     loadTransferConfig();
 
-    S3Object snapObj = download();
+    InputStream objectContent = null;
+    ObjectMetadata metadata = null;
+    try {
+      metadata = getObjectMetadata();
+    } catch (Exception e) {
+      LOG.debug("Snapshot metadata not found, downloading " + snapshotId + " as a single request", e);
+    }
+    if (metadata != null && metadata.getContentLength() > DOWNLOAD_RANGE_SIZE) {
+      objectContent = new RangedObjectInputStream(metadata.getContentLength(), metadata.getETag());
+    } else {
+      S3Object snapObj = download();
+      if (snapObj != null) {
+        objectContent = new ObjectContentInputStream(snapObj.getObjectContent());
+        if (metadata == null) {
+          metadata = snapObj.getObjectMetadata();
+        }
+      }
+    }
+
+    ByteBuffer blockIndex = null;
+    if (objectContent != null && isBlockCompressed(metadata)) {
+      try {
+        blockIndex = getBlockIndex(metadata);
+      } catch (Exception e) {
+        LOG.debug("Unable to read the block index of " + snapshotId + ", decompressing it sequentially", e);
+      }
+    }
+
+    FileChannel writeChannel = null;
+    if (blockIndex != null) {
+      try {
+        writeChannel = storageResource.getWriteChannel();
+      } catch (Exception e) {
+        LOG.debug("Unable to open " + storageResource.getId() + " for positional writes, decompressing " + snapshotId + " sequentially", e);
+      }
+    }
+
+    if (objectContent != null && writeChannel != null) {
+      try {
+        long uncompressedSize = inflateBlocks(objectContent, writeChannel, blockIndex, getUncompressedSize(metadata),
+            getCompressionBlockSize(metadata));
+        writeChannel.close();
+        checkUncompressedSize(metadata, uncompressedSize);
+        LOG.info("Downloaded snapshot " + snapshotId + " to storage backend");
+      } catch (SnapshotTransferException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new SnapshotTransferException("Failed to download snapshot " + snapshotId + " to storage backend", e);
+      } finally {
+        try {
+          writeChannel.close();
+        } catch (Exception e) {
+
+        }
+        try {
+          objectContent.close();
+        } catch (Exception e) {
 
-    if (snapObj != null && snapObj.getObjectContent() != null) {
+        }
+      }
+    } else if (objectContent != null) {
       byte[] buffer = new byte[10 * readBufferSize];
       int len;
+      long uncompressedSize = 0;
       GZIPInputStream gzipInputStream = null;
 
       try {
-        gzipInputStream = new GZIPInputStream(new BufferedInputStream(snapObj.getObjectContent(), buffer.length * 3), buffer.length * 2);
+        gzipInputStream = new GZIPInputStream(new BufferedInputStream(objectContent, buffer.length * 3), buffer.length * 2);
 
         if (storageResource.isDownloadSynchronous()) { // Download and unzip snapshot to the storage device directly
           OutputStream outputStream = null;
@@ -484,7 +603,9 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             while ((len = gzipInputStream.read(buffer)) > 0) {
               // Write to the output stream
               outputStream.write(buffer, 0, len);
+              uncompressedSize += len;
             }
+            checkUncompressedSize(metadata, uncompressedSize);
 
             // Close the streams and free the resources
             gzipInputStream.close();
@@ -516,6 +637,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             part.setIsLast(Boolean.FALSE);
 
             while ((len = gzipInputStream.read(buffer)) > 0) {
+              uncompressedSize += len;
               if ((bytesWritten + len) < writeBufferSize) {
                 fileOutputStream.write(buffer, 0, len);
                 bytesWritten += len;
@@ -549,6 +671,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             gzipInputStream.close();
             fileOutputStream.close();
             buffer = null;
+            checkUncompressedSize(metadata, uncompressedSize);
 
             // Add the last part to the queue
             part.setSize(bytesWritten);
@@ -596,7 +719,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
         }
         try {
-          snapObj.getObjectContent().close();
+          objectContent.close();
         } catch (Exception e) {
 
         }
@@ -637,10 +760,103 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     LOG.debug("Fetching snapshot metadata from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key=" + keyName);
 
     validateInput();
-    ObjectMetadata metadata = null;
+    ObjectMetadata metadata = getObjectMetadata();
     Map<String, String> userMetadata = null;
+
+    if (metadata != null && (userMetadata = metadata.getUserMetadata()) != null && userMetadata.containsKey(UNCOMPRESSED_SIZE_KEY)) {
+      try {
+        return Long.parseLong(userMetadata.get(UNCOMPRESSED_SIZE_KEY));
+      } catch (Exception e) {
+        throw new SnapshotTransferException("Unable to parse size from snapshot metadata: snapshotId=" + snapshotId + ", bucket=" + bucketName
+            + ", key=" + keyName + ", metadata key:value pair=" + UNCOMPRESSED_SIZE_KEY + ":" + userMetadata.get(UNCOMPRESSED_SIZE_KEY), e);
+      }
+    } else {
+      throw new SnapshotTransferException("Snapshot metadata from objectstorage does not contain uncompressed size: snapshotId=" + snapshotId
+          + ", bucket=" + bucketName + ", key=" + keyName);
+    }
+  }
+
+  private static boolean isBlockCompressed(ObjectMetadata metadata) {
+    return metadata != null && metadata.getUserMetadata() != null && metadata.getUserMetadata().containsKey(COMPRESSION_BLOCK_SIZE_KEY)
+        && metadata.getUserMetadata().containsKey(UNCOMPRESSED_SIZE_KEY);
+  }
+
+  private static long getUncompressedSize(ObjectMetadata metadata) {
+    return Long.parseLong(metadata.getUserMetadata().get(UNCOMPRESSED_SIZE_KEY));
+  }
+
+  private static int getCompressionBlockSize(ObjectMetadata metadata) {
+    return Integer.parseInt(metadata.getUserMetadata().get(COMPRESSION_BLOCK_SIZE_KEY));
+  }
+
+  /**
+   * Fetches the block index from the end of the object, its size follows from the snapshot size and block size in the metadata.
+   */
+  private ByteBuffer getBlockIndex(ObjectMetadata metadata) throws Exception {
+    long blockCount = getBlockCount(getUncompressedSize(metadata), getCompressionBlockSize(metadata));
+    long indexSize = getBlockIndexSize(blockCount);
+    long contentLength = metadata.getContentLength();
+    if (indexSize > contentLength - GZIP_HEADER_SIZE - GZIP_FINAL_BLOCK.length - GZIP_TRAILER_SIZE) {
+      throw new IOException("Snapshot " + snapshotId + " is too small for a block index of " + indexSize + " bytes");
+    }
+    return readBlockIndex(new GetRangeTask(contentLength - indexSize, contentLength - 1, metadata.getETag()).call(), blockCount);
+  }
+
+  /**
+   * Reads the compressed blocks in order and inflates them concurrently, each block is written at its uncompressed offset. A bounded number of
+   * blocks is held at any time.
+   * 
+   * @return total uncompressed size
+   */
+  private long inflateBlocks(InputStream objectContent, FileChannel writeChannel, ByteBuffer blockIndex, long uncompressedSize, int blockSize)
+      throws Exception {
+    DataInputStream inputStream = new DataInputStream(new BufferedInputStream(objectContent, 10 * readBufferSize));
+    Deque<Future<Integer>> inflatedBlocks = new ArrayDeque<Future<Integer>>();
+    long offset = 0;
+    try {
+      LOG.debug("Decompressing snapshot " + snapshotId + " using " + COMPRESSION_THREADS + " decompression threads");
+      byte[] header = new byte[GZIP_HEADER_SIZE];
+      inputStream.readFully(header);
+      if (!Arrays.equals(getGzipHeader(), header)) {
+        throw new IOException("Invalid gzip header for snapshot " + snapshotId);
+      }
+      while (blockIndex.hasRemaining()) {
+        int compressedSize = blockIndex.getInt();
+        int crc = blockIndex.getInt();
+        if (compressedSize < 0 || compressedSize > 2 * blockSize + 1024) {
+          throw new IOException("Invalid compressed block size " + compressedSize + " in the block index of snapshot " + snapshotId);
+        }
+        byte[] block = new byte[compressedSize];
+        inputStream.readFully(block);
+        if (inflatedBlocks.size() >= 2 * COMPRESSION_THREADS) {
+          inflatedBlocks.remove().get();
+        }
+        int length = (int) Math.min(blockSize, uncompressedSize - offset);
+        inflatedBlocks.add(Threads.enqueue(serviceConfig, InflateBlockTask.class, COMPRESSION_THREADS, new InflateBlockTask(block, length, crc,
+            writeChannel, offset)));
+        offset += length;
+      }
+      while (!inflatedBlocks.isEmpty()) {
+        inflatedBlocks.remove().get();
+      }
+
+      byte[] end = new byte[GZIP_FINAL_BLOCK.length + GZIP_TRAILER_SIZE];
+      inputStream.readFully(end);
+      if (end[0] != GZIP_FINAL_BLOCK[0] || end[1] != GZIP_FINAL_BLOCK[1]
+          || ByteBuffer.wrap(end, end.length - 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() != (int) offset) {
+        throw new IOException("Invalid gzip trailer for snapshot " + snapshotId);
+      }
+      return offset;
+    } finally {
+      for (Future<Integer> inflatedBlock : inflatedBlocks) {
+        inflatedBlock.cancel(true);
+      }
+    }
+  }
+
+  private ObjectMetadata getObjectMetadata() throws SnapshotTransferException {
     try {
-      metadata = retryAfterRefresh(new Function<GetObjectMetadataRequest, ObjectMetadata>() {
+      return retryAfterRefresh(new Function<GetObjectMetadataRequest, ObjectMetadata>() {
 
         @Override
         @Nullable
@@ -655,18 +871,6 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       throw new SnapshotTransferException("Failed to get snapshot metadata from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName
           + ", key=" + keyName, e);
     }
-
-    if (metadata != null && (userMetadata = metadata.getUserMetadata()) != null && userMetadata.containsKey(UNCOMPRESSED_SIZE_KEY)) {
-      try {
-        return Long.parseLong(userMetadata.get(UNCOMPRESSED_SIZE_KEY));
-      } catch (Exception e) {
-        throw new SnapshotTransferException("Unable to parse size from snapshot metadata: snapshotId=" + snapshotId + ", bucket=" + bucketName
-            + ", key=" + keyName + ", metadata key:value pair=" + UNCOMPRESSED_SIZE_KEY + ":" + userMetadata.get(UNCOMPRESSED_SIZE_KEY), e);
-      }
-    } else {
-      throw new SnapshotTransferException("Snapshot metadata from objectstorage does not contain uncompressed size: snapshotId=" + snapshotId
-          + ", bucket=" + bucketName + ", key=" + keyName);
-    }
   }
 
   private void initializeEucaS3Client() throws SnapshotTransferException {
@@ -772,6 +976,17 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     return bucket;
   }
 
+  /**
+   * Fail the download if the snapshot was not fully decompressed, e.g. when decompression stopped at a gzip member boundary.
+   */
+  private void checkUncompressedSize(@Nullable ObjectMetadata metadata, long uncompressedSize) throws SnapshotTransferException {
+    String expectedSize = metadata == null || metadata.getUserMetadata() == null ? null : metadata.getUserMetadata().get(UNCOMPRESSED_SIZE_KEY);
+    if (expectedSize != null && Long.parseLong(expectedSize) != uncompressedSize) {
+      throw new SnapshotTransferException("Downloaded size " + uncompressedSize + " bytes does not match the snapshot size " + expectedSize
+          + " bytes: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key=" + keyName);
+    }
+  }
+
   private S3Object download() throws SnapshotTransferException {
     try {
       LOG.debug("Dowloading snapshot from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key=" + keyName);
@@ -798,6 +1013,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     ObjectMetadata objectMetadata = new ObjectMetadata();
     Map<String, String> userMetadataMap = new HashMap<String, String>();
     userMetadataMap.put(UNCOMPRESSED_SIZE_KEY, String.valueOf(uncompressedSize)); // Send the uncompressed length as the metadata
+    userMetadataMap.put(COMPRESSION_BLOCK_SIZE_KEY, String.valueOf(COMPRESSION_BLOCK_SIZE)); // Blocks are indexed at the end of the object
     objectMetadata.setUserMetadata(userMetadataMap);
     objectMetadata.setContentLength(actualSize);
 
@@ -827,6 +1043,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     ObjectMetadata objectMetadata = new ObjectMetadata();
     Map<String, String> userMetadataMap = new HashMap<String, String>();
     userMetadataMap.put(UNCOMPRESSED_SIZE_KEY, String.valueOf(uncompressedSize)); // Send the uncompressed length as the metadata
+    userMetadataMap.put(COMPRESSION_BLOCK_SIZE_KEY, String.valueOf(COMPRESSION_BLOCK_SIZE)); // Blocks are indexed at the end of the object
     objectMetadata.setUserMetadata(userMetadataMap);
     initRequest.setObjectMetadata(objectMetadata);
 
@@ -951,6 +1168,113 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     }
   }
 
+  private static boolean acquireBlockPermit(boolean wait) throws InterruptedException {
+    if (wait) {
+      compressionBlockPermits.acquire();
+      return true;
+    } else {
+      return compressionBlockPermits.tryAcquire();
+    }
+  }
+
+  private static int readBlock(InputStream inputStream, byte[] block) throws IOException {
+    int length = 0;
+    int len;
+    while (length < block.length && (len = inputStream.read(block, length, block.length - length)) > 0) {
+      length += len;
+    }
+    return length;
+  }
+
+  static byte[] getGzipHeader() {
+    return new byte[] {(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+  }
+
+  /**
+   * Number of blocks written for a snapshot, the last block is shorter than the block size and may be empty.
+   */
+  static long getBlockCount(long uncompressedSize, int blockSize) {
+    return uncompressedSize / blockSize + 1;
+  }
+
+  static byte[] getBlockIndexEntry(int compressedSize, long crc) {
+    return ByteBuffer.allocate(BLOCK_INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN).putInt(compressedSize).putInt((int) crc).array();
+  }
+
+  /**
+   * Header of an empty gzip member holding block index entries in an extra field.
+   */
+  static byte[] getBlockIndexHeader(int entries) {
+    int length = entries * BLOCK_INDEX_ENTRY_SIZE;
+    return ByteBuffer.allocate(BLOCK_INDEX_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN).put(new byte[] {(byte) 0x1f, (byte) 0x8b,
+        Deflater.DEFLATED, 0x04, 0, 0, 0, 0, 0, 0}).putShort((short) (length + 4)).put((byte) 'E').put((byte) 'I').putShort((short) length)
+        .array();
+  }
+
+  static long getBlockIndexSize(long blockCount) {
+    long members = (blockCount + BLOCK_INDEX_ENTRIES_PER_MEMBER - 1) / BLOCK_INDEX_ENTRIES_PER_MEMBER;
+    return members * (BLOCK_INDEX_HEADER_SIZE + GZIP_FINAL_BLOCK.length + GZIP_TRAILER_SIZE) + blockCount * BLOCK_INDEX_ENTRY_SIZE;
+  }
+
+  /**
+   * Ends the gzip member started by {@link #getGzipHeader()} and appends the block index. The index is stored in empty gzip members, so gzip
+   * readers either stop after the snapshot data or read the index members as no data.
+   * 
+   * @param crc checksum of the snapshot
+   * @param uncompressedSize size of the snapshot
+   * @param blockIndex index entries for the blocks in order, see {@link #getBlockIndexEntry(int, long)}
+   */
+  static byte[] getGzipEnd(long crc, long uncompressedSize, byte[] blockIndex) throws IOException {
+    ByteArrayOutputStream end = new ByteArrayOutputStream();
+    end.write(GZIP_FINAL_BLOCK);
+    end.write(getGzipTrailer(crc, uncompressedSize));
+    for (int offset = 0; offset < blockIndex.length; offset += BLOCK_INDEX_ENTRIES_PER_MEMBER * BLOCK_INDEX_ENTRY_SIZE) {
+      int length = Math.min(blockIndex.length - offset, BLOCK_INDEX_ENTRIES_PER_MEMBER * BLOCK_INDEX_ENTRY_SIZE);
+      end.write(getBlockIndexHeader(length / BLOCK_INDEX_ENTRY_SIZE));
+      end.write(blockIndex, offset, length);
+      end.write(GZIP_FINAL_BLOCK);
+      end.write(getGzipTrailer(0, 0));
+    }
+    return end.toByteArray();
+  }
+
+  /**
+   * Reads the block index members written by {@link #getGzipEnd(long, long, byte[])}
+   * 
+   * @return the index entries in order
+   */
+  static ByteBuffer readBlockIndex(byte[] members, long blockCount) throws IOException {
+    if (members.length != getBlockIndexSize(blockCount)) {
+      throw new IOException("Invalid compressed block index size");
+    }
+    ByteBuffer entries = ByteBuffer.allocate((int) (blockCount * BLOCK_INDEX_ENTRY_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+    byte[] memberEnd = new byte[GZIP_FINAL_BLOCK.length + GZIP_TRAILER_SIZE];
+    System.arraycopy(GZIP_FINAL_BLOCK, 0, memberEnd, 0, GZIP_FINAL_BLOCK.length);
+    int offset = 0;
+    while (entries.hasRemaining()) {
+      int length = Math.min(entries.remaining(), BLOCK_INDEX_ENTRIES_PER_MEMBER * BLOCK_INDEX_ENTRY_SIZE);
+      byte[] header = getBlockIndexHeader(length / BLOCK_INDEX_ENTRY_SIZE);
+      if (!Arrays.equals(header, Arrays.copyOfRange(members, offset, offset + header.length))
+          || !Arrays.equals(memberEnd, Arrays.copyOfRange(members, offset + header.length + length, offset + header.length + length
+              + memberEnd.length))) {
+        throw new IOException("Invalid compressed block index");
+      }
+      entries.put(members, offset + header.length, length);
+      offset += header.length + length + memberEnd.length;
+    }
+    entries.flip();
+    return entries;
+  }
+
+  static byte[] getGzipTrailer(long crc, long uncompressedSize) {
+    byte[] trailer = new byte[8];
+    for (int i = 0; i < 4; i++) {
+      trailer[i] = (byte) (crc >>> (8 * i));
+      trailer[i + 4] = (byte) (uncompressedSize >>> (8 * i));
+    }
+    return trailer;
+  }
+
   private void deleteFile(String fileName) {
     if (StringUtils.isNotBlank(fileName)) {
       try {
@@ -1054,35 +1378,125 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     @Override
     public List<PartETag> call() throws Exception {
       Boolean isLast = Boolean.FALSE;
-      do {
-        SnapshotPart part = null;
-
-        try {
-          part = partQueue.take();
-        } catch (InterruptedException ex) { // Should rarely happen
-          LOG.error("Failed to upload snapshot " + snapshotId + " due to an retrieving parts from queue", ex);
-          return null;
-        }
-
-        isLast = part.getIsLast();
+      List<Future<PartETag>> partUploads = new ArrayList<Future<PartETag>>();
+      Semaphore uploadSlots = new Semaphore(UPLOAD_THREADS);
+      try {
+        do {
+          SnapshotPart part = null;
 
-        if (part.getState().equals(SnapshotPartState.created) || part.getState().equals(SnapshotPartState.uploading)
-            || part.getState().equals(SnapshotPartState.failed)) {
           try {
-            partETags.add(uploadPart(part, progressCallback));
-          } catch (Exception e) {
-            LOG.error("Failed to upload a part for " + snapshotId + ". Aborting the part upload process");
+            uploadSlots.acquire();
+            part = partQueue.take();
+          } catch (InterruptedException ex) { // Should rarely happen
+            LOG.error("Failed to upload snapshot " + snapshotId + " due to an retrieving parts from queue", ex);
             return null;
           }
-        } else {
-          LOG.warn("Not sure what to do with this part, just keep going: " + part);
+
+          isLast = part.getIsLast();
+
+          if (part.getState().equals(SnapshotPartState.created) || part.getState().equals(SnapshotPartState.uploading)
+              || part.getState().equals(SnapshotPartState.failed)) {
+            partUploads.add(Threads.enqueue(serviceConfig, UploadSinglePartTask.class, poolSize * UPLOAD_THREADS, new UploadSinglePartTask(part,
+                progressCallback, uploadSlots)));
+          } else {
+            LOG.warn("Not sure what to do with this part, just keep going: " + part);
+            uploadSlots.release();
+          }
+
+          // Stop taking parts as soon as any upload fails
+          for (Future<PartETag> partUpload : partUploads) {
+            if (partUpload.isDone()) {
+              partUpload.get();
+            }
+          }
+        } while (!isLast);
+
+        // Parts are queued in order so the etags are in part number order
+        for (Future<PartETag> partUpload : partUploads) {
+          partETags.add(partUpload.get());
         }
-      } while (!isLast);
+      } catch (ExecutionException e) {
+        LOG.error("Failed to upload a part for " + snapshotId + ". Aborting the part upload process");
+        return null;
+      } finally {
+        for (Future<PartETag> partUpload : partUploads) {
+          partUpload.cancel(true);
+        }
+      }
 
       return partETags;
     }
   }
 
+  class UploadSinglePartTask implements Callable<PartETag> {
+
+    private SnapshotPart part;
+    private SnapshotProgressCallback progressCallback;
+    private Semaphore uploadSlots;
+
+    public UploadSinglePartTask(SnapshotPart part, SnapshotProgressCallback progressCallback, Semaphore uploadSlots) {
+      this.part = part;
+      this.progressCallback = progressCallback;
+      this.uploadSlots = uploadSlots;
+    }
+
+    @Override
+    public PartETag call() throws Exception {
+      try {
+        return uploadPart(part, progressCallback);
+      } finally {
+        uploadSlots.release();
+      }
+    }
+  }
+
+  static class CompressedBlock {
+
+    final ByteArrayOutputStream data;
+    final long crc;
+
+    CompressedBlock(ByteArrayOutputStream data, long crc) {
+      this.data = data;
+      this.crc = crc;
+    }
+  }
+
+  /**
+   * Compresses a block of the snapshot with a fresh deflater and sync flushes it, so that blocks written in order form a single deflate stream
+   * and each block can still be inflated on its own.
+   */
+  static class CompressBlockTask implements Callable<CompressedBlock> {
+
+    private byte[] block;
+    private int length;
+
+    CompressBlockTask(byte[] block, int length) {
+      this.block = block;
+      this.length = length;
+    }
+
+    @Override
+    public CompressedBlock call() throws Exception {
+      ByteArrayOutputStream deflated = new ByteArrayOutputStream(Math.max(length / 2, 512));
+      byte[] buffer = new byte[64 * 1024];
+      CRC32 crc = new CRC32();
+      Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      try {
+        crc.update(block, 0, length);
+        deflater.setInput(block, 0, length);
+        int len;
+        do {
+          len = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+          deflated.write(buffer, 0, len);
+        } while (len == buffer.length);
+      } finally {
+        deflater.end();
+        block = null;
+      }
+      return new CompressedBlock(deflated, crc.getValue());
+    }
+  }
+
   class CompleteMpuTask implements Callable<String> {
 
     private Future<List<PartETag>> uploadTaskFuture;
@@ -1136,6 +1550,222 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     }
   }
 
+  /**
+   * Inflates a block written by {@link CompressBlockTask} and writes the data to the channel at the given offset.
+   */
+  static class InflateBlockTask implements Callable<Integer> {
+
+    private byte[] block;
+    private int length;
+    private int crc;
+    private FileChannel channel;
+    private long offset;
+
+    InflateBlockTask(byte[] block, int length, int crc, FileChannel channel, long offset) {
+      this.block = block;
+      this.length = length;
+      this.crc = crc;
+      this.channel = channel;
+      this.offset = offset;
+    }
+
+    @Override
+    public Integer call() throws Exception {
+      // One spare byte to detect blocks inflating to more than expected
+      byte[] data = new byte[length + 1];
+      int inflated = 0;
+      Inflater inflater = new Inflater(true);
+      try {
+        inflater.setInput(block);
+        while (!inflater.needsInput() && inflated < data.length) {
+          int len = inflater.inflate(data, inflated, data.length - inflated);
+          if (len == 0 && (inflater.finished() || inflater.needsDictionary())) {
+            break;
+          }
+          inflated += len;
+        }
+        if (inflater.getRemaining() > 0 || inflater.finished() || inflated != length) {
+          throw new IOException("Corrupt compressed block at offset " + offset);
+        }
+      } finally {
+        inflater.end();
+      }
+
+      CRC32 checksum = new CRC32();
+      checksum.update(data, 0, inflated);
+      if ((int) checksum.getValue() != crc) {
+        throw new IOException("Checksum mismatch for compressed block at offset " + offset);
+      }
+      block = null;
+
+      ByteBuffer buffer = ByteBuffer.wrap(data, 0, inflated);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, offset + buffer.position());
+      }
+      return inflated;
+    }
+  }
+
+  /**
+   * Sequential view of the snapshot object fetched as consecutive ranges, a bounded number of ranges are requested ahead of the reader.
+   */
+  class RangedObjectInputStream extends InputStream {
+
+    private final long objectSize;
+    private final String eTag;
+    private final Deque<Future<byte[]>> ranges = new ArrayDeque<Future<byte[]>>();
+    private long nextRangeStart = 0;
+    private long bytesConsumed = 0;
+    private byte[] range;
+    private int position;
+
+    RangedObjectInputStream(long objectSize, String eTag) {
+      this.objectSize = objectSize;
+      this.eTag = eTag;
+      requestRanges();
+    }
+
+    private void requestRanges() {
+      while (ranges.size() < DOWNLOAD_THREADS && nextRangeStart < objectSize) {
+        long rangeEnd = Math.min(objectSize, nextRangeStart + DOWNLOAD_RANGE_SIZE) - 1;
+        ranges.add(Threads.enqueue(serviceConfig, GetRangeTask.class, poolSize * DOWNLOAD_THREADS, new GetRangeTask(nextRangeStart, rangeEnd, eTag)));
+        nextRangeStart = rangeEnd + 1;
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (range == null || position == range.length) {
+        if (ranges.isEmpty()) {
+          return -1;
+        }
+        try {
+          range = ranges.remove().get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted downloading snapshot " + snapshotId);
+        } catch (ExecutionException e) {
+          throw new IOException("Failed to download snapshot " + snapshotId, e.getCause());
+        }
+        position = 0;
+        requestRanges();
+      }
+      int count = Math.min(len, range.length - position);
+      System.arraycopy(range, position, b, off, count);
+      position += count;
+      bytesConsumed += count;
+      return count;
+    }
+
+    /**
+     * Includes ranges not yet received so that GZIPInputStream continues with the next gzip member when a member ends on a range boundary.
+     */
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(Integer.MAX_VALUE, objectSize - bytesConsumed);
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (Future<byte[]> pending : ranges) {
+        pending.cancel(true);
+      }
+      ranges.clear();
+      range = null;
+    }
+  }
+
+  /**
+   * Snapshot object content fetched with a single request. Reports bytes available until the end of the content so that GZIPInputStream
+   * continues with the next gzip member when the response has no bytes buffered at a member boundary.
+   */
+  static class ObjectContentInputStream extends FilterInputStream {
+
+    private boolean eof = false;
+
+    ObjectContentInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b < 0) {
+        eof = true;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int count = super.read(b, off, len);
+      if (count < 0) {
+        eof = true;
+      }
+      return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return eof ? 0 : Math.max(1, super.available());
+    }
+  }
+
+  class GetRangeTask implements Callable<byte[]> {
+
+    private long start;
+    private long end;
+    private String eTag;
+
+    public GetRangeTask(long start, long end, String eTag) {
+      this.start = start;
+      this.end = end;
+      this.eTag = eTag;
+    }
+
+    @Override
+    public byte[] call() throws Exception {
+      GetObjectRequest request = new GetObjectRequest(bucketName, keyName).withRange(start, end);
+      if (eTag != null) {
+        request.setMatchingETagConstraints(Collections.singletonList(eTag));
+      }
+      S3Object object = retryAfterRefresh(new Function<GetObjectRequest, S3Object>() {
+
+        @Override
+        @Nullable
+        public S3Object apply(@Nullable GetObjectRequest arg0) {
+          eucaS3Client.refreshEndpoint();
+          return eucaS3Client.getObject(arg0);
+        }
+
+      }, request, REFRESH_TOKEN_RETRIES);
+      if (object == null || object.getObjectContent() == null) {
+        throw new SnapshotTransferException("Snapshot changed during download: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key="
+            + keyName);
+      }
+
+      InputStream inputStream = object.getObjectContent();
+      try {
+        byte[] data = new byte[(int) (end - start + 1)];
+        if (readBlock(inputStream, data) != data.length) {
+          throw new SnapshotTransferException("Incomplete range " + start + "-" + end + " downloading snapshot " + snapshotId);
+        }
+        return data;
+      } finally {
+        inputStream.close();
+      }
+    }
+  }
+
   class StorageWriterTask implements Callable<String> {
 
     private ArrayBlockingQueue<SnapshotPart> partQueue;
@@ -108,7 +108,7 @@ public class SnapshotProgressCallback implements CallBack {
   }
 
   @Override
-  public void update(final long bytesTransferred) {
+  public synchronized void update(final long bytesTransferred) {
     if (this.uploadSize > 0) {
       this.bytesTransferred += bytesTransferred;
       int progress = (int) ((this.bytesTransferred * 100) / uploadSize);
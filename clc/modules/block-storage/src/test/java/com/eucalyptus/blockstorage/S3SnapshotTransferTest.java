@@ -0,0 +1,189 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.blockstorage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.eucalyptus.blockstorage.S3SnapshotTransfer.CompressBlockTask;
+import com.eucalyptus.blockstorage.S3SnapshotTransfer.CompressedBlock;
+import com.eucalyptus.blockstorage.S3SnapshotTransfer.InflateBlockTask;
+
+public class S3SnapshotTransferTest {
+
+  private static final int BLOCK_SIZE = 100000;
+
+  @Test
+  public void testCompressedSnapshotIsSingleGzipMember() throws Exception {
+    Random random = new Random(42);
+    byte[] data = new byte[3 * BLOCK_SIZE + 1234];
+    for (int i = 0; i < data.length; i += 1000) {
+      Arrays.fill(data, i, Math.min(data.length, i + 500), (byte) random.nextInt());
+    }
+    byte[] compressed = compress(data);
+
+    assertArrayEquals("Decompressed data", data, gunzip(new ByteArrayInputStream(compressed)));
+
+    // Content with nothing available and single byte reads, so a reader that stops at the end of the first member must still see all data
+    InputStream content = new FilterInputStream(new ByteArrayInputStream(compressed)) {
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return super.read(b, off, Math.min(len, 1));
+      }
+
+      @Override
+      public int available() {
+        return 0;
+      }
+    };
+    assertArrayEquals("Decompressed data read to the first member boundary", data, gunzip(content));
+  }
+
+  @Test
+  public void testCompressEmptySnapshot() throws Exception {
+    byte[] compressed = compress(new byte[0]);
+
+    assertArrayEquals("Decompressed data", new byte[0], gunzip(new ByteArrayInputStream(compressed)));
+    assertEquals("Block index entries", S3SnapshotTransfer.BLOCK_INDEX_ENTRY_SIZE, blockIndex(compressed, 0).remaining());
+  }
+
+  @Test
+  public void testInflateBlocksAtOffsets() throws Exception {
+    Random random = new Random(7);
+    byte[] data = new byte[3 * BLOCK_SIZE];
+    random.nextBytes(data);
+    Arrays.fill(data, 50000, 250000, (byte) 0);
+    byte[] compressed = compress(data);
+
+    ByteBuffer index = blockIndex(compressed, data.length);
+    assertEquals("Blocks", 4, index.remaining() / S3SnapshotTransfer.BLOCK_INDEX_ENTRY_SIZE);
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    Path file = Files.createTempFile("snapshot-", ".raw");
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      int position = S3SnapshotTransfer.GZIP_HEADER_SIZE;
+      for (long offset = 0; index.hasRemaining(); offset += BLOCK_SIZE) {
+        int size = index.getInt();
+        tasks.add(new InflateBlockTask(Arrays.copyOfRange(compressed, position, position + size), (int) Math.min(BLOCK_SIZE, data.length - offset),
+            index.getInt(), channel, offset));
+        position += size;
+      }
+      // Inflate the blocks in reverse order to check the offsets
+      Collections.reverse(tasks);
+      for (Callable<Integer> task : tasks) {
+        task.call();
+      }
+    }
+    try {
+      assertArrayEquals("Decompressed data", data, Files.readAllBytes(file));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testBlockIndexSpansMembers() throws Exception {
+    long blockCount = S3SnapshotTransfer.BLOCK_INDEX_ENTRIES_PER_MEMBER + 5;
+    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    for (int i = 0; i < blockCount; i++) {
+      entries.write(S3SnapshotTransfer.getBlockIndexEntry(i, -i));
+    }
+    byte[] end = S3SnapshotTransfer.getGzipEnd(0, 0, entries.toByteArray());
+    byte[] members = Arrays.copyOfRange(end, end.length - (int) S3SnapshotTransfer.getBlockIndexSize(blockCount), end.length);
+
+    ByteBuffer index = S3SnapshotTransfer.readBlockIndex(members, blockCount);
+    for (int i = 0; i < blockCount; i++) {
+      assertEquals("Compressed size", i, index.getInt());
+      assertEquals("Checksum", -i, index.getInt());
+    }
+    assertArrayEquals("Decompressed index members", new byte[0], gunzip(new ByteArrayInputStream(members)));
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadInvalidBlockIndex() throws Exception {
+    byte[] compressed = compress(new byte[1000]);
+    compressed[compressed.length - 20] ^= 1;
+    blockIndex(compressed, 1000);
+  }
+
+  @Test(expected = IOException.class)
+  public void testInflateBlockOfWrongSize() throws Exception {
+    byte[] block = new byte[1000];
+    CompressedBlock compressed = new CompressBlockTask(block, block.length).call();
+    new InflateBlockTask(compressed.data.toByteArray(), block.length - 1, (int) compressed.crc, null, 0).call();
+  }
+
+  /**
+   * Compresses the data in blocks as written out by an upload
+   */
+  private static byte[] compress(byte[] data) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    out.write(S3SnapshotTransfer.getGzipHeader());
+    for (int offset = 0; offset <= data.length; offset += BLOCK_SIZE) {
+      int length = Math.min(BLOCK_SIZE, data.length - offset);
+      CompressedBlock block = new CompressBlockTask(Arrays.copyOfRange(data, offset, offset + BLOCK_SIZE), length).call();
+      block.data.writeTo(out);
+      entries.write(S3SnapshotTransfer.getBlockIndexEntry(block.data.size(), block.crc));
+    }
+    out.write(S3SnapshotTransfer.getGzipEnd(crc.getValue(), data.length, entries.toByteArray()));
+    return out.toByteArray();
+  }
+
+  private static ByteBuffer blockIndex(byte[] compressed, long uncompressedSize) throws IOException {
+    long blockCount = S3SnapshotTransfer.getBlockCount(uncompressedSize, BLOCK_SIZE);
+    int indexSize = (int) S3SnapshotTransfer.getBlockIndexSize(blockCount);
+    return S3SnapshotTransfer.readBlockIndex(Arrays.copyOfRange(compressed, compressed.length - indexSize, compressed.length), blockCount);
+  }
+
+  private static byte[] gunzip(InputStream compressed) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPInputStream in = new GZIPInputStream(compressed)) {
+      byte[] buffer = new byte[8192];
+      int len;
+      while ((len = in.read(buffer)) > 0) {
+        out.write(buffer, 0, len);
+      }
+    }
+    return out.toByteArray();
+  }
+}
@@ -37,23 +37,61 @@
 
 package com.eucalyptus.cloudwatch.domain.alarms;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.persistence.EntityTransaction;
 
 import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
+import org.hibernate.criterion.Restrictions;
 
 import com.eucalyptus.bootstrap.Bootstrap;
 import com.eucalyptus.cloudwatch.backend.CloudWatchBackendService;
 import com.eucalyptus.cloudwatch.common.CloudWatchBackend;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.Units;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricManager;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricRollupStore;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricStatistics;
 import com.eucalyptus.component.Topology;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.records.Logs;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
 
+/**
+ * Evaluates all alarms once per cycle.
+ *
+ * Alarms are grouped by metric series and period so the statistics for each
+ * series are fetched once per cycle, alarms to update are then read back in
+ * batches and each is updated in its own transaction.
+ */
+@ConfigurableClass( root = "cloudwatch", description = "Parameters controlling cloud watch and reporting")
 public class AlarmStateEvaluationDispatcher implements Runnable {
   private static final Logger LOG = Logger.getLogger(AlarmStateEvaluationDispatcher.class);
+
+  @ConfigurableField(initial = "100", description = "Maximum number of alarms updated per transaction during alarm evaluation")
+  public static volatile Integer ALARM_EVALUATION_UPDATE_BATCH_SIZE = 100;
+
+  private static final AlarmStateEvaluationStatistics statistics = new AlarmStateEvaluationStatistics();
+
+  static {
+    Mbeans.register(statistics);
+  }
+
   ExecutorService executorService;
 
   public AlarmStateEvaluationDispatcher(ExecutorService executorService) {
@@ -65,22 +103,271 @@ public class AlarmStateEvaluationDispatcher implements Runnable {
   public void run() {
     if (!CloudWatchBackendService.DISABLE_CLOUDWATCH_SERVICE && Bootstrap.isOperational( ) && Topology.isEnabledLocally( CloudWatchBackend.class )) {
       LOG.debug("Kicking off AlarmStateEvaluationDispatcher");
-      EntityTransaction db = Entities.get(AlarmEntity.class);
+      long before = System.currentTimeMillis();
       try {
-        Criteria criteria = Entities.createCriteria(AlarmEntity.class);
-        List<AlarmEntity> results = (List<AlarmEntity>) criteria.list();
+        List<AlarmEntity> results = loadAlarms();
+        Date queryDate = new Date();
+        Multimap<AlarmSeriesKey, AlarmEntity> alarmsBySeries = ArrayListMultimap.create();
         for (AlarmEntity alarmEntity: results) {
-          LOG.debug("Submitting job for " + alarmEntity.getAlarmName());
-          executorService.submit(new AlarmStateEvaluationWorker(alarmEntity.getAccountId(), alarmEntity.getAlarmName()));
+          alarmsBySeries.put(new AlarmSeriesKey(alarmEntity), alarmEntity);
+        }
+        List<Future<List<AlarmUpdate>>> futures = Lists.newArrayList();
+        for (Map.Entry<AlarmSeriesKey, Collection<AlarmEntity>> entry : alarmsBySeries.asMap().entrySet()) {
+          futures.add(executorService.submit(new SeriesEvaluationTask(entry.getKey(), entry.getValue(), queryDate)));
+        }
+        List<AlarmUpdate> updates = Lists.newArrayList();
+        for (Future<List<AlarmUpdate>> future : futures) {
+          try {
+            updates.addAll(future.get());
+          } catch (ExecutionException ex) {
+            statistics.failedSeries();
+            LOG.error(ex.getCause(), ex.getCause());
+          }
+        }
+        int stateChanges = 0;
+        for (List<AlarmUpdate> batch : Lists.partition(updates, Math.max(1, ALARM_EVALUATION_UPDATE_BATCH_SIZE))) {
+          try {
+            stateChanges += applyUpdates(batch);
+          } catch (RuntimeException ex) {
+            LOG.error(ex, ex);
+          }
+        }
+        statistics.cycle(results.size(), alarmsBySeries.keySet().size(), stateChanges, System.currentTimeMillis() - before);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    } else if (!Topology.isEnabledLocally( CloudWatchBackend.class )) {
+      // metric data may be written elsewhere while not enabled here
+      MetricRollupStore.getInstance().reset();
+    }
+  }
+
+  private static List<AlarmEntity> loadAlarms() {
+    EntityTransaction db = Entities.get(AlarmEntity.class);
+    try {
+      Criteria criteria = Entities.createCriteria(AlarmEntity.class);
+      List<AlarmEntity> results = (List<AlarmEntity>) criteria.list();
+      db.commit();
+      return results;
+    } catch (RuntimeException ex) {
+      Logs.extreme().error(ex, ex); // TODO the exception will be swallowed...
+      throw ex;
+    } finally {
+      if (db.isActive())
+        db.rollback();
+    }
+  }
+
+  /**
+   * Apply a batch of updates. The alarms for the batch are read in a single
+   * transaction, alarms modified since they were evaluated are skipped and
+   * will be evaluated in the next cycle.
+   *
+   * Each alarm is then updated and its actions executed in a separate
+   * transaction. Actions cannot be rolled back, so a failure for one alarm
+   * must not undo the updates for alarms whose actions were executed.
+   *
+   * @return The number of alarm state changes
+   */
+  private static int applyUpdates(List<AlarmUpdate> batch) {
+    int stateChanges = 0;
+    Map<String, AlarmEntity> alarms = loadAlarms(batch);
+    for (AlarmUpdate update : batch) {
+      AlarmEntity alarmEntity = alarms.get(update.naturalId);
+      if (alarmEntity == null || !update.version.equals(alarmEntity.getVersion())) {
+        LOG.debug("Alarm changed during evaluation, skipping " + update.naturalId);
+        continue;
+      }
+      try {
+        if (applyUpdate(alarmEntity, update)) {
+          stateChanges++;
         }
-        db.commit();
       } catch (RuntimeException ex) {
-        Logs.extreme().error(ex, ex); // TODO the exception will be swallowed...
-        throw ex;
-      } finally {
-        if (db.isActive())
-          db.rollback();
+        LOG.error("Error updating alarm " + alarmEntity.getAlarmName() + ": " + ex.getMessage());
+        Logs.extreme().error(ex, ex);
+      }
+    }
+    return stateChanges;
+  }
+
+  private static Map<String, AlarmEntity> loadAlarms(List<AlarmUpdate> batch) {
+    List<String> naturalIds = Lists.newArrayList();
+    for (AlarmUpdate update : batch) {
+      naturalIds.add(update.naturalId);
+    }
+    EntityTransaction db = Entities.get(AlarmEntity.class);
+    try {
+      Criteria criteria = Entities.createCriteria(AlarmEntity.class)
+          .add( Restrictions.in( "naturalId" , naturalIds ) );
+      Map<String, AlarmEntity> alarms = Maps.newHashMap();
+      for (AlarmEntity alarmEntity : (List<AlarmEntity>) criteria.list()) {
+        alarms.put(alarmEntity.getNaturalId(), alarmEntity);
+      }
+      db.commit();
+      return alarms;
+    } catch (RuntimeException ex) {
+      Logs.extreme().error(ex, ex);
+      throw ex;
+    } finally {
+      if (db.isActive())
+        db.rollback();
+    }
+  }
+
+  /**
+   * Apply the update for an alarm read in an earlier transaction, fails if
+   * the alarm was modified since it was read.
+   *
+   * @return True if the alarm state changed
+   */
+  private static boolean applyUpdate(AlarmEntity alarmEntity, AlarmUpdate update) {
+    boolean stateChanged = false;
+    EntityTransaction db = Entities.get(AlarmEntity.class);
+    try {
+      AlarmEntity mergedAlarmEntity = Entities.mergeDirect(alarmEntity);
+      Date evaluationDate = new Date();
+      if (update.state.getStateValue() != mergedAlarmEntity.getStateValue()) {
+        AlarmManager.changeAlarmState(mergedAlarmEntity, update.state, evaluationDate);
+        AlarmManager.executeActions(mergedAlarmEntity, update.state, true, evaluationDate);
+        stateChanged = true;
+      } else {
+        AlarmManager.executeActions(mergedAlarmEntity, update.state, false, evaluationDate);
+      }
+      db.commit();
+    } finally {
+      if (db.isActive())
+        db.rollback();
+    }
+    return stateChanged;
+  }
+
+  /**
+   * Fetches statistics for a series once and evaluates each dependent alarm.
+   */
+  private static class SeriesEvaluationTask implements Callable<List<AlarmUpdate>> {
+    private final AlarmSeriesKey key;
+    private final Collection<AlarmEntity> alarms;
+    private final Date queryDate;
+
+    private SeriesEvaluationTask(AlarmSeriesKey key, Collection<AlarmEntity> alarms, Date queryDate) {
+      this.key = key;
+      this.alarms = alarms;
+      this.queryDate = queryDate;
+    }
+
+    @Override
+    public List<AlarmUpdate> call() {
+      Date endDate = MetricManager.stripSeconds(queryDate);
+      Date bufferStartDate = endDate;
+      for (AlarmEntity alarmEntity : alarms) {
+        Date alarmBufferStartDate = AlarmStateEvaluationWorker.getBufferStartDate(alarmEntity, endDate);
+        if (alarmBufferStartDate.before(bufferStartDate)) {
+          bufferStartDate = alarmBufferStartDate;
+        }
+      }
+      // period starts are aligned to the end date so are the same for all alarms in the series
+      Collection<MetricStatistics> metricStatisticsList = MetricManager.getMetricStatistics(key.accountId,
+          key.metricName, key.namespace, key.dimensionMap, key.metricType, key.units, bufferStartDate,
+          endDate, key.period);
+      List<AlarmUpdate> updates = new ArrayList<AlarmUpdate>();
+      for (AlarmEntity alarmEntity : alarms) {
+        AlarmState currentState = AlarmStateEvaluationWorker.evaluateState(alarmEntity, metricStatisticsList, queryDate);
+        if (currentState.getStateValue() != alarmEntity.getStateValue() ||
+            AlarmStateEvaluationWorker.moreThanOnePeriodHasPassed(alarmEntity, queryDate)) {
+          updates.add(new AlarmUpdate(alarmEntity.getNaturalId(), alarmEntity.getVersion(), currentState));
+        }
       }
+      return updates;
+    }
+  }
+
+  private static class AlarmUpdate {
+    private final String naturalId;
+    private final Integer version;
+    private final AlarmState state;
+
+    private AlarmUpdate(String naturalId, Integer version, AlarmState state) {
+      this.naturalId = naturalId;
+      this.version = version;
+      this.state = state;
+    }
+  }
+
+  private static class AlarmSeriesKey {
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+    private final Map<String, String> dimensionMap;
+    private final Units units;
+    private final Integer period;
+
+    private AlarmSeriesKey(AlarmEntity alarmEntity) {
+      this.accountId = alarmEntity.getAccountId();
+      this.namespace = alarmEntity.getNamespace();
+      this.metricName = alarmEntity.getMetricName();
+      this.metricType = alarmEntity.getMetricType();
+      this.dimensionMap = alarmEntity.getDimensionMap();
+      this.units = alarmEntity.getUnit();
+      this.period = alarmEntity.getPeriod();
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + ((accountId == null) ? 0 : accountId.hashCode());
+      result = prime * result
+          + ((dimensionMap == null) ? 0 : dimensionMap.hashCode());
+      result = prime * result
+          + ((metricName == null) ? 0 : metricName.hashCode());
+      result = prime * result
+          + ((metricType == null) ? 0 : metricType.hashCode());
+      result = prime * result + ((namespace == null) ? 0 : namespace.hashCode());
+      result = prime * result + ((period == null) ? 0 : period.hashCode());
+      result = prime * result + ((units == null) ? 0 : units.hashCode());
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null)
+        return false;
+      if (getClass() != obj.getClass())
+        return false;
+      AlarmSeriesKey other = (AlarmSeriesKey) obj;
+      if (accountId == null) {
+        if (other.accountId != null)
+          return false;
+      } else if (!accountId.equals(other.accountId))
+        return false;
+      if (dimensionMap == null) {
+        if (other.dimensionMap != null)
+          return false;
+      } else if (!dimensionMap.equals(other.dimensionMap))
+        return false;
+      if (metricName == null) {
+        if (other.metricName != null)
+          return false;
+      } else if (!metricName.equals(other.metricName))
+        return false;
+      if (metricType != other.metricType)
+        return false;
+      if (namespace == null) {
+        if (other.namespace != null)
+          return false;
+      } else if (!namespace.equals(other.namespace))
+        return false;
+      if (period == null) {
+        if (other.period != null)
+          return false;
+      } else if (!period.equals(other.period))
+        return false;
+      if (units != other.units)
+        return false;
+      return true;
     }
   }
 }
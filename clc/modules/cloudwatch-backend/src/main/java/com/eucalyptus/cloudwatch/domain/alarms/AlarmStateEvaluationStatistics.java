@@ -0,0 +1,88 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.alarms;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and counts for alarm evaluation cycles, exported via JMX.
+ */
+public class AlarmStateEvaluationStatistics {
+  private final AtomicLong cycles = new AtomicLong();
+  private final AtomicLong evaluatedAlarms = new AtomicLong();
+  private final AtomicLong stateChanges = new AtomicLong();
+  private final AtomicLong failedSeries = new AtomicLong();
+  private volatile long lastCycleMillis;
+  private volatile long lastCycleAlarms;
+  private volatile long lastCycleSeries;
+
+  void cycle(long alarms, long series, long changes, long millis) {
+    cycles.incrementAndGet();
+    evaluatedAlarms.addAndGet(alarms);
+    stateChanges.addAndGet(changes);
+    lastCycleMillis = millis;
+    lastCycleAlarms = alarms;
+    lastCycleSeries = series;
+  }
+
+  void failedSeries() {
+    failedSeries.incrementAndGet();
+  }
+
+  public long getCycles() {
+    return cycles.get();
+  }
+
+  public long getEvaluatedAlarms() {
+    return evaluatedAlarms.get();
+  }
+
+  public long getStateChanges() {
+    return stateChanges.get();
+  }
+
+  public long getFailedSeries() {
+    return failedSeries.get();
+  }
+
+  public long getLastCycleMillis() {
+    return lastCycleMillis;
+  }
+
+  public long getLastCycleAlarms() {
+    return lastCycleAlarms;
+  }
+
+  public long getLastCycleSeries() {
+    return lastCycleSeries;
+  }
+
+  public double getLastCycleAlarmsPerSecond() {
+    final long millis = lastCycleMillis;
+    return millis == 0 ? 0.0 : lastCycleAlarms * 1000.0 / millis;
+  }
+
+  @Override
+  public String toString() {
+    return "AlarmStateEvaluationStatistics [cycles=" + cycles
+        + ", evaluatedAlarms=" + evaluatedAlarms + ", stateChanges="
+        + stateChanges + "]";
+  }
+}
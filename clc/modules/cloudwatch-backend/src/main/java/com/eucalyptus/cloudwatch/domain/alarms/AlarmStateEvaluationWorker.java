@@ -44,75 +44,37 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeMap;
 
-import javax.persistence.EntityTransaction;
-
-import org.apache.log4j.Logger;
-import org.hibernate.Criteria;
-import org.hibernate.criterion.Restrictions;
-
-import com.eucalyptus.bootstrap.Bootstrap;
-import com.eucalyptus.cloudwatch.backend.CloudWatchBackendService;
-import com.eucalyptus.cloudwatch.common.CloudWatchBackend;
 import com.eucalyptus.cloudwatch.domain.alarms.AlarmEntity.StateValue;
 import com.eucalyptus.cloudwatch.domain.metricdata.MetricManager;
 import com.eucalyptus.cloudwatch.domain.metricdata.MetricStatistics;
-import com.eucalyptus.component.Topology;
-import com.eucalyptus.entities.Entities;
-import com.eucalyptus.records.Logs;
-
-public class AlarmStateEvaluationWorker implements Runnable {
-  private String accountId;
-  private String alarmName;
-  private static final Logger LOG = Logger.getLogger(AlarmStateEvaluationWorker.class);
-  public AlarmStateEvaluationWorker(String accountId, String alarmName) {
-    super();
-    this.accountId = accountId;
-    this.alarmName = alarmName;
-  }
-  @Override
-  public void run() {
-    if (!CloudWatchBackendService.DISABLE_CLOUDWATCH_SERVICE && Bootstrap.isOperational( ) && Topology.isEnabledLocally( CloudWatchBackend.class )) {
-      LOG.debug("Kicking off alarm state evaluation for " + alarmName);
-      EntityTransaction db = Entities.get(AlarmEntity.class);
-      try {
-        Criteria criteria = Entities.createCriteria(AlarmEntity.class)
-            .add( Restrictions.eq( "accountId" , accountId ) )
-            .add( Restrictions.eq( "alarmName" , alarmName ) );
-        AlarmEntity alarmEntity = (AlarmEntity) criteria.uniqueResult();
-        if (alarmEntity == null) return; // TODO: didn't find it, not good.
-        AlarmState currentState = evaluateState(alarmEntity);
-        Date evaluationDate = new Date();
-        if (currentState.getStateValue() != alarmEntity.getStateValue()) {
-          AlarmManager.changeAlarmState(alarmEntity, currentState, evaluationDate);
-          AlarmManager.executeActions(alarmEntity, currentState, true, evaluationDate);
-        } else if (moreThanOnePeriodHasPassed(alarmEntity, evaluationDate)) {
-          AlarmManager.executeActions(alarmEntity, currentState, false, evaluationDate);
-        }
-        db.commit();
-      } catch (RuntimeException ex) { // TODO: exception in a Runnable gets lost...
-        Logs.extreme().error(ex, ex);
-        throw ex;
-      } finally {
-        if (db.isActive())
-          db.rollback();
-      }
-    }
-  }
 
-  private boolean moreThanOnePeriodHasPassed(AlarmEntity alarmEntity, Date now) {
+public class AlarmStateEvaluationWorker {
+  static boolean moreThanOnePeriodHasPassed(AlarmEntity alarmEntity, Date now) {
     now = MetricManager.stripSeconds(now);
     Date then = MetricManager.stripSeconds(alarmEntity.getLastActionsUpdatedTimestamp());
     return now.getTime() - then.getTime() >= 1000L * alarmEntity.getPeriod();
   }
 
-  private AlarmState evaluateState(AlarmEntity alarmEntity) {
-    Date queryDate = new Date();
-    Date endDate = MetricManager.stripSeconds(queryDate);
+  /**
+   * Get the start of the interval (including buffer periods) needed to evaluate the alarm.
+   */
+  static Date getBufferStartDate(AlarmEntity alarmEntity, Date endDate) {
     Date startDate = new Date(endDate.getTime() - 1000L * alarmEntity.getPeriod() * alarmEntity.getEvaluationPeriods());
     // We put in a slight buffer in addition to the regular window time (two additional periods or 5 minutes, whichever is greater) to delay
     // insufficient data from going down... 
-    Date bufferStartDate = new Date(startDate.getTime() - 1000L * alarmEntity.getPeriod() * numBufferPeriods(alarmEntity.getPeriod()));
-    Collection<MetricStatistics> metricStatisticsList = MetricManager.getMetricStatistics(accountId, alarmEntity.getMetricName(), alarmEntity.getNamespace(), alarmEntity.getDimensionMap(), alarmEntity.getMetricType(), alarmEntity.getUnit(), bufferStartDate, endDate, alarmEntity.getPeriod());
+    return new Date(startDate.getTime() - 1000L * alarmEntity.getPeriod() * numBufferPeriods(alarmEntity.getPeriod()));
+  }
+
+  /**
+   * Evaluate the alarm state from the given statistics.
+   *
+   * @param metricStatisticsList Statistics for the period of the alarm, may include statistics outside the interval
+   */
+  static AlarmState evaluateState(AlarmEntity alarmEntity, Collection<MetricStatistics> metricStatisticsList,
+      Date queryDate) {
+    Date endDate = MetricManager.stripSeconds(queryDate);
+    Date startDate = new Date(endDate.getTime() - 1000L * alarmEntity.getPeriod() * alarmEntity.getEvaluationPeriods());
+    Date bufferStartDate = getBufferStartDate(alarmEntity, endDate);
     TreeMap<Long, StateAndMetricValue> dataPointMap = new TreeMap<Long, StateAndMetricValue>();
     for (long L = bufferStartDate.getTime(); L < endDate.getTime(); L += alarmEntity.getPeriod() * 1000L) {
       dataPointMap.put(L, new StateAndMetricValue(StateValue.INSUFFICIENT_DATA, null));
@@ -120,9 +82,7 @@ public class AlarmStateEvaluationWorker implements Runnable {
     // now populate based on items from the returned values
     for (MetricStatistics metricStatistics: metricStatisticsList) {
       Long dateAsLong = metricStatistics.getTimestamp().getTime();
-      if (!dataPointMap.containsKey(dateAsLong)) {
-        LOG.warn("Data point does not fall in interval, skipping");
-      } else {
+      if (dataPointMap.containsKey(dateAsLong)) {
         dataPointMap.put(dateAsLong, calculateLocalStateAndMetricValue(alarmEntity, metricStatistics));
       }
     }
@@ -190,7 +150,7 @@ public class AlarmStateEvaluationWorker implements Runnable {
     }
   }
 
-  private StateAndMetricValue calculateLocalStateAndMetricValue(
+  private static StateAndMetricValue calculateLocalStateAndMetricValue(
       AlarmEntity alarmEntity, MetricStatistics metricStatistics) {
     Double metricValue = AlarmUtils.calculateMetricValue(alarmEntity.getStatistic(), metricStatistics);
 
@@ -214,7 +174,7 @@ public class AlarmStateEvaluationWorker implements Runnable {
       return metricValue;
     }
   }
-  private Integer numBufferPeriods(Integer period) {
+  private static Integer numBufferPeriods(Integer period) {
     // it is the greater of 5 minutes or two periods, but it should be a whole number of periods.
     Integer periodMinutes = period / 60;
     if (periodMinutes == 1) return 5;
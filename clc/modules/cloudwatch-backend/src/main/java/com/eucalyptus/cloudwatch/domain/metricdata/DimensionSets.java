@@ -0,0 +1,136 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.eucalyptus.cloudwatch.domain.DimensionEntity;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+/**
+ * Interned dimension sets.
+ *
+ * Each distinct set of dimensions is canonicalized and given a compact id
+ * on first use. The hash for the set, and for system metrics the hashes of
+ * all its subsets, are computed once and reused for later data points with
+ * the same dimensions.
+ */
+public class DimensionSets {
+  private static final int MAX_DIMENSION_SETS = 100000;
+  private static final AtomicInteger nextId = new AtomicInteger();
+  private static final Cache<Map<String, String>, DimensionSet> dimensionSets = CacheBuilder.newBuilder()
+      .maximumSize(MAX_DIMENSION_SETS)
+      .build();
+  private static final DimensionSet EMPTY = newDimensionSet(Collections.<String, String>emptyMap());
+
+  /**
+   * Get the interned dimension set for the given dimensions.
+   *
+   * @param dimensionMap The dimensions, may be null
+   * @return The dimension set
+   */
+  public static DimensionSet intern(Map<String, String> dimensionMap) {
+    if (dimensionMap == null || dimensionMap.isEmpty()) {
+      return EMPTY;
+    }
+    DimensionSet dimensionSet = dimensionSets.getIfPresent(dimensionMap);
+    if (dimensionSet == null) {
+      for (Map.Entry<String, String> entry : dimensionMap.entrySet()) {
+        if (entry.getKey() == null || entry.getValue() == null) {
+          return newDimensionSet(dimensionMap); // not cacheable
+        }
+      }
+      // copy the key as the callers map may be modified
+      final Map<String, String> key = ImmutableMap.copyOf(dimensionMap);
+      final DimensionSet newDimensionSet = newDimensionSet(key);
+      dimensionSet = dimensionSets.asMap().putIfAbsent(key, newDimensionSet);
+      if (dimensionSet == null) {
+        dimensionSet = newDimensionSet;
+      }
+    }
+    return dimensionSet;
+  }
+
+  public static long size() {
+    return dimensionSets.size();
+  }
+
+  private static DimensionSet newDimensionSet(Map<String, String> dimensionMap) {
+    TreeSet<DimensionEntity> dimensions = new TreeSet<DimensionEntity>();
+    for (Map.Entry<String, String> entry : dimensionMap.entrySet()) {
+      dimensions.add(new DimensionEntity(entry.getKey(), entry.getValue()));
+    }
+    return new DimensionSet(nextId.incrementAndGet(), dimensions);
+  }
+
+  public static final class DimensionSet {
+    private final int id;
+    private final SortedSet<DimensionEntity> dimensions;
+    private final String hash;
+    private volatile List<String> subsetHashes;
+
+    private DimensionSet(int id, TreeSet<DimensionEntity> dimensions) {
+      this.id = id;
+      this.dimensions = Collections.unmodifiableSortedSet(dimensions);
+      this.hash = MetricManager.hash(dimensions);
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    /**
+     * The sorted dimensions, dimension entities must not be modified.
+     */
+    public SortedSet<DimensionEntity> getDimensions() {
+      return dimensions;
+    }
+
+    public String getHash() {
+      return hash;
+    }
+
+    /**
+     * Hashes for each subset of the dimensions (including the empty set and
+     * the full set) as used to fold system metrics.
+     */
+    public List<String> getSubsetHashes() {
+      List<String> hashes = subsetHashes;
+      if (hashes == null) {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (Set<DimensionEntity> subset : Sets.powerSet(dimensions)) {
+          builder.add(MetricManager.hash(subset));
+        }
+        subsetHashes = hashes = builder.build();
+      }
+      return hashes;
+    }
+  }
+}
@@ -26,9 +26,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.persistence.EntityTransaction;
@@ -37,6 +37,7 @@ import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Restrictions;
 
+import com.eucalyptus.cloudwatch.backend.ThrottlingException;
 import com.eucalyptus.cloudwatch.common.backend.msgs.Dimension;
 import com.eucalyptus.cloudwatch.common.backend.msgs.Dimensions;
 import com.eucalyptus.cloudwatch.common.backend.msgs.MetricDatum;
@@ -47,22 +48,42 @@ import com.eucalyptus.cloudwatch.domain.absolute.AbsoluteMetricHelper.MetricDiff
 import com.eucalyptus.cloudwatch.domain.listmetrics.ListMetricManager;
 import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
 import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.Units;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.records.Logs;
-import com.google.common.base.Supplier;
+import com.eucalyptus.util.Mbeans;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+@ConfigurableClass( root = "cloudwatch", description = "Parameters controlling cloud watch and reporting")
 public class MetricDataQueue {
   private static final Logger LOG = Logger.getLogger(MetricDataQueue.class);
-  final static LinkedBlockingQueue<MetricQueueItem> dataQueue = new LinkedBlockingQueue<MetricQueueItem>();
 
-  private static final ScheduledExecutorService dataFlushTimer = Executors
-      .newSingleThreadScheduledExecutor();
+  @ConfigurableField(initial = "100000", description = "Maximum number of metric data points buffered before PutMetricData requests are throttled (applied on restart)")
+  public static volatile Integer METRIC_DATA_QUEUE_CAPACITY = 100000;
 
-  private static MetricDataQueue singleton = getInstance();
+  @ConfigurableField(initial = "4", description = "Number of parallel workers persisting metric data (applied on restart)")
+  public static volatile Integer METRIC_DATA_FLUSH_WORKERS = 4;
+
+  @ConfigurableField(initial = "500", description = "Minimum number of metric data points a flush worker waits for before persisting a batch")
+  public static volatile Integer METRIC_DATA_MIN_BATCH_SIZE = 500;
+
+  @ConfigurableField(initial = "15000", description = "Maximum number of metric data points persisted in a single batch")
+  public static volatile Integer METRIC_DATA_MAX_BATCH_SIZE = 15000;
+
+  @ConfigurableField(initial = "5000", description = "Maximum time in milliseconds metric data waits for a batch to fill before it is persisted")
+  public static volatile Integer METRIC_DATA_MAX_BATCH_WAIT = 5000;
+
+  private static MetricDataQueue singleton;
+
+  private final LinkedBlockingQueue<MetricQueueItem> dataQueue;
+  private final List<LinkedBlockingQueue<SimpleMetricEntity>> flushQueues;
+  private final Object listMetricLock = new Object();
+  private final Object intakeLock = new Object();
+  private final MetricDataQueueStatistics statistics = new MetricDataQueueStatistics();
 
   public static MetricDataQueue getInstance() {
     synchronized (MetricDataQueue.class) {
@@ -72,48 +93,141 @@ public class MetricDataQueue {
     return singleton;
   }
 
-  private void queue(Supplier<MetricQueueItem> metriMetaDataSupplier) {
-    final MetricQueueItem metricData = metriMetaDataSupplier.get();
-    dataQueue.offer(metricData);
+  private MetricDataQueue() {
+    final int capacity = Math.max(1, METRIC_DATA_QUEUE_CAPACITY);
+    final int workers = Math.max(1, METRIC_DATA_FLUSH_WORKERS);
+    dataQueue = new LinkedBlockingQueue<MetricQueueItem>(capacity);
+    flushQueues = Lists.newArrayListWithCapacity(workers);
+    for (int i = 0; i < workers; i++) {
+      flushQueues.add(new LinkedBlockingQueue<SimpleMetricEntity>(Math.max(1, capacity / workers)));
+    }
+    final ExecutorService pipelineService = Executors.newFixedThreadPool(workers + 1);
+    pipelineService.submit(new PrepareWorker());
+    for (LinkedBlockingQueue<SimpleMetricEntity> flushQueue : flushQueues) {
+      pipelineService.submit(new FlushWorker(flushQueue));
+    }
+    Mbeans.register(statistics);
+  }
+
+  static int intakeDepth() {
+    MetricDataQueue queue = singleton;
+    return queue == null ? 0 : queue.dataQueue.size();
+  }
+
+  static int flushDepth() {
+    MetricDataQueue queue = singleton;
+    int depth = 0;
+    if (queue != null) {
+      for (LinkedBlockingQueue<SimpleMetricEntity> flushQueue : queue.flushQueues) {
+        depth += flushQueue.size();
+      }
+    }
+    return depth;
+  }
+
+  /**
+   * Drain up to a batch from the given queue, sized to the current backlog.
+   *
+   * A small backlog waits (at most METRIC_DATA_MAX_BATCH_WAIT) for the
+   * minimum batch size, a large backlog is drained immediately up to the
+   * maximum batch size.
+   */
+  private static <T> List<T> drainBatch(LinkedBlockingQueue<T> queue) throws InterruptedException {
+    List<T> batch = Lists.newArrayList();
+    T first = queue.poll(1, TimeUnit.SECONDS);
+    if (first == null) return batch;
+    batch.add(first);
+    final int maxBatchSize = Math.max(1, METRIC_DATA_MAX_BATCH_SIZE);
+    final int minBatchSize = Math.min(maxBatchSize, Math.max(1, METRIC_DATA_MIN_BATCH_SIZE));
+    final int targetSize = Math.min(maxBatchSize, Math.max(minBatchSize, queue.size() + 1));
+    final long deadline = System.currentTimeMillis() + METRIC_DATA_MAX_BATCH_WAIT;
+    queue.drainTo(batch, targetSize - batch.size());
+    while (batch.size() < targetSize) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) break;
+      T next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+      if (next == null) break;
+      batch.add(next);
+      queue.drainTo(batch, targetSize - batch.size());
+    }
+    return batch;
   }
 
-  private static Runnable safeRunner = new Runnable() {
+  /**
+   * Stage one: absolute metric handling and conversion. This stage is single
+   * threaded as absolute metric history must be applied in order. Converted
+   * data points are partitioned by aggregation key across the flush workers.
+   */
+  private class PrepareWorker implements Runnable {
     @Override
     public void run() {
-      long before = System.currentTimeMillis();
-      try {
-        List<MetricQueueItem> dataBatch = Lists.newArrayList();
-        dataQueue.drainTo(dataBatch, 15000);
-        LOG.debug("Timing:dataBatch.size()="+dataBatch.size());
-        long t1 = System.currentTimeMillis();
-        dataBatch = dealWithAbsoluteMetrics(dataBatch);
-        long t2 = System.currentTimeMillis();
-        LOG.debug("Timing:dataBatch.dealWithAbsoluteMetrics():time="+(t2-t1));
-        List<SimpleMetricEntity> simpleDataBatch = convertToSimpleDataBatch(dataBatch);
-        long t3 = System.currentTimeMillis();
-        LOG.debug("Timing:dataBatch.convertToSimpleDataBatch():time="+(t3-t2));
-        simpleDataBatch = aggregate(simpleDataBatch);
-        long t4 = System.currentTimeMillis();
-        LOG.debug("Timing:dataBatch.aggregate():time="+(t4-t3));
-        MetricManager.addMetricBatch(simpleDataBatch);
-        long t5 = System.currentTimeMillis();
-        LOG.debug("Timing:dataBatch.MetricManager.addMetricBatch():time="+(t5-t4));
-        ListMetricManager.addMetricBatch(simpleDataBatch);
-        long t6 = System.currentTimeMillis();
-        LOG.debug("Timing:ListMetricManager.addMetricBatch:time="+(t6-t5));
-      } catch (Throwable ex) {
-        LOG.debug("error");
-        ex.printStackTrace();
-        LOG.error(ex,ex);
-      } finally {
-        long after = System.currentTimeMillis();
-        LOG.debug("Timing:time="+(after-before));
+      while (!Thread.currentThread().isInterrupted()) {
+        List<MetricQueueItem> dataBatch = null;
+        try {
+          dataBatch = drainBatch(dataQueue);
+          if (dataBatch.isEmpty()) continue;
+          long t1 = System.currentTimeMillis();
+          dataBatch = dealWithAbsoluteMetrics(dataBatch);
+          long t2 = System.currentTimeMillis();
+          statistics.time(MetricDataQueueStatistics.Stage.Absolute, t2 - t1);
+          List<SimpleMetricEntity> simpleDataBatch = convertToSimpleDataBatch(dataBatch);
+          long t3 = System.currentTimeMillis();
+          statistics.time(MetricDataQueueStatistics.Stage.Convert, t3 - t2);
+          for (SimpleMetricEntity item : simpleDataBatch) {
+            item.setTimestamp(MetricManager.stripSeconds(item.getTimestamp()));
+            int partition = (new PutMetricDataAggregationKey(item).hashCode() & Integer.MAX_VALUE) % flushQueues.size();
+            flushQueues.get(partition).put(item);
+          }
+          statistics.time(MetricDataQueueStatistics.Stage.Partition, System.currentTimeMillis() - t3);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        } catch (Throwable ex) {
+          if (dataBatch != null) statistics.failed(dataBatch.size());
+          LOG.error(ex,ex);
+        }
       }
     }
-  };
+  }
+
+  /**
+   * Stage two: aggregation and persistence of one partition of the data.
+   */
+  private class FlushWorker implements Runnable {
+    private final LinkedBlockingQueue<SimpleMetricEntity> flushQueue;
 
-  static {
-    dataFlushTimer.scheduleAtFixedRate(safeRunner, 0, 1, TimeUnit.MINUTES);
+    private FlushWorker(LinkedBlockingQueue<SimpleMetricEntity> flushQueue) {
+      this.flushQueue = flushQueue;
+    }
+
+    @Override
+    public void run() {
+      while (!Thread.currentThread().isInterrupted()) {
+        List<SimpleMetricEntity> simpleDataBatch = null;
+        try {
+          simpleDataBatch = drainBatch(flushQueue);
+          if (simpleDataBatch.isEmpty()) continue;
+          statistics.flushed(simpleDataBatch.size());
+          long t1 = System.currentTimeMillis();
+          List<SimpleMetricEntity> aggregatedBatch = aggregate(simpleDataBatch);
+          long t2 = System.currentTimeMillis();
+          statistics.time(MetricDataQueueStatistics.Stage.Aggregate, t2 - t1);
+          MetricManager.addMetricBatch(aggregatedBatch);
+          long t3 = System.currentTimeMillis();
+          statistics.time(MetricDataQueueStatistics.Stage.MetricPersist, t3 - t2);
+          // list metrics are keyed without timestamps so partitions overlap, serialize updates
+          synchronized (listMetricLock) {
+            ListMetricManager.addMetricBatch(aggregatedBatch);
+          }
+          statistics.time(MetricDataQueueStatistics.Stage.ListMetricPersist, System.currentTimeMillis() - t3);
+          statistics.persisted(simpleDataBatch.size());
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        } catch (Throwable ex) {
+          if (simpleDataBatch != null) statistics.failed(simpleDataBatch.size());
+          LOG.error(ex,ex);
+        }
+      }
+    }
   }
 
   public static List<SimpleMetricEntity> aggregate(List<SimpleMetricEntity> dataBatch) {
@@ -290,25 +404,33 @@ public class MetricDataQueue {
       .build();
 
   public void insertMetricData(final String ownerAccountId, final String nameSpace,
-      final List<MetricDatum> metricDatum, final MetricType metricType) {
+      final List<MetricDatum> metricDatum, final MetricType metricType) throws ThrottlingException {
     // Some points do not actually go in.  If a data point represents an absolute value, the first one does not go in.
     // Also, some data points are added while we go through the list (derived metrics)
     Date now = new Date();
 
+    List<MetricQueueItem> items = Lists.newArrayListWithCapacity(metricDatum.size());
     for (final MetricDatum datum : metricDatum) {
       scrub(datum, now);
-      queue(new Supplier<MetricQueueItem>() {
-        @Override
-        public MetricQueueItem get() {
-          MetricQueueItem metricMetadata = new MetricQueueItem();
-          metricMetadata.setAccountId(ownerAccountId);
-          metricMetadata.setMetricDatum(datum);
-          metricMetadata.setNamespace(nameSpace);
-          metricMetadata.setMetricType(metricType);
-          return metricMetadata;
-        }
-      });
+      MetricQueueItem metricMetadata = new MetricQueueItem();
+      metricMetadata.setAccountId(ownerAccountId);
+      metricMetadata.setMetricDatum(datum);
+      metricMetadata.setNamespace(nameSpace);
+      metricMetadata.setMetricType(metricType);
+      items.add(metricMetadata);
+    }
+
+    // The request is queued in full or throttled, so a retry does not store
+    // data twice. Producers are serialized and the prepare worker only removes
+    // items, so the capacity checked is available for the whole request.
+    synchronized (intakeLock) {
+      if (dataQueue.remainingCapacity() < items.size()) {
+        statistics.throttled(items.size());
+        throw new ThrottlingException("Rate exceeded");
+      }
+      dataQueue.addAll(items);
     }
+    statistics.accepted(items.size());
   }
 
   private static boolean adjustAbsoluteVolumeQueueLengthStatisticSet(AbsoluteMetricCache cache,
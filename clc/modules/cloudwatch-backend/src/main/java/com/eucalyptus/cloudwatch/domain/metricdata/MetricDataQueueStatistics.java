@@ -0,0 +1,190 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and per-stage timings for the metric data ingest pipeline.
+ *
+ * Exported via JMX so the pipeline can be monitored without debug logging.
+ */
+public class MetricDataQueueStatistics {
+
+  public enum Stage {
+    Absolute,
+    Convert,
+    Partition,
+    Aggregate,
+    MetricPersist,
+    ListMetricPersist,
+  }
+
+  private final AtomicLong acceptedDataPoints = new AtomicLong();
+  private final AtomicLong throttledDataPoints = new AtomicLong();
+  private final AtomicLong persistedDataPoints = new AtomicLong();
+  private final AtomicLong failedDataPoints = new AtomicLong();
+  private final AtomicLong flushedBatches = new AtomicLong();
+  private final AtomicLong lastBatchSize = new AtomicLong();
+  private final Map<Stage, StageTimer> timers = new EnumMap<Stage, StageTimer>(Stage.class);
+
+  MetricDataQueueStatistics() {
+    for (Stage stage : Stage.values()) {
+      timers.put(stage, new StageTimer());
+    }
+  }
+
+  void accepted(int count) {
+    acceptedDataPoints.addAndGet(count);
+  }
+
+  void throttled(int count) {
+    throttledDataPoints.addAndGet(count);
+  }
+
+  void flushed(int count) {
+    flushedBatches.incrementAndGet();
+    lastBatchSize.set(count);
+  }
+
+  void persisted(int count) {
+    persistedDataPoints.addAndGet(count);
+  }
+
+  void failed(int count) {
+    failedDataPoints.addAndGet(count);
+  }
+
+  void time(Stage stage, long millis) {
+    timers.get(stage).record(millis);
+  }
+
+  public long getAcceptedDataPoints() {
+    return acceptedDataPoints.get();
+  }
+
+  public long getThrottledDataPoints() {
+    return throttledDataPoints.get();
+  }
+
+  public long getPersistedDataPoints() {
+    return persistedDataPoints.get();
+  }
+
+  public long getFailedDataPoints() {
+    return failedDataPoints.get();
+  }
+
+  public long getFlushedBatches() {
+    return flushedBatches.get();
+  }
+
+  public long getLastBatchSize() {
+    return lastBatchSize.get();
+  }
+
+  public int getIntakeQueueDepth() {
+    return MetricDataQueue.intakeDepth();
+  }
+
+  public int getFlushQueueDepth() {
+    return MetricDataQueue.flushDepth();
+  }
+
+  public double getAbsoluteStageAverageMillis() {
+    return timers.get(Stage.Absolute).average();
+  }
+
+  public long getAbsoluteStageMaxMillis() {
+    return timers.get(Stage.Absolute).max();
+  }
+
+  public double getConvertStageAverageMillis() {
+    return timers.get(Stage.Convert).average();
+  }
+
+  public long getConvertStageMaxMillis() {
+    return timers.get(Stage.Convert).max();
+  }
+
+  public double getPartitionStageAverageMillis() {
+    return timers.get(Stage.Partition).average();
+  }
+
+  public long getPartitionStageMaxMillis() {
+    return timers.get(Stage.Partition).max();
+  }
+
+  public double getAggregateStageAverageMillis() {
+    return timers.get(Stage.Aggregate).average();
+  }
+
+  public long getAggregateStageMaxMillis() {
+    return timers.get(Stage.Aggregate).max();
+  }
+
+  public double getMetricPersistStageAverageMillis() {
+    return timers.get(Stage.MetricPersist).average();
+  }
+
+  public long getMetricPersistStageMaxMillis() {
+    return timers.get(Stage.MetricPersist).max();
+  }
+
+  public double getListMetricPersistStageAverageMillis() {
+    return timers.get(Stage.ListMetricPersist).average();
+  }
+
+  public long getListMetricPersistStageMaxMillis() {
+    return timers.get(Stage.ListMetricPersist).max();
+  }
+
+  @Override
+  public String toString() {
+    return "MetricDataQueueStatistics [accepted=" + acceptedDataPoints
+        + ", throttled=" + throttledDataPoints + ", persisted="
+        + persistedDataPoints + ", failed=" + failedDataPoints
+        + ", batches=" + flushedBatches + "]";
+  }
+
+  private static class StageTimer {
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    void record(long millis) {
+      count.incrementAndGet();
+      totalMillis.addAndGet(millis);
+      long max;
+      while ((max = maxMillis.get()) < millis && !maxMillis.compareAndSet(max, millis));
+    }
+
+    double average() {
+      long samples = count.get();
+      return samples == 0 ? 0.0 : (double) totalMillis.get() / samples;
+    }
+
+    long max() {
+      return maxMillis.get();
+    }
+  }
+}
@@ -20,6 +20,11 @@
 package com.eucalyptus.cloudwatch.domain.metricdata;
 
 import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.persistence.Entity;
 import javax.persistence.PersistenceContext;
@@ -30,20 +35,26 @@ import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
 import com.eucalyptus.component.annotation.RemotablePersistence;
+import com.eucalyptus.util.Classes;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 public class MetricEntityFactory {
-  private static MetricFactoryDelegate delegate = new MetricFactoryDelegate32();
+  private static MetricFactoryDelegate delegate = new MetricFactoryDelegateTimeBucket(
+      new MetricFactoryDelegate32());
 
   // private static MetricFactoryDelegate delegate = new
   // MetricFactoryDelegateSingle();
   public static MetricEntity getNewMetricEntity(MetricType metricType,
-      String hash) {
-    return delegate.getNewMetricEntity(metricType, hash);
+      String hash, Date timestamp) {
+    return delegate.getNewMetricEntity(metricType, hash, timestamp);
   }
 
-  public static Class getClassForEntitiesGet(MetricType metricType, String hash) {
-    return delegate.getClassForEntitiesGet(metricType, hash);
+  public static Collection<Class> getClassesForEntitiesGet(MetricType metricType,
+      String hash, Date startTime, Date endTime) {
+    return delegate.getClassesForEntitiesGet(metricType, hash, startTime, endTime);
   }
 
   public static Collection<Class> getAllClassesForEntitiesGet(
@@ -55,14 +66,47 @@ public class MetricEntityFactory {
     return delegate.getAllClassesForEntitiesGet();
   }
 
+  public static Collection<Class> getClassesForDeleteBefore(Date before) {
+    return delegate.getClassesForDeleteBefore(before);
+  }
+
+  public static Collection<Class> getClassesForTruncateBefore(Date before) {
+    return delegate.getClassesForTruncateBefore(before);
+  }
+
+  public static void setLatestTimestamp(Class c, Date latest) {
+    delegate.setLatestTimestamp(c, latest);
+  }
+
   public interface MetricFactoryDelegate {
-    public MetricEntity getNewMetricEntity(MetricType metricType, String hash);
+    public MetricEntity getNewMetricEntity(MetricType metricType, String hash, Date timestamp);
 
-    public Class getClassForEntitiesGet(MetricType metricType, String hash);
+    /**
+     * Get the classes that may hold data for the given metric in the interval [startTime, endTime)
+     */
+    public Collection<Class> getClassesForEntitiesGet(MetricType metricType, String hash, Date startTime, Date endTime);
 
     public Collection<Class> getAllClassesForEntitiesGet(MetricType metricType);
 
     public Collection<Class> getAllClassesForEntitiesGet();
+
+    /**
+     * Get the classes from which data older than the given date should be deleted row by row.
+     */
+    public Collection<Class> getClassesForDeleteBefore(Date before);
+
+    /**
+     * Get the classes that are no longer written to and hold only data older
+     * than the given date. The tables for these classes can be truncated
+     * once all their data has expired.
+     */
+    public Collection<Class> getClassesForTruncateBefore(Date before);
+
+    /**
+     * Note the latest timestamp of the data left in the given class after
+     * expiry, null if the class holds no data.
+     */
+    public void setLatestTimestamp(Class c, Date latest);
   }
 
   @Entity
@@ -80,13 +124,14 @@ public class MetricEntityFactory {
       MetricFactoryDelegate {
 
     @Override
-    public MetricEntity getNewMetricEntity(MetricType metricType, String hash) {
+    public MetricEntity getNewMetricEntity(MetricType metricType, String hash, Date timestamp) {
       return new MetricEntitySingle();
     }
 
     @Override
-    public Class getClassForEntitiesGet(MetricType metricType, String hash) {
-      return MetricEntitySingle.class;
+    public Collection<Class> getClassesForEntitiesGet(MetricType metricType, String hash,
+        Date startTime, Date endTime) {
+      return ImmutableSet.<Class> of(MetricEntitySingle.class);
     }
 
     @Override
@@ -98,12 +143,26 @@ public class MetricEntityFactory {
     public Collection<Class> getAllClassesForEntitiesGet() {
       return ImmutableSet.<Class> of(MetricEntitySingle.class);
     }
+
+    @Override
+    public Collection<Class> getClassesForDeleteBefore(Date before) {
+      return getAllClassesForEntitiesGet();
+    }
+
+    @Override
+    public Collection<Class> getClassesForTruncateBefore(Date before) {
+      return ImmutableSet.<Class> of();
+    }
+
+    @Override
+    public void setLatestTimestamp(Class c, Date latest) {
+    }
   }
 
   public static class MetricFactoryDelegate32 implements MetricFactoryDelegate {
 
     @Override
-    public MetricEntity getNewMetricEntity(MetricType metricType, String hash) {
+    public MetricEntity getNewMetricEntity(MetricType metricType, String hash, Date timestamp) {
       if (hash == null)
         throw new IllegalArgumentException("Invalid hash");
       if (metricType == null)
@@ -204,6 +263,11 @@ public class MetricEntityFactory {
     }
 
     @Override
+    public Collection<Class> getClassesForEntitiesGet(MetricType metricType, String hash,
+        Date startTime, Date endTime) {
+      return ImmutableSet.<Class> of(getClassForEntitiesGet(metricType, hash));
+    }
+
     public Class getClassForEntitiesGet(MetricType metricType, String hash) {
       if (hash == null)
         throw new IllegalArgumentException("Invalid hash");
@@ -354,6 +418,170 @@ public class MetricEntityFactory {
           CustomMetricEntityD.class, CustomMetricEntityE.class,
           CustomMetricEntityF.class);
     }
+
+    @Override
+    public Collection<Class> getClassesForDeleteBefore(Date before) {
+      return getAllClassesForEntitiesGet();
+    }
+
+    @Override
+    public Collection<Class> getClassesForTruncateBefore(Date before) {
+      return ImmutableSet.<Class> of();
+    }
+
+    @Override
+    public void setLatestTimestamp(Class c, Date latest) {
+    }
+  }
+
+  /**
+   * Delegate that partitions metric data by metric type and time.
+   *
+   * <p>Each table holds BUCKET_DAYS days of data, tables are reused in rotation
+   * so queries only need to read the tables for the requested interval and
+   * expired data can be removed by truncating tables rather than deleting
+   * rows. Data is retained until the whole bucket has expired.</p>
+   *
+   * <p>Data from the legacy delegate is read and expired but not written.
+   * Once expiry has found the latest legacy timestamp legacy tables are only
+   * read for queries starting before it and empty legacy tables are no longer
+   * read or expired.</p>
+   */
+  public static class MetricFactoryDelegateTimeBucket implements MetricFactoryDelegate {
+    static final int BUCKET_COUNT = 16;
+    static final long BUCKET_DAYS = 2;
+    static final long BUCKET_MILLIS = TimeUnit.DAYS.toMillis(BUCKET_DAYS);
+
+    private static final List<Class> SYSTEM_BUCKETS = ImmutableList.<Class> of(
+        SystemMetricEntityT0.class, SystemMetricEntityT1.class,
+        SystemMetricEntityT2.class, SystemMetricEntityT3.class,
+        SystemMetricEntityT4.class, SystemMetricEntityT5.class,
+        SystemMetricEntityT6.class, SystemMetricEntityT7.class,
+        SystemMetricEntityT8.class, SystemMetricEntityT9.class,
+        SystemMetricEntityTA.class, SystemMetricEntityTB.class,
+        SystemMetricEntityTC.class, SystemMetricEntityTD.class,
+        SystemMetricEntityTE.class, SystemMetricEntityTF.class);
+
+    private static final List<Class> CUSTOM_BUCKETS = ImmutableList.<Class> of(
+        CustomMetricEntityT0.class, CustomMetricEntityT1.class,
+        CustomMetricEntityT2.class, CustomMetricEntityT3.class,
+        CustomMetricEntityT4.class, CustomMetricEntityT5.class,
+        CustomMetricEntityT6.class, CustomMetricEntityT7.class,
+        CustomMetricEntityT8.class, CustomMetricEntityT9.class,
+        CustomMetricEntityTA.class, CustomMetricEntityTB.class,
+        CustomMetricEntityTC.class, CustomMetricEntityTD.class,
+        CustomMetricEntityTE.class, CustomMetricEntityTF.class);
+
+    private final MetricFactoryDelegate legacyDelegate;
+    private final ConcurrentMap<Class, Long> legacyLatestTimestamps = Maps.newConcurrentMap();
+
+    public MetricFactoryDelegateTimeBucket(MetricFactoryDelegate legacyDelegate) {
+      this.legacyDelegate = legacyDelegate;
+    }
+
+    static long bucket(long time) {
+      return time / BUCKET_MILLIS - (time % BUCKET_MILLIS < 0 ? 1 : 0);
+    }
+
+    static int bucketIndex(long bucket) {
+      return (int) (((bucket % BUCKET_COUNT) + BUCKET_COUNT) % BUCKET_COUNT);
+    }
+
+    private static List<Class> buckets(MetricType metricType) {
+      if (metricType == null)
+        throw new IllegalArgumentException("Invalid metricType");
+      switch (metricType) {
+        case System:
+          return SYSTEM_BUCKETS;
+        case Custom:
+          return CUSTOM_BUCKETS;
+        default:
+          throw new IllegalArgumentException("Invalid metric type");
+      }
+    }
+
+    @Override
+    public MetricEntity getNewMetricEntity(MetricType metricType, String hash, Date timestamp) {
+      if (timestamp == null)
+        throw new IllegalArgumentException("Invalid timestamp");
+      Class<? extends MetricEntity> metricEntityClass =
+          buckets(metricType).get(bucketIndex(bucket(timestamp.getTime())));
+      return Classes.newInstance(metricEntityClass);
+    }
+
+    @Override
+    public Collection<Class> getClassesForEntitiesGet(MetricType metricType, String hash,
+        Date startTime, Date endTime) {
+      List<Class> buckets = buckets(metricType);
+      Set<Class> classes = Sets.newLinkedHashSet();
+      long lastBucket = bucket(Math.max(startTime.getTime(), endTime.getTime() - 1));
+      for (long bucket = bucket(startTime.getTime()); bucket <= lastBucket && classes.size() < BUCKET_COUNT; bucket++) {
+        classes.add(buckets.get(bucketIndex(bucket)));
+      }
+      for (Class legacyClass : legacyDelegate.getClassesForEntitiesGet(metricType, hash, startTime, endTime)) {
+        Long latest = legacyLatestTimestamps.get(legacyClass);
+        if (latest == null || latest >= startTime.getTime()) {
+          classes.add(legacyClass);
+        }
+      }
+      return classes;
+    }
+
+    @Override
+    public Collection<Class> getAllClassesForEntitiesGet(MetricType metricType) {
+      return ImmutableSet.<Class> builder()
+          .addAll(buckets(metricType))
+          .addAll(legacyDelegate.getAllClassesForEntitiesGet(metricType))
+          .build();
+    }
+
+    @Override
+    public Collection<Class> getAllClassesForEntitiesGet() {
+      return ImmutableSet.<Class> builder()
+          .addAll(SYSTEM_BUCKETS)
+          .addAll(CUSTOM_BUCKETS)
+          .addAll(legacyDelegate.getAllClassesForEntitiesGet())
+          .build();
+    }
+
+    @Override
+    public Collection<Class> getClassesForDeleteBefore(Date before) {
+      return ImmutableSet.<Class> of();
+    }
+
+    @Override
+    public Collection<Class> getClassesForTruncateBefore(Date before) {
+      // buckets from the one containing the retention date up to the one after
+      // the current bucket (for data with future timestamps) may be written to
+      Set<Integer> liveBuckets = Sets.newHashSet();
+      long lastLiveBucket = bucket(System.currentTimeMillis()) + 1;
+      for (long bucket = bucket(before.getTime()); bucket <= lastLiveBucket && liveBuckets.size() < BUCKET_COUNT; bucket++) {
+        liveBuckets.add(bucketIndex(bucket));
+      }
+      ImmutableSet.Builder<Class> classes = ImmutableSet.builder();
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        if (!liveBuckets.contains(i)) {
+          classes.add(SYSTEM_BUCKETS.get(i));
+          classes.add(CUSTOM_BUCKETS.get(i));
+        }
+      }
+      for (Class legacyClass : legacyDelegate.getAllClassesForEntitiesGet()) {
+        Long latest = legacyLatestTimestamps.get(legacyClass);
+        if (latest == null || latest != Long.MIN_VALUE) {
+          classes.add(legacyClass);
+        }
+      }
+      return classes.build();
+    }
+
+    @Override
+    public void setLatestTimestamp(Class c, Date latest) {
+      // legacy tables are not written so their latest timestamp can only
+      // decrease as data expires
+      if (legacyDelegate.getAllClassesForEntitiesGet().contains(c)) {
+        legacyLatestTimestamps.put(c, latest == null ? Long.MIN_VALUE : latest.getTime());
+      }
+    }
   }
 
   @Entity
@@ -708,4 +936,356 @@ public class MetricEntityFactory {
     }
   }
 
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_t0")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityT0 extends MetricEntity {
+    public SystemMetricEntityT0() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_t1")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityT1 extends MetricEntity {
+    public SystemMetricEntityT1() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_t2")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityT2 extends MetricEntity {
+    public SystemMetricEntityT2() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_t3")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityT3 extends MetricEntity {
+    public SystemMetricEntityT3() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_t4")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityT4 extends MetricEntity {
+    public SystemMetricEntityT4() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_t5")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityT5 extends MetricEntity {
+    public SystemMetricEntityT5() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_t6")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityT6 extends MetricEntity {
+    public SystemMetricEntityT6() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_t7")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityT7 extends MetricEntity {
+    public SystemMetricEntityT7() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_t8")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityT8 extends MetricEntity {
+    public SystemMetricEntityT8() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_t9")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityT9 extends MetricEntity {
+    public SystemMetricEntityT9() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_ta")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityTA extends MetricEntity {
+    public SystemMetricEntityTA() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_tb")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityTB extends MetricEntity {
+    public SystemMetricEntityTB() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_tc")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityTC extends MetricEntity {
+    public SystemMetricEntityTC() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_td")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityTD extends MetricEntity {
+    public SystemMetricEntityTD() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_te")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityTE extends MetricEntity {
+    public SystemMetricEntityTE() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "system_metric_data_tf")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class SystemMetricEntityTF extends MetricEntity {
+    public SystemMetricEntityTF() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_t0")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityT0 extends MetricEntity {
+    public CustomMetricEntityT0() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_t1")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityT1 extends MetricEntity {
+    public CustomMetricEntityT1() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_t2")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityT2 extends MetricEntity {
+    public CustomMetricEntityT2() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_t3")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityT3 extends MetricEntity {
+    public CustomMetricEntityT3() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_t4")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityT4 extends MetricEntity {
+    public CustomMetricEntityT4() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_t5")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityT5 extends MetricEntity {
+    public CustomMetricEntityT5() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_t6")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityT6 extends MetricEntity {
+    public CustomMetricEntityT6() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_t7")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityT7 extends MetricEntity {
+    public CustomMetricEntityT7() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_t8")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityT8 extends MetricEntity {
+    public CustomMetricEntityT8() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_t9")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityT9 extends MetricEntity {
+    public CustomMetricEntityT9() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_ta")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityTA extends MetricEntity {
+    public CustomMetricEntityTA() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_tb")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityTB extends MetricEntity {
+    public CustomMetricEntityTB() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_tc")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityTC extends MetricEntity {
+    public CustomMetricEntityTC() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_td")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityTD extends MetricEntity {
+    public CustomMetricEntityTD() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_te")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityTE extends MetricEntity {
+    public CustomMetricEntityTE() {
+      super();
+    }
+  }
+
+  @Entity
+  @PersistenceContext(name = "eucalyptus_cloudwatch_backend")
+  @RemotablePersistence
+  @Table(name = "custom_metric_data_tf")
+  @Cache(usage = CacheConcurrencyStrategy.TRANSACTIONAL)
+  public static class CustomMetricEntityTF extends MetricEntity {
+    public CustomMetricEntityTF() {
+      super();
+    }
+  }
+
 }
@@ -21,11 +21,11 @@ package com.eucalyptus.cloudwatch.domain.metricdata;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -37,6 +37,7 @@ import javax.persistence.Enumerated;
 import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
 import com.eucalyptus.cloudwatch.domain.DimensionEntity;
@@ -47,9 +48,7 @@ import com.eucalyptus.entities.Entities;
 import com.eucalyptus.records.Logs;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Sets;
 
 public class MetricManager {
 	public static final Logger LOG = Logger.getLogger(MetricManager.class);
@@ -77,9 +76,7 @@ public class MetricManager {
     Multimap<Class, MetricEntity> metricMap = ArrayListMultimap
         .<Class, MetricEntity> create();
     for (MetricEntity entity:entities) {
-      metricMap
-          .put(MetricEntityFactory.getClassForEntitiesGet(entity.getMetricType(),
-              entity.getDimensionHash()), entity);
+      metricMap.put(entity.getClass(), entity);
     }
     return metricMap;
   }
@@ -87,25 +84,18 @@ public class MetricManager {
 
   private static List<MetricEntity> foldAndHash(SimpleMetricEntity simpleMetricEntity) {
     if (simpleMetricEntity == null) return new ArrayList<MetricEntity>();
-    TreeSet<DimensionEntity> dimensions = new TreeSet<DimensionEntity>();
-    for (Map.Entry<String, String> entry : simpleMetricEntity.getDimensionMap().entrySet()) {
-      DimensionEntity d = new DimensionEntity();
-      d.setName(entry.getKey());
-      d.setValue(entry.getValue());
-      dimensions.add(d);
-    }
-    Set<Set<DimensionEntity>> permutations = null;
+    DimensionSets.DimensionSet dimensionSet = DimensionSets.intern(simpleMetricEntity.getDimensionMap());
+    Collection<DimensionEntity> dimensions = dimensionSet.getDimensions();
+    List<String> dimensionHashes;
     if (simpleMetricEntity.getMetricType() == MetricType.System) {
-      permutations = Sets.powerSet(dimensions);
+      dimensionHashes = dimensionSet.getSubsetHashes();
     } else {
-      permutations = Sets.newHashSet();
-      permutations.add(dimensions);
+      dimensionHashes = Collections.singletonList(dimensionSet.getHash());
     }
-    ArrayList<MetricEntity> returnValue = new ArrayList<MetricEntity>();
-    for (Set<DimensionEntity> dimensionsPermutation : permutations) {
-      String dimensionHash = hash(dimensionsPermutation);
+    ArrayList<MetricEntity> returnValue = new ArrayList<MetricEntity>(dimensionHashes.size());
+    for (String dimensionHash : dimensionHashes) {
       MetricEntity metric = MetricEntityFactory.getNewMetricEntity(simpleMetricEntity.getMetricType(),
-          dimensionHash);
+          dimensionHash, simpleMetricEntity.getTimestamp());
       metric.setAccountId(simpleMetricEntity.getAccountId());
       metric.setMetricName(simpleMetricEntity.getMetricName());
       metric.setNamespace(simpleMetricEntity.getNamespace());
@@ -138,25 +128,21 @@ public class MetricManager {
         if (db.isActive())
           db.rollback();
       }
+      MetricRollupStore.getInstance().addAll(metricMap.get(c));
     }
   }
 
   public static String hash(Map<String, String> dimensionMap) {
-    TreeMap<String, String> sortedDimensionMap = Maps.newTreeMap();
-    if (dimensionMap != null) {
-      sortedDimensionMap.putAll(dimensionMap);
-    }
-    StringBuilder sb = new StringBuilder();
-    for (Map.Entry<String, String> entry : sortedDimensionMap.entrySet()) {
-      sb.append(entry.getKey() + "|" + entry.getValue() + "|");
-    }
-    return HashUtils.hash(sb.toString());
+    return DimensionSets.intern(dimensionMap).getHash();
   }
 
+  /**
+   * Hash the given dimensions, which must be sorted.
+   */
   public static String hash(Collection<DimensionEntity> dimensions) {
     StringBuilder sb = new StringBuilder();
     for (DimensionEntity dimension : dimensions) {
-      sb.append(dimension.getName() + "|" + dimension.getValue() + "|");
+      sb.append(dimension.getName()).append('|').append(dimension.getValue()).append('|');
     }
     return HashUtils.hash(sb.toString());
   }
@@ -170,6 +156,7 @@ public class MetricManager {
   }
 
   public static void deleteAllMetrics() {
+    MetricRollupStore.getInstance().reset();
     for (Class c : MetricEntityFactory.getAllClassesForEntitiesGet()) {
       EntityTransaction db = Entities.get(c);
       try {
@@ -192,12 +179,36 @@ public class MetricManager {
    *          the date to delete before (inclusive)
    */
   public static void deleteMetrics(Date before) {
-    for (Class c : MetricEntityFactory.getAllClassesForEntitiesGet()) {
+    MetricRollupStore.getInstance().evictBefore(before);
+    for (Class c : MetricEntityFactory.getClassesForTruncateBefore(before)) {
       EntityTransaction db = Entities.get(c);
       try {
-        Map<String, Date> criteria = new HashMap<String, Date>();
-        criteria.put("before", before);
-        Entities.deleteAllMatching(c, "WHERE timestamp < :before", criteria);
+        Date latest = (Date) Entities.createCriteria(c)
+            .setProjection(Projections.max("timestamp"))
+            .uniqueResult();
+        if (latest != null) {
+          if (latest.before(before)) {
+            LOG.debug("Truncating expired metric data for " + c.getSimpleName());
+            Entities.truncate(c);
+            latest = null;
+          } else {
+            deleteMetrics(c, before);
+          }
+        }
+        db.commit();
+        MetricEntityFactory.setLatestTimestamp(c, latest);
+      } catch (RuntimeException ex) {
+        Logs.extreme().error(ex, ex);
+        throw ex;
+      } finally {
+        if (db.isActive())
+          db.rollback();
+      }
+    }
+    for (Class c : MetricEntityFactory.getClassesForDeleteBefore(before)) {
+      EntityTransaction db = Entities.get(c);
+      try {
+        deleteMetrics(c, before);
         db.commit();
       } catch (RuntimeException ex) {
         Logs.extreme().error(ex, ex);
@@ -209,6 +220,12 @@ public class MetricManager {
     }
   }
 
+  private static void deleteMetrics(Class c, Date before) {
+    Map<String, Date> criteria = new HashMap<String, Date>();
+    criteria.put("before", before);
+    Entities.deleteAllMatching(c, "WHERE timestamp < :before", criteria);
+  }
+
 
   public static Collection<MetricStatistics> getMetricStatistics(String accountId, 
       String metricName, String namespace, Map<String, String> dimensionMap,
@@ -259,50 +276,68 @@ public class MetricManager {
       throw new IllegalArgumentException("namespace must not be null");
     }
     String hash = hash(dimensions);
-    Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(metricType, hash);
     Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap = new TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>(GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE);
-    EntityTransaction db = Entities.get(metricEntityClass);
-    try {
-      Criteria criteria = Entities.createCriteria(metricEntityClass);
-      criteria = criteria.add(Restrictions.eq("accountId", accountId));
-      criteria = criteria.add(Restrictions.eq("metricName", metricName));
-      criteria = criteria.add(Restrictions.eq("namespace", namespace));
-      criteria = criteria.add(Restrictions.lt("timestamp", endTime));
-      criteria = criteria.add(Restrictions.ge("timestamp", startTime));
-      criteria = criteria.add(Restrictions.eq("dimensionHash", hash));
-      if (units != null) {
-        criteria = criteria.add(Restrictions.eq("units", units));
-      }
-      criteria = criteria.addOrder( Order.asc("creationTimestamp") );
-      criteria = criteria.addOrder( Order.asc("naturalId") );
-      Collection results = criteria.list();
-      for (Object o: results) {
-        MetricEntity me = (MetricEntity) o;
-        // Note: dimensions from metric entity are the actual dimensions for the point.  dimensions passed in are from the
-        // hash (used for aggregation).  The hash dimensions are what we want.
-        GetMetricStatisticsAggregationKey key = new GetMetricStatisticsAggregationKey(me, startTime, period, hash);
-        MetricStatistics item = new MetricStatistics(me, startTime, period, dimensions);
-        if (!aggregationMap.containsKey(key)) {
-          aggregationMap.put(key, item);
-        } else {
-          MetricStatistics totalSoFar = aggregationMap.get(key);
-          totalSoFar.setSampleMax(Math.max(item.getSampleMax(), totalSoFar.getSampleMax()));
-          totalSoFar.setSampleMin(Math.min(item.getSampleMin(), totalSoFar.getSampleMin()));
-          totalSoFar.setSampleSize(totalSoFar.getSampleSize() + item.getSampleSize());
-          totalSoFar.setSampleSum(totalSoFar.getSampleSum() + item.getSampleSum());
+    // recent data is served from memory, anything earlier from the database
+    MetricRollupStore rollupStore = MetricRollupStore.getInstance();
+    Date memoryStart = rollupStore.getMemoryStart(accountId, namespace, metricName, metricType, hash);
+    Date databaseEnd = memoryStart == null ? endTime :
+      new Date(Math.min(endTime.getTime(), Math.max(startTime.getTime(), memoryStart.getTime())));
+    if (startTime.before(databaseEnd)) {
+      rollupStore.databaseQuery();
+      for (Class metricEntityClass : MetricEntityFactory.getClassesForEntitiesGet(metricType, hash, startTime, databaseEnd)) {
+        EntityTransaction db = Entities.get(metricEntityClass);
+        try {
+          Criteria criteria = Entities.createCriteria(metricEntityClass);
+          criteria = criteria.add(Restrictions.eq("accountId", accountId));
+          criteria = criteria.add(Restrictions.eq("metricName", metricName));
+          criteria = criteria.add(Restrictions.eq("namespace", namespace));
+          criteria = criteria.add(Restrictions.lt("timestamp", databaseEnd));
+          criteria = criteria.add(Restrictions.ge("timestamp", startTime));
+          criteria = criteria.add(Restrictions.eq("dimensionHash", hash));
+          if (units != null) {
+            criteria = criteria.add(Restrictions.eq("units", units));
+          }
+          criteria = criteria.addOrder( Order.asc("creationTimestamp") );
+          criteria = criteria.addOrder( Order.asc("naturalId") );
+          Collection results = criteria.list();
+          for (Object o: results) {
+            MetricEntity me = (MetricEntity) o;
+            // Note: dimensions from metric entity are the actual dimensions for the point.  dimensions passed in are from the
+            // hash (used for aggregation).  The hash dimensions are what we want.
+            GetMetricStatisticsAggregationKey key = new GetMetricStatisticsAggregationKey(me, startTime, period, hash);
+            MetricStatistics item = new MetricStatistics(me, startTime, period, dimensions);
+            accumulate(aggregationMap, key, item);
+          }
+          db.commit();
+        } catch (RuntimeException ex) {
+          Logs.extreme().error(ex, ex);
+          throw ex;
+        } finally {
+          if (db.isActive())
+            db.rollback();
         }
       }
-      db.commit();
-    } catch (RuntimeException ex) {
-      Logs.extreme().error(ex, ex);
-      throw ex;
-    } finally {
-      if (db.isActive())
-        db.rollback();
+    }
+    if (databaseEnd.before(endTime)) {
+      rollupStore.aggregate(accountId, namespace, metricName, metricType, hash, units,
+          databaseEnd, endTime, startTime, period, dimensions, aggregationMap);
     }
     return Lists.newArrayList(aggregationMap.values());
   }    
 
+  static void accumulate(Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap,
+      GetMetricStatisticsAggregationKey key, MetricStatistics item) {
+    if (!aggregationMap.containsKey(key)) {
+      aggregationMap.put(key, item);
+    } else {
+      MetricStatistics totalSoFar = aggregationMap.get(key);
+      totalSoFar.setSampleMax(Math.max(item.getSampleMax(), totalSoFar.getSampleMax()));
+      totalSoFar.setSampleMin(Math.min(item.getSampleMin(), totalSoFar.getSampleMin()));
+      totalSoFar.setSampleSize(totalSoFar.getSampleSize() + item.getSampleSize());
+      totalSoFar.setSampleSum(totalSoFar.getSampleSum() + item.getSampleSum());
+    }
+  }
+
   public static Date getPeriodStart(Date originalTimestamp, Date startTime, Integer period) {
     long difference = originalTimestamp.getTime() - startTime.getTime();
     long remainderInOnePeriod = difference % (1000L * period);
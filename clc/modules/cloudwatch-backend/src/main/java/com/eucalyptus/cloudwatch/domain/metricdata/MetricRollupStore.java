@@ -0,0 +1,512 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.eucalyptus.cloudwatch.domain.DimensionEntity;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.Units;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
+
+/**
+ * In memory per-minute rollups of recently persisted metric data.
+ *
+ * The store is fed with the same (folded and hashed) metric entities that are
+ * persisted, so a query over the covered window gives the same aggregates as
+ * the database. Each series holds per-minute sample size, max, min and sum
+ * values for the minutes with data in the retention window, 40 bytes for each
+ * minute held.
+ *
+ * Data for minutes before the store started (or was reset), or older than the
+ * retention window, is not held and must be read from the database. When the
+ * store is full data for new series is dropped, series added after data was
+ * dropped are only served from memory for the minutes after the drop.
+ */
+@ConfigurableClass( root = "cloudwatch", description = "Parameters controlling cloud watch and reporting")
+public class MetricRollupStore {
+
+  @ConfigurableField(initial = "180", description = "Minutes of recent metric data held in memory for statistics and alarm evaluation, each series uses up to 40 bytes per minute (applied on restart)")
+  public static volatile Integer METRIC_ROLLUP_RETENTION_MINUTES = 180;
+
+  @ConfigurableField(initial = "20000", description = "Maximum number of metric series held in memory for statistics and alarm evaluation, each series uses up to 40 bytes per minute of retention (about 8KB for 180 minutes, so 160MB for 20000 series)")
+  public static volatile Integer METRIC_ROLLUP_MAX_SERIES = 20000;
+
+  private static final long MINUTE_MILLIS = 60000L;
+
+  // data timestamped in the future is accepted up to this many minutes ahead
+  private static final int FUTURE_MINUTES = 15;
+
+  private static final MetricRollupStore instance = new MetricRollupStore();
+
+  private volatile State state;
+  private final AtomicLong memoryQueries = new AtomicLong();
+  private final AtomicLong databaseQueries = new AtomicLong();
+
+  public static MetricRollupStore getInstance() {
+    return instance;
+  }
+
+  private MetricRollupStore() {
+    reset();
+  }
+
+  MetricRollupStore(long nowMillis) {
+    reset(nowMillis);
+  }
+
+  /**
+   * Discard all held data, coverage starts again from the next minute.
+   */
+  public void reset() {
+    reset(System.currentTimeMillis());
+  }
+
+  private void reset(long nowMillis) {
+    state = new State(
+        Math.max(1, METRIC_ROLLUP_RETENTION_MINUTES),
+        minute(nowMillis) + 1);
+  }
+
+  /**
+   * Discard held data if any of it may be older than the given date.
+   */
+  public void evictBefore(Date before) {
+    final State state = this.state;
+    if (minute(before.getTime()) > state.windowStartMinute(minute(System.currentTimeMillis()))) {
+      reset();
+    }
+  }
+
+  public void addAll(Collection<MetricEntity> entities) {
+    addAll(entities, System.currentTimeMillis());
+  }
+
+  void addAll(Collection<MetricEntity> entities, long nowMillis) {
+    final State state = this.state;
+    final long nowMinute = minute(nowMillis);
+    for (MetricEntity entity : entities) {
+      state.add(entity, nowMinute);
+    }
+  }
+
+  /**
+   * Get the start of the period served from memory for the given series.
+   *
+   * @return The (minute aligned) start date or null if the series must be read from the database
+   */
+  public Date getMemoryStart(String accountId, String namespace, String metricName,
+      MetricType metricType, String dimensionHash) {
+    return getMemoryStart(accountId, namespace, metricName, metricType, dimensionHash, System.currentTimeMillis());
+  }
+
+  Date getMemoryStart(String accountId, String namespace, String metricName,
+      MetricType metricType, String dimensionHash, long nowMillis) {
+    final State state = this.state;
+    final long windowStartMinute = state.windowStartMinute(minute(nowMillis));
+    final SeriesGroup group = state.series.get(new SeriesKey(accountId, namespace, metricName, metricType, dimensionHash));
+    if (group == null) {
+      if (state.droppedMinute >= windowStartMinute) {
+        return null; // data for the series may have been dropped
+      }
+    } else if (!group.complete) {
+      return null;
+    }
+    long startMinute = Math.max(state.coverageStartMinute, windowStartMinute);
+    if (group != null) {
+      startMinute = Math.max(startMinute, group.coverageStartMinute);
+    }
+    return new Date(MINUTE_MILLIS * startMinute);
+  }
+
+  /**
+   * Aggregate held data for the series into the given map using the same keys
+   * and statistics as the database query.
+   *
+   * @param units The units, null for all units
+   * @param from Inclusive start of the range to aggregate
+   * @param to Exclusive end of the range to aggregate
+   */
+  public void aggregate(String accountId, String namespace, String metricName,
+      MetricType metricType, String dimensionHash, Units units, Date from, Date to,
+      Date startTime, Integer period, Collection<DimensionEntity> dimensions,
+      Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap) {
+    memoryQueries.incrementAndGet();
+    final SeriesGroup group = state.series.get(new SeriesKey(accountId, namespace, metricName, metricType, dimensionHash));
+    if (group == null) return;
+    for (Map.Entry<Units, RollupSeries> entry : group.snapshot().entrySet()) {
+      if (units == null || units == entry.getKey()) {
+        entry.getValue().aggregate(accountId, namespace, metricName, metricType, dimensionHash,
+            entry.getKey(), minute(from.getTime()), minute(to.getTime()), startTime, period,
+            dimensions, aggregationMap);
+      }
+    }
+  }
+
+  void databaseQuery() {
+    databaseQueries.incrementAndGet();
+  }
+
+  public int getSeriesCount() {
+    return state.seriesCount.get();
+  }
+
+  public long getMemoryQueries() {
+    return memoryQueries.get();
+  }
+
+  public long getDatabaseQueries() {
+    return databaseQueries.get();
+  }
+
+  private static long minute(long timeMillis) {
+    return timeMillis / MINUTE_MILLIS;
+  }
+
+  private static final class State {
+    private final ConcurrentMap<SeriesKey, SeriesGroup> series = new ConcurrentHashMap<SeriesKey, SeriesGroup>();
+    private final AtomicInteger seriesCount = new AtomicInteger();
+    private final int retentionMinutes;
+    private final long coverageStartMinute;
+    // latest minute of any data dropped because the store was full
+    private volatile long droppedMinute = Long.MIN_VALUE;
+    // minute of the last scan for idle series, guarded by this state
+    private long expiredMinute = Long.MIN_VALUE;
+
+    private State(int retentionMinutes, long coverageStartMinute) {
+      this.retentionMinutes = retentionMinutes;
+      this.coverageStartMinute = coverageStartMinute;
+    }
+
+    private long windowStartMinute(long nowMinute) {
+      return nowMinute - retentionMinutes;
+    }
+
+    private void add(MetricEntity entity, long nowMinute) {
+      final long minute = minute(entity.getTimestamp().getTime());
+      final SeriesKey key = new SeriesKey(entity.getAccountId(), entity.getNamespace(),
+          entity.getMetricName(), entity.getMetricType(), entity.getDimensionHash());
+      if (minute < windowStartMinute(nowMinute)) {
+        return; // served from the database
+      }
+      final int size = retentionMinutes + FUTURE_MINUTES + 1;
+      while (true) {
+        SeriesGroup group = series.get(key);
+        if (group == null) {
+          group = addGroup(key, minute, nowMinute);
+          if (group == null) {
+            return; // store full
+          }
+        }
+        final boolean added = minute > nowMinute + FUTURE_MINUTES ?
+            group.markIncomplete() :
+            group.add(entity.getUnits(), size, minute, entity.getSampleSize(),
+                entity.getSampleMax(), entity.getSampleMin(), entity.getSampleSum());
+        if (added) return;
+        // group was expired concurrently, retry with a new group
+      }
+    }
+
+    /**
+     * Add a group for a new series, serialized with dropping data so a group
+     * created after data for the series was dropped does not cover the dropped
+     * minutes.
+     *
+     * When the store is full idle series are expired to make room, series
+     * only become idle as the minute advances so this scan is done at most
+     * once a minute and data for other new series is dropped straight away.
+     *
+     * @return The group or null if the store is full and the data was dropped
+     */
+    private synchronized SeriesGroup addGroup(SeriesKey key, long minute, long nowMinute) {
+      SeriesGroup group = series.get(key);
+      if (group == null) {
+        if (seriesCount.get() >= Math.max(1, METRIC_ROLLUP_MAX_SERIES) && nowMinute > expiredMinute) {
+          expiredMinute = nowMinute;
+          expireIdle(nowMinute);
+        }
+        if (seriesCount.get() >= Math.max(1, METRIC_ROLLUP_MAX_SERIES)) {
+          droppedMinute = Math.max(droppedMinute, Math.max(minute, nowMinute));
+          return null;
+        }
+        group = new SeriesGroup(droppedMinute == Long.MIN_VALUE ? Long.MIN_VALUE : droppedMinute + 1);
+        series.put(key, group);
+        seriesCount.incrementAndGet();
+      }
+      return group;
+    }
+
+    private void expireIdle(long nowMinute) {
+      final long windowStart = windowStartMinute(nowMinute);
+      for (Iterator<SeriesGroup> it = series.values().iterator(); it.hasNext(); ) {
+        if (it.next().expire(windowStart)) {
+          it.remove();
+          seriesCount.decrementAndGet();
+        }
+      }
+    }
+  }
+
+  private static final class SeriesGroup {
+    private final Map<Units, RollupSeries> seriesByUnits = new EnumMap<Units, RollupSeries>(Units.class);
+    private final long coverageStartMinute;
+    private volatile boolean complete = true;
+    private boolean expired = false;
+
+    private SeriesGroup(long coverageStartMinute) {
+      this.coverageStartMinute = coverageStartMinute;
+    }
+
+    private synchronized boolean add(Units units, int size, long minute,
+        double sampleSize, double sampleMax, double sampleMin, double sampleSum) {
+      if (expired) return false;
+      RollupSeries series = seriesByUnits.get(units);
+      if (series == null) {
+        series = new RollupSeries(size);
+        seriesByUnits.put(units, series);
+      }
+      series.add(minute, sampleSize, sampleMax, sampleMin, sampleSum);
+      return true;
+    }
+
+    private synchronized boolean markIncomplete() {
+      if (expired) return false;
+      complete = false;
+      return true;
+    }
+
+    private synchronized boolean expire(long windowStartMinute) {
+      if (complete) {
+        long lastMinute = Long.MIN_VALUE;
+        for (RollupSeries series : seriesByUnits.values()) {
+          lastMinute = Math.max(lastMinute, series.lastMinute());
+        }
+        expired = lastMinute < windowStartMinute;
+      }
+      return expired;
+    }
+
+    private synchronized Map<Units, RollupSeries> snapshot() {
+      return new EnumMap<Units, RollupSeries>(seriesByUnits);
+    }
+  }
+
+  /**
+   * Ring buffer of per-minute aggregates in minute order.
+   *
+   * Only minutes with data are held, the buffer starts small and grows as
+   * needed up to one slot per minute of the given size. Minutes before the
+   * latest minute by the size or more are discarded.
+   */
+  static final class RollupSeries {
+    private static final int INITIAL_CAPACITY = 8;
+    private final int size;
+    private long[] minutes;
+    private double[] sampleSize;
+    private double[] sampleMax;
+    private double[] sampleMin;
+    private double[] sampleSum;
+    private int head = 0;
+    private int count = 0;
+    private long lastMinute = Long.MIN_VALUE;
+
+    RollupSeries(int size) {
+      this.size = size;
+      allocate(Math.min(size, INITIAL_CAPACITY));
+    }
+
+    synchronized void add(long minute, double size, double max, double min, double sum) {
+      if (lastMinute != Long.MIN_VALUE && minute <= lastMinute - this.size) {
+        return; // older than the held minutes, outside the window
+      }
+      if (minute > lastMinute) {
+        lastMinute = minute;
+        while (count > 0 && minutes[head] <= minute - this.size) {
+          head = (head + 1) % minutes.length;
+          count--;
+        }
+      }
+      // data usually arrives in minute order so search from the latest minute
+      int index = count;
+      while (index > 0 && minutes[slot(index - 1)] > minute) {
+        index--;
+      }
+      if (index > 0 && minutes[slot(index - 1)] == minute) {
+        // same accumulation as MetricDataQueue.aggregate
+        final int slot = slot(index - 1);
+        sampleMax[slot] = Math.max(max, sampleMax[slot]);
+        sampleMin[slot] = Math.min(min, sampleMin[slot]);
+        sampleSize[slot] = sampleSize[slot] + size;
+        sampleSum[slot] = sampleSum[slot] + sum;
+        return;
+      }
+      if (count == minutes.length) {
+        grow();
+      }
+      for (int i = count; i > index; i--) {
+        move(slot(i - 1), slot(i));
+      }
+      final int slot = slot(index);
+      minutes[slot] = minute;
+      sampleMax[slot] = max;
+      sampleMin[slot] = min;
+      sampleSize[slot] = size;
+      sampleSum[slot] = sum;
+      count++;
+    }
+
+    synchronized long lastMinute() {
+      return lastMinute;
+    }
+
+    synchronized void aggregate(String accountId, String namespace, String metricName,
+        MetricType metricType, String dimensionHash, Units units, long fromMinute, long toMinute,
+        Date startTime, Integer period, Collection<DimensionEntity> dimensions,
+        Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap) {
+      for (int i = 0; i < count; i++) {
+        final int slot = slot(i);
+        final long minute = minutes[slot];
+        if (minute < fromMinute) continue;
+        if (minute >= toMinute) break;
+        final Date periodStart = MetricManager.getPeriodStart(new Date(minute * MINUTE_MILLIS), startTime, period);
+        MetricManager.accumulate(aggregationMap,
+            new GetMetricStatisticsAggregationKey(accountId, namespace, metricName, units, metricType, periodStart, dimensionHash),
+            new MetricStatistics(accountId, namespace, metricName, units, metricType, periodStart,
+                sampleSize[slot], sampleMax[slot], sampleMin[slot], sampleSum[slot], dimensions));
+      }
+    }
+
+    /**
+     * Physical slot for the index in minute order.
+     */
+    private int slot(int index) {
+      return (head + index) % minutes.length;
+    }
+
+    private void move(int from, int to) {
+      minutes[to] = minutes[from];
+      sampleSize[to] = sampleSize[from];
+      sampleMax[to] = sampleMax[from];
+      sampleMin[to] = sampleMin[from];
+      sampleSum[to] = sampleSum[from];
+    }
+
+    private void allocate(int capacity) {
+      minutes = new long[capacity];
+      sampleSize = new double[capacity];
+      sampleMax = new double[capacity];
+      sampleMin = new double[capacity];
+      sampleSum = new double[capacity];
+    }
+
+    private void grow() {
+      final long[] oldMinutes = minutes;
+      final double[] oldSampleSize = sampleSize;
+      final double[] oldSampleMax = sampleMax;
+      final double[] oldSampleMin = sampleMin;
+      final double[] oldSampleSum = sampleSum;
+      allocate(Math.min(size, oldMinutes.length * 2));
+      for (int i = 0; i < count; i++) {
+        final int slot = (head + i) % oldMinutes.length;
+        minutes[i] = oldMinutes[slot];
+        sampleSize[i] = oldSampleSize[slot];
+        sampleMax[i] = oldSampleMax[slot];
+        sampleMin[i] = oldSampleMin[slot];
+        sampleSum[i] = oldSampleSum[slot];
+      }
+      head = 0;
+    }
+  }
+
+  private static final class SeriesKey {
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+    private final String dimensionHash;
+
+    private SeriesKey(String accountId, String namespace, String metricName,
+        MetricType metricType, String dimensionHash) {
+      this.accountId = accountId;
+      this.namespace = namespace;
+      this.metricName = metricName;
+      this.metricType = metricType;
+      this.dimensionHash = dimensionHash;
+    }
+
+    @Override
+    public int hashCode() {
+      final int prime = 31;
+      int result = 1;
+      result = prime * result + ((accountId == null) ? 0 : accountId.hashCode());
+      result = prime * result
+          + ((dimensionHash == null) ? 0 : dimensionHash.hashCode());
+      result = prime * result
+          + ((metricName == null) ? 0 : metricName.hashCode());
+      result = prime * result
+          + ((metricType == null) ? 0 : metricType.hashCode());
+      result = prime * result + ((namespace == null) ? 0 : namespace.hashCode());
+      return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null)
+        return false;
+      if (getClass() != obj.getClass())
+        return false;
+      SeriesKey other = (SeriesKey) obj;
+      if (accountId == null) {
+        if (other.accountId != null)
+          return false;
+      } else if (!accountId.equals(other.accountId))
+        return false;
+      if (dimensionHash == null) {
+        if (other.dimensionHash != null)
+          return false;
+      } else if (!dimensionHash.equals(other.dimensionHash))
+        return false;
+      if (metricName == null) {
+        if (other.metricName != null)
+          return false;
+      } else if (!metricName.equals(other.metricName))
+        return false;
+      if (metricType != other.metricType)
+        return false;
+      if (namespace == null) {
+        if (other.namespace != null)
+          return false;
+      } else if (!namespace.equals(other.namespace))
+        return false;
+      return true;
+    }
+  }
+}
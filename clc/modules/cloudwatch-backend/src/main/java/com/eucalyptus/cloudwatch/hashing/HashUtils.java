@@ -19,38 +19,40 @@
  ************************************************************************/
 package com.eucalyptus.cloudwatch.hashing;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 
 import com.eucalyptus.crypto.Digest;
+import com.google.common.base.Charsets;
 
 public class HashUtils {
 
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  // digest lookup is relatively expensive so instances are reused per thread
+  private static final ThreadLocal<MessageDigest> SHA1 = new ThreadLocal<MessageDigest>() {
+    @Override
+    protected MessageDigest initialValue() {
+      return Digest.SHA1.get();
+    }
+  };
+
   public static String hash(String input) {
     if (input == null) throw new IllegalArgumentException("input is null");
-    byte[] inputBytes;
-    try {
-      // using .getBytes() with no argument is platform dependent.  
-      // Using a known encoding instead
-      inputBytes = input.getBytes("UTF-8");
-    } catch (UnsupportedEncodingException e) {
-      // TODO Auto-generated catch block
-      throw new UnsupportedOperationException("UTF-8 is not installed");
-    } 
-    MessageDigest md = Digest.SHA1.get();
+    // using .getBytes() with no argument is platform dependent.  
+    // Using a known encoding instead
+    byte[] inputBytes = input.getBytes(Charsets.UTF_8);
+    MessageDigest md = SHA1.get();
+    md.reset();
     return toHexString(md.digest(inputBytes));
   }
   
-  private static String toHexString(byte[] b) {
-    StringWriter s = new StringWriter();
-    PrintWriter out = new PrintWriter(s);
+  static String toHexString(byte[] b) {
+    char[] hex = new char[b.length * 2];
     for (int i=0;i<b.length; i++) {
-      out.printf("%02x", b[i]);
+      hex[2 * i] = HEX_DIGITS[(b[i] >> 4) & 0xf];
+      hex[2 * i + 1] = HEX_DIGITS[b[i] & 0xf];
     }
-    out.flush();
-    return s.toString();
+    return new String(hex);
   }
   
 }
@@ -0,0 +1,123 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.domain.DimensionEntity;
+import com.google.common.collect.Sets;
+
+/**
+ * Compares dimension hashing with and without dimension set interning for a
+ * stream of instance and volume data points.
+ */
+@Ignore("Manual benchmark")
+public class DimensionHashBenchmark {
+  private static final Logger LOG = Logger.getLogger(DimensionHashBenchmark.class);
+  private static final int INSTANCES = 500;
+  private static final int VOLUMES = 500;
+  private static final int INSTANCE_METRICS = 8; // CPUUtilization, DiskReadBytes, ..., StatusCheckFailed
+  private static final int VOLUME_METRICS = 8; // VolumeReadBytes, VolumeWriteBytes, ..., VolumeQueueLength
+  private static final int ROUNDS = 20;
+
+  @Test
+  public void benchmark() throws Exception {
+    List<Map<String, String>> dataPoints = dataPoints();
+    for (int i = 0; i < 3; i++) { // warm up
+      legacyFold(dataPoints);
+      internedFold(dataPoints);
+    }
+    long legacyStart = System.nanoTime();
+    long legacyCount = 0;
+    for (int i = 0; i < ROUNDS; i++) {
+      legacyCount += legacyFold(dataPoints);
+    }
+    long legacyNanos = System.nanoTime() - legacyStart;
+    long internedStart = System.nanoTime();
+    long internedCount = 0;
+    for (int i = 0; i < ROUNDS; i++) {
+      internedCount += internedFold(dataPoints);
+    }
+    long internedNanos = System.nanoTime() - internedStart;
+    LOG.info(String.format("Legacy: %d hashes, %.1f ns/datapoint", legacyCount, (double) legacyNanos / (ROUNDS * dataPoints.size())));
+    LOG.info(String.format("Interned: %d hashes, %.1f ns/datapoint", internedCount, (double) internedNanos / (ROUNDS * dataPoints.size())));
+  }
+
+  /**
+   * Data points as reported for instances (system metrics folded over all
+   * dimension subsets) and volumes.
+   */
+  private static List<Map<String, String>> dataPoints() {
+    List<Map<String, String>> dataPoints = new ArrayList<Map<String, String>>();
+    for (int i = 0; i < INSTANCES; i++) {
+      for (int m = 0; m < INSTANCE_METRICS; m++) {
+        Map<String, String> dimensionMap = new HashMap<String, String>();
+        dimensionMap.put("InstanceId", String.format("i-%08x", i));
+        dimensionMap.put("ImageId", String.format("emi-%08x", i % 10));
+        dimensionMap.put("InstanceType", i % 2 == 0 ? "m1.small" : "c1.medium");
+        if (i % 4 == 0) dimensionMap.put("AutoScalingGroupName", "asg-" + (i % 20));
+        dataPoints.add(dimensionMap);
+      }
+    }
+    for (int i = 0; i < VOLUMES; i++) {
+      for (int m = 0; m < VOLUME_METRICS; m++) {
+        Map<String, String> dimensionMap = new HashMap<String, String>();
+        dimensionMap.put("VolumeId", String.format("vol-%08x", i));
+        dataPoints.add(dimensionMap);
+      }
+    }
+    return dataPoints;
+  }
+
+  private static long legacyFold(List<Map<String, String>> dataPoints) throws Exception {
+    long count = 0;
+    for (Map<String, String> dimensionMap : dataPoints) {
+      TreeSet<DimensionEntity> dimensions = new TreeSet<DimensionEntity>();
+      for (Map.Entry<String, String> entry : dimensionMap.entrySet()) {
+        dimensions.add(new DimensionEntity(entry.getKey(), entry.getValue()));
+      }
+      for (Set<DimensionEntity> permutation : Sets.powerSet(dimensions)) {
+        Map<String, String> permutationMap = new HashMap<String, String>();
+        for (DimensionEntity dimension : permutation) {
+          permutationMap.put(dimension.getName(), dimension.getValue());
+        }
+        count += DimensionSetsTest.legacyHash(permutationMap).length() > 0 ? 1 : 0;
+      }
+    }
+    return count;
+  }
+
+  private static long internedFold(List<Map<String, String>> dataPoints) {
+    long count = 0;
+    for (Map<String, String> dimensionMap : dataPoints) {
+      count += DimensionSets.intern(dimensionMap).getSubsetHashes().size();
+    }
+    return count;
+  }
+}
@@ -0,0 +1,113 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import static org.junit.Assert.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.domain.DimensionEntity;
+import com.google.common.collect.Sets;
+
+public class DimensionSetsTest {
+
+  @Test
+  public void testHashMatchesLegacyHash() throws Exception {
+    assertEquals("Empty hash", legacyHash(new HashMap<String, String>()), MetricManager.hash((Map<String, String>) null));
+    for (Map<String, String> dimensionMap : sampleDimensionMaps()) {
+      assertEquals("Hash for " + dimensionMap, legacyHash(dimensionMap), MetricManager.hash(dimensionMap));
+    }
+  }
+
+  @Test
+  public void testSubsetHashesMatchLegacyFold() throws Exception {
+    for (Map<String, String> dimensionMap : sampleDimensionMaps()) {
+      TreeSet<DimensionEntity> dimensions = new TreeSet<DimensionEntity>();
+      for (Map.Entry<String, String> entry : dimensionMap.entrySet()) {
+        dimensions.add(new DimensionEntity(entry.getKey(), entry.getValue()));
+      }
+      List<String> subsetHashes = DimensionSets.intern(dimensionMap).getSubsetHashes();
+      Set<Set<DimensionEntity>> permutations = Sets.powerSet(dimensions);
+      assertEquals("Subset count", permutations.size(), subsetHashes.size());
+      for (Set<DimensionEntity> permutation : permutations) {
+        Map<String, String> permutationMap = new HashMap<String, String>();
+        for (DimensionEntity dimension : permutation) {
+          permutationMap.put(dimension.getName(), dimension.getValue());
+        }
+        assertTrue("Subset hash for " + permutationMap, subsetHashes.contains(legacyHash(permutationMap)));
+      }
+    }
+  }
+
+  @Test
+  public void testIntern() {
+    Map<String, String> dimensionMap = new HashMap<String, String>();
+    dimensionMap.put("InstanceId", "i-12345678");
+    DimensionSets.DimensionSet dimensionSet = DimensionSets.intern(dimensionMap);
+    assertSame("Interned", dimensionSet, DimensionSets.intern(new TreeMap<String, String>(dimensionMap)));
+    dimensionMap.put("InstanceId", "i-87654321");
+    assertNotSame("Modified map", dimensionSet, DimensionSets.intern(dimensionMap));
+    assertEquals("Dimension value", "i-12345678", dimensionSet.getDimensions().first().getValue());
+  }
+
+  static Iterable<Map<String, String>> sampleDimensionMaps() {
+    Map<String, String> instance = new HashMap<String, String>();
+    instance.put("InstanceId", "i-12345678");
+    instance.put("ImageId", "emi-12345678");
+    instance.put("InstanceType", "m1.small");
+    instance.put("AutoScalingGroupName", "asg-1");
+    Map<String, String> volume = new HashMap<String, String>();
+    volume.put("VolumeId", "vol-12345678");
+    Map<String, String> unicode = new HashMap<String, String>();
+    unicode.put("Name\u00e9", "Value\u4e2d");
+    unicode.put("a", "");
+    return Arrays.asList(instance, volume, unicode);
+  }
+
+  /**
+   * Dimension hash as previously calculated.
+   */
+  static String legacyHash(Map<String, String> dimensionMap) throws Exception {
+    TreeMap<String, String> sortedDimensionMap = new TreeMap<String, String>(dimensionMap);
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, String> entry : sortedDimensionMap.entrySet()) {
+      sb.append(entry.getKey() + "|" + entry.getValue() + "|");
+    }
+    byte[] digest = MessageDigest.getInstance("SHA-1").digest(sb.toString().getBytes("UTF-8"));
+    StringWriter s = new StringWriter();
+    PrintWriter out = new PrintWriter(s);
+    for (int i=0;i<digest.length; i++) {
+      out.printf("%02x", digest[i]);
+    }
+    out.flush();
+    return s.toString();
+  }
+}
@@ -0,0 +1,101 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import static org.junit.Assert.*;
+
+import java.util.Collection;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntityFactory.MetricFactoryDelegate32;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntityFactory.MetricFactoryDelegateTimeBucket;
+
+public class MetricEntityFactoryTest {
+
+  private static final String HASH = "0123456789abcdef0123456789abcdef";
+
+  @Test
+  public void testQueryUsesOverlappingBuckets() {
+    final MetricFactoryDelegateTimeBucket delegate = new MetricFactoryDelegateTimeBucket(new MetricFactoryDelegate32());
+    final long bucketStart = 100 * MetricFactoryDelegateTimeBucket.BUCKET_MILLIS;
+
+    final Collection<Class> single = delegate.getClassesForEntitiesGet(MetricType.System, HASH,
+        new Date(bucketStart), new Date(bucketStart + MetricFactoryDelegateTimeBucket.BUCKET_MILLIS));
+    assertEquals("Buckets for single bucket interval", 2, single.size());
+    assertTrue("Time bucket", single.contains(MetricEntityFactory.SystemMetricEntityT4.class));
+    assertTrue("Legacy bucket", single.contains(MetricEntityFactory.SystemMetricEntity0.class));
+
+    final Collection<Class> spanning = delegate.getClassesForEntitiesGet(MetricType.System, HASH,
+        new Date(bucketStart - 1), new Date(bucketStart + 1));
+    assertEquals("Buckets for spanning interval", 3, spanning.size());
+
+    final Collection<Class> all = delegate.getClassesForEntitiesGet(MetricType.Custom, HASH,
+        new Date(0), new Date(bucketStart));
+    assertEquals("Buckets for long interval", MetricFactoryDelegateTimeBucket.BUCKET_COUNT + 1, all.size());
+  }
+
+  @Test
+  public void testNewEntityMatchesQueryBucket() {
+    final MetricFactoryDelegateTimeBucket delegate = new MetricFactoryDelegateTimeBucket(new MetricFactoryDelegate32());
+    final Date timestamp = new Date();
+    final MetricEntity entity = delegate.getNewMetricEntity(MetricType.Custom, HASH, timestamp);
+    assertTrue("Entity class in query buckets",
+        delegate.getClassesForEntitiesGet(MetricType.Custom, HASH, timestamp, new Date(timestamp.getTime() + 1))
+            .contains(entity.getClass()));
+  }
+
+  @Test
+  public void testTruncateExcludesLiveBuckets() {
+    final MetricFactoryDelegateTimeBucket delegate = new MetricFactoryDelegateTimeBucket(new MetricFactoryDelegate32());
+    final Date now = new Date();
+    final Date twoWeeksAgo = new Date(now.getTime() - 2 * 7 * 24 * 60 * 60 * 1000L);
+    final Collection<Class> truncate = delegate.getClassesForTruncateBefore(twoWeeksAgo);
+    for (MetricType metricType : MetricType.values()) {
+      for (Class live : delegate.getClassesForEntitiesGet(metricType, HASH, twoWeeksAgo, now)) {
+        if (!new MetricFactoryDelegate32().getAllClassesForEntitiesGet().contains(live)) {
+          assertFalse("Live bucket truncated " + live, truncate.contains(live));
+        }
+      }
+    }
+    assertTrue("Legacy tables truncated", truncate.containsAll(new MetricFactoryDelegate32().getAllClassesForEntitiesGet()));
+    assertTrue("Expired buckets truncated", truncate.size() > new MetricFactoryDelegate32().getAllClassesForEntitiesGet().size());
+  }
+
+  @Test
+  public void testLegacyTablesSkippedAfterExpiry() {
+    final MetricFactoryDelegateTimeBucket delegate = new MetricFactoryDelegateTimeBucket(new MetricFactoryDelegate32());
+    final long bucketStart = 100 * MetricFactoryDelegateTimeBucket.BUCKET_MILLIS;
+    delegate.setLatestTimestamp(MetricEntityFactory.SystemMetricEntity0.class, new Date(bucketStart));
+    delegate.setLatestTimestamp(MetricEntityFactory.SystemMetricEntity1.class, null);
+
+    assertTrue("Legacy bucket before latest", delegate.getClassesForEntitiesGet(MetricType.System, HASH,
+        new Date(bucketStart), new Date(bucketStart + 1)).contains(MetricEntityFactory.SystemMetricEntity0.class));
+    assertFalse("Legacy bucket after latest", delegate.getClassesForEntitiesGet(MetricType.System, HASH,
+        new Date(bucketStart + 1), new Date(bucketStart + 2)).contains(MetricEntityFactory.SystemMetricEntity0.class));
+
+    final Collection<Class> truncate = delegate.getClassesForTruncateBefore(new Date(bucketStart));
+    assertTrue("Legacy table with data expired", truncate.contains(MetricEntityFactory.SystemMetricEntity0.class));
+    assertFalse("Empty legacy table expired", truncate.contains(MetricEntityFactory.SystemMetricEntity1.class));
+    assertTrue("Unknown legacy table expired", truncate.contains(MetricEntityFactory.SystemMetricEntity2.class));
+  }
+}
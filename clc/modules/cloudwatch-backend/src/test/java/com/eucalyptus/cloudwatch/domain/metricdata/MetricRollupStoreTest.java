@@ -0,0 +1,246 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.domain.DimensionEntity;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.Units;
+
+public class MetricRollupStoreTest {
+
+  private static final double TOLERANCE = 0.000000001;
+  private static final String HASH = "0123456789abcdef0123456789abcdef";
+
+  @Test
+  public void testRollupMatchesRawAggregation() {
+    final Date startTime = MetricManager.stripSeconds(new Date(System.currentTimeMillis() - 30 * 60000L));
+    final Integer period = 300;
+    final String hash = MetricManager.hash(Collections.<DimensionEntity>emptyList());
+    final List<DimensionEntity> dimensions = new ArrayList<DimensionEntity>();
+
+    final MetricRollupStore.RollupSeries series = new MetricRollupStore.RollupSeries(60);
+    final Map<GetMetricStatisticsAggregationKey, MetricStatistics> expected = newAggregationMap();
+    for (int i = 0; i < 90; i++) {
+      final Date timestamp = new Date(startTime.getTime() + (i / 3) * 60000L);
+      final double value = i % 7;
+      series.add(timestamp.getTime() / 60000L, 1.0, value, value, value);
+      MetricManager.accumulate(expected,
+          new GetMetricStatisticsAggregationKey("account1", "namespace1", "metric1", Units.None, MetricType.Custom,
+              MetricManager.getPeriodStart(timestamp, startTime, period), hash),
+          new MetricStatistics("account1", "namespace1", "metric1", Units.None, MetricType.Custom,
+              MetricManager.getPeriodStart(timestamp, startTime, period), 1.0, value, value, value, dimensions));
+    }
+
+    final Map<GetMetricStatisticsAggregationKey, MetricStatistics> actual = newAggregationMap();
+    series.aggregate("account1", "namespace1", "metric1", MetricType.Custom, hash, Units.None,
+        startTime.getTime() / 60000L, startTime.getTime() / 60000L + 30, startTime, period, dimensions, actual);
+
+    assertEquals(6, actual.size());
+    final List<MetricStatistics> expectedList = new ArrayList<MetricStatistics>(expected.values());
+    final List<MetricStatistics> actualList = new ArrayList<MetricStatistics>(actual.values());
+    assertEquals(expectedList.size(), actualList.size());
+    for (int i = 0; i < expectedList.size(); i++) {
+      assertEquals(expectedList.get(i).getTimestamp(), actualList.get(i).getTimestamp());
+      assertEquals(expectedList.get(i).getSampleSize(), actualList.get(i).getSampleSize(), TOLERANCE);
+      assertEquals(expectedList.get(i).getSampleMax(), actualList.get(i).getSampleMax(), TOLERANCE);
+      assertEquals(expectedList.get(i).getSampleMin(), actualList.get(i).getSampleMin(), TOLERANCE);
+      assertEquals(expectedList.get(i).getSampleSum(), actualList.get(i).getSampleSum(), TOLERANCE);
+    }
+  }
+
+  @Test
+  public void testRollupDropsMinutesOutsideRing() {
+    final long minute = System.currentTimeMillis() / 60000L;
+    final MetricRollupStore.RollupSeries series = new MetricRollupStore.RollupSeries(10);
+    series.add(minute, 1.0, 1.0, 1.0, 1.0);
+    series.add(minute + 10, 1.0, 2.0, 2.0, 2.0); // overwrites the slot for minute
+    series.add(minute, 1.0, 3.0, 3.0, 3.0); // older than the held minute, ignored
+
+    final Date startTime = new Date(minute * 60000L);
+    final Map<GetMetricStatisticsAggregationKey, MetricStatistics> actual = newAggregationMap();
+    series.aggregate("account1", "namespace1", "metric1", MetricType.Custom, "hash", Units.None,
+        minute, minute + 11, startTime, 60, new ArrayList<DimensionEntity>(), actual);
+    assertEquals(1, actual.size());
+    final MetricStatistics statistics = actual.values().iterator().next();
+    assertEquals(new Date((minute + 10) * 60000L), statistics.getTimestamp());
+    assertEquals(2.0, statistics.getSampleSum(), TOLERANCE);
+  }
+
+  @Test
+  public void testRollupHoldsMinutesOutOfOrder() {
+    final long minute = System.currentTimeMillis() / 60000L;
+    final MetricRollupStore.RollupSeries series = new MetricRollupStore.RollupSeries(60);
+    for (int i = 29; i >= 0; i -= 2) {
+      series.add(minute + i, 1.0, i, i, i);
+    }
+    for (int i = 0; i < 30; i += 2) {
+      series.add(minute + i, 1.0, i, i, i);
+    }
+    series.add(minute + 1, 1.0, 1.0, 1.0, 1.0); // accumulated with the held minute
+
+    final Date startTime = new Date(minute * 60000L);
+    final Map<GetMetricStatisticsAggregationKey, MetricStatistics> actual = newAggregationMap();
+    series.aggregate("account1", "namespace1", "metric1", MetricType.Custom, "hash", Units.None,
+        minute, minute + 30, startTime, 60, new ArrayList<DimensionEntity>(), actual);
+    assertEquals(30, actual.size());
+    int i = 0;
+    for (final MetricStatistics statistics : actual.values()) {
+      assertEquals(new Date((minute + i) * 60000L), statistics.getTimestamp());
+      assertEquals(i == 1 ? 2.0 : i, statistics.getSampleSum(), TOLERANCE);
+      assertEquals(i == 1 ? 2.0 : 1.0, statistics.getSampleSize(), TOLERANCE);
+      i++;
+    }
+  }
+
+  @Test
+  public void testMemoryStart() {
+    final long start = minuteMillis(System.currentTimeMillis());
+    final MetricRollupStore store = new MetricRollupStore(start);
+    store.addAll(Collections.singletonList(entity("metric1", start + 60000L)), start + 60000L);
+
+    final int retentionMinutes = MetricRollupStore.METRIC_ROLLUP_RETENTION_MINUTES;
+    assertEquals("Coverage from start", new Date(start + 60000L),
+        memoryStart(store, "metric1", start + 60000L));
+    assertEquals("Coverage from window start", new Date(start + 60000L),
+        memoryStart(store, "metric1", start + (retentionMinutes + 1) * 60000L));
+    assertEquals("Coverage from window start", new Date(start + 2 * 60000L),
+        memoryStart(store, "metric1", start + (retentionMinutes + 2) * 60000L));
+    assertEquals("Series without data", new Date(start + 60000L),
+        memoryStart(store, "metric2", start + 60000L));
+  }
+
+  @Test
+  public void testOverflowDropsNewSeries() {
+    final Integer maxSeries = MetricRollupStore.METRIC_ROLLUP_MAX_SERIES;
+    MetricRollupStore.METRIC_ROLLUP_MAX_SERIES = 1;
+    try {
+      final long start = minuteMillis(System.currentTimeMillis());
+      final MetricRollupStore store = new MetricRollupStore(start);
+      store.addAll(Collections.singletonList(entity("metric1", start + 60000L)), start + 60000L);
+      store.addAll(Collections.singletonList(entity("metric2", start + 2 * 60000L)), start + 2 * 60000L);
+
+      assertEquals("Series count", 1, store.getSeriesCount());
+      assertNotNull("Held series in memory", memoryStart(store, "metric1", start + 2 * 60000L));
+      assertNull("Dropped series in memory", memoryStart(store, "metric2", start + 2 * 60000L));
+      assertNull("Unknown series in memory", memoryStart(store, "metric3", start + 2 * 60000L));
+    } finally {
+      MetricRollupStore.METRIC_ROLLUP_MAX_SERIES = maxSeries;
+    }
+  }
+
+  @Test
+  public void testSeriesAfterExpiryExcludesDroppedMinutes() {
+    final Integer maxSeries = MetricRollupStore.METRIC_ROLLUP_MAX_SERIES;
+    MetricRollupStore.METRIC_ROLLUP_MAX_SERIES = 1;
+    try {
+      final int retentionMinutes = MetricRollupStore.METRIC_ROLLUP_RETENTION_MINUTES;
+      final long start = minuteMillis(System.currentTimeMillis());
+      final MetricRollupStore store = new MetricRollupStore(start);
+      store.addAll(Collections.singletonList(entity("metric1", start + 60000L)), start + 60000L);
+      store.addAll(Collections.singletonList(entity("metric2", start + 2 * 60000L)), start + 2 * 60000L); // dropped
+
+      // metric1 is idle and outside the window so is expired to make room for metric2
+      final long now = start + (retentionMinutes + 2) * 60000L;
+      store.addAll(Collections.singletonList(entity("metric2", now)), now);
+
+      assertEquals("Series count", 1, store.getSeriesCount());
+      assertEquals("Coverage after dropped minute", new Date(start + 3 * 60000L), memoryStart(store, "metric2", now));
+      assertNull("Expired series in memory", memoryStart(store, "metric1", now));
+
+      final long later = start + (retentionMinutes + 3) * 60000L;
+      assertEquals("Coverage from window start", new Date(start + 3 * 60000L), memoryStart(store, "metric2", later));
+      assertEquals("Coverage from window start", new Date(start + 3 * 60000L), memoryStart(store, "metric1", later));
+    } finally {
+      MetricRollupStore.METRIC_ROLLUP_MAX_SERIES = maxSeries;
+    }
+  }
+
+  @Test
+  public void testIdleSeriesExpiredInLaterMinute() {
+    final Integer maxSeries = MetricRollupStore.METRIC_ROLLUP_MAX_SERIES;
+    MetricRollupStore.METRIC_ROLLUP_MAX_SERIES = 1;
+    try {
+      final int retentionMinutes = MetricRollupStore.METRIC_ROLLUP_RETENTION_MINUTES;
+      final long start = minuteMillis(System.currentTimeMillis());
+      final MetricRollupStore store = new MetricRollupStore(start);
+      store.addAll(Collections.singletonList(entity("metric1", start + 60000L)), start + 60000L);
+
+      // metric1 has data at the window start so is not idle, new series are dropped
+      final long now = start + (retentionMinutes + 1) * 60000L;
+      store.addAll(Collections.singletonList(entity("metric2", now)), now);
+      store.addAll(Collections.singletonList(entity("metric3", now + 30000L)), now + 30000L);
+
+      assertEquals("Series count", 1, store.getSeriesCount());
+      assertNotNull("Held series in memory", memoryStart(store, "metric1", now + 30000L));
+      assertNull("Dropped series in memory", memoryStart(store, "metric3", now + 30000L));
+
+      // metric1 is idle in the next minute so is expired to make room for metric3
+      final long later = now + 60000L;
+      store.addAll(Collections.singletonList(entity("metric3", later)), later);
+
+      assertEquals("Series count", 1, store.getSeriesCount());
+      assertEquals("Coverage after dropped minute", new Date(later), memoryStart(store, "metric3", later));
+      assertNull("Expired series in memory", memoryStart(store, "metric1", later));
+    } finally {
+      MetricRollupStore.METRIC_ROLLUP_MAX_SERIES = maxSeries;
+    }
+  }
+
+  private static long minuteMillis(long timeMillis) {
+    return (timeMillis / 60000L) * 60000L;
+  }
+
+  private static Date memoryStart(MetricRollupStore store, String metricName, long nowMillis) {
+    return store.getMemoryStart("account1", "namespace1", metricName, MetricType.Custom, HASH, nowMillis);
+  }
+
+  private static MetricEntity entity(String metricName, long timestamp) {
+    final MetricEntity entity = new MetricEntityFactory.MetricFactoryDelegate32()
+        .getNewMetricEntity(MetricType.Custom, HASH, new Date(timestamp));
+    entity.setAccountId("account1");
+    entity.setNamespace("namespace1");
+    entity.setMetricName(metricName);
+    entity.setMetricType(MetricType.Custom);
+    entity.setDimensionHash(HASH);
+    entity.setUnits(Units.None);
+    entity.setTimestamp(new Date(timestamp));
+    entity.setSampleSize(1.0);
+    entity.setSampleMax(1.0);
+    entity.setSampleMin(1.0);
+    entity.setSampleSum(1.0);
+    return entity;
+  }
+
+  private static Map<GetMetricStatisticsAggregationKey, MetricStatistics> newAggregationMap() {
+    return new TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>(
+        GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE);
+  }
+}
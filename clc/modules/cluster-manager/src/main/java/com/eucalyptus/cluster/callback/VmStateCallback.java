@@ -65,6 +65,8 @@ package com.eucalyptus.cluster.callback;
 import static com.eucalyptus.compute.common.internal.vm.VmInstances.TerminatedInstanceException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
@@ -81,6 +83,7 @@ import com.eucalyptus.compute.common.network.UpdateInstanceResourcesType;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.TransactionException;
 import com.eucalyptus.records.Logs;
+import com.eucalyptus.util.Mbeans;
 import com.eucalyptus.util.TypeMapper;
 import com.eucalyptus.util.TypeMappers;
 import com.eucalyptus.util.async.FailedRequestException;
@@ -95,12 +98,16 @@ import com.eucalyptus.compute.common.internal.vm.VmRuntimeState;
 import com.eucalyptus.compute.common.internal.vmtypes.VmType;
 import com.eucalyptus.vmtypes.VmTypes;
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import edu.ucsb.eucalyptus.cloud.VmDescribeResponseType;
 import edu.ucsb.eucalyptus.cloud.VmDescribeType;
@@ -109,8 +116,13 @@ import edu.ucsb.eucalyptus.msgs.VmTypeInfo;
 
 public class VmStateCallback extends StateUpdateMessageCallback<Cluster, VmDescribeType, VmDescribeResponseType> {
   private static Logger               LOG                       = Logger.getLogger( VmStateCallback.class );
+  private static final VmStateReconciliationStatistics statistics = new VmStateReconciliationStatistics( );
   private final Supplier<Set<String>> initialInstances;
   
+  static {
+    Mbeans.register( statistics );
+  }
+
   public VmStateCallback( ) {
     super( new VmDescribeType( ) {
       {
@@ -174,17 +186,26 @@ public class VmStateCallback extends StateUpdateMessageCallback<Cluster, VmDescr
         }
       }
       
+      final long startTime = System.currentTimeMillis( );
       final Set<String> unreportedInstances = Sets.newHashSet( Sets.difference( this.initialInstances.get( ), reportedInstances ) );
       final Set<String> unknownInstances = Sets.newHashSet( Sets.difference( reportedInstances, this.initialInstances.get( ) ) );
+      final List<VmInfo> knownVms = Lists.newArrayList( );
       for ( final VmInfo runVm : reply.getVms( ) ) {
         if ( Databases.isVolatile( ) ) {
           return;
         } else if ( this.initialInstances.get( ).contains( runVm.getInstanceId( ) ) ) {
-          VmStateCallback.handleReportedState( runVm );
+          knownVms.add( runVm );
         } else if ( unknownInstances.contains( runVm.getInstanceId( ) ) ) {
           VmStateCallback.handleUnknown( runVm );
         }
       }
+      for ( final List<VmInfo> runVms : Iterables.partition( knownVms, batchSize( ) ) ) {
+        if ( Databases.isVolatile( ) ) {
+          return;
+        } else {
+          VmStateCallback.handleReportedStates( runVms );
+        }
+      }
       for ( final String vmId : unreportedInstances ) {
         if ( Databases.isVolatile( ) ) {
           return;
@@ -192,40 +213,124 @@ public class VmStateCallback extends StateUpdateMessageCallback<Cluster, VmDescr
           VmStateCallback.handleUnreported( vmId );
         }
       }
+      final long pollMillis = System.currentTimeMillis( ) - startTime;
+      statistics.poll( this.getSubject( ).getConfiguration( ).getName( ), knownVms.size( ) + unreportedInstances.size( ), pollMillis );
+      LOG.debug( "Reconciled state for " + knownVms.size( ) + " reported and " + unreportedInstances.size( ) +
+          " unreported instances from " + this.getSubject( ).getName( ) + " in " + pollMillis + "ms" );
     }
   }
-  
+
+  private static int batchSize( ) {
+    return Math.max( 1, Objects.firstNonNull( VmInstances.INSTANCE_STATE_UPDATE_BATCH_SIZE, 100 ) );
+  }
+
+  /**
+   * Load the given instances (in the current transaction) using a single query.
+   */
+  @SuppressWarnings( "unchecked" )
+  private static Map<String,VmInstance> lookupAll( final Collection<String> vmIds ) {
+    final Map<String,VmInstance> instances = Maps.newHashMap( );
+    for ( final VmInstance vm : (List<VmInstance>) Entities.createCriteria( VmInstance.class )
+        .add( Restrictions.in( "displayName", vmIds ) )
+        .list( ) ) {
+      instances.put( vm.getDisplayName( ), vm );
+    }
+    return instances;
+  }
+
   private static void handleUnreported( final String vmId ) {
     try {
-      final VmInstance vm = VmInstances.lookupAny( vmId );
-      if ( VmState.PENDING.apply( vm ) && vm.lastUpdateMillis( ) < ( VmInstances.VM_INITIAL_REPORT_TIMEOUT * 1000 ) ) {
-        //do nothing during first VM_INITIAL_REPORT_TIMEOUT millis of instance life
-        return;
-      } else if ( vm.isBlockStorage( ) && VmInstances.Timeout.UNREPORTED.apply( vm ) ) {
-        VmInstances.stopped( vm );
-      } else if ( VmState.STOPPING.apply( vm ) ) {
-        VmInstances.stopped( vm );
-      } else if ( VmState.SHUTTING_DOWN.apply( vm ) ) {
-        VmInstances.terminated( vm );
-      } else if ( VmInstances.Timeout.TERMINATED.apply( vm ) ) {
-        VmInstances.buried( vm );
-      } else if ( VmInstances.Timeout.BURIED.apply( vm ) ) {
-        VmInstances.delete( vm );
-      } else if ( VmInstances.Timeout.SHUTTING_DOWN.apply( vm ) ) {
-        VmInstances.terminated( vm );
-      } else if ( VmInstances.Timeout.STOPPING.apply( vm ) ) {
-        VmInstances.stopped( vm );
-      } else if ( VmInstances.Timeout.UNREPORTED.apply( vm ) ) {
-        VmInstances.terminated( vm );
-      } else if ( VmStateSet.RUN.apply( vm ) && VmRuntimeState.InstanceStatus.Ok.apply( vm ) ) {
-        VmInstances.unreachable( vm );
-      }
+      handleUnreported( VmInstances.lookupAny( vmId ) );
     } catch ( final Exception ex ) {
       LOG.error( ex );
       Logs.extreme( ).error( ex, ex );
     }
   }
-  
+
+  private static void handleUnreported( final VmInstance vm ) throws TransactionException {
+    if ( VmState.PENDING.apply( vm ) && vm.lastUpdateMillis( ) < ( VmInstances.VM_INITIAL_REPORT_TIMEOUT * 1000 ) ) {
+      //do nothing during first VM_INITIAL_REPORT_TIMEOUT millis of instance life
+      return;
+    } else if ( vm.isBlockStorage( ) && VmInstances.Timeout.UNREPORTED.apply( vm ) ) {
+      VmInstances.stopped( vm );
+    } else if ( VmState.STOPPING.apply( vm ) ) {
+      VmInstances.stopped( vm );
+    } else if ( VmState.SHUTTING_DOWN.apply( vm ) ) {
+      VmInstances.terminated( vm );
+    } else if ( VmInstances.Timeout.TERMINATED.apply( vm ) ) {
+      VmInstances.buried( vm );
+    } else if ( VmInstances.Timeout.BURIED.apply( vm ) ) {
+      VmInstances.delete( vm );
+    } else if ( VmInstances.Timeout.SHUTTING_DOWN.apply( vm ) ) {
+      VmInstances.terminated( vm );
+    } else if ( VmInstances.Timeout.STOPPING.apply( vm ) ) {
+      VmInstances.stopped( vm );
+    } else if ( VmInstances.Timeout.UNREPORTED.apply( vm ) ) {
+      VmInstances.terminated( vm );
+    } else if ( VmStateSet.RUN.apply( vm ) && VmRuntimeState.InstanceStatus.Ok.apply( vm ) ) {
+      VmInstances.unreachable( vm );
+    }
+  }
+
+  /**
+   * Handle reported instance states in a single transaction, falling back to
+   * individual updates on failure.
+   *
+   * <p>Only runtime updates for running instances are batched, any state
+   * transition is deferred to a transaction for the individual instance.</p>
+   */
+  private static void handleReportedStates( final List<VmInfo> runVms ) {
+    final List<VmInfo> deferredVms = Lists.newArrayList( );
+    final List<String> vmIds = Lists.newArrayList( );
+    for ( final VmInfo runVm : runVms ) {
+      vmIds.add( runVm.getInstanceId( ) );
+    }
+    boolean failed = false;
+    final EntityTransaction db = Entities.get( VmInstance.class );
+    try {
+      final Map<String,VmInstance> instances = lookupAll( vmIds );
+      for ( final VmInfo runVm : runVms ) {
+        final VmInstance vm = instances.get( runVm.getInstanceId( ) );
+        if ( vm != null && !VmStateCallback.handleReportedState( vm, runVm ) ) {
+          deferredVms.add( runVm );
+        }
+      }
+      Entities.commit( db );
+    } catch ( final Exception ex ) {
+      failed = true;
+      LOG.warn( "Error updating reported instance states, retrying individually: " + ex.getMessage( ) );
+      Logs.extreme( ).error( ex, ex );
+    } finally {
+      if ( db.isActive() ) db.rollback();
+    }
+    statistics.batch( failed );
+    for ( final VmInfo runVm : failed ? runVms : deferredVms ) {
+      if ( Databases.isVolatile( ) ) {
+        return;
+      } else {
+        VmStateCallback.handleReportedState( runVm );
+      }
+    }
+  }
+
+  /**
+   * Handle the reported state for a running instance in the current transaction.
+   *
+   * @return false if the report must be handled outside of the transaction
+   */
+  private static boolean handleReportedState( final VmInstance vm, final VmInfo runVm ) {
+    final VmState runVmState = VmState.Mapper.get( runVm.getStateName( ) );
+    if ( VmStateSet.DONE.apply( vm ) ||
+        VmInstances.Timeout.EXPIRED.apply( vm ) ||
+        VmState.SHUTTING_DOWN.equals( runVmState ) ||
+        !VmStateSet.RUN.apply( vm ) ) {
+      return false;
+    } else {
+      VmInstances.doUpdate( vm ).apply( runVm );
+      return true;
+    }
+  }
+
   private static void handleReportedState( final VmInfo runVm ) {
     final VmState runVmState = VmState.Mapper.get( runVm.getStateName( ) );
     try {
@@ -376,11 +481,17 @@ public class VmStateCallback extends StateUpdateMessageCallback<Cluster, VmDescr
     
     @Override
     public void fire( VmDescribeResponseType reply ) {
+      final List<VmInfo> knownVms = Lists.newArrayList( );
       for ( final VmInfo runVm : reply.getVms( ) ) {
+        if ( this.initialInstances.get( ).contains( runVm.getInstanceId( ) ) ) {
+          knownVms.add( runVm );
+        }
+      }
+      for ( final List<VmInfo> runVms : Iterables.partition( knownVms, batchSize( ) ) ) {
         if ( Databases.isVolatile( ) ) {
           return;
-        } else if ( this.initialInstances.get( ).contains( runVm.getInstanceId( ) ) ) {
-          VmStateCallback.handleReportedState( runVm );
+        } else {
+          VmStateCallback.handleReportedStates( runVms );
         }
       }
     }
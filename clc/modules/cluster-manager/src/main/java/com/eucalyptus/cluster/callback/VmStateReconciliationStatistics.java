@@ -0,0 +1,90 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cluster.callback;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Statistics for reconciliation of instance state reported by clusters.
+ */
+public class VmStateReconciliationStatistics {
+
+  private final AtomicLong polls = new AtomicLong( );
+  private final AtomicLong instances = new AtomicLong( );
+  private final AtomicLong batches = new AtomicLong( );
+  private final AtomicLong failedBatches = new AtomicLong( );
+  private final AtomicLong lastPollMillis = new AtomicLong( );
+  private final AtomicLong maxPollMillis = new AtomicLong( );
+  private final ConcurrentMap<String,Long> lastPollMillisByCluster = Maps.newConcurrentMap( );
+  private final ConcurrentMap<String,Long> lastPollInstancesByCluster = Maps.newConcurrentMap( );
+
+  void batch( final boolean failed ) {
+    batches.incrementAndGet( );
+    if ( failed ) {
+      failedBatches.incrementAndGet( );
+    }
+  }
+
+  void poll( final String cluster, final int instanceCount, final long millis ) {
+    polls.incrementAndGet( );
+    instances.addAndGet( instanceCount );
+    lastPollMillis.set( millis );
+    long max;
+    while ( ( max = maxPollMillis.get( ) ) < millis && !maxPollMillis.compareAndSet( max, millis ) );
+    lastPollMillisByCluster.put( cluster, millis );
+    lastPollInstancesByCluster.put( cluster, (long) instanceCount );
+  }
+
+  public long getPolls( ) {
+    return polls.get( );
+  }
+
+  public long getInstances( ) {
+    return instances.get( );
+  }
+
+  public long getBatches( ) {
+    return batches.get( );
+  }
+
+  public long getFailedBatches( ) {
+    return failedBatches.get( );
+  }
+
+  public long getLastPollMillis( ) {
+    return lastPollMillis.get( );
+  }
+
+  public long getMaxPollMillis( ) {
+    return maxPollMillis.get( );
+  }
+
+  public Map<String,Long> getLastPollMillisByCluster( ) {
+    return ImmutableMap.copyOf( lastPollMillisByCluster );
+  }
+
+  public Map<String,Long> getLastPollInstancesByCluster( ) {
+    return ImmutableMap.copyOf( lastPollInstancesByCluster );
+  }
+}
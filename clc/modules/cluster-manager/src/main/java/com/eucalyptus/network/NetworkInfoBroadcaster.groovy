@@ -67,6 +67,7 @@ import com.eucalyptus.compute.common.internal.vpc.RouteTable
 import com.eucalyptus.compute.common.internal.vpc.RouteTableAssociation
 import com.eucalyptus.compute.common.internal.vpc.Vpc
 import com.eucalyptus.compute.common.internal.vpc.Subnet as VpcSubnet
+import com.eucalyptus.crypto.Digest
 import com.eucalyptus.entities.EntityCache
 import com.eucalyptus.event.ClockTick
 import com.eucalyptus.event.Listeners
@@ -78,6 +79,7 @@ import com.eucalyptus.network.config.EdgeSubnet
 import com.eucalyptus.network.config.ManagedSubnet
 import com.eucalyptus.system.BaseDirectory
 import com.eucalyptus.system.Threads
+import com.eucalyptus.util.Callback
 import com.eucalyptus.util.Strings as EucaStrings
 import com.eucalyptus.util.TypeMapper
 import com.eucalyptus.util.TypeMappers
@@ -123,6 +125,7 @@ import java.util.concurrent.Callable
 import java.util.concurrent.ConcurrentMap
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
 
 import static com.eucalyptus.compute.common.internal.vm.VmInstance.VmStateSet.TORNDOWN
 
@@ -135,16 +138,22 @@ class NetworkInfoBroadcaster {
 
   private static final AtomicLong lastBroadcastTime = new AtomicLong( 0L );
   private static final ConcurrentMap<String,Long> activeBroadcastMap = Maps.<String,Long>newConcurrentMap( ) as ConcurrentMap<String, Long>
-  private static final EntityCache<VmInstance,VmInstanceNetworkView> instanceCache = new EntityCache<>( VmInstance.named(null), TypeMappers.lookup( VmInstance, VmInstanceNetworkView )  );
-  private static final EntityCache<NetworkGroup,NetworkGroupNetworkView> securityGroupCache = new EntityCache<>( NetworkGroup.withNaturalId( null ), TypeMappers.lookup( NetworkGroup, NetworkGroupNetworkView )  );
-
-  private static final EntityCache<Vpc,VpcNetworkView> vpcCache = new EntityCache<>( Vpc.exampleWithOwner( null ), TypeMappers.lookup( Vpc, VpcNetworkView )  );
-  private static final EntityCache<VpcSubnet,SubnetNetworkView> subnetCache = new EntityCache<>( VpcSubnet.exampleWithOwner( null ), TypeMappers.lookup( VpcSubnet, SubnetNetworkView )  );
-  private static final EntityCache<DhcpOptionSet,DhcpOptionSetNetworkView> dhcpOptionsCache = new EntityCache<>( DhcpOptionSet.exampleWithOwner( null ), TypeMappers.lookup( DhcpOptionSet, DhcpOptionSetNetworkView )  );
-  private static final EntityCache<NetworkAcl,NetworkAclNetworkView> networkAclCache = new EntityCache<>( NetworkAcl.exampleWithOwner( null ), TypeMappers.lookup( NetworkAcl, NetworkAclNetworkView )  );
-  private static final EntityCache<RouteTable,RouteTableNetworkView> routeTableCache = new EntityCache<>( RouteTable.exampleWithOwner( null ), TypeMappers.lookup( RouteTable, RouteTableNetworkView )  );
-  private static final EntityCache<InternetGateway,InternetGatewayNetworkView> internetGatewayCache = new EntityCache<>( InternetGateway.exampleWithOwner( null ), TypeMappers.lookup( InternetGateway, InternetGatewayNetworkView )  );
-  private static final EntityCache<VpcNetworkInterface,NetworkInterfaceNetworkView> networkInterfaceCache = new EntityCache<>( VpcNetworkInterface.exampleWithOwner( null ), TypeMappers.lookup( VpcNetworkInterface, NetworkInterfaceNetworkView )  );
+  private static final ConcurrentMap<String,AppliedNetworkInfoVersion> appliedVersionMap = Maps.<String,AppliedNetworkInfoVersion>newConcurrentMap( ) as ConcurrentMap<String, AppliedNetworkInfoVersion>
+  private static final AtomicReference<NetworkInfoVersion> currentVersion = new AtomicReference<>( new NetworkInfoVersion( 0L, '' ) )
+  private static final AtomicLong writtenVersion = new AtomicLong( 0L )
+  private static final Supplier<JAXBContext> jaxbContextSupplier = Suppliers.memoize( {
+    JAXBContext.newInstance( "com.eucalyptus.cluster" )
+  } as Supplier<JAXBContext> )
+  private static final EntityCache<VmInstance,VmInstanceNetworkView> instanceCache = new EntityCache<>( VmInstance.named(null), TypeMappers.lookup( VmInstance, VmInstanceNetworkView ), true );
+  private static final EntityCache<NetworkGroup,NetworkGroupNetworkView> securityGroupCache = new EntityCache<>( NetworkGroup.withNaturalId( null ), TypeMappers.lookup( NetworkGroup, NetworkGroupNetworkView ), true );
+
+  private static final EntityCache<Vpc,VpcNetworkView> vpcCache = new EntityCache<>( Vpc.exampleWithOwner( null ), TypeMappers.lookup( Vpc, VpcNetworkView ), true );
+  private static final EntityCache<VpcSubnet,SubnetNetworkView> subnetCache = new EntityCache<>( VpcSubnet.exampleWithOwner( null ), TypeMappers.lookup( VpcSubnet, SubnetNetworkView ), true );
+  private static final EntityCache<DhcpOptionSet,DhcpOptionSetNetworkView> dhcpOptionsCache = new EntityCache<>( DhcpOptionSet.exampleWithOwner( null ), TypeMappers.lookup( DhcpOptionSet, DhcpOptionSetNetworkView ), true );
+  private static final EntityCache<NetworkAcl,NetworkAclNetworkView> networkAclCache = new EntityCache<>( NetworkAcl.exampleWithOwner( null ), TypeMappers.lookup( NetworkAcl, NetworkAclNetworkView ), true );
+  private static final EntityCache<RouteTable,RouteTableNetworkView> routeTableCache = new EntityCache<>( RouteTable.exampleWithOwner( null ), TypeMappers.lookup( RouteTable, RouteTableNetworkView ), true );
+  private static final EntityCache<InternetGateway,InternetGatewayNetworkView> internetGatewayCache = new EntityCache<>( InternetGateway.exampleWithOwner( null ), TypeMappers.lookup( InternetGateway, InternetGatewayNetworkView ), true );
+  private static final EntityCache<VpcNetworkInterface,NetworkInterfaceNetworkView> networkInterfaceCache = new EntityCache<>( VpcNetworkInterface.exampleWithOwner( null ), TypeMappers.lookup( VpcNetworkInterface, NetworkInterfaceNetworkView ), true );
 
   interface NetworkInfoSource {
     Iterable<VmInstanceNetworkView> getInstances( );
@@ -214,26 +223,36 @@ class NetworkInfoBroadcaster {
         { Topology.lookup(Eucalyptus).inetAddress.hostAddress } as Supplier<String>,
         NetworkConfigurations.&loadSystemNameservers as Function<List<String>,List<String>> )
 
-    final JAXBContext jc = JAXBContext.newInstance( "com.eucalyptus.cluster" )
     final StringWriter writer = new StringWriter( 8192 )
-    jc.createMarshaller().marshal( info, writer )
+    jaxbContextSupplier.get( ).createMarshaller( ).marshal( info, writer )
 
     final String networkInfo = writer.toString( )
-    if ( logger.isTraceEnabled( ) ) {
-      logger.trace( "Broadcasting network information:\n${networkInfo}" )
+    final NetworkInfoVersion version = version( Digest.SHA256.digestHex( networkInfo.getBytes( Charsets.UTF_8 ) ) )
+    if ( version.version > writtenVersion.get( ) ) {
+      writeNetworkInfo( version, networkInfo )
     }
 
-    final File newView = BaseDirectory.RUN.getChildFile( "global_network_info.xml.temp" )
-    if ( newView.exists( ) && !newView.delete( ) ) logger.warn( "Error deleting stale network view ${newView.getAbsolutePath()}" )
-    GFiles.write( networkInfo, newView, Charsets.UTF_8 )
-    JFiles.move( newView.toPath( ), BaseDirectory.RUN.getChildFile( "global_network_info.xml" ).toPath( ), StandardCopyOption.REPLACE_EXISTING )
-
     final BroadcastNetworkInfoCallback callback = new BroadcastNetworkInfoCallback( networkInfo )
     clusters.each { Cluster cluster ->
       final Long broadcastTime = System.currentTimeMillis( )
-      if ( null == activeBroadcastMap.putIfAbsent( cluster.partition, broadcastTime ) ) {
+      final AppliedNetworkInfoVersion appliedVersion = appliedVersionMap.get( cluster.partition )
+      if ( appliedVersion != null &&
+          appliedVersion.version == version.version &&
+          appliedVersion.timestamp + TimeUnit.SECONDS.toMillis( NetworkGroups.MAX_UNCHANGED_BROADCAST_INTERVAL ) > broadcastTime ) {
+        logger.trace( "Skipping unchanged network information broadcast for partition ${cluster.partition}" )
+      } else if ( null == activeBroadcastMap.putIfAbsent( cluster.partition, broadcastTime ) ) {
         try {
-          AsyncRequests.newRequest( callback.newInstance( ) ).then( new UnconditionalCallback<BroadcastNetworkInfoResponseType>() {
+          AsyncRequests.newRequest( callback.newInstance( ) ).then( new Callback.Success<BroadcastNetworkInfoResponseType>() {
+            @Override
+            void fire( final BroadcastNetworkInfoResponseType response ) {
+              appliedVersionMap.put( cluster.partition, new AppliedNetworkInfoVersion( version.version, broadcastTime ) )
+            }
+          } ).then( new Callback.Failure<BroadcastNetworkInfoResponseType>() {
+            @Override
+            void fireException( final Throwable throwable ) {
+              appliedVersionMap.remove( cluster.partition )
+            }
+          } ).then( new UnconditionalCallback<BroadcastNetworkInfoResponseType>() {
             @Override
             void fire() {
               activeBroadcastMap.remove( cluster.partition, broadcastTime )
@@ -241,6 +260,7 @@ class NetworkInfoBroadcaster {
           } ).dispatch( cluster.configuration )
         } catch ( e ) {
           activeBroadcastMap.remove( cluster.partition, broadcastTime )
+          appliedVersionMap.remove( cluster.partition )
           logger.error( "Error broadcasting network information to cluster ${cluster.partition} (${cluster.name})" as String, e )
         }
       } else {
@@ -250,6 +270,58 @@ class NetworkInfoBroadcaster {
     }
   }
 
+  /**
+   * Write the network information file if it is older than the given
+   * version.
+   *
+   * The written version is only updated when the write succeeds so a failed
+   * write is retried on the next broadcast.
+   */
+  private static void writeNetworkInfo( final NetworkInfoVersion version, final String networkInfo ) {
+    synchronized ( writtenVersion ) {
+      if ( version.version > writtenVersion.get( ) ) {
+        if ( logger.isTraceEnabled( ) ) {
+          logger.trace( "Broadcasting network information version ${version.version}:\n${networkInfo}" )
+        }
+
+        final File newView = BaseDirectory.RUN.getChildFile( "global_network_info.xml.temp" )
+        if ( newView.exists( ) && !newView.delete( ) ) logger.warn( "Error deleting stale network view ${newView.getAbsolutePath()}" )
+        GFiles.write( networkInfo, newView, Charsets.UTF_8 )
+        JFiles.move( newView.toPath( ), BaseDirectory.RUN.getChildFile( "global_network_info.xml" ).toPath( ), StandardCopyOption.REPLACE_EXISTING )
+        writtenVersion.set( version.version )
+      }
+    }
+  }
+
+  /**
+   * Get the version for network information with the given digest, the
+   * version is incremented when the network information changes.
+   */
+  private static NetworkInfoVersion version( final String digest ) {
+    while ( true ) {
+      final NetworkInfoVersion previous = currentVersion.get( )
+      if ( previous.digest == digest ) {
+        return previous
+      }
+      final NetworkInfoVersion updated = new NetworkInfoVersion( previous.version + 1, digest )
+      if ( currentVersion.compareAndSet( previous, updated ) ) {
+        return updated
+      }
+    }
+  }
+
+  @Immutable
+  private static class NetworkInfoVersion {
+    long version
+    String digest
+  }
+
+  @Immutable
+  private static class AppliedNetworkInfoVersion {
+    long version
+    long timestamp
+  }
+
   @PackageScope
   static NetworkInfo buildNetworkConfiguration( final Optional<NetworkConfiguration> configuration,
                                                 final NetworkInfoSource networkInfoSource,
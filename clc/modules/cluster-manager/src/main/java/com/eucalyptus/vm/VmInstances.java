@@ -209,6 +209,7 @@ import com.eucalyptus.util.async.DelegatingRemoteCallback;
 import com.eucalyptus.util.async.MessageCallback;
 import com.eucalyptus.util.async.RemoteCallback;
 import com.eucalyptus.util.dns.DomainNames;
+import com.eucalyptus.vm.dns.InstanceAddressIndex;
 import com.eucalyptus.compute.common.internal.vm.VmInstance.VmState;
 import com.eucalyptus.compute.common.internal.vm.VmInstance.VmStateSet;
 import com.eucalyptus.compute.common.internal.vmtypes.VmType;
@@ -530,6 +531,10 @@ public class VmInstances extends com.eucalyptus.compute.common.internal.vm.VmIns
                       initial = "15" )
   public static Integer   INSTANCE_TOUCH_INTERVAL       = 15;
 
+  @ConfigurableField( description = "Maximum number of instances updated in each transaction when processing instance state reports from a cluster.",
+                      initial = "100" )
+  public static Integer   INSTANCE_STATE_UPDATE_BATCH_SIZE = 100;
+
   @ConfigurableField( description = "Amount of time (in minutes) before a VM which is not reported by a cluster will be marked as terminated.",
                       initial = "10" )
   public static Integer   SHUT_DOWN_TIME                = 10;
@@ -1237,6 +1242,7 @@ public class VmInstances extends com.eucalyptus.compute.common.internal.vm.VmIns
    * Caller must have open session for vm
    */
   public static void updatePublicAddress( final VmInstance vm, final String publicAddress ) {
+    InstanceAddressIndex.invalidate( vm.getInstanceId( ), vm.getPublicAddress( ), publicAddress );
     vm.updatePublicAddress(
         ipOrDefault( publicAddress ),
         generateDnsName( publicAddress, DomainNames.externalSubdomain() )
@@ -1247,6 +1253,7 @@ public class VmInstances extends com.eucalyptus.compute.common.internal.vm.VmIns
    * Caller must have open session for vm
    */
   public static void updatePrivateAddress( final VmInstance vm, final String privateAddress ) {
+    InstanceAddressIndex.invalidate( vm.getInstanceId( ), vm.getPrivateAddress( ), privateAddress );
     vm.updatePrivateAddress(
         ipOrDefault( privateAddress ),
         generateDnsName( privateAddress, DomainNames.internalSubdomain() )
@@ -1306,6 +1313,7 @@ public class VmInstances extends com.eucalyptus.compute.common.internal.vm.VmIns
       final Callable<Boolean> action;
       if ( !oldState.equals( newState ) ) {
         action = handleStateTransition( entity, newState, oldState, olderState );
+        InstanceAddressIndex.invalidate( entity.getInstanceId( ), entity.getPrivateAddress( ), entity.getPublicAddress( ) );
       } else {
         action = null;
       }
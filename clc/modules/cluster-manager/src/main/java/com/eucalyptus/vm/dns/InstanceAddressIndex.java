@@ -0,0 +1,291 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.vm.dns;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import org.apache.log4j.Logger;
+import org.hibernate.criterion.Projections;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.component.id.Eucalyptus;
+import com.eucalyptus.compute.common.internal.vm.VmInstance;
+import com.eucalyptus.compute.common.internal.vm.VmInstance.VmState;
+import com.eucalyptus.compute.common.internal.vm.VmNetworkConfig;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.event.ClockTick;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Mbeans;
+import com.eucalyptus.vm.VmInstances;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * In-memory index of the addresses of pending and running instances.
+ *
+ * The index answers instance address queries for DNS resolution without a
+ * database lookup. It is rebuilt on each clock tick while it is in use.
+ * Addresses and instances changed by instance state transitions or address
+ * assignment are invalidated and resolved from the database until the index
+ * is rebuilt.
+ */
+public class InstanceAddressIndex {
+  private static final Logger LOG = Logger.getLogger( InstanceAddressIndex.class );
+  private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis( 5 );
+  private static final InstanceAddressIndexStatistics statistics = new InstanceAddressIndexStatistics( );
+  private static final AtomicLong invalidations = new AtomicLong( );
+  private static final ConcurrentMap<String, Long> invalidated = Maps.newConcurrentMap( );
+  private static volatile Index index;
+  private static volatile long lastUsed;
+
+  static {
+    Mbeans.register( statistics );
+  }
+
+  /**
+   * Lookup the addresses for the pending or running instance with the given public address.
+   *
+   * @throws NoSuchElementException If there is no such instance
+   */
+  public static InstanceAddresses lookupByPublicIp( final String ip ) throws NoSuchElementException {
+    final Index current = lookupIndex( ip );
+    if ( current != null ) {
+      final InstanceAddresses addresses = current.byPublicIp.get( ip );
+      if ( addresses == null ) {
+        statistics.hit( );
+        throw new NoSuchElementException( "VmInstance with public ip: " + ip );
+      } else if ( !invalidated.containsKey( addresses.getInstanceId( ) ) ) {
+        statistics.hit( );
+        return addresses;
+      }
+      statistics.miss( ); // other addresses for the instance may be stale
+    }
+    final VmInstance vm = VmInstances.lookupByPublicIp( ip );
+    return new InstanceAddresses( vm.getInstanceId( ), vm.getPrivateAddress( ), vm.getPublicAddress( ) );
+  }
+
+  public static boolean publicIpInUse( final String ip ) {
+    try {
+      lookupByPublicIp( ip );
+      return true;
+    } catch ( NoSuchElementException e ) {
+      return false;
+    }
+  }
+
+  public static boolean privateIpInUse( final String ip ) {
+    final Index current = lookupIndex( ip );
+    if ( current == null ) {
+      return VmInstances.privateIpInUse( ip );
+    }
+    statistics.hit( );
+    return current.byPrivateIp.containsKey( ip );
+  }
+
+  /**
+   * Invalidate the given instance and addresses, lookups use the database
+   * until the next rebuild of the index.
+   *
+   * If there is an active instance transaction the instance and addresses are
+   * invalidated again on completion so that a concurrent rebuild cannot
+   * restore stale entries.
+   */
+  public static void invalidate( final String instanceId, final String... addresses ) {
+    markInvalidated( instanceId, addresses );
+    try {
+      Entities.registerSynchronization( VmInstance.class, new Synchronization( ) {
+        @Override
+        public void beforeCompletion( ) {
+        }
+
+        @Override
+        public void afterCompletion( final int status ) {
+          if ( Status.STATUS_COMMITTED == status ) {
+            markInvalidated( instanceId, addresses );
+          }
+        }
+      } );
+    } catch ( final Exception e ) {
+      // no active transaction
+    }
+  }
+
+  static int getInvalidatedCount( ) {
+    return invalidated.size( );
+  }
+
+  /**
+   * Time since the index was last rebuilt, -1 if not built.
+   */
+  static long getRefreshLag( ) {
+    final Index current = index;
+    return current == null ? -1 : System.currentTimeMillis( ) - current.timestamp;
+  }
+
+  /**
+   * Get the index if it can be used for the given address, callers record a
+   * hit when the index is used.
+   */
+  private static Index lookupIndex( final String ip ) {
+    lastUsed = System.currentTimeMillis( );
+    final Index current = index;
+    if ( current == null || invalidated.containsKey( ip ) ) {
+      statistics.miss( );
+      return null;
+    }
+    return current;
+  }
+
+  private static void markInvalidated( final String instanceId, final String... addresses ) {
+    if ( !Strings.isNullOrEmpty( instanceId ) ) {
+      invalidated.put( instanceId, invalidations.incrementAndGet( ) );
+    }
+    for ( final String address : addresses ) {
+      if ( isAddress( address ) ) {
+        invalidated.put( address, invalidations.incrementAndGet( ) );
+      }
+    }
+  }
+
+  private static boolean isAddress( final String address ) {
+    return !Strings.isNullOrEmpty( address ) && !VmNetworkConfig.DEFAULT_IP.equals( address );
+  }
+
+  static void refresh( ) {
+    final long timestamp = System.currentTimeMillis( );
+    final long invalidation = invalidations.get( );
+    final Map<String, InstanceAddresses> byPublicIp = Maps.newHashMap( );
+    final Map<String, InstanceAddresses> byPrivateIp = Maps.newHashMap( );
+    try ( final TransactionResource tx = Entities.readOnlyDistinctTransactionFor( VmInstance.class ) ) {
+      @SuppressWarnings( "unchecked" )
+      final List<Object[]> rows = ( List<Object[]> ) Entities.createCriteria( VmInstance.class )
+          .add( VmInstance.criterion( VmState.RUNNING, VmState.PENDING ) )
+          .setProjection( Projections.projectionList( )
+              .add( Projections.property( "displayName" ) )
+              .add( Projections.property( "networkConfig.privateAddress" ) )
+              .add( Projections.property( "networkConfig.publicAddress" ) ) )
+          .setReadOnly( true )
+          .list( );
+      for ( final Object[] row : rows ) {
+        final InstanceAddresses addresses = new InstanceAddresses( (String) row[0], (String) row[1], (String) row[2] );
+        if ( isAddress( addresses.getPrivateAddress( ) ) ) {
+          byPrivateIp.put( addresses.getPrivateAddress( ), addresses );
+        }
+        if ( isAddress( addresses.getPublicAddress( ) ) ) {
+          byPublicIp.put( addresses.getPublicAddress( ), addresses );
+        }
+      }
+    }
+    index = new Index( byPublicIp, byPrivateIp, timestamp );
+    for ( final Map.Entry<String, Long> entry : invalidated.entrySet( ) ) {
+      if ( entry.getValue( ) <= invalidation ) {
+        invalidated.remove( entry.getKey( ), entry.getValue( ) );
+      }
+    }
+    Logs.extreme( ).debug( "Instance address index rebuilt with " + byPrivateIp.size( ) + " private and " + byPublicIp.size( )
+        + " public addresses, hits " + statistics.getHits( ) + " misses " + statistics.getMisses( ) );
+  }
+
+  public static final class InstanceAddresses {
+    private final String instanceId;
+    private final String privateAddress;
+    private final String publicAddress;
+
+    public InstanceAddresses( final String instanceId, final String privateAddress, final String publicAddress ) {
+      this.instanceId = instanceId;
+      this.privateAddress = privateAddress;
+      this.publicAddress = publicAddress;
+    }
+
+    public String getInstanceId( ) {
+      return instanceId;
+    }
+
+    public String getPrivateAddress( ) {
+      return privateAddress;
+    }
+
+    public String getPublicAddress( ) {
+      return publicAddress;
+    }
+  }
+
+  private static final class Index {
+    private final Map<String, InstanceAddresses> byPublicIp;
+    private final Map<String, InstanceAddresses> byPrivateIp;
+    private final long timestamp;
+
+    private Index( final Map<String, InstanceAddresses> byPublicIp,
+                   final Map<String, InstanceAddresses> byPrivateIp,
+                   final long timestamp ) {
+      this.byPublicIp = ImmutableMap.copyOf( byPublicIp );
+      this.byPrivateIp = ImmutableMap.copyOf( byPrivateIp );
+      this.timestamp = timestamp;
+    }
+  }
+
+  public static class InstanceAddressIndexEventListener implements EventListener<ClockTick>, Callable<Boolean> {
+    private static final AtomicBoolean ready = new AtomicBoolean( true );
+
+    public static void register( ) {
+      Listeners.register( ClockTick.class, new InstanceAddressIndexEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final ClockTick event ) {
+      if ( !Bootstrap.isOperational( ) ) {
+        return;
+      }
+      if ( System.currentTimeMillis( ) - lastUsed > IDLE_TIMEOUT ) {
+        index = null; // not used for DNS on this host, or not recently
+      } else if ( ready.compareAndSet( true, false ) ) {
+        try {
+          Threads.enqueue( Eucalyptus.class, InstanceAddressIndex.class, this );
+        } catch ( final Exception ex ) {
+          ready.set( true );
+        }
+      }
+    }
+
+    @Override
+    public Boolean call( ) throws Exception {
+      try {
+        refresh( );
+      } catch ( final Exception ex ) {
+        LOG.error( "Error rebuilding instance address index", ex );
+      } finally {
+        ready.set( true );
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.vm.dns;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics for the instance address index.
+ */
+public class InstanceAddressIndexStatistics {
+
+  private final AtomicLong hits = new AtomicLong( );
+  private final AtomicLong misses = new AtomicLong( );
+
+  void hit( ) {
+    hits.incrementAndGet( );
+  }
+
+  void miss( ) {
+    misses.incrementAndGet( );
+  }
+
+  /**
+   * Lookups answered from the index.
+   */
+  public long getHits( ) {
+    return hits.get( );
+  }
+
+  /**
+   * Lookups answered from the database.
+   */
+  public long getMisses( ) {
+    return misses.get( );
+  }
+
+  public double getHitRate( ) {
+    final long hits = this.hits.get( );
+    final long requests = hits + misses.get( );
+    return requests == 0 ? 0d : (double) hits / requests;
+  }
+
+  /**
+   * Instances and addresses resolved from the database until the next rebuild.
+   */
+  public int getInvalidatedCount( ) {
+    return InstanceAddressIndex.getInvalidatedCount( );
+  }
+
+  /**
+   * Time in milliseconds since the index was last rebuilt, -1 if not built.
+   */
+  public long getRefreshLag( ) {
+    return InstanceAddressIndex.getRefreshLag( );
+  }
+}
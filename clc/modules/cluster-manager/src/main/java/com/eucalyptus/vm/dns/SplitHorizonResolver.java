@@ -85,8 +85,6 @@ import com.eucalyptus.util.dns.DnsResolvers.DnsResolver;
 import com.eucalyptus.util.dns.DnsResolvers.DnsResponse;
 import com.eucalyptus.util.dns.DnsResolvers.RequestType;
 import com.eucalyptus.util.dns.DomainNameRecords;
-import com.eucalyptus.compute.common.internal.vm.VmInstance;
-import com.eucalyptus.vm.VmInstances;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.net.InetAddresses;
@@ -123,7 +121,7 @@ public abstract class SplitHorizonResolver implements DnsResolver {
         return true;
       } else {
         try {
-          VmInstances.lookupByPublicIp( input.getHostAddress( ) );
+          InstanceAddressIndex.lookupByPublicIp( input.getHostAddress( ) );
           return true;
         } catch ( NoSuchElementException ex1 ) {
           for ( final ServiceConfiguration clusterService : ServiceConfigurations.list( ClusterController.class ) ) {
@@ -164,10 +162,10 @@ public abstract class SplitHorizonResolver implements DnsResolver {
       if ( InstanceDomainNames.isInstance( ip ) ) {
         final String hostAddress = ip.getHostAddress( );
         if ( Addresses.getInstance( ).contains( hostAddress ) ) {
-          VmInstances.lookupByPublicIp( hostAddress );//existence check
+          InstanceAddressIndex.lookupByPublicIp( hostAddress );//existence check
           final Name dnsName = InstanceDomainNames.fromInetAddress( InstanceDomainNames.EXTERNAL, ip );
           return DnsResponse.forName( query.getName( ) ).answer( DomainNameRecords.ptrRecord( dnsName, ip ) );
-        } else if ( VmInstances.privateIpInUse( hostAddress ) ) {
+        } else if ( InstanceAddressIndex.privateIpInUse( hostAddress ) ) {
           final Name dnsName = InstanceDomainNames.fromInetAddress( InstanceDomainNames.INTERNAL, ip );
           return DnsResponse.forName( query.getName( ) ).answer( DomainNameRecords.ptrRecord( dnsName, ip ) );
         }
@@ -186,7 +184,7 @@ public abstract class SplitHorizonResolver implements DnsResolver {
           final Name name = query.getName( );
           final Name instanceDomain = InstanceDomainNames.lookupInstanceDomain( name );
           final InetAddress ip = InstanceDomainNames.toInetAddress( name.relativize( instanceDomain ) );
-          if ( VmInstances.privateIpInUse( ip.getHostAddress( ) ) ) {
+          if ( InstanceAddressIndex.privateIpInUse( ip.getHostAddress( ) ) ) {
             final Record aRecord = DomainNameRecords.addressRecord( name, ip );
             return DnsResponse.forName( name ).answer( aRecord );
           }
@@ -229,9 +227,8 @@ public abstract class SplitHorizonResolver implements DnsResolver {
         try {
           final Name name = query.getName( );
           final InetAddress requestIp = InstanceDomainNames.toInetAddress( name.relativize( InstanceDomainNames.EXTERNAL.get( ) ) );
-          //GRZE: here it is not necessary to lookup the instance -- they public address assignment must have the needed information
-          final VmInstance vm = VmInstances.lookupByPublicIp( requestIp.getHostAddress( ) );
-          final InetAddress instanceAddress = InetAddresses.forString( vm.getPrivateAddress( ) );
+          final InstanceAddressIndex.InstanceAddresses addresses = InstanceAddressIndex.lookupByPublicIp( requestIp.getHostAddress( ) );
+          final InetAddress instanceAddress = InetAddresses.forString( addresses.getPrivateAddress( ) );
           final Record instanceARecord = DomainNameRecords.addressRecord( name, instanceAddress );
           return DnsResponse.forName( name ).answer( instanceARecord );
         } catch ( Exception ex ) {
@@ -262,7 +259,7 @@ public abstract class SplitHorizonResolver implements DnsResolver {
         try {
           final Name name = query.getName( );
           final InetAddress requestIp = InstanceDomainNames.toInetAddress( name.relativize( InstanceDomainNames.EXTERNAL.get( ) ) );
-          VmInstances.lookupByPublicIp( requestIp.getHostAddress( ) ); // Ensure used by instance
+          InstanceAddressIndex.lookupByPublicIp( requestIp.getHostAddress( ) ); // Ensure used by instance
           final Record instanceARecord = DomainNameRecords.addressRecord( name, requestIp );
           return DnsResponse.forName( name ).answer( instanceARecord );
         } catch ( Exception ex ) {
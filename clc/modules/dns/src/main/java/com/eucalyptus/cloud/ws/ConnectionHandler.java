@@ -96,7 +96,6 @@ package com.eucalyptus.cloud.ws;
 import static com.eucalyptus.util.dns.DnsResolvers.DnsRequest;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.Socket;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -128,7 +127,7 @@ import com.eucalyptus.util.dns.DnsResolvers;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 
-public class ConnectionHandler extends Thread {
+public class ConnectionHandler {
 
 	static final int FLAG_DNSSECOK = 1;
 	static final int FLAG_SIGONLY = 2;
@@ -136,7 +135,7 @@ public class ConnectionHandler extends Thread {
 	Map caches = new ConcurrentHashMap();
 
 	byte []
-	      generateReply(Message query, byte [] in, int length, Socket s)
+	      generateReply(Message query, byte [] in, int length, boolean tcp)
 	throws IOException
 	{
 		Header header;
@@ -161,7 +160,7 @@ public class ConnectionHandler extends Thread {
 		if (queryOPT != null && queryOPT.getVersion() > 0)
 			badversion = true;
 
-		if (s != null)
+		if (tcp)
 			maxLength = 65535;
 		else if (queryOPT != null)
 			maxLength = Math.max(queryOPT.getPayloadSize(), 512);
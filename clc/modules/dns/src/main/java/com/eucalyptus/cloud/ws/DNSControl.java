@@ -62,13 +62,11 @@
 
 package com.eucalyptus.cloud.ws;
 
-import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
@@ -99,8 +97,6 @@ import org.jboss.netty.channel.socket.DatagramChannelFactory;
 import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
-import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
-import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
 import org.jboss.netty.handler.execution.ExecutionHandler;
 
 import org.xbill.DNS.ResolverConfig;
@@ -118,7 +114,6 @@ import com.google.common.base.Predicates;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
 @ConfigurableClass( root = "dns", description = "Controls dns listeners." )
@@ -128,16 +123,12 @@ public class DNSControl {
 	private static final AtomicReference<Collection<Cidr>> addressMatchers =
 			new AtomicReference<Collection<Cidr>>( Collections.<Cidr>emptySet( ) );
 	
-	private static final AtomicReference<Collection<TCPListener>> tcpListenerRef =
-			new AtomicReference<Collection<TCPListener>>( Collections.<TCPListener>emptySet( ) );
-
 	private static final Lock listenerLock = new ReentrantLock( );
 	
   @ConfigurableField( description = "Server worker thread pool max.",
       changeListener = WebServices.CheckNonNegativeIntegerPropertyChangeListener.class )
   public static Integer       SERVER_POOL_MAX_THREADS           = 512;
 
-  /// OBSOLETE if/when TCP listener becomes Netty based
 	@ConfigurableField( displayName = "dns_listener_address_match",
 			description = "Additional address patterns to listen on for DNS requests.",
 			initial = "",
@@ -236,6 +227,7 @@ public class DNSControl {
   private static DatagramChannelFactory udpChannelFactory = null;
   private static ServerSocketChannelFactory tcpChannelFactory = null;
   private static ExecutionHandler udpExecHandler = null;
+  private static ExecutionHandler tcpExecHandler = null;
   private static Executor createWorkerPool() {
      final Executor executor =
          Executors.newFixedThreadPool(SERVER_POOL_MAX_THREADS);
@@ -331,105 +323,65 @@ public class DNSControl {
 	  }
 	}
 
-	private static void initializeTCP() throws Exception{
-	  initializeTCPSocket();
-	}
-	
-	private static void initializeTCPSocket( ) throws Exception{
-	  initializeListeners( tcpListenerRef, "TCP", new ListenerBuilder<TCPListener>() {
-      @Override
-      public TCPListener build( final InetAddress address, final int port ) throws IOException {
-        return new TCPListener( address, port );
-      }
-    });
-	}
-	
-	private static void initializeTCPNetty() throws Exception {
-	  // currently there's an issue with bind() throwing Socket permission exception
-	  // due to the port < 1024
-	  if(tcpChannelFactory == null){
-	    try{
-	      tcpChannelFactory = 
-	          new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), 
-	              createWorkerPool());
-	      final ServerBootstrap b = new ServerBootstrap(tcpChannelFactory);
-	      b.setPipelineFactory(new ChannelPipelineFactory() {
-	        public ChannelPipeline getPipeline() throws Exception {
-	          ChannelPipeline p = Channels.pipeline();
-	          p.addLast("framer", new LengthFieldBasedFrameDecoder(65536, 0, 2, 0, 2));
-	          p.addLast("prepender", new LengthFieldPrepender(2));
-	          p.addLast("dns-server", new DnsServerHandler());
-	          return p;
-	        }
-	      });
-	      b.setOption( "child.tcpNoDelay", true );
-	      b.setOption( "child.keepAlive", false );
-	      b.setOption( "child.reuseAddress", true );
-	      b.setOption( "child.connectTimeoutMillis", 3000 ); 
-	      b.setOption("tcpNoDelay", true);
-	      b.setOption("keepAlive", false);
-	      b.setOption("reuseAddress", true);
-	      b.setOption("connectTimeoutMillis", 3000);
-	      Capabilities.runWithCapabilities( new Callable<Boolean>() {
-	        @Override
-	        public Boolean call() throws Exception {
-	          final Channel tcpChannel = b.bind(new InetSocketAddress(53));
-	          tcpChannelGroup.add(tcpChannel);
-	          return true;
-	        }
-	      });
-	    }catch(final Exception ex) {
-	      LOG.debug(ex,ex);
-	      tcpChannelGroup.close().awaitUninterruptibly();
-	      if(tcpChannelFactory!=null)
-	        tcpChannelFactory.releaseExternalResources();
-	      tcpChannelFactory = null;
-	      throw ex;
-	    }
-	  }
-	}
-
-	private static <T extends Thread> void initializeListeners(
-			final AtomicReference<Collection<T>> listenerRef,
-			final String description,
-			final ListenerBuilder<T> builder
-	) {
+	private static void initializeTCP( ) throws Exception {
 		try ( final LockResource lock = LockResource.lock( listenerLock ) ) {
-			if ( listenerRef.get( ).isEmpty( ) ) {
-				final int listenPort = DNSProperties.PORT;
-				final Set<InetAddress> listenAddresses = Sets.newLinkedHashSet( );
-				listenAddresses.add( Internets.localHostInetAddress( ) );
-				Iterables.addAll(
-						listenAddresses,
-						Iterables.filter( Internets.getAllInetAddresses( ), Predicates.or( addressMatchers.get( ) ) ) );
-				LOG.info( "Starting DNS " + description + " listeners on " + listenAddresses + ":" + listenPort );
+			if ( tcpChannelFactory == null ) {
+				try {
+					tcpChannelFactory = new NioServerSocketChannelFactory(
+							Executors.newCachedThreadPool( ),
+							Executors.newCachedThreadPool( ) );
+					tcpExecHandler = new ExecutionHandler( createWorkerPool( ) );
+					final ServerBootstrap b = new ServerBootstrap( tcpChannelFactory );
+					b.setPipelineFactory( new DnsTcpPipelineFactory( tcpChannelGroup, tcpExecHandler ) );
+					b.setOption( "child.tcpNoDelay", true );
+					b.setOption( "child.keepAlive", false );
+					b.setOption( "reuseAddress", true );
+					b.setOption( "backlog", 128 );
 
-				// Configured listeners
-				final List<T> listeners = Lists.newArrayList( );
-				for ( final InetAddress listenAddress : listenAddresses ) {
-					try {
-						final T listener = Capabilities.runWithCapabilities( new Callable<T>() {
-							@Override
-							public T call() throws Exception {
-								final T listener = builder.build( listenAddress, listenPort );
-								listener.start( );
-								return listener;
-							}
-						} );
-						listeners.add( listener );
-					} catch( final Exception ex ) {
-						LOG.error( "Error starting DNS "+description+" listener on "+listenAddress+":"+listenPort, ex );
+					final int listenPort = DNSProperties.PORT;
+					final Set<InetAddress> listenAddresses = Sets.newLinkedHashSet( );
+					listenAddresses.add( Internets.localHostInetAddress( ) );
+					Iterables.addAll(
+							listenAddresses,
+							Iterables.filter( Internets.getAllInetAddresses( ), Predicates.or( addressMatchers.get( ) ) ) );
+					LOG.info( "Starting DNS TCP listeners on " + listenAddresses + ":" + listenPort );
+					for ( final InetAddress listenAddress : listenAddresses ) {
+						try {
+							Capabilities.runWithCapabilities( new Callable<Boolean>( ) {
+								@Override
+								public Boolean call( ) throws Exception {
+									tcpChannelGroup.add( b.bind( new InetSocketAddress( listenAddress, listenPort ) ) );
+									return true;
+								}
+							} );
+						} catch ( final Exception ex ) {
+							LOG.error( "Error starting DNS TCP listener on " + listenAddress + ":" + listenPort, ex );
+						}
 					}
+				} catch ( final Exception ex ) {
+					LOG.debug( "Failed initializing DNS tcp listener", ex );
+					stopTCP( );
+					throw ex;
 				}
-				listenerRef.set( ImmutableList.copyOf( listeners ) );
 			}
 		}
 	}
 
-	private interface ListenerBuilder<T> {
-		T build( InetAddress address, int port ) throws IOException;
+	/**
+	 * Close the listeners and all accepted connections, then release resources.
+	 */
+	private static void stopTCP( ) {
+		tcpChannelGroup.close( ).awaitUninterruptibly( );
+		if ( tcpChannelFactory != null ) {
+			tcpChannelFactory.releaseExternalResources( );
+			tcpChannelFactory = null;
+		}
+		if ( tcpExecHandler != null ) {
+			tcpExecHandler.releaseExternalResources( );
+			tcpExecHandler = null;
+		}
 	}
-	
+
 	public static void initialize() throws Exception {
 		try {
 		  initializeUDP();
@@ -451,12 +403,9 @@ public class DNSControl {
 		    udpChannelFactory.releaseExternalResources( );
 		    udpChannelFactory = null;
 		  }
-		  /* if(tcpChannelGroup!=null)
-		    tcpChannelGroup.close().awaitUninterruptibly();
-		  if(tcpChannelFactory!=null) {
-		    tcpChannelFactory.releaseExternalResources();
-		    tcpChannelFactory = null;
-		  }*/
+		  try ( final LockResource lock = LockResource.lock( listenerLock ) ) {
+		    stopTCP( );
+		  }
 	}
 
 	public static void restart()  throws Exception {
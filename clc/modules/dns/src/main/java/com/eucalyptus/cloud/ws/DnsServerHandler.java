@@ -40,6 +40,18 @@ public class DnsServerHandler extends SimpleChannelUpstreamHandler {
   private static final ConnectionHandler legacyDns = new ConnectionHandler();
   
   private Long DISCARD_REQUEST_AFTER_MS = 10000L;
+  private final boolean tcp;
+
+  public DnsServerHandler( ) {
+    this( false );
+  }
+
+  /**
+   * @param tcp True if replies are sent on a stream so need not be truncated
+   */
+  public DnsServerHandler( final boolean tcp ) {
+    this.tcp = tcp;
+  }
   
   @Override
   public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
@@ -55,7 +67,7 @@ public class DnsServerHandler extends SimpleChannelUpstreamHandler {
       }else {
         final ChannelBuffer buffer = ((ChannelBuffer) e.getMessage());
         inbuf = new byte[buffer.readableBytes( )];
-        buffer.getBytes( 0, inbuf );
+        buffer.getBytes( buffer.readerIndex( ), inbuf );
       }
       
       Message query = new Message(inbuf);
@@ -63,7 +75,7 @@ public class DnsServerHandler extends SimpleChannelUpstreamHandler {
       final InetAddress remoteAddr = ((InetSocketAddress) e.getRemoteAddress()).getAddress();
       ConnectionHandler.setLocalAndRemoteInetAddresses(localAddr, remoteAddr );
       try {
-        byte[] outbuf = legacyDns.generateReply( query, inbuf, inbuf.length, null );
+        byte[] outbuf = legacyDns.generateReply( query, inbuf, inbuf.length, tcp );
         ChannelBuffer chanOutBuf = ChannelBuffers.wrappedBuffer( outbuf );
         ctx.getChannel().write(chanOutBuf,e.getRemoteAddress( ));
         return;
@@ -73,6 +85,7 @@ public class DnsServerHandler extends SimpleChannelUpstreamHandler {
         LOG.info(outbuf);
         ChannelBuffer chanOutBuf = ChannelBuffers.wrappedBuffer( outbuf );
         ctx.getChannel().write(chanOutBuf,e.getRemoteAddress( ));
+        if ( tcp ) return; // reply sent, keep the connection for further queries
         throw ex;
       } finally {
         ConnectionHandler.clearInetAddresses();
@@ -83,6 +96,7 @@ public class DnsServerHandler extends SimpleChannelUpstreamHandler {
       LOG.info(outbuf);
       ChannelBuffer chanOutBuf = ChannelBuffers.wrappedBuffer( outbuf );
       ctx.getChannel().write(chanOutBuf,e.getRemoteAddress( ));
+      if ( tcp ) return; // reply sent, the stream framing is still intact
       throw ex;
     }
   }
@@ -90,7 +104,11 @@ public class DnsServerHandler extends SimpleChannelUpstreamHandler {
   @Override
   public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e)
   throws Exception {
-    e.getCause().printStackTrace();
+    if ( tcp ) {
+      LOG.debug( "Closing DNS TCP connection due to error: " + e.getCause( ) );
+    } else {
+      e.getCause().printStackTrace();
+    }
     e.getChannel().close();
   }
 }
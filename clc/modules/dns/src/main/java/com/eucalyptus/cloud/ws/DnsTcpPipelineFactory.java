@@ -0,0 +1,124 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloud.ws;
+
+import java.util.concurrent.TimeUnit;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.timeout.IdleState;
+import org.jboss.netty.handler.timeout.IdleStateAwareChannelHandler;
+import org.jboss.netty.handler.timeout.IdleStateEvent;
+import org.jboss.netty.handler.timeout.IdleStateHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
+import com.google.common.base.Supplier;
+
+/**
+ * Pipeline for DNS over TCP.
+ *
+ * Messages are framed with a two byte length prefix. A client may send
+ * several queries on a connection without waiting for replies, queries are
+ * answered as they complete and matched by the client using the message id.
+ * Connections with no activity are closed after the configured timeout.
+ * Accepted connections are added to the channel group so they are closed
+ * when the listeners are stopped.
+ */
+@ConfigurableClass( root = "dns.tcp",
+        description = "Handles dns TCP requests." )
+public class DnsTcpPipelineFactory implements ChannelPipelineFactory {
+  @ConfigurableField( description = "Parameter controlling tcp handler timeout in seconds." )
+  public static Integer timeout_seconds = 30;
+
+  private static final int MAX_MESSAGE_LENGTH = 65535;
+  private static final int LENGTH_FIELD_LENGTH = 2;
+  private static final Timer timer = new HashedWheelTimer( );
+  private static final IdleCloser idleCloser = new IdleCloser( );
+
+  private final ChannelHandler channelGroupHandler;
+  private final ExecutionHandler executionHandler;
+  private final Supplier<? extends ChannelHandler> dnsHandlerSupplier;
+
+  DnsTcpPipelineFactory( final ChannelGroup channelGroup,
+                         final ExecutionHandler executionHandler ) {
+    this( channelGroup, executionHandler, new Supplier<ChannelHandler>( ) {
+      @Override
+      public ChannelHandler get( ) {
+        return new DnsServerHandler( true );
+      }
+    } );
+  }
+
+  DnsTcpPipelineFactory( final ChannelGroup channelGroup,
+                         final ExecutionHandler executionHandler,
+                         final Supplier<? extends ChannelHandler> dnsHandlerSupplier ) {
+    this.channelGroupHandler = new ChannelGroupHandler( channelGroup );
+    this.executionHandler = executionHandler;
+    this.dnsHandlerSupplier = dnsHandlerSupplier;
+  }
+
+  @Override
+  public ChannelPipeline getPipeline( ) throws Exception {
+    final ChannelPipeline pipeline = Channels.pipeline( );
+    pipeline.addLast( "channelgroup", channelGroupHandler );
+    pipeline.addLast( "idlehandler", new IdleStateHandler( timer, 0, 0, timeout_seconds, TimeUnit.SECONDS ) );
+    pipeline.addLast( "idlecloser", idleCloser );
+    pipeline.addLast( "framer", new LengthFieldBasedFrameDecoder(
+        MAX_MESSAGE_LENGTH + LENGTH_FIELD_LENGTH, 0, LENGTH_FIELD_LENGTH, 0, LENGTH_FIELD_LENGTH ) );
+    pipeline.addLast( "prepender", new LengthFieldPrepender( LENGTH_FIELD_LENGTH ) );
+    pipeline.addLast( "execution", executionHandler );
+    pipeline.addLast( "dns-server", dnsHandlerSupplier.get( ) );
+    return pipeline;
+  }
+
+  @ChannelHandler.Sharable
+  private static final class ChannelGroupHandler extends SimpleChannelUpstreamHandler {
+    private final ChannelGroup channelGroup;
+
+    private ChannelGroupHandler( final ChannelGroup channelGroup ) {
+      this.channelGroup = channelGroup;
+    }
+
+    @Override
+    public void channelOpen( final ChannelHandlerContext ctx, final ChannelStateEvent e ) throws Exception {
+      channelGroup.add( ctx.getChannel( ) );
+      super.channelOpen( ctx, e );
+    }
+  }
+
+  private static final class IdleCloser extends IdleStateAwareChannelHandler {
+    @Override
+    public void channelIdle( final ChannelHandlerContext ctx, final IdleStateEvent e ) {
+      if ( e.getState( ) == IdleState.ALL_IDLE ) {
+        e.getChannel( ).close( );
+      }
+    }
+  }
+}
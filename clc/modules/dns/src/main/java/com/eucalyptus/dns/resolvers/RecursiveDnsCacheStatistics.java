@@ -0,0 +1,78 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.dns.resolvers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.xbill.DNS.Cache;
+
+/**
+ * Statistics for the recursive resolver cache.
+ */
+public class RecursiveDnsCacheStatistics {
+
+  private final Cache cache;
+  private final AtomicLong hits = new AtomicLong( );
+  private final AtomicLong negativeHits = new AtomicLong( );
+  private final AtomicLong misses = new AtomicLong( );
+
+  RecursiveDnsCacheStatistics( final Cache cache ) {
+    this.cache = cache;
+  }
+
+  void hit( final boolean negative ) {
+    ( negative ? negativeHits : hits ).incrementAndGet( );
+  }
+
+  void miss( ) {
+    misses.incrementAndGet( );
+  }
+
+  /**
+   * Number of cached names.
+   */
+  public long getSize( ) {
+    return cache.getSize( );
+  }
+
+  public long getMaxEntries( ) {
+    return cache.getMaxEntries( );
+  }
+
+  public long getHits( ) {
+    return hits.get( );
+  }
+
+  /**
+   * Queries answered from a cached NXDOMAIN or no data response.
+   */
+  public long getNegativeHits( ) {
+    return negativeHits.get( );
+  }
+
+  public long getMisses( ) {
+    return misses.get( );
+  }
+
+  public double getHitRate( ) {
+    final long hits = this.hits.get( ) + negativeHits.get( );
+    final long requests = hits + misses.get( );
+    return requests == 0 ? 0d : (double) hits / requests;
+  }
+}
@@ -64,37 +64,44 @@ package com.eucalyptus.dns.resolvers;
 
 import static com.eucalyptus.util.dns.DnsResolvers.DnsRequest;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.xbill.DNS.CNAMERecord;
 import org.xbill.DNS.Cache;
-import org.xbill.DNS.Credibility;
 import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Message;
 import org.xbill.DNS.NSRecord;
 import org.xbill.DNS.Name;
-import org.xbill.DNS.RRset;
 import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
 import org.xbill.DNS.SetResponse;
+import org.xbill.DNS.TSIG;
 import org.xbill.DNS.Type;
 
 import com.eucalyptus.bootstrap.Bootstrap;
 import com.eucalyptus.configurable.ConfigurableClass;
 import com.eucalyptus.configurable.ConfigurableField;
+import com.eucalyptus.configurable.ConfigurableProperty;
+import com.eucalyptus.configurable.ConfigurablePropertyException;
+import com.eucalyptus.configurable.PropertyChangeListener;
+import com.eucalyptus.util.Mbeans;
 import com.eucalyptus.util.Subnets;
 import com.eucalyptus.util.dns.DnsResolvers.DnsResolver;
 import com.eucalyptus.util.dns.DnsResolvers.DnsResponse;
 import com.eucalyptus.util.dns.DnsResolvers.RequestType;
 import com.eucalyptus.util.dns.DomainNameRecords;
 import com.eucalyptus.util.dns.DomainNames;
-import com.eucalyptus.compute.common.internal.vm.VmInstance;
-import com.eucalyptus.vm.VmInstances;
+import com.eucalyptus.vm.dns.InstanceAddressIndex;
 import com.eucalyptus.vm.dns.InstanceDomainNames;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.net.InetAddresses;
 
@@ -119,6 +126,42 @@ public class RecursiveDnsResolver implements DnsResolver {
   private static Logger LOG = Logger.getLogger( RecursiveDnsResolver.class );
   @ConfigurableField( description = "Enable the recursive DNS resolver.  Note: dns.enable must also be 'true'" )
   public static Boolean enabled = Boolean.TRUE;
+
+  @ConfigurableField( description = "Maximum number of names in the recursive resolver cache.", initial = "50000",
+      changeListener = CacheMaxEntriesChangeListener.class )
+  public static Integer cache_max_entries = 50000;
+
+  @ConfigurableField( description = "Maximum time in seconds to cache negative recursive resolver responses.", initial = "300",
+      changeListener = CacheMaxNegativeTtlChangeListener.class )
+  public static Integer cache_max_negative_ttl = 300;
+
+  /**
+   * The cache shared by all requests, records are held for at most their TTL.
+   */
+  private static final Cache cache = new Cache( );
+  private static final RecursiveDnsCacheStatistics statistics = new RecursiveDnsCacheStatistics( cache );
+
+  static {
+    cache.setMaxEntries( cache_max_entries );
+    cache.setMaxNCache( cache_max_negative_ttl );
+    Mbeans.register( statistics );
+  }
+
+  /**
+   * Record use of the cache by a lookup, the lookup was answered from the
+   * cache if no query was sent.
+   */
+  private static void recordCacheUsage( final Lookup lookup, final QueryTrackingResolver resolver ) {
+    if ( resolver.isQueried( ) ) {
+      statistics.miss( );
+    } else if ( lookup.getResult( ) == Lookup.SUCCESSFUL ) {
+      statistics.hit( false );
+    } else if ( lookup.getResult( ) == Lookup.HOST_NOT_FOUND || lookup.getResult( ) == Lookup.TYPE_NOT_FOUND ) {
+      statistics.hit( true );
+    } else {
+      statistics.miss( );
+    }
+  }
   
   private static List<Name> subdomainsForName( Name name ) {
     final List<Name> names = Lists.newArrayList( name );
@@ -153,14 +196,15 @@ public class RecursiveDnsResolver implements DnsResolver {
     final Record query = request.getQuery( );
     final Name name = query.getName( );
     final int type = query.getType( );
-    final Cache cache = new Cache( );
+    final QueryTrackingResolver resolver = new QueryTrackingResolver( Lookup.getDefaultResolver( ) );
+    final CnameTrackingCache lookupCache = new CnameTrackingCache( cache );
     Lookup aLookup = new Lookup( name, type );
-    aLookup.setCache( cache );
+    aLookup.setCache( lookupCache );
+    aLookup.setResolver( resolver );
     Record[] found = aLookup.run( );
+    recordCacheUsage( aLookup, resolver );
     List<Record> queriedrrs = Arrays.asList( found != null
       ? found : new Record[] {} );
-    List<Name> cnames = ( List<Name> ) ( aLookup.getAliases( ).length > 0
-      ? Arrays.asList( aLookup.getAliases( ) ) : Lists.newArrayList( ) );
     final Set<Record> answer = Sets.newLinkedHashSet( );
     final Set<Record> authority = Sets.newLinkedHashSet( );
     final Set<Record> additional = Sets.newLinkedHashSet( );
@@ -181,48 +225,29 @@ public class RecursiveDnsResolver implements DnsResolver {
       }
     }
      
-    for ( Name cnameRec : cnames ) {
-      SetResponse sr = cache.lookupRecords( cnameRec, Type.CNAME, Credibility.ANY );
-      if ( sr != null && sr.isSuccessful( ) && sr.answers( ) != null ) {
-        for ( RRset result : sr.answers( ) ) {
-          Iterator rrs = result.rrs( false );
-          if ( rrs != null ) {
-            for ( Object record : ImmutableSet.copyOf( rrs ) ) {
-              answer.add( ( Record ) record );
-            }
-          }
-        }
+    // answer with the records read by the lookup, the shared cache may have changed since
+    for ( Name alias : aLookup.getAliases( ) ) {
+      final CNAMERecord cname = lookupCache.getCname( alias );
+      if ( cname != null ) {
+        answer.add( cname );
       }
     }
    
-    for ( Record queriedRec : queriedrrs ) {
-      SetResponse sr = cache.lookupRecords( queriedRec.getName( ),
-        queriedRec.getType( ),
-        Credibility.ANY );
-      if ( sr != null && sr.isSuccessful( ) && sr.answers( ) != null ) {
-        for ( RRset result : sr.answers( ) ) {
-          Iterator rrs = result.rrs( false );
-          if ( rrs != null ) {
-            for ( Object record : ImmutableSet.copyOf( rrs ) ) {
-              if(iamAuthority && DomainNames.isExternalSubdomain(((Record)record).getName())){
-                final Name resolvedName = ((Record)record).getName();
-                final Name instanceDomain = InstanceDomainNames.lookupInstanceDomain( resolvedName );
-                final InetAddress publicIp = InstanceDomainNames.toInetAddress( resolvedName.relativize( instanceDomain ) );
-                try{
-                  final VmInstance vm = VmInstances.lookupByPublicIp( publicIp.getHostAddress( ) );
-                  final InetAddress instanceAddress = InetAddresses.forString( vm.getPrivateAddress( ) );
-                  final Record privateARecord = DomainNameRecords.addressRecord( resolvedName, instanceAddress );
-                  answer.add(privateARecord);
-                }catch(final Exception ex) {
-                  answer.add((Record) record);
-                  continue;
-                }
-              }else{
-                answer.add( ( Record ) record );
-              }
-            }
-          }
+    for ( Record record : queriedrrs ) {
+      if(iamAuthority && DomainNames.isExternalSubdomain(record.getName())){
+        final Name resolvedName = record.getName();
+        final Name instanceDomain = InstanceDomainNames.lookupInstanceDomain( resolvedName );
+        final InetAddress publicIp = InstanceDomainNames.toInetAddress( resolvedName.relativize( instanceDomain ) );
+        try{
+          final InstanceAddressIndex.InstanceAddresses addresses = InstanceAddressIndex.lookupByPublicIp( publicIp.getHostAddress( ) );
+          final InetAddress instanceAddress = InetAddresses.forString( addresses.getPrivateAddress( ) );
+          final Record privateARecord = DomainNameRecords.addressRecord( resolvedName, instanceAddress );
+          answer.add(privateARecord);
+        }catch(final Exception ex) {
+          answer.add(record);
         }
+      }else{
+        answer.add( record );
       }
     }
     
@@ -279,4 +304,148 @@ public class RecursiveDnsResolver implements DnsResolver {
   public String toString( ) {
     return this.getClass( ).getSimpleName( );
   }
+
+  private static int parseNonNegative( final Object newValue ) throws ConfigurablePropertyException {
+    final int value;
+    try {
+      value = Integer.parseInt( String.valueOf( newValue ) );
+    } catch ( final NumberFormatException e ) {
+      throw new ConfigurablePropertyException( "Invalid value " + newValue );
+    }
+    if ( value < 0 ) {
+      throw new ConfigurablePropertyException( "Invalid value " + newValue );
+    }
+    return value;
+  }
+
+  /**
+   * Applies changes to the maximum entries for the shared cache, cache
+   * methods synchronize on the cache.
+   */
+  public static class CacheMaxEntriesChangeListener implements PropertyChangeListener {
+    @Override
+    public void fireChange( final ConfigurableProperty t, final Object newValue ) throws ConfigurablePropertyException {
+      final int maxEntries = parseNonNegative( newValue );
+      synchronized ( cache ) {
+        cache.setMaxEntries( maxEntries );
+      }
+    }
+  }
+
+  /**
+   * Applies changes to the maximum negative response TTL for the shared cache.
+   */
+  public static class CacheMaxNegativeTtlChangeListener implements PropertyChangeListener {
+    @Override
+    public void fireChange( final ConfigurableProperty t, final Object newValue ) throws ConfigurablePropertyException {
+      final int maxNCache = parseNonNegative( newValue );
+      synchronized ( cache ) {
+        cache.setMaxNCache( maxNCache );
+      }
+    }
+  }
+
+  /**
+   * Cache for a single lookup that records the CNAME records the lookup
+   * follows, records are read from and added to the shared cache.
+   */
+  private static final class CnameTrackingCache extends Cache {
+    private final Cache cache;
+    private final Map<Name,CNAMERecord> cnames = Maps.newHashMap( );
+
+    private CnameTrackingCache( final Cache cache ) {
+      this.cache = cache;
+    }
+
+    CNAMERecord getCname( final Name name ) {
+      return cnames.get( name );
+    }
+
+    @Override
+    public SetResponse lookupRecords( final Name name, final int type, final int minCred ) {
+      return track( cache.lookupRecords( name, type, minCred ) );
+    }
+
+    @Override
+    public SetResponse addMessage( final Message message ) {
+      return track( cache.addMessage( message ) );
+    }
+
+    private SetResponse track( final SetResponse response ) {
+      if ( response != null && response.isCNAME( ) ) {
+        final CNAMERecord cname = response.getCNAME( );
+        cnames.put( cname.getName( ), cname );
+      }
+      return response;
+    }
+  }
+
+  /**
+   * Resolver that records whether a query was sent, a lookup that sends no
+   * query is answered from the cache.
+   */
+  private static final class QueryTrackingResolver implements Resolver {
+    private final Resolver resolver;
+    private volatile boolean queried;
+
+    private QueryTrackingResolver( final Resolver resolver ) {
+      this.resolver = resolver;
+    }
+
+    boolean isQueried( ) {
+      return queried;
+    }
+
+    @Override
+    public Message send( final Message query ) throws IOException {
+      queried = true;
+      return resolver.send( query );
+    }
+
+    @Override
+    public Object sendAsync( final Message query, final ResolverListener listener ) {
+      queried = true;
+      return resolver.sendAsync( query, listener );
+    }
+
+    @Override
+    public void setPort( final int port ) {
+      resolver.setPort( port );
+    }
+
+    @Override
+    public void setTCP( final boolean flag ) {
+      resolver.setTCP( flag );
+    }
+
+    @Override
+    public void setIgnoreTruncation( final boolean flag ) {
+      resolver.setIgnoreTruncation( flag );
+    }
+
+    @Override
+    public void setEDNS( final int level ) {
+      resolver.setEDNS( level );
+    }
+
+    @Override
+    public void setEDNS( final int level, final int payloadSize, final int flags, final List options ) {
+      resolver.setEDNS( level, payloadSize, flags, options );
+    }
+
+    @Override
+    public void setTSIGKey( final TSIG key ) {
+      resolver.setTSIGKey( key );
+    }
+
+    @Override
+    public void setTimeout( final int secs, final int msecs ) {
+      resolver.setTimeout( secs, msecs );
+    }
+
+    @Override
+    public void setTimeout( final int secs ) {
+      resolver.setTimeout( secs );
+    }
+  }
 }
@@ -0,0 +1,235 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloud.ws;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Drives UDP and TCP DNS queries at the DNS server handlers.
+ *
+ * By default servers are started on loopback using the same handlers as the
+ * DNS service. Set the dns.benchmark.host system property to send queries to
+ * a running DNS service instead (port 53 or dns.benchmark.port).
+ */
+@Ignore( "Manual benchmark" )
+public class DnsServerBenchmark {
+  private static final Logger LOG = Logger.getLogger( DnsServerBenchmark.class );
+  private static final int QUERIES = Integer.getInteger( "dns.benchmark.queries", 100000 );
+  private static final int CLIENTS = Integer.getInteger( "dns.benchmark.clients", 8 );
+  private static final int OUTSTANDING = Integer.getInteger( "dns.benchmark.outstanding", 32 );
+  private static final String QUERY_NAME = System.getProperty( "dns.benchmark.name", "localhost." );
+  private static final long REPLY_TIMEOUT_MILLIS = 2000;
+
+  @Test
+  public void benchmark( ) throws Exception {
+    final String host = System.getProperty( "dns.benchmark.host" );
+    if ( host != null ) {
+      final InetSocketAddress target = new InetSocketAddress( host, Integer.getInteger( "dns.benchmark.port", 53 ) );
+      run( "UDP", target, false );
+      run( "TCP", target, true );
+    } else {
+      final ExecutionHandler executionHandler = new ExecutionHandler( Executors.newFixedThreadPool( 64 ) );
+      final ConnectionlessBootstrap udpServer = new ConnectionlessBootstrap(
+          new NioDatagramChannelFactory( Executors.newCachedThreadPool( ) ) );
+      final ServerBootstrap tcpServer = new ServerBootstrap( new NioServerSocketChannelFactory(
+          Executors.newCachedThreadPool( ), Executors.newCachedThreadPool( ) ) );
+      try {
+        udpServer.setPipelineFactory( new ChannelPipelineFactory( ) {
+          @Override
+          public ChannelPipeline getPipeline( ) throws Exception {
+            return Channels.pipeline( executionHandler, new DnsServerHandler( ) );
+          }
+        } );
+        udpServer.setOption( "receiveBufferSize", 4194304 );
+        final ChannelGroup tcpChannels = new DefaultChannelGroup( "dns-benchmark-tcp" );
+        tcpServer.setPipelineFactory( new DnsTcpPipelineFactory( tcpChannels, executionHandler ) );
+        final Channel udpChannel = udpServer.bind( new InetSocketAddress( "127.0.0.1", 0 ) );
+        final Channel tcpChannel = tcpServer.bind( new InetSocketAddress( "127.0.0.1", 0 ) );
+        tcpChannels.add( tcpChannel );
+        try {
+          run( "UDP", udpChannel.getLocalAddress( ), false );
+          run( "TCP", tcpChannel.getLocalAddress( ), true );
+        } finally {
+          udpChannel.close( ).awaitUninterruptibly( );
+          tcpChannels.close( ).awaitUninterruptibly( );
+        }
+      } finally {
+        udpServer.releaseExternalResources( );
+        tcpServer.releaseExternalResources( );
+        executionHandler.releaseExternalResources( );
+      }
+    }
+  }
+
+  /**
+   * Run the clients against the target, each client uses its own socket and
+   * keeps up to OUTSTANDING queries in flight.
+   */
+  private static void run( final String description,
+                           final SocketAddress target,
+                           final boolean tcp ) throws Exception {
+    final ChannelFactory channelFactory = tcp ?
+        new NioClientSocketChannelFactory( Executors.newCachedThreadPool( ), Executors.newCachedThreadPool( ) ) :
+        new NioDatagramChannelFactory( Executors.newCachedThreadPool( ) );
+    final ExecutorService clientExecutor = Executors.newFixedThreadPool( CLIENTS );
+    try {
+      final List<Future<Long>> results = Lists.newArrayList( );
+      final long start = System.nanoTime( );
+      for ( int i = 0; i < CLIENTS; i++ ) {
+        results.add( clientExecutor.submit( new Callable<Long>( ) {
+          @Override
+          public Long call( ) throws Exception {
+            return drive( channelFactory, target, tcp, QUERIES / CLIENTS );
+          }
+        } ) );
+      }
+      long answered = 0;
+      for ( final Future<Long> result : results ) {
+        answered += result.get( );
+      }
+      final double seconds = ( System.nanoTime( ) - start ) / 1e9;
+      final long sent = ( QUERIES / CLIENTS ) * (long) CLIENTS;
+      LOG.info( String.format( "%s: %d of %d queries answered in %.2fs, %.0f queries/s",
+          description, answered, sent, seconds, answered / seconds ) );
+    } finally {
+      clientExecutor.shutdownNow( );
+      channelFactory.releaseExternalResources( );
+    }
+  }
+
+  private static long drive( final ChannelFactory channelFactory,
+                             final SocketAddress target,
+                             final boolean tcp,
+                             final int queries ) throws Exception {
+    final Replies replies = new Replies( );
+    final Channel channel;
+    if ( tcp ) {
+      final ClientBootstrap client = new ClientBootstrap( channelFactory );
+      client.setPipelineFactory( new ChannelPipelineFactory( ) {
+        @Override
+        public ChannelPipeline getPipeline( ) throws Exception {
+          return Channels.pipeline(
+              new LengthFieldBasedFrameDecoder( 65537, 0, 2, 0, 2 ),
+              new LengthFieldPrepender( 2 ),
+              replies );
+        }
+      } );
+      client.setOption( "tcpNoDelay", true );
+      channel = client.connect( target ).awaitUninterruptibly( ).getChannel( );
+    } else {
+      final ConnectionlessBootstrap client = new ConnectionlessBootstrap( channelFactory );
+      client.setPipelineFactory( new ChannelPipelineFactory( ) {
+        @Override
+        public ChannelPipeline getPipeline( ) throws Exception {
+          return Channels.pipeline( replies );
+        }
+      } );
+      channel = client.bind( new InetSocketAddress( 0 ) );
+    }
+    try {
+      final Record question = Record.newRecord( Name.fromString( QUERY_NAME ), Type.A, DClass.IN );
+      for ( int sent = 0; sent < queries; sent += OUTSTANDING ) {
+        final int count = Math.min( OUTSTANDING, queries - sent );
+        replies.expect( sent, count );
+        for ( int i = 0; i < count; i++ ) {
+          final Message query = Message.newQuery( question );
+          query.getHeader( ).setID( ( sent + i ) & 0xFFFF );
+          channel.write( ChannelBuffers.wrappedBuffer( query.toWire( ) ), tcp ? null : target );
+        }
+        replies.await( );
+      }
+      return replies.answered.get( );
+    } finally {
+      channel.close( ).awaitUninterruptibly( );
+    }
+  }
+
+  /**
+   * Counts replies for the current batch of queries, late replies for an
+   * earlier batch are ignored.
+   */
+  private static final class Replies extends SimpleChannelUpstreamHandler {
+    private final AtomicLong answered = new AtomicLong( );
+    private volatile CountDownLatch latch = new CountDownLatch( 0 );
+    private volatile int firstId;
+    private volatile int count;
+
+    void expect( final int firstId, final int count ) {
+      this.latch = new CountDownLatch( count );
+      this.firstId = firstId & 0xFFFF;
+      this.count = count;
+    }
+
+    void await( ) throws InterruptedException {
+      latch.await( REPLY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS );
+    }
+
+    @Override
+    public void messageReceived( final ChannelHandlerContext ctx, final MessageEvent e ) throws Exception {
+      final ChannelBuffer buffer = (ChannelBuffer) e.getMessage( );
+      if ( buffer.readableBytes( ) >= 2 &&
+          ( ( buffer.getUnsignedShort( buffer.readerIndex( ) ) - firstId ) & 0xFFFF ) < count ) {
+        answered.incrementAndGet( );
+        latch.countDown( );
+      }
+    }
+  }
+}
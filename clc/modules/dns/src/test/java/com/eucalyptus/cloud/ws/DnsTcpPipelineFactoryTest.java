@@ -0,0 +1,144 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloud.ws;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Sets;
+
+public class DnsTcpPipelineFactoryTest {
+
+  @Test
+  public void testPipelinedQueries( ) throws Exception {
+    final ChannelGroup channels = new DefaultChannelGroup( "dns-tcp-test" );
+    final ExecutionHandler executionHandler =
+        new ExecutionHandler( new OrderedMemoryAwareThreadPoolExecutor( 4, 0, 0 ) );
+    final ServerBootstrap server = new ServerBootstrap( new NioServerSocketChannelFactory(
+        Executors.newCachedThreadPool( ), Executors.newCachedThreadPool( ) ) );
+    try {
+      server.setPipelineFactory( new DnsTcpPipelineFactory( channels, executionHandler, new Supplier<ChannelHandler>( ) {
+        @Override
+        public ChannelHandler get( ) {
+          return new QuestionEchoHandler( );
+        }
+      } ) );
+      final Channel serverChannel = server.bind( new InetSocketAddress( "127.0.0.1", 0 ) );
+      channels.add( serverChannel );
+
+      final Socket socket = new Socket( );
+      try {
+        socket.setSoTimeout( 10000 );
+        socket.connect( serverChannel.getLocalAddress( ) );
+
+        // both queries in a single write, without waiting for a reply
+        final ByteArrayOutputStream queries = new ByteArrayOutputStream( );
+        final DataOutputStream queriesOut = new DataOutputStream( queries );
+        writeFramed( queriesOut, query( 1001, "one.example.com." ) );
+        writeFramed( queriesOut, query( 1002, "two.example.com." ) );
+        socket.getOutputStream( ).write( queries.toByteArray( ) );
+        socket.getOutputStream( ).flush( );
+
+        final DataInputStream in = new DataInputStream( socket.getInputStream( ) );
+        final Set<String> replies = Sets.newHashSet( );
+        for ( int i = 0; i < 2; i++ ) {
+          final Message reply = readFramed( in );
+          assertTrue( "Reply flag", reply.getHeader( ).getFlag( Flags.QR ) );
+          replies.add( reply.getHeader( ).getID( ) + " " + reply.getQuestion( ).getName( ) );
+        }
+        assertEquals( "Replies", Sets.newHashSet( "1001 one.example.com.", "1002 two.example.com." ), replies );
+        assertEquals( "Channels (listener and connection)", 2, channels.size( ) );
+
+        channels.close( ).awaitUninterruptibly( );
+        assertEquals( "Connection closed by server", -1, in.read( ) );
+      } finally {
+        socket.close( );
+      }
+    } finally {
+      channels.close( ).awaitUninterruptibly( );
+      server.releaseExternalResources( );
+      executionHandler.releaseExternalResources( );
+    }
+  }
+
+  private static byte[] query( final int id, final String name ) throws Exception {
+    final Message query = Message.newQuery( Record.newRecord( Name.fromString( name ), Type.A, DClass.IN ) );
+    query.getHeader( ).setID( id );
+    return query.toWire( );
+  }
+
+  private static void writeFramed( final DataOutputStream out, final byte[] message ) throws Exception {
+    out.writeShort( message.length );
+    out.write( message );
+  }
+
+  private static Message readFramed( final DataInputStream in ) throws Exception {
+    final byte[] message = new byte[ in.readUnsignedShort( ) ];
+    in.readFully( message );
+    return new Message( message );
+  }
+
+  /**
+   * Replies to each query with its question, so tests do not need zone data.
+   */
+  private static final class QuestionEchoHandler extends SimpleChannelUpstreamHandler {
+    @Override
+    public void messageReceived( final ChannelHandlerContext ctx, final MessageEvent e ) throws Exception {
+      final ChannelBuffer buffer = (ChannelBuffer) e.getMessage( );
+      final byte[] request = new byte[ buffer.readableBytes( ) ];
+      buffer.getBytes( buffer.readerIndex( ), request );
+      final Message query = new Message( request );
+      final Message reply = new Message( query.getHeader( ).getID( ) );
+      reply.getHeader( ).setFlag( Flags.QR );
+      reply.addRecord( query.getQuestion( ), Section.QUESTION );
+      ctx.getChannel( ).write( ChannelBuffers.wrappedBuffer( reply.toWire( ) ) );
+    }
+  }
+}
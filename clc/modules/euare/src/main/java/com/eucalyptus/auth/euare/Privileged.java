@@ -80,6 +80,7 @@ import com.eucalyptus.auth.AuthenticationLimitProvider;
 import com.eucalyptus.auth.Permissions;
 import com.eucalyptus.auth.PolicyParseException;
 import com.eucalyptus.auth.ServerCertificate;
+import com.eucalyptus.auth.euare.persist.AccessKeyPrincipalCache;
 import com.eucalyptus.auth.euare.principal.GlobalNamespace;
 import com.eucalyptus.auth.principal.AccessKey;
 import com.eucalyptus.auth.principal.Account;
@@ -142,6 +143,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     Accounts.deleteAccount( account.getName(), false/*forceDeleteSystem*/, recursive );
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   public static boolean allowListOrReadAccountPolicy( AuthContext requestUser, Account account ) throws AuthException {
@@ -164,6 +166,7 @@ class Privileged {
     } catch ( AuthException ae ) {
       account.setName( newName );
     }
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static void deleteAccountAlias( AuthContext requestUser, Account account, String alias ) throws AuthException {
@@ -180,6 +183,7 @@ class Privileged {
     if ( alias.equals( account.getAccountAlias( ) ) ) {
       account.setNameUnsafe( account.getAccountNumber( ) );
     }
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static List<String> listAccountAliases( AuthContext requestUser, Account account ) throws AuthException {
@@ -227,6 +231,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     account.deleteGroup( group.getName( ), recursive );
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static void modifyGroup( AuthContext requestUser, Account account, Group group, String newName, String newPath ) throws AuthException {
@@ -239,6 +244,7 @@ class Privileged {
     if ( !Strings.isNullOrEmpty( newPath ) ) {
       group.setPath( newPath );
     }
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   public static EuareUser createUser( AuthContext requestUser, Account account, String userName, String path ) throws AuthException {
@@ -270,6 +276,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     account.deleteUser( user.getName( ), false/*forceDeleteAdmin*/, recursive );
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   public static void modifyUser( AuthContext requestUser, Account account, EuareUser user, String newName, String newPath, Boolean enabled, Long passwordExpires, Map<String, String> info ) throws AuthException {
@@ -308,6 +315,7 @@ class Privileged {
     if ( info != null ) {
       user.setInfo( info );
     }
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static void updateUserInfoItem( AuthContext requestUser, Account account, EuareUser user, String key, String value ) throws AuthException {
@@ -330,6 +338,7 @@ class Privileged {
       throw new AuthException( AuthException.CONFLICT );
     }
     group.addUserByName( user.getName( ) );
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static void removeUserFromGroup( AuthContext requestUser, Account account, User user, Group group ) throws AuthException {
@@ -341,6 +350,7 @@ class Privileged {
       throw new AuthException( AuthException.NO_SUCH_USER );
     }
     group.removeUserByName( user.getName( ) );
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static List<Group> listGroupsForUser( AuthContext requestUser, Account account, EuareUser user ) throws AuthException {
@@ -467,6 +477,7 @@ class Privileged {
     }
     EuareUser admin = account.lookupAdmin();
     admin.putPolicy( name, policy );
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static void putGroupPolicy( AuthContext requestUser, Account account, Group group, String name, String policy ) throws AuthException, PolicyParseException {
@@ -474,6 +485,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     group.putPolicy( name, policy );
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   public static void putUserPolicy( AuthContext requestUser, Account account, EuareUser user, String name, String policy ) throws AuthException, PolicyParseException {
@@ -483,6 +495,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     user.putPolicy( name, policy );
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   public static void putRolePolicy( AuthContext requestUser, Account account, EuareRole role, String name, String policy ) throws AuthException, PolicyParseException {
@@ -499,6 +512,7 @@ class Privileged {
     }
     EuareUser admin = account.lookupAdmin();
     admin.removePolicy( name );
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static void deleteGroupPolicy( AuthContext requestUser, Account account, Group group, String name ) throws AuthException {
@@ -506,6 +520,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     group.removePolicy( name );
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   public static void deleteUserPolicy( AuthContext requestUser, Account account, EuareUser user, String name ) throws AuthException {
@@ -515,6 +530,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     user.removePolicy( name );
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   public static void deleteRolePolicy( AuthContext requestUser, Account account, EuareRole role, String name ) throws AuthException {
@@ -677,6 +693,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     user.removeKey( keyId );
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   public static List<AccessKey> listAccessKeys( AuthContext requestUser, Account account, EuareUser user ) throws AuthException {
@@ -699,6 +716,7 @@ class Privileged {
     }
     AccessKey key = user.getKey( keyId );
     key.setActive( "Active".equalsIgnoreCase( status ) );
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static Certificate createSigningCertificate( AuthContext requestUser, Account account, EuareUser user, KeyPair keyPair ) throws AuthException {
@@ -779,6 +797,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     user.removeCertificate( certId );
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static void modifySigningCertificate( AuthContext requestUser, Account account, EuareUser user, String certId, String status ) throws AuthException {
@@ -797,6 +816,7 @@ class Privileged {
       throw new AuthException( AuthException.NO_SUCH_CERTIFICATE );
     }
     cert.setActive( "Active".equalsIgnoreCase( status ) );
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   /**
@@ -816,6 +836,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     setUserPassword( user, password );
+    AccessKeyPrincipalCache.invalidate( );
   }
   
   public static void deleteLoginProfile( AuthContext requestUser, Account account, EuareUser user ) throws AuthException {
@@ -824,6 +845,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     user.setPassword( null );
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   public static boolean allowReadLoginProfile( AuthContext requestUser, Account account, EuareUser user ) throws AuthException {
@@ -837,6 +859,7 @@ class Privileged {
       throw new AuthException( AuthException.ACCESS_DENIED );
     }
     setUserPassword( user, newPass );
+    AccessKeyPrincipalCache.invalidate( );
   }
 
   private static void setUserPassword( EuareUser user, String newPass ) throws AuthException {
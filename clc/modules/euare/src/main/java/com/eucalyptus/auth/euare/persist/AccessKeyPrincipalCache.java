@@ -0,0 +1,296 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.euare.persist;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.log4j.Logger;
+import org.hibernate.criterion.Projections;
+import com.eucalyptus.auth.AuthException;
+import com.eucalyptus.auth.euare.Accounts;
+import com.eucalyptus.auth.euare.persist.entities.AccessKeyEntity;
+import com.eucalyptus.auth.euare.persist.entities.AccountEntity;
+import com.eucalyptus.auth.euare.persist.entities.CertificateEntity;
+import com.eucalyptus.auth.euare.persist.entities.GroupEntity;
+import com.eucalyptus.auth.euare.persist.entities.PolicyEntity;
+import com.eucalyptus.auth.euare.persist.entities.UserEntity;
+import com.eucalyptus.auth.principal.AccessKey;
+import com.eucalyptus.auth.principal.UserPrincipal;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.component.id.Euare;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.event.ClockTick;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Cache of principal snapshots by access key identifier.
+ *
+ * <p>Snapshots are invalidated locally when identities are modified and
+ * when a periodic check of the identity tables finds changes made by other
+ * hosts. Snapshots are also reloaded when they reach the maximum age.</p>
+ *
+ * <p>The check for changes runs in the background while the cache is in use.
+ * Snapshots are not cached until the identity tables have been checked.</p>
+ */
+@ConfigurableClass( root = "authentication", description = "Parameters for authentication." )
+public class AccessKeyPrincipalCache {
+
+  private static final Logger LOG = Logger.getLogger( AccessKeyPrincipalCache.class );
+
+  @ConfigurableField( initial = "300", description = "Maximum age in seconds for cached access key principals, 0 to disable caching." )
+  public static Integer ACCESS_KEY_PRINCIPAL_CACHE_MAX_AGE = 300;
+
+  @ConfigurableField( initial = "5", description = "Interval in seconds between checks for identity changes made on other hosts." )
+  public static Integer ACCESS_KEY_PRINCIPAL_CACHE_CHECK_INTERVAL = 5;
+
+  private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis( 5 );
+
+  private static final List<Class<?>> IDENTITY_ENTITY_CLASSES = ImmutableList.<Class<?>>of(
+      AccountEntity.class,
+      UserEntity.class,
+      GroupEntity.class,
+      PolicyEntity.class,
+      AccessKeyEntity.class,
+      CertificateEntity.class
+  );
+
+  private static final AccessKeyPrincipalCache instance = new AccessKeyPrincipalCache( );
+
+  static {
+    Mbeans.register( instance.statistics );
+  }
+
+  private final Cache<String,PrincipalSnapshot> snapshots = CacheBuilder.newBuilder( )
+      .maximumSize( 10_000 )
+      .build( );
+  private final AtomicLong generation = new AtomicLong( );
+  private final AtomicLong lastCheck = new AtomicLong( );
+  private final AtomicReference<List<List<Object>>> identityFingerprint = new AtomicReference<>( );
+  private final AccessKeyPrincipalCacheStatistics statistics = new AccessKeyPrincipalCacheStatistics( snapshots );
+  private volatile long lastUsed;
+
+  AccessKeyPrincipalCache( ) {
+  }
+
+  /**
+   * Lookup the principal snapshot for an access key.
+   *
+   * @param keyId The access key identifier
+   * @return The snapshot, which may be for an inactive key
+   * @throws AuthException If the key is not found
+   */
+  public static PrincipalSnapshot lookup( final String keyId ) throws AuthException {
+    return instance.getSnapshot( keyId );
+  }
+
+  /**
+   * Invalidate all cached snapshots.
+   *
+   * <p>Should be called after identity changes are committed.</p>
+   */
+  public static void invalidate( ) {
+    instance.invalidateSnapshots( false );
+  }
+
+  PrincipalSnapshot getSnapshot( final String keyId ) throws AuthException {
+    final long maxAgeMillis = TimeUnit.SECONDS.toMillis( ACCESS_KEY_PRINCIPAL_CACHE_MAX_AGE );
+    if ( maxAgeMillis <= 0 || keyId == null ) {
+      return load( keyId );
+    }
+    lastUsed = System.currentTimeMillis( );
+    final long currentGeneration = generation.get( );
+    final PrincipalSnapshot snapshot = snapshots.getIfPresent( keyId );
+    if ( snapshot != null && snapshot.generation == currentGeneration ) {
+      final long age = System.currentTimeMillis( ) - snapshot.loaded;
+      if ( age < maxAgeMillis ) {
+        statistics.hit( age );
+        return snapshot;
+      }
+      statistics.expired( );
+    }
+    statistics.miss( );
+    final PrincipalSnapshot loaded = load( keyId );
+    if ( identityFingerprint.get( ) != null && generation.get( ) == currentGeneration ) {
+      snapshots.put( keyId, loaded.withGeneration( currentGeneration ) );
+    }
+    return loaded;
+  }
+
+  void invalidateSnapshots( final boolean remote ) {
+    generation.incrementAndGet( );
+    snapshots.invalidateAll( );
+    statistics.invalidated( remote );
+  }
+
+  /**
+   * Load a snapshot for the given access key, snapshots may be cached when
+   * loading completes without an invalidation.
+   */
+  protected PrincipalSnapshot load( final String keyId ) throws AuthException {
+    final AccessKey accessKey = Accounts.lookupAccessKeyById( keyId );
+    final boolean active = accessKey.isActive( );
+    return new PrincipalSnapshot(
+        active ? accessKey.getPrincipal( ) : null,
+        accessKey.getSecretKey( ),
+        active,
+        System.currentTimeMillis( ) );
+  }
+
+  /**
+   * Check for changes to identities by comparing row counts, versions and
+   * timestamps for the identity tables.
+   *
+   * <p>The check is skipped if the cache is not in use or the check interval
+   * has not elapsed. The cache is cleared when it is no longer used so
+   * snapshots are not cached until the next check.</p>
+   */
+  void checkForChanges( ) {
+    final long now = System.currentTimeMillis( );
+    final long last = lastCheck.get( );
+    if ( now - lastUsed > IDLE_TIMEOUT ) {
+      if ( identityFingerprint.getAndSet( null ) != null ) {
+        generation.incrementAndGet( );
+        snapshots.invalidateAll( );
+      }
+    } else if ( now - last >= TimeUnit.SECONDS.toMillis( ACCESS_KEY_PRINCIPAL_CACHE_CHECK_INTERVAL ) &&
+        lastCheck.compareAndSet( last, now ) ) {
+      try {
+        final List<List<Object>> fingerprint = loadIdentityFingerprint( );
+        final List<List<Object>> previousFingerprint = identityFingerprint.getAndSet( fingerprint );
+        if ( previousFingerprint != null && !previousFingerprint.equals( fingerprint ) ) {
+          invalidateSnapshots( true );
+        }
+      } catch ( final RuntimeException e ) {
+        LOG.warn( "Error checking for identity changes, invalidating cached principals: " + e.getMessage( ) );
+        Logs.extreme( ).warn( e, e );
+        identityFingerprint.set( null );
+        invalidateSnapshots( false );
+      }
+    }
+  }
+
+  protected List<List<Object>> loadIdentityFingerprint( ) {
+    final List<List<Object>> fingerprint = Lists.newArrayList( );
+    try ( final TransactionResource db = Entities.transactionFor( AccessKeyEntity.class ) ) {
+      for ( final Class<?> entityClass : IDENTITY_ENTITY_CLASSES ) {
+        fingerprint.add( Arrays.asList( (Object[]) Entities.createCriteria( entityClass )
+            .setProjection( Projections.projectionList( )
+                .add( Projections.rowCount( ) )
+                .add( Projections.sum( "version" ) )
+                .add( Projections.max( "creationTimestamp" ) )
+                .add( Projections.max( "lastUpdateTimestamp" ) ) )
+            .setReadOnly( true )
+            .uniqueResult( ) ) );
+      }
+    }
+    return fingerprint;
+  }
+
+  public static final class PrincipalSnapshot {
+    private final UserPrincipal principal;
+    private final String secretKey;
+    private final boolean active;
+    private final long loaded;
+    private final long generation;
+
+    PrincipalSnapshot( final UserPrincipal principal,
+                       final String secretKey,
+                       final boolean active,
+                       final long loaded ) {
+      this( principal, secretKey, active, loaded, -1 );
+    }
+
+    private PrincipalSnapshot( final UserPrincipal principal,
+                               final String secretKey,
+                               final boolean active,
+                               final long loaded,
+                               final long generation ) {
+      this.principal = principal;
+      this.secretKey = secretKey;
+      this.active = active;
+      this.loaded = loaded;
+      this.generation = generation;
+    }
+
+    /**
+     * The principal, null if the key is not active.
+     */
+    public UserPrincipal getPrincipal( ) {
+      return principal;
+    }
+
+    public String getSecretKey( ) {
+      return secretKey;
+    }
+
+    public boolean isActive( ) {
+      return active;
+    }
+
+    private PrincipalSnapshot withGeneration( final long generation ) {
+      return new PrincipalSnapshot( principal, secretKey, active, loaded, generation );
+    }
+  }
+
+  public static class AccessKeyPrincipalCacheEventListener implements EventListener<ClockTick>, Callable<Boolean> {
+    private static final AtomicBoolean ready = new AtomicBoolean( true );
+
+    public static void register( ) {
+      Listeners.register( ClockTick.class, new AccessKeyPrincipalCacheEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final ClockTick event ) {
+      if ( Bootstrap.isOperational( ) && ready.compareAndSet( true, false ) ) {
+        try {
+          Threads.enqueue( Euare.class, AccessKeyPrincipalCache.class, this );
+        } catch ( final Exception ex ) {
+          ready.set( true );
+        }
+      }
+    }
+
+    @Override
+    public Boolean call( ) throws Exception {
+      try {
+        instance.checkForChanges( );
+      } finally {
+        ready.set( true );
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.euare.persist;
+
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.common.cache.Cache;
+
+/**
+ * Statistics for the access key principal cache.
+ */
+public class AccessKeyPrincipalCacheStatistics {
+
+  private final Cache<?,?> cache;
+  private final AtomicLong hits = new AtomicLong( );
+  private final AtomicLong misses = new AtomicLong( );
+  private final AtomicLong expired = new AtomicLong( );
+  private final AtomicLong hitAgeMillis = new AtomicLong( );
+  private final AtomicLong maxHitAgeMillis = new AtomicLong( );
+  private final AtomicLong localInvalidations = new AtomicLong( );
+  private final AtomicLong remoteInvalidations = new AtomicLong( );
+  private final AtomicLong lastInvalidation = new AtomicLong( );
+
+  AccessKeyPrincipalCacheStatistics( final Cache<?,?> cache ) {
+    this.cache = cache;
+  }
+
+  void hit( final long ageMillis ) {
+    hits.incrementAndGet( );
+    hitAgeMillis.addAndGet( ageMillis );
+    long max;
+    while ( ( max = maxHitAgeMillis.get( ) ) < ageMillis && !maxHitAgeMillis.compareAndSet( max, ageMillis ) );
+  }
+
+  void miss( ) {
+    misses.incrementAndGet( );
+  }
+
+  void expired( ) {
+    expired.incrementAndGet( );
+  }
+
+  void invalidated( final boolean remote ) {
+    ( remote ? remoteInvalidations : localInvalidations ).incrementAndGet( );
+    lastInvalidation.set( System.currentTimeMillis( ) );
+  }
+
+  public long getSize( ) {
+    return cache.size( );
+  }
+
+  public long getHits( ) {
+    return hits.get( );
+  }
+
+  public long getMisses( ) {
+    return misses.get( );
+  }
+
+  public double getHitRate( ) {
+    final long hits = this.hits.get( );
+    final long requests = hits + misses.get( );
+    return requests == 0 ? 0d : (double) hits / requests;
+  }
+
+  /**
+   * Snapshots that were reloaded due to age.
+   */
+  public long getExpired( ) {
+    return expired.get( );
+  }
+
+  /**
+   * Average age of snapshots when used from the cache.
+   */
+  public long getAverageHitAgeMillis( ) {
+    final long hits = this.hits.get( );
+    return hits == 0 ? 0 : hitAgeMillis.get( ) / hits;
+  }
+
+  public long getMaxHitAgeMillis( ) {
+    return maxHitAgeMillis.get( );
+  }
+
+  public long getLocalInvalidations( ) {
+    return localInvalidations.get( );
+  }
+
+  public long getRemoteInvalidations( ) {
+    return remoteInvalidations.get( );
+  }
+
+  public long getMillisSinceLastInvalidation( ) {
+    final long last = lastInvalidation.get( );
+    return last == 0 ? -1 : System.currentTimeMillis( ) - last;
+  }
+}
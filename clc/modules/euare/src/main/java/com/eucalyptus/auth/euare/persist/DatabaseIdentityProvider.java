@@ -70,11 +70,11 @@ public class DatabaseIdentityProvider implements IdentityProvider {
 
   @Override
   public UserPrincipal lookupPrincipalByAccessKeyId( final String keyId, final String nonce ) throws AuthException {
-    final AccessKey accessKey = Accounts.lookupAccessKeyById( keyId );
-    if ( !accessKey.isActive( ) ) {
+    final AccessKeyPrincipalCache.PrincipalSnapshot snapshot = AccessKeyPrincipalCache.lookup( keyId );
+    if ( !snapshot.isActive( ) ) {
       throw new InvalidAccessKeyAuthException( "Invalid access key or token" );
     }
-    return decorateCredentials( accessKey.getPrincipal(), nonce, accessKey.getSecretKey() );
+    return decorateCredentials( snapshot.getPrincipal( ), nonce, snapshot.getSecretKey( ) );
   }
 
   @Override
@@ -0,0 +1,129 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.euare.persist
+
+import static org.junit.Assert.*
+import com.eucalyptus.auth.AuthException
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+/**
+ *
+ */
+class AccessKeyPrincipalCacheTest {
+
+  private Integer checkInterval
+
+  @Before
+  void setUp( ) {
+    checkInterval = AccessKeyPrincipalCache.ACCESS_KEY_PRINCIPAL_CACHE_CHECK_INTERVAL
+    AccessKeyPrincipalCache.ACCESS_KEY_PRINCIPAL_CACHE_CHECK_INTERVAL = 0
+  }
+
+  @After
+  void tearDown( ) {
+    AccessKeyPrincipalCache.ACCESS_KEY_PRINCIPAL_CACHE_CHECK_INTERVAL = checkInterval
+  }
+
+  @Test
+  void testNotCachedBeforeCheck( ) {
+    TestCache cache = new TestCache( )
+    cache.getSnapshot( "key" )
+    cache.getSnapshot( "key" )
+    assertEquals( "Loads before check", 2, cache.loads )
+
+    cache.checkForChanges( )
+    cache.getSnapshot( "key" )
+    cache.getSnapshot( "key" )
+    assertEquals( "Loads after check", 3, cache.loads )
+  }
+
+  @Test
+  void testLocalChangeInvalidates( ) {
+    TestCache cache = warm( new TestCache( ) )
+    cache.secrets[ "key" ] = "secret-2"
+    assertEquals( "Cached secret", "secret-1", cache.getSnapshot( "key" ).secretKey )
+
+    cache.invalidateSnapshots( false )
+    assertEquals( "Secret after invalidation", "secret-2", cache.getSnapshot( "key" ).secretKey )
+  }
+
+  @Test
+  void testRemoteChangeInvalidates( ) {
+    [ "user": 1, "policy": 3, "access key": 4 ].each { String change, Integer index ->
+      TestCache cache = warm( new TestCache( ) )
+      cache.secrets[ "key" ] = "secret-2"
+      cache.checkForChanges( )
+      assertEquals( "Cached secret, no ${change} change", "secret-1", cache.getSnapshot( "key" ).secretKey )
+
+      cache.fingerprint[ index ] = [ 1L, 2L, 0L, 1L ]
+      cache.checkForChanges( )
+      assertEquals( "Secret after ${change} change", "secret-2", cache.getSnapshot( "key" ).secretKey )
+    }
+  }
+
+  @Test
+  void testLoadRacingInvalidationNotCached( ) {
+    TestCache cache = warm( new TestCache( ) )
+    cache.invalidateSnapshots( false )
+    cache.duringLoad = {
+      cache.secrets[ "key" ] = "secret-2"
+      cache.invalidateSnapshots( false )
+    }
+    assertEquals( "Secret loaded during change", "secret-1", cache.getSnapshot( "key" ).secretKey )
+    assertEquals( "Secret after change", "secret-2", cache.getSnapshot( "key" ).secretKey )
+    assertEquals( "Secret cached after change", "secret-2", cache.getSnapshot( "key" ).secretKey )
+    assertEquals( "Loads", 4, cache.loads )
+  }
+
+  private static TestCache warm( final TestCache cache ) {
+    cache.getSnapshot( "key" )
+    cache.checkForChanges( )
+    cache.getSnapshot( "key" )
+    assertEquals( "Loads to warm cache", 2, cache.loads )
+    assertEquals( "Cached secret", "secret-1", cache.getSnapshot( "key" ).secretKey )
+    cache
+  }
+
+  private static class TestCache extends AccessKeyPrincipalCache {
+    Map<String,String> secrets = [ "key": "secret-1" ]
+    List<List<Object>> fingerprint = ( 0..5 ).collect{ [ 1L, 1L, 0L, 0L ] }
+    Closure<?> duringLoad
+    int loads
+
+    @Override
+    protected AccessKeyPrincipalCache.PrincipalSnapshot load( final String keyId ) throws AuthException {
+      loads++
+      final String secret = secrets[ keyId ]
+      if ( duringLoad ) {
+        final Closure<?> action = duringLoad
+        duringLoad = null
+        action.call( )
+      }
+      new AccessKeyPrincipalCache.PrincipalSnapshot( null, secret, true, System.currentTimeMillis( ) )
+    }
+
+    @Override
+    protected List<List<Object>> loadIdentityFingerprint( ) {
+      fingerprint.collect{ new ArrayList<Object>( it ) }
+    }
+  }
+}
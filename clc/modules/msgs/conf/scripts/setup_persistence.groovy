@@ -83,6 +83,14 @@ default_hiber_config = [
       'hibernate.default_batch_fetch_size': '50',
 ]
 
+context_hiber_config = [
+      /** reporting events are written in batches, insert each batch using jdbc batches **/
+      'eucalyptus_reporting_backend': [
+        'hibernate.jdbc.batch_size': '50',
+        'hibernate.order_inserts': 'true',
+      ],
+]
+
 PersistenceContexts.list( ).each { String context_name ->
   
   // Set system properties
@@ -112,6 +120,7 @@ PersistenceContexts.list( ).each { String context_name ->
         'hibernate.cache.use_minimal_puts': 'true',
         'hibernate.cache.use_structured_entries': 'true',
       ] )
+  hibernate_config.putAll( (Map<?,?>) ( context_hiber_config[ context_name ] ?: [:] ) )
 
   String schemaName = PersistenceContexts.toSchemaName( ).apply( context_name )
   if ( schemaName ) {
@@ -84,6 +84,14 @@ default_hiber_config = [
       'hibernate.default_batch_fetch_size': '50',
 ]
 
+context_hiber_config = [
+      /** reporting events are written in batches, insert each batch using jdbc batches **/
+      'eucalyptus_reporting_backend': [
+        'hibernate.jdbc.batch_size': '50',
+        'hibernate.order_inserts': 'true',
+      ],
+]
+
 PersistenceContexts.listRemotable().each { String context_name ->
   
   LOG.info("attempting to deregister persistence context: " + context_name);
@@ -114,6 +122,7 @@ PersistenceContexts.listRemotable().each { String context_name ->
         'hibernate.cache.use_second_level_cache': 'false',
         'hibernate.cache.use_query_cache': 'false'
       ] )
+  hibernate_config.putAll( (Map<?,?>) ( context_hiber_config[ context_name ] ?: [:] ) )
   
   String schemaName = PersistenceContexts.toRemoteSchemaName( context_name );
   if ( schemaName ) {
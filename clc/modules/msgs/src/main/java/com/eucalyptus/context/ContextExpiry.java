@@ -0,0 +1,224 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.context;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Consumer;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.collect.Maps;
+
+/**
+ * Expiry for message contexts using a hashed timer wheel.
+ *
+ * <p>Contexts are scheduled for expiry by correlation id on a wheel of one
+ * second ticks that is serviced by a single thread. Cancellation on normal
+ * completion only marks the timeout, cancelled timeouts are discarded when
+ * their slot is next processed.</p>
+ */
+public class ContextExpiry {
+  private static final Logger LOG = Logger.getLogger( ContextExpiry.class );
+  private static final long TICK_MILLIS = 1000L;
+  private static final int WHEEL_SIZE = 512;
+  private static final ContextExpiry instance = new ContextExpiry( TICK_MILLIS, WHEEL_SIZE, new Consumer<String>( ) {
+    @Override
+    public void accept( final String correlationId ) {
+      Contexts.clear( correlationId );
+    }
+  } );
+
+  private final long tickMillis;
+  private final int mask;
+  private final Queue<Timeout>[] wheel;
+  private final ConcurrentMap<String,Timeout> timeouts = Maps.newConcurrentMap( );
+  private final Consumer<String> expiryHandler;
+  private final AtomicBoolean started = new AtomicBoolean( false );
+  private final AtomicLong processedTick = new AtomicLong( -1 );
+  private final AtomicLong scheduled = new AtomicLong( );
+  private final AtomicLong expired = new AtomicLong( );
+  private final AtomicLong cancelled = new AtomicLong( );
+
+  @SuppressWarnings( "unchecked" )
+  ContextExpiry( final long tickMillis,
+                 final int wheelSize,
+                 final Consumer<String> expiryHandler ) {
+    if ( Integer.bitCount( wheelSize ) != 1 ) {
+      throw new IllegalArgumentException( "Wheel size must be a power of two: " + wheelSize );
+    }
+    this.tickMillis = tickMillis;
+    this.mask = wheelSize - 1;
+    this.wheel = new Queue[ wheelSize ];
+    for ( int i = 0; i < wheelSize; i++ ) {
+      this.wheel[ i ] = new ConcurrentLinkedQueue<>( );
+    }
+    this.expiryHandler = expiryHandler;
+  }
+
+  /**
+   * Schedule expiry of the context with the given correlation id.
+   *
+   * <p>Any existing expiry for the correlation id is cancelled.</p>
+   */
+  public static void schedule( final String correlationId, final long delay, final TimeUnit unit ) {
+    instance.start( );
+    instance.schedule( correlationId, unit.toMillis( delay ), System.currentTimeMillis( ) );
+  }
+
+  /**
+   * Cancel expiry of the context with the given correlation id.
+   */
+  public static void cancel( final String correlationId ) {
+    instance.cancelTimeout( correlationId );
+  }
+
+  void schedule( final String correlationId, final long delayMillis, final long now ) {
+    final long deadline = now + delayMillis;
+    // never schedule into a slot that may already have been passed
+    final long tick = Math.max( ( deadline + tickMillis - 1 ) / tickMillis, processedTick.get( ) + 2 );
+    final Timeout timeout = new Timeout( correlationId, deadline );
+    final Timeout previous = timeouts.put( correlationId, timeout );
+    if ( previous != null && previous.done( ) ) {
+      cancelled.incrementAndGet( );
+    }
+    wheel[ (int) ( tick & mask ) ].add( timeout );
+    scheduled.incrementAndGet( );
+  }
+
+  void cancelTimeout( final String correlationId ) {
+    final Timeout timeout = correlationId == null ? null : timeouts.remove( correlationId );
+    if ( timeout != null && timeout.done( ) ) {
+      cancelled.incrementAndGet( );
+    }
+  }
+
+  /**
+   * Process all wheel slots up to the given time, expiring any due timeouts.
+   */
+  void advance( final long now ) {
+    final long currentTick = now / tickMillis;
+    final long lastTick = processedTick.get( );
+    // each slot need only be processed once when catching up
+    for ( long tick = Math.max( lastTick + 1, currentTick - mask ); tick <= currentTick; tick++ ) {
+      process( wheel[ (int) ( tick & mask ) ], now );
+      processedTick.set( tick );
+    }
+  }
+
+  private void process( final Queue<Timeout> slot, final long now ) {
+    for ( final Iterator<Timeout> iterator = slot.iterator( ); iterator.hasNext( ); ) {
+      final Timeout timeout = iterator.next( );
+      if ( timeout.isDone( ) ) {
+        iterator.remove( );
+      } else if ( timeout.deadline <= now ) {
+        iterator.remove( );
+        if ( timeout.done( ) ) {
+          timeouts.remove( timeout.correlationId, timeout );
+          expired.incrementAndGet( );
+          try {
+            expiryHandler.accept( timeout.correlationId );
+          } catch ( final Exception e ) {
+            LOG.error( "Error expiring context " + timeout.correlationId + ": " + e.getMessage( ) );
+            Logs.extreme( ).error( e, e );
+          }
+        }
+      }
+    }
+  }
+
+  private void start( ) {
+    if ( !started.get( ) && started.compareAndSet( false, true ) ) {
+      processedTick.set( System.currentTimeMillis( ) / tickMillis );
+      Mbeans.register( this );
+      final Thread thread = Threads.newThread( new Runnable( ) {
+        @Override
+        public void run( ) {
+          try {
+            while ( !Thread.currentThread( ).isInterrupted( ) ) {
+              Thread.sleep( tickMillis - ( System.currentTimeMillis( ) % tickMillis ) );
+              try {
+                advance( System.currentTimeMillis( ) );
+              } catch ( final RuntimeException e ) {
+                LOG.error( "Error processing context expiry: " + e.getMessage( ), e );
+              }
+            }
+          } catch ( final InterruptedException e ) {
+            Thread.currentThread( ).interrupt( );
+          }
+        }
+      }, "context-expiry" );
+      thread.setDaemon( true );
+      thread.start( );
+    }
+  }
+
+  public long getLiveContexts( ) {
+    return Contexts.uuidContextCount( );
+  }
+
+  public long getChannelContexts( ) {
+    return Contexts.channelContextCount( );
+  }
+
+  public long getPendingExpirations( ) {
+    return timeouts.size( );
+  }
+
+  public long getScheduledExpirations( ) {
+    return scheduled.get( );
+  }
+
+  public long getExpiredContexts( ) {
+    return expired.get( );
+  }
+
+  public long getCancelledExpirations( ) {
+    return cancelled.get( );
+  }
+
+  private static final class Timeout {
+    private final String correlationId;
+    private final long deadline;
+    private final AtomicBoolean done = new AtomicBoolean( false );
+
+    private Timeout( final String correlationId, final long deadline ) {
+      this.correlationId = correlationId;
+      this.deadline = deadline;
+    }
+
+    private boolean isDone( ) {
+      return done.get( );
+    }
+
+    /**
+     * @return true if this call completed the timeout
+     */
+    private boolean done( ) {
+      return done.compareAndSet( false, true );
+    }
+  }
+}
@@ -250,6 +250,7 @@ public class Contexts {
   
   public static void clear( String corrId ) {
     checkParam( "BUG: correlationId is null.", corrId, notNullValue() );
+    ContextExpiry.cancel( corrId );
     uuidImpContexts.remove( corrId );
     Context ctx = uuidContexts.remove( corrId );
     Channel channel = null;
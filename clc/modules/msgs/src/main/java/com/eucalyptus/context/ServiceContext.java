@@ -62,7 +62,6 @@
 
 package com.eucalyptus.context;
 
-import java.util.concurrent.Callable;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -97,9 +96,8 @@ import com.eucalyptus.configurable.ConfigurableField;
 import com.eucalyptus.configurable.ConfigurableProperty;
 import com.eucalyptus.configurable.ConfigurablePropertyException;
 import com.eucalyptus.configurable.PropertyChangeListener;
-import com.eucalyptus.empyrean.Empyrean;
-import com.eucalyptus.system.Threads;
 import com.eucalyptus.util.Exceptions;
+import com.google.common.base.Supplier;
 
 import edu.ucsb.eucalyptus.msgs.BaseMessage;
 
@@ -117,6 +115,8 @@ public class ServiceContext {
   public static Integer                        MIN_SCHEDULER_CORE_SIZE  = 64;
   @ConfigurableField( initial = "60", description = "Message context timeout (seconds)" )
   public static Integer                        CONTEXT_TIMEOUT  = 60;
+  @ConfigurableField( initial = "16", description = "Max idle message dispatchers cached per service endpoint." )
+  public static Integer                        MAX_IDLE_DISPATCHERS = 16;
 
   public static class HupListener implements PropertyChangeListener {
     @Override
@@ -129,6 +129,13 @@ public class ServiceContext {
   
   private static final VMMessageDispatcherFactory  dispatcherFactory = new VMMessageDispatcherFactory( );
   private static final AtomicReference<MuleClient> client            = new AtomicReference<MuleClient>( null );
+  private static final AtomicReference<ServiceDispatchers> dispatchers = new AtomicReference<ServiceDispatchers>( null );
+  private static final Supplier<Integer>           maxIdleDispatchers = new Supplier<Integer>( ) {
+    @Override
+    public Integer get( ) {
+      return MAX_IDLE_DISPATCHERS;
+    }
+  };
   private static final BootstrapException          failEx            = new BootstrapException(
                                                                                                     "Attempt to use esb client before the service bus has been started." );
   
@@ -142,9 +149,10 @@ public class ServiceContext {
       throw new ServiceDispatchException( "Failed to dispatch message to " + dest + " caused by failure to obtain service context reference: "
                                           + ex.getMessage( ), ex );
     }
+    final ServiceDispatchers serviceDispatchers = dispatchers( muleCtx );
     OutboundEndpoint endpoint;
     try {
-      endpoint = muleCtx.getEndpointFactory( ).getOutboundEndpoint( dest );
+      endpoint = serviceDispatchers.lookupEndpoint( dest );
       perhapsConfigureConnector( endpoint.getConnector( ) );
     } catch ( MuleException ex ) {
       LOG.error( ex, ex );
@@ -158,15 +166,18 @@ public class ServiceContext {
       ctx = Contexts.createWrapped( dest, ( BaseMessage ) msg );
     }else
       ctx = null;
+    if ( ctx != null ) {
+      ContextExpiry.schedule( ctx.getCorrelationId( ), CONTEXT_TIMEOUT, TimeUnit.SECONDS );
+    }
     
     MessageDispatcher dispatcher = null;
+    boolean reusable = false;
     try {
-      dispatcher = dispatcherFactory.create( endpoint );
-      dispatcher.initialise( );
-      dispatcher.start( );
+      dispatcher = serviceDispatchers.borrowDispatcher( endpoint );
       MuleMessage muleMsg = dispatcher.createMuleMessage( msg );
       MuleEvent muleEvent = new DefaultMuleEvent( muleMsg, endpoint.getExchangePattern(), (FlowConstruct) null, muleSession );
       dispatcher.process( muleEvent );
+      reusable = true;
     } catch ( DispatchException ex ) {
       LOG.error( ex, ex );
       throw new ServiceDispatchException( "Error while dispatching message (" + msg + ") to " + dest + " caused by: " + ex.getMessage( ), ex );
@@ -175,24 +186,28 @@ public class ServiceContext {
       throw new ServiceDispatchException( "Failed to dispatch message to " + dest + " caused by failure to obtain service dispatcher reference: "
                                           + ex.getMessage( ), ex );
     } finally {
-      if ( dispatcher != null ) dispatcher.dispose( );
+      if ( dispatcher != null ) serviceDispatchers.releaseDispatcher( endpoint, dispatcher, reusable );
     }
-    final long clearContextTime = System.currentTimeMillis( ) + TimeUnit.SECONDS.toMillis( CONTEXT_TIMEOUT );
-    Threads.enqueue( Empyrean.class, ServiceContext.class, new Callable<Boolean>( ) {
-      @Override
-      public Boolean call( ) {
-        try {
-          long sleepTime = clearContextTime - System.currentTimeMillis( );
-          if ( sleepTime > 1 ) {
-            Thread.sleep( sleepTime );
-          }
-          Contexts.clear( ctx );
-        } catch ( InterruptedException ex ) {
-          Thread.currentThread( ).interrupt( );
+  }
+
+  /**
+   * Get the dispatcher cache for the given context, replacing any cache for
+   * a previous context.
+   */
+  private static ServiceDispatchers dispatchers( final MuleContext muleCtx ) {
+    ServiceDispatchers current = dispatchers.get( );
+    while ( current == null || current.getMuleContext( ) != muleCtx ) {
+      final ServiceDispatchers updated = new ServiceDispatchers( muleCtx, dispatcherFactory, maxIdleDispatchers );
+      if ( dispatchers.compareAndSet( current, updated ) ) {
+        if ( current != null ) {
+          current.dispose( );
         }
-        return true;
+        current = updated;
+      } else {
+        current = dispatchers.get( );
       }
-    } );
+    }
+    return current;
   }
   
   public static <T> T send( ComponentId dest, Object msg ) throws Exception {
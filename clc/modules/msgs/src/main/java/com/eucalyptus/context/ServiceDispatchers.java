@@ -0,0 +1,167 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.context;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import org.mule.api.MuleContext;
+import org.mule.api.MuleException;
+import org.mule.api.endpoint.OutboundEndpoint;
+import org.mule.api.transport.MessageDispatcher;
+import org.mule.api.transport.MessageDispatcherFactory;
+import com.eucalyptus.records.Logs;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+
+/**
+ * Cache of outbound endpoints and idle message dispatchers for a mule context.
+ *
+ * <p>Dispatchers are not thread safe so each is used by one caller at a time,
+ * idle dispatchers are kept for reuse up to a limit per endpoint. The limit
+ * is read each time a dispatcher is released.</p>
+ */
+final class ServiceDispatchers {
+  private static final Logger LOG = Logger.getLogger( ServiceDispatchers.class );
+
+  private final MuleContext muleContext;
+  private final MessageDispatcherFactory dispatcherFactory;
+  private final Supplier<Integer> maxIdle;
+  private final ConcurrentMap<String,OutboundEndpoint> endpoints = Maps.newConcurrentMap( );
+  private final ConcurrentMap<OutboundEndpoint,BlockingQueue<MessageDispatcher>> idleDispatchers = Maps.newConcurrentMap( );
+  private final AtomicLong created = new AtomicLong( );
+  private final AtomicLong reused = new AtomicLong( );
+  private volatile boolean disposed = false;
+
+  ServiceDispatchers( final MuleContext muleContext,
+                      final MessageDispatcherFactory dispatcherFactory,
+                      final Supplier<Integer> maxIdle ) {
+    this.muleContext = muleContext;
+    this.dispatcherFactory = dispatcherFactory;
+    this.maxIdle = maxIdle;
+  }
+
+  MuleContext getMuleContext( ) {
+    return muleContext;
+  }
+
+  OutboundEndpoint lookupEndpoint( final String dest ) throws MuleException {
+    OutboundEndpoint endpoint = endpoints.get( dest );
+    if ( endpoint == null ) {
+      endpoint = muleContext.getEndpointFactory( ).getOutboundEndpoint( dest );
+      final OutboundEndpoint existing = endpoints.putIfAbsent( dest, endpoint );
+      if ( existing != null ) {
+        endpoint = existing;
+      }
+    }
+    return endpoint;
+  }
+
+  /**
+   * Get an idle dispatcher for the endpoint or create a new one.
+   *
+   * <p>The caller must release the dispatcher when done.</p>
+   */
+  MessageDispatcher borrowDispatcher( final OutboundEndpoint endpoint ) throws MuleException {
+    final BlockingQueue<MessageDispatcher> idle = idleDispatchers.get( endpoint );
+    MessageDispatcher dispatcher;
+    while ( idle != null && ( dispatcher = idle.poll( ) ) != null ) {
+      if ( dispatcher.validate( ) ) {
+        reused.incrementAndGet( );
+        return dispatcher;
+      } else {
+        dispose( dispatcher );
+      }
+    }
+    dispatcher = dispatcherFactory.create( endpoint );
+    try {
+      dispatcher.initialise( );
+      dispatcher.start( );
+    } catch ( final MuleException e ) {
+      dispose( dispatcher );
+      throw e;
+    }
+    created.incrementAndGet( );
+    return dispatcher;
+  }
+
+  /**
+   * Release a borrowed dispatcher.
+   *
+   * @param reusable False if the dispatcher failed and must not be reused
+   */
+  void releaseDispatcher( final OutboundEndpoint endpoint,
+                          final MessageDispatcher dispatcher,
+                          final boolean reusable ) {
+    if ( reusable && !disposed ) {
+      BlockingQueue<MessageDispatcher> idle = idleDispatchers.get( endpoint );
+      if ( idle == null ) {
+        final BlockingQueue<MessageDispatcher> newIdle = new LinkedBlockingQueue<>( );
+        idle = idleDispatchers.putIfAbsent( endpoint, newIdle );
+        if ( idle == null ) {
+          idle = newIdle;
+        }
+      }
+      final Integer max = maxIdle.get( );
+      if ( idle.size( ) < ( max == null ? 0 : max ) && idle.offer( dispatcher ) ) {
+        // dispose may have drained the idle dispatchers since the check above,
+        // whichever of dispose and remove takes the dispatcher disposes it
+        if ( disposed && idle.remove( dispatcher ) ) {
+          dispose( dispatcher );
+        }
+        return;
+      }
+    }
+    dispose( dispatcher );
+  }
+
+  /**
+   * Dispose all idle dispatchers, dispatchers released later are disposed.
+   */
+  void dispose( ) {
+    disposed = true;
+    endpoints.clear( );
+    for ( final BlockingQueue<MessageDispatcher> idle : idleDispatchers.values( ) ) {
+      MessageDispatcher dispatcher;
+      while ( ( dispatcher = idle.poll( ) ) != null ) {
+        dispose( dispatcher );
+      }
+    }
+  }
+
+  long getCreated( ) {
+    return created.get( );
+  }
+
+  long getReused( ) {
+    return reused.get( );
+  }
+
+  private static void dispose( final MessageDispatcher dispatcher ) {
+    try {
+      dispatcher.dispose( );
+    } catch ( final RuntimeException e ) {
+      LOG.warn( "Error disposing message dispatcher: " + e.getMessage( ) );
+      Logs.extreme( ).warn( e, e );
+    }
+  }
+}
@@ -79,6 +79,7 @@ import javax.persistence.LockModeType;
 import javax.persistence.OptimisticLockException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.Table;
 import javax.transaction.Synchronization;
 import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
@@ -807,6 +808,20 @@ public class Entities {
     }
   }
   
+  /**
+   * Get the lock mode held for the entity in the current transaction.
+   *
+   * @see javax.persistence.EntityManager#getLockMode(Object)
+   */
+  public static <T> LockModeType getLockMode( final T object ) {
+    try {
+      return getTransaction( object ).getTxState( ).getEntityManager( ).getLockMode( object );
+    } catch ( final RuntimeException ex ) {
+      PersistenceExceptions.throwFiltered( ex );
+      throw ex;
+    }
+  }
+
   /**
    * {@inheritDoc Session}
    */
@@ -907,6 +922,28 @@ public class Entities {
     }
   }
 
+  /**
+   * Truncate the table for the given entity class.
+   *
+   * <p>Unlike deleteAll this does not delete individual rows, the caller must
+   * ensure that no other transaction is writing to the table.</p>
+   *
+   * @param <T> The entity type
+   * @param truncateClass The entity class
+   */
+  public static <T> void truncate( final Class<T> truncateClass ) {
+    try {
+      final String table = Ats.from( truncateClass ).get( Table.class ).name( );
+      getTransaction( truncateClass ).getTxState( ).getSession( )
+          .createSQLQuery( "TRUNCATE TABLE " + table )
+          .addSynchronizedEntityClass( truncateClass )
+          .executeUpdate( );
+    } catch ( Exception e ) {
+      LOG.error( truncateClass, e );
+      throw Exceptions.toUndeclared( e );
+    }
+  }
+
   /**
    * Count the matching entities for the given example.
    * 
@@ -19,29 +19,50 @@
  ************************************************************************/
 package com.eucalyptus.entities;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.hibernate.Criteria;
 import org.hibernate.criterion.Example;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.util.Pair;
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
 
 /**
+ * Cache of transformed entities.
  *
+ * <p>By default each refresh loads the id and version of every matching
+ * entity and reloads those that changed. In incremental mode only entities
+ * updated since the last refresh are loaded, deletions are detected by row
+ * count and a full refresh is performed periodically in case an update was
+ * committed outside the overlap window.</p>
+ *
+ * <p>The sorted values are only rebuilt when the cache content changes.</p>
  */
 public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>> implements Supplier<Iterable<TE>> {
 
   private static final int batchSize = 500;
+  private static final long incrementalOverlap = TimeUnit.MINUTES.toMillis( 1 );
+  private static final long fullRefreshInterval = TimeUnit.MINUTES.toMillis( 5 );
   private final E example;
   private final Function<? super E,TE> transformFunction;
-  private final ConcurrentMap<Pair<String,Integer>,TE> cache = Maps.newConcurrentMap( );
+  private final boolean incremental;
+  private final Object refreshLock = new Object( );
+  // id to version and cached value, guarded by refreshLock
+  private final Map<String,Pair<Integer,TE>> cache = Maps.newHashMap( );
+  private long lastRefresh = 0L;
+  private long lastFullRefresh = 0L;
+  private volatile List<TE> sortedValues = ImmutableList.of( );
 
   /**
    * Create an entity cache for the given example.
@@ -51,17 +72,35 @@ public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>
    */
   public EntityCache( final E example,
                       final Function<? super E,TE> transformFunction ) {
+    this( example, transformFunction, false );
+  }
+
+  /**
+   * Create an entity cache for the given example.
+   *
+   * @param example The example object
+   * @param transformFunction Function to transform to immutable cache format
+   * @param incremental True to refresh using the entity last update timestamp
+   */
+  public EntityCache( final E example,
+                      final Function<? super E,TE> transformFunction,
+                      final boolean incremental ) {
     this.example = example;
     this.transformFunction = transformFunction;
+    this.incremental = incremental;
+  }
+
+  private Criteria criteria( ) {
+    return Entities.createCriteria( example.getClass( ) )
+        .add( Example.create( example ) )
+        .setReadOnly( true )
+        .setCacheable( false );
   }
 
   @SuppressWarnings( "unchecked" )
   private List<Pair<String,Integer>> loadVersionMap( ) {
     try ( final TransactionResource db = Entities.transactionFor( example ) ){
-      List<Object[]> idVersionList = (List<Object[]>) Entities.createCriteria( example.getClass( ) )
-          .add( Example.create( example ) )
-          .setReadOnly( true )
-          .setCacheable( false )
+      List<Object[]> idVersionList = (List<Object[]>) criteria( )
           .setFetchSize( 1000 )
           .setProjection( Projections.projectionList().add( Projections.id( ) ).add( Projections.property( "version" ) ) )
           .list( );
@@ -69,31 +108,106 @@ public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>
     }
   }
 
+  @SuppressWarnings( "unchecked" )
+  private List<String> loadIds( ) {
+    try ( final TransactionResource db = Entities.transactionFor( example ) ){
+      List<Object> idList = (List<Object>) criteria( )
+          .setFetchSize( 1000 )
+          .setProjection( Projections.id( ) )
+          .list( );
+      return Lists.newArrayList( Iterables.transform( idList, ObjectToString.INSTANCE ) );
+    }
+  }
+
+  private long loadCount( ) {
+    try ( final TransactionResource db = Entities.transactionFor( example ) ){
+      return ( (Number) criteria( ).setProjection( Projections.rowCount( ) ).uniqueResult( ) ).longValue( );
+    }
+  }
+
+  /**
+   * Cache the given entity if not already cached at the current version.
+   *
+   * @return true if the cache was updated
+   */
+  private boolean cache( final E entity ) {
+    final String id = getId( entity );
+    final Pair<Integer,TE> cached = cache.get( id );
+    if ( cached == null || !cached.getLeft( ).equals( entity.getVersion( ) ) ) {
+      cache.put( id, Pair.pair( entity.getVersion( ), transformFunction.apply( entity ) ) );
+      return true;
+    }
+    return false;
+  }
+
   @SuppressWarnings( { "unchecked", "ConstantConditions" } )
-  private void refresh( ) {
-    final List<Pair<String,Integer>> currentKeys = loadVersionMap( );
-    cache.keySet( ).retainAll( currentKeys );
-    currentKeys.removeAll( cache.keySet( ) );
-    for ( List<Pair<String,Integer>> keyBatch : Iterables.partition( currentKeys, batchSize ) ) {
+  private boolean refreshAll( ) {
+    final Map<String,Integer> currentVersions = Maps.newHashMap( );
+    for ( final Pair<String,Integer> idAndVersion : loadVersionMap( ) ) {
+      currentVersions.put( idAndVersion.getLeft( ), idAndVersion.getRight( ) );
+    }
+    boolean changed = cache.keySet( ).retainAll( currentVersions.keySet( ) );
+    final List<String> staleIds = Lists.newArrayList( );
+    for ( final Map.Entry<String,Integer> entry : currentVersions.entrySet( ) ) {
+      final Pair<Integer,TE> cached = cache.get( entry.getKey( ) );
+      if ( cached == null || !cached.getLeft( ).equals( entry.getValue( ) ) ) {
+        staleIds.add( entry.getKey( ) );
+      }
+    }
+    for ( List<String> idBatch : Iterables.partition( staleIds, batchSize ) ) {
       try ( final TransactionResource db = Entities.transactionFor( example ) ) {
-        List<E> entities = (List<E>) Entities.createCriteria( example.getClass( ) )
-            .add( Example.create( example ) )
-            .setReadOnly( true )
-            .setCacheable( false )
+        List<E> entities = (List<E>) criteria( )
             .setFetchSize( batchSize )
-            .add( Restrictions.in( "id", Lists.newArrayList( Iterables.transform( keyBatch, Pair.<String,Integer>left( ) ) ) ) )
+            .add( Restrictions.in( "id", idBatch ) )
             .list( );
         for ( final E entity : entities ) {
-          cache.put( Pair.pair( getId( entity ), entity.getVersion( ) ), transformFunction.apply( entity ) );
+          changed |= cache( entity );
         }
       }
     }
+    return changed;
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private boolean refreshIncremental( final long since ) {
+    boolean changed = false;
+    try ( final TransactionResource db = Entities.transactionFor( example ) ) {
+      List<E> entities = (List<E>) criteria( )
+          .setFetchSize( batchSize )
+          .add( Restrictions.gt( "lastUpdateTimestamp", new Date( since ) ) )
+          .list( );
+      for ( final E entity : entities ) {
+        changed |= cache( entity );
+      }
+    }
+    if ( loadCount( ) != cache.size( ) ) {
+      changed |= cache.keySet( ).retainAll( Sets.newHashSet( loadIds( ) ) );
+    }
+    return changed;
+  }
+
+  private boolean refresh( ) {
+    final long refreshTime = System.currentTimeMillis( );
+    final boolean changed;
+    if ( !incremental || ( lastFullRefresh + fullRefreshInterval ) < refreshTime ) {
+      changed = refreshAll( );
+      lastFullRefresh = refreshTime;
+    } else {
+      changed = refreshIncremental( lastRefresh - incrementalOverlap );
+    }
+    lastRefresh = refreshTime;
+    return changed;
   }
 
   @Override
   public Iterable<TE> get( ) {
-    refresh( );
-    return Ordering.natural( ).sortedCopy( cache.values( ) );
+    synchronized ( refreshLock ) {
+      if ( refresh( ) ) {
+        sortedValues = ImmutableList.copyOf( Ordering.natural( ).sortedCopy(
+            Iterables.transform( cache.values( ), Pair.<Integer,TE>right( ) ) ) );
+      }
+      return sortedValues;
+    }
   }
 
   private String getId( final E entity ) {
@@ -108,4 +222,13 @@ public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>
       return Pair.pair( String.valueOf( objects[ 0 ] ), ( (Number) objects[ 1 ] ).intValue() );
     }
   }
+
+  private enum ObjectToString implements Function<Object,String> {
+    INSTANCE;
+
+    @Override
+    public String apply( final Object object ) {
+      return String.valueOf( object );
+    }
+  }
 }
@@ -85,6 +85,7 @@ import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ClassToInstanceMap;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
@@ -424,9 +425,11 @@ public class DnsResolvers extends ServiceJarDiscovery {
   
   /**
    * Returns the list of resolvers which accept the name from the given source address.
+   *
+   * The list is evaluated once so each resolver is checked only once per request.
    */
-  private static Iterable<DnsResolver> resolversFor( final DnsRequest request ) {
-    return Iterables.filter( resolvers.values( ), new Predicate<DnsResolver>( ) {
+  private static List<DnsResolver> resolversFor( final DnsRequest request ) {
+    return ImmutableList.copyOf( Iterables.filter( resolvers.values( ), new Predicate<DnsResolver>( ) {
       @Override
       public boolean apply( final DnsResolver input ) {
         try {
@@ -435,11 +438,12 @@ public class DnsResolvers extends ServiceJarDiscovery {
           return false;
         }
       }
-    } );
+    } ) );
   }
   
   private static SetResponse lookupRecords( final Message response,
-                                            final DnsRequest request ) {
+                                            final DnsRequest request,
+                                            final List<DnsResolver> resolverList ) {
     final Record query = request.getQuery( );
     final InetAddress source = request.getRemoteAddress( );
     final Name name = query.getName( );
@@ -447,7 +451,7 @@ public class DnsResolvers extends ServiceJarDiscovery {
     response.getHeader( ).setFlag( Flags.RA );// always mark the response w/ the recursion available
 // bit
     LOG.debug( "DnsResolver: " + RequestType.typeOf( type ) + " " + name );
-    for ( final DnsResolver r : DnsResolvers.resolversFor( request ) ) {
+    for ( final DnsResolver r : resolverList ) {
       try {
         final DnsResponse reply = r.lookupRecords( request );
         if ( reply == null ) {
@@ -511,11 +515,11 @@ public class DnsResolvers extends ServiceJarDiscovery {
       if ( !enabled || !Bootstrap.isOperational( ) ) {
         return SetResponse.ofType( SetResponse.UNKNOWN );
       } else {
-        final Iterable<DnsResolver> resolverList = DnsResolvers.resolversFor( request );
-        if ( Iterables.isEmpty( resolverList ) ) {
+        final List<DnsResolver> resolverList = DnsResolvers.resolversFor( request );
+        if ( resolverList.isEmpty( ) ) {
           return SetResponse.ofType( SetResponse.UNKNOWN );
         } else {
-          return DnsResolvers.lookupRecords( response, request );
+          return DnsResolvers.lookupRecords( response, request, resolverList );
         }
       }
     } catch ( final Exception ex ) {
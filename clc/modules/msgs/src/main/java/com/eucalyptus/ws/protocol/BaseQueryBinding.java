@@ -64,8 +64,6 @@ package com.eucalyptus.ws.protocol;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -83,10 +81,7 @@ import com.eucalyptus.binding.BindingElementNotFoundException;
 import com.eucalyptus.binding.BindingException;
 import com.eucalyptus.binding.BindingManager;
 import com.eucalyptus.binding.HttpEmbedded;
-import com.eucalyptus.binding.HttpEmbeddeds;
 import com.eucalyptus.binding.HttpParameterMapping;
-import com.eucalyptus.binding.HttpParameterMappings;
-import com.eucalyptus.binding.HttpValue;
 import com.eucalyptus.crypto.util.Timestamps;
 import com.eucalyptus.http.MappingHttpRequest;
 import com.eucalyptus.ws.StackConfiguration;
@@ -99,10 +94,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
-import edu.ucsb.eucalyptus.msgs.BaseData;
 import edu.ucsb.eucalyptus.msgs.BaseMessage;
-import edu.ucsb.eucalyptus.msgs.EucalyptusData;
-import edu.ucsb.eucalyptus.msgs.EucalyptusMessage;
 import groovy.lang.GroovyObject;
 
 public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandler {
@@ -205,8 +197,9 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
         //this will necessarily fault.
         targetType = this.getBinding( ).getElementClass( operationName );
       }
-      fieldMap = this.buildFieldMap( targetType );
-      eucaMsg = ( BaseMessage ) targetType.newInstance( );
+      final QueryBinder binder = QueryBinder.forClass( targetType );
+      fieldMap = this.buildFieldMap( binder );
+      eucaMsg = ( BaseMessage ) binder.newInstance( );
     } catch ( final BindingException e ) {
       LOG.debug(
           "Failed to construct message of type: " + operationName,
@@ -269,58 +262,40 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
             unknownParameterStrategy == UnknownParameterStrategy.ERROR );
   }
 
-  private static Field getRecursiveField( Class<?> clazz, final String fieldName ) throws Exception {
-    Exception e = null;
-    while ( !BaseMessage.class.equals( clazz ) && !Object.class.equals( clazz ) ) {
-      try {
-        return clazz.getDeclaredField( fieldName );
-      } catch ( final Exception e1 ) {
-        e = e1;        
-      }
-      clazz = clazz.getSuperclass( );
-    }
-    if ( e == null ) throw new Exception("Class not supported: " + clazz);
-    throw e;
-  }
-  
   private List<String> populateObject( final GroovyObject obj, final Map<String, String> paramFieldMap, final Map<String, String> params ) {
+    final QueryBinder binder = QueryBinder.forClass( obj.getClass( ) );
     final List<String> failedMappings = new ArrayList<String>( );
     for ( final Map.Entry<String, String> e : paramFieldMap.entrySet( ) ) {
-      try {
-        if ( getRecursiveField( obj.getClass( ), e.getValue( ) ).getType( ).equals( ArrayList.class ) ) {
-          failedMappings.addAll( this.populateObjectList( obj, e, params, params.size( ) ) );
-        }
-      } catch ( final Exception e1 ) {
-        LOG.debug( "Failed mapping : ", e1 );
+      final QueryBinder.BoundField field = binder.getField( e.getValue( ) );
+      if ( field == null ) {
+        LOG.debug( "Failed mapping, field not found: " + e.getValue( ) );
         failedMappings.add( e.getKey( ) );
+      } else if ( field.isList( ) ) {
+        failedMappings.addAll( this.populateObjectList( obj, field, e, params ) );
       }
     }
     
     for ( final Map.Entry<String, String> e : paramFieldMap.entrySet( ) ) {
-      Field field = null;
-      Class<?> declaredType = null;
-      try {
-        field = getRecursiveField( obj.getClass( ), e.getValue( ) );
-        declaredType = field.getType( );
-      } catch ( final Exception e2 ) {
-        LOG.debug( "Field not found: " + e.getValue(), e2 );
+      final QueryBinder.BoundField field = binder.getField( e.getValue( ) );
+      final Class<?> declaredType = field == null ? null : field.getType( );
+      if ( field == null ) {
+        LOG.debug( "Field not found: " + e.getValue() );
       }
       
       if ( params.containsKey( e.getKey( ) )
-           && ( declaredType == null || !EucalyptusData.class.isAssignableFrom( declaredType ) )
-           && !this.populateObjectField( obj, e, params ) ) {
+           && ( declaredType == null || !field.isData( ) )
+           && !this.populateObjectField( obj, field, e, params ) ) {
         failedMappings.add( e.getKey( ) );
       } else if ( ( declaredType != null )
-                  && EucalyptusData.class.isAssignableFrom( declaredType ) ) {
+                  && field.isData( ) ) {
         try {
-          final Map<String, String> fieldMap = this.buildFieldMap( declaredType );
-          final Object newInstance = declaredType.newInstance( );
+          final QueryBinder dataBinder = QueryBinder.forClass( declaredType );
+          final Map<String, String> fieldMap = this.buildFieldMap( dataBinder );
+          final Object newInstance = dataBinder.newInstance( );
           Map<String, String> subParams = Maps.newHashMap( );
 
           HttpEmbedded httpEmbedded = null;
-          if ( field != null && (
-              field.isAnnotationPresent( HttpEmbedded.class ) ||
-              field.isAnnotationPresent( HttpEmbeddeds.class ) ) ) {
+          if ( field.getEmbedded( ) != null ) {
             httpEmbedded = getHttpEmbeddedAnnotation( field );
           }
           if ( httpEmbedded != null && !httpEmbedded.multiple( ) ) {
@@ -328,7 +303,6 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
           } else {
             for ( final String item : Sets.newHashSet( params.keySet( ) ) ) {
               if ( item.startsWith( e.getKey( ) ) ) {
-                params.get( item );
                 subParams.put( item.replace( e.getKey( ) + ".", "" ), params.remove( item ) );
               }
             }
@@ -350,16 +324,20 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     return failedMappings;
   }
   
-  @SuppressWarnings( "unchecked" )
-  private boolean populateObjectField( final GroovyObject obj, final Map.Entry<String, String> paramFieldPair, final Map<String, String> params ) {
+  private boolean populateObjectField( final GroovyObject obj,
+                                       @Nullable final QueryBinder.BoundField field,
+                                       final Map.Entry<String, String> paramFieldPair,
+                                       final Map<String, String> params ) {
+    if ( field == null ) {
+      return false;
+    }
     try {
-      final Class<?> declaredType = getRecursiveField( obj.getClass( ), paramFieldPair.getValue( ) ).getType( );
       final Object value = convertToType( new Supplier<String>(){
         @Override
         public String get() {
           return params.remove( paramFieldPair.getKey() );
         }
-      }, declaredType );
+      }, field.getType( ) );
 
       if ( value != null )
         obj.setProperty( paramFieldPair.getValue( ), value );
@@ -395,13 +373,15 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
       return null;
   }
   
-  @SuppressWarnings( "rawtypes" )
-  private List<String> populateObjectList( final GroovyObject obj, final Map.Entry<String, String> paramFieldPair, final Map<String, String> params, final int paramSize ) {
+  @SuppressWarnings( { "rawtypes", "unchecked" } )
+  private List<String> populateObjectList( final GroovyObject obj,
+                                           final QueryBinder.BoundField declaredField,
+                                           final Map.Entry<String, String> paramFieldPair,
+                                           final Map<String, String> params ) {
     final List<String> failedMappings = new ArrayList<String>( );
     try {
-      final Field declaredField = getRecursiveField( obj.getClass( ), paramFieldPair.getValue( ) );
       final ArrayList theList = ( ArrayList ) obj.getProperty( paramFieldPair.getValue( ) );
-      final Class genericType = ( Class ) ( ( ParameterizedType ) declaredField.getGenericType( ) ).getActualTypeArguments( )[0];
+      final Class genericType = declaredField.getElementType( );
       // :: simple case: FieldName.# :://
       if ( String.class.equals( genericType ) ||
            Boolean.class.equals( genericType ) ||
@@ -413,7 +393,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
           theList.add( convertToType( Suppliers.ofInstance(params.remove( paramFieldPair.getKey() )), genericType ) );
         } else {
           final List<String> keys = Lists.newArrayList( params.keySet( ) );
-          final Pattern paramPattern = Pattern.compile( Pattern.quote(paramFieldPair.getKey( )) + "\\.([0-9]{1,7})" );
+          final Pattern paramPattern = QueryBinder.listPatterns( paramFieldPair.getKey( ) ).getSimplePattern( );
           final Map<String,Object> indexToValueMap = new TreeMap<String,Object>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
           for ( final String k : keys ) {    
             final Matcher matcher = paramPattern.matcher( k );
@@ -423,31 +403,30 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
           }
           theList.addAll( indexToValueMap.values() );
         }
-      } else if ( declaredField.isAnnotationPresent( HttpEmbedded.class ) ||
-                  declaredField.isAnnotationPresent( HttpEmbeddeds.class )) {
+      } else if ( declaredField.getEmbedded( ) != null ) {
         final HttpEmbedded annoteEmbedded = getHttpEmbeddedAnnotation( declaredField );
         // :: build the parameter map and call populate object recursively :://
         if ( annoteEmbedded.multiple( ) ) {
+          final QueryBinder.ListPatterns listPatterns = QueryBinder.listPatterns( paramFieldPair.getKey( ) );
           final List<String> keys = Lists.newArrayList( params.keySet( ) );
           final Map<String,Map<String,String>> subParamMaps = new TreeMap<>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
           final Map<String,String> valueMap = new TreeMap<>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
           for ( final String k : keys ) {
-            if ( k.matches( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.[0-9]{1,7}\\..*" ) ) {
+            final Matcher embeddedMatcher = listPatterns.getEmbeddedPattern( ).matcher( k );
+            final Matcher simpleMatcher;
+            if ( embeddedMatcher.matches( ) ) {
               final String currentValue = params.remove( k );
-              final String setKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.([0-9]{1,7})\\..*", "$1" );
-              if ( setKey.length() > 7 ) continue;
-              final String subKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.[0-9]{1,7}\\." , "" );
+              final String setKey = embeddedMatcher.group( 1 );
+              final String subKey = embeddedMatcher.group( 2 );
               Map<String,String> subMap = subParamMaps.get( setKey );
               if ( subMap == null ) {
                 subParamMaps.put( setKey, subMap = Maps.newHashMap() );
               }
 
               subMap.put( subKey, currentValue );
-            } else if ( k.matches( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.[0-9]{1,7}" ) ) {
+            } else if ( ( simpleMatcher = listPatterns.getSimplePattern( ).matcher( k ) ).matches( ) ) {
               final String currentValue = params.remove( k );
-              final String orderKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.([0-9]{1,7})", "$1" );
-              if ( orderKey.length() > 7 ) continue;
-              valueMap.put( orderKey, currentValue );
+              valueMap.put( simpleMatcher.group( 1 ), currentValue );
             }
           }
 
@@ -471,9 +450,10 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     return failedMappings;
   }
 
-  private List<String> populateEmbedded( final Class<?> genericType, final Map<String, String> params, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws InstantiationException, IllegalAccessException {
-    final GroovyObject embedded = ( GroovyObject ) genericType.newInstance( );
-    final Map<String, String> embeddedFields = this.buildFieldMap( genericType );
+  private List<String> populateEmbedded( final Class<?> genericType, final Map<String, String> params, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws ReflectiveOperationException {
+    final QueryBinder binder = QueryBinder.forClass( genericType );
+    final GroovyObject embedded = ( GroovyObject ) binder.newInstance( );
+    final Map<String, String> embeddedFields = this.buildFieldMap( binder );
     final int startSize = params.size( );
     final List<String> embeddedFailures = this.populateObject( embedded, embeddedFields, params );
     if ( embeddedFailures.isEmpty( ) && !( params.size( ) - startSize == 0 ) )
@@ -482,9 +462,10 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     return embeddedFailures;
   }
 
-  private List<String> populateEmbedded( final Class<?> genericType, final String value, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws InstantiationException, IllegalAccessException {
-    final GroovyObject embedded = ( GroovyObject ) genericType.newInstance( );
-    final Field valueField = this.findValueField( genericType );
+  private List<String> populateEmbedded( final Class<?> genericType, final String value, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws ReflectiveOperationException {
+    final QueryBinder binder = QueryBinder.forClass( genericType );
+    final GroovyObject embedded = ( GroovyObject ) binder.newInstance( );
+    final Field valueField = binder.getValueField( );
     if ( valueField == null ) {
       throw new IllegalArgumentException( "Simple type cannot be mapped for " + genericType.getSimpleName( ) );
     }
@@ -497,62 +478,31 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     return embeddedFailures;
   }
 
-  @Nullable
-  private Field findValueField( Class<?> targetType ) {
-    while ( !BaseMessage.class.equals( targetType ) && !EucalyptusMessage.class.equals( targetType ) && !EucalyptusData.class.equals( targetType )
-        && !BaseData.class.equals( targetType ) ) {
-      final Field[] fields = targetType.getDeclaredFields( );
-      for ( final Field f : fields ) {
-        if ( Modifier.isStatic( f.getModifiers( ) ) ) {
-          continue;
-        } else if ( f.isAnnotationPresent( HttpValue.class ) ) {
-          return f;
-        }
-      }
-      targetType = targetType.getSuperclass( );
+  /**
+   * Build the map of parameter names to field names for the binder.
+   *
+   * The map is precomputed by the binder unless it depends on the version.
+   */
+  private Map<String, String> buildFieldMap( final QueryBinder binder ) {
+    final Map<String, String> precomputedFieldMap = binder.getFieldMap( );
+    if ( precomputedFieldMap != null ) {
+      return precomputedFieldMap;
     }
-    return null;
-  }
-
-  private Map<String, String> buildFieldMap( Class<?> targetType ) {
     final Map<String, String> fieldMap = new HashMap<String, String>( );
-    while ( !BaseMessage.class.equals( targetType ) && !EucalyptusMessage.class.equals( targetType ) && !EucalyptusData.class.equals( targetType )
-            && !BaseData.class.equals( targetType ) ) {
-      final Field[] fields = targetType.getDeclaredFields( );
-      for ( final Field f : fields ) {
-        if ( Modifier.isStatic( f.getModifiers( ) ) )
-          continue;
-        else if ( f.isAnnotationPresent( HttpParameterMapping.class ) || f.isAnnotationPresent( HttpParameterMappings.class ) ) {
-          for ( String parameter : getHttpParameterMappingAnnotation( f ).parameter() ) {
-            fieldMap.put( parameter, f.getName( ) );
-          }
-        } else {
-          fieldMap.put( f.getName( ).substring( 0, 1 ).toUpperCase( ).concat( f.getName( ).substring( 1 ) ), f.getName( ) );
-        }
+    for ( final QueryBinder.MappedField mappedField : binder.getMappedFields( ) ) {
+      final HttpParameterMapping[] mappings = mappedField.getMappings( );
+      final HttpParameterMapping mapping = mappings == null ?
+          null :
+          getVersionedAnnotation( mappings, HttpParameterMappingVersionExtractor.INSTANCE );
+      for ( final String parameter : mappedField.getParameters( mapping ) ) {
+        fieldMap.put( parameter, mappedField.getName( ) );
       }
-      targetType = targetType.getSuperclass( );
     }
     return fieldMap;
   }
 
-  private HttpEmbedded getHttpEmbeddedAnnotation( final Field field ) {
-    if ( field.isAnnotationPresent( HttpEmbedded.class ) ) {
-      return field.getAnnotation( HttpEmbedded.class );
-    } else {
-      return getVersionedAnnotation(
-          field.getAnnotation( HttpEmbeddeds.class ).value(),
-          HttpEmbeddedVersionExtractor.INSTANCE );
-    }
-  }
-
-  private HttpParameterMapping getHttpParameterMappingAnnotation( final Field field ) {
-    if ( field.isAnnotationPresent( HttpParameterMapping.class ) ) {
-      return field.getAnnotation( HttpParameterMapping.class );
-    } else {
-      return getVersionedAnnotation(
-          field.getAnnotation( HttpParameterMappings.class ).value(),
-          HttpParameterMappingVersionExtractor.INSTANCE );
-    }
+  private HttpEmbedded getHttpEmbeddedAnnotation( final QueryBinder.BoundField field ) {
+    return getVersionedAnnotation( field.getEmbedded( ), HttpEmbeddedVersionExtractor.INSTANCE );
   }
 
   private <T extends Annotation> T getVersionedAnnotation( final T[] values,
@@ -0,0 +1,364 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.ws.protocol;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import com.eucalyptus.binding.HttpEmbedded;
+import com.eucalyptus.binding.HttpEmbeddeds;
+import com.eucalyptus.binding.HttpParameterMapping;
+import com.eucalyptus.binding.HttpParameterMappings;
+import com.eucalyptus.binding.HttpValue;
+import com.eucalyptus.util.Exceptions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import edu.ucsb.eucalyptus.msgs.BaseData;
+import edu.ucsb.eucalyptus.msgs.BaseMessage;
+import edu.ucsb.eucalyptus.msgs.EucalyptusData;
+import edu.ucsb.eucalyptus.msgs.EucalyptusMessage;
+
+/**
+ * Query binding information for a message or data class.
+ *
+ * <p>Binders hold the reflective information used when binding query
+ * parameters to an object and are built once per class and then reused.</p>
+ *
+ * <p>Annotations with versions are resolved at bind time as the result
+ * depends on the request namespace.</p>
+ */
+final class QueryBinder {
+
+  private static final LoadingCache<Class<?>,QueryBinder> binders = CacheBuilder.newBuilder( )
+      .weakKeys( )
+      .build( new CacheLoader<Class<?>,QueryBinder>( ) {
+        @Override
+        public QueryBinder load( final Class<?> type ) {
+          return new QueryBinder( type );
+        }
+      } );
+
+  private static final LoadingCache<String,ListPatterns> listPatterns = CacheBuilder.newBuilder( )
+      .maximumSize( 10_000 )
+      .build( new CacheLoader<String,ListPatterns>( ) {
+        @Override
+        public ListPatterns load( final String parameter ) {
+          return new ListPatterns( parameter );
+        }
+      } );
+
+  private final Class<?> type;
+  @Nullable
+  private final Constructor<?> constructor;
+  private final Map<String,BoundField> fields;
+  private final List<MappedField> mappedFields;
+  @Nullable
+  private final Map<String,String> fieldMap;
+  @Nullable
+  private final Field valueField;
+
+  private QueryBinder( final Class<?> type ) {
+    this.type = type;
+    this.constructor = constructor( type );
+    this.fields = buildFields( type );
+    this.mappedFields = buildMappedFields( type );
+    this.fieldMap = buildFieldMap( mappedFields );
+    this.valueField = buildValueField( type );
+  }
+
+  static QueryBinder forClass( final Class<?> type ) {
+    try {
+      return binders.get( type );
+    } catch ( final ExecutionException e ) {
+      throw Exceptions.toUndeclared( e.getCause( ) );
+    }
+  }
+
+  static ListPatterns listPatterns( final String parameter ) {
+    return listPatterns.getUnchecked( parameter );
+  }
+
+  Object newInstance( ) throws ReflectiveOperationException {
+    return constructor == null ?
+        type.newInstance( ) :
+        constructor.newInstance( );
+  }
+
+  /**
+   * Lookup a field by name, superclass fields are included up to BaseMessage.
+   *
+   * @return The field or null if not found
+   */
+  @Nullable
+  BoundField getField( final String name ) {
+    return fields.get( name );
+  }
+
+  /**
+   * The fields that can be bound, in declaration order from the class to
+   * its ancestors.
+   */
+  List<MappedField> getMappedFields( ) {
+    return mappedFields;
+  }
+
+  /**
+   * The map of parameter names to field names.
+   *
+   * @return The map or null if the mapping depends on the version.
+   */
+  @Nullable
+  Map<String,String> getFieldMap( ) {
+    return fieldMap;
+  }
+
+  @Nullable
+  Field getValueField( ) {
+    return valueField;
+  }
+
+  private static boolean isBindingRoot( final Class<?> type ) {
+    return BaseMessage.class.equals( type ) || EucalyptusMessage.class.equals( type ) ||
+        EucalyptusData.class.equals( type ) || BaseData.class.equals( type );
+  }
+
+  @Nullable
+  private static Constructor<?> constructor( final Class<?> type ) {
+    try {
+      return type.getConstructor( );
+    } catch ( final NoSuchMethodException e ) {
+      return null;
+    }
+  }
+
+  private static Map<String,BoundField> buildFields( Class<?> type ) {
+    final Map<String,BoundField> fields = Maps.newHashMap( );
+    while ( !BaseMessage.class.equals( type ) && !Object.class.equals( type ) && type != null ) {
+      for ( final Field field : type.getDeclaredFields( ) ) {
+        if ( !fields.containsKey( field.getName( ) ) ) {
+          fields.put( field.getName( ), new BoundField( field ) );
+        }
+      }
+      type = type.getSuperclass( );
+    }
+    return ImmutableMap.copyOf( fields );
+  }
+
+  private static List<MappedField> buildMappedFields( Class<?> type ) {
+    final List<MappedField> mappedFields = Lists.newArrayList( );
+    while ( !isBindingRoot( type ) ) {
+      for ( final Field field : type.getDeclaredFields( ) ) {
+        if ( Modifier.isStatic( field.getModifiers( ) ) ) {
+          continue;
+        } else if ( field.isAnnotationPresent( HttpParameterMapping.class ) ) {
+          mappedFields.add( new MappedField( field.getName( ), new HttpParameterMapping[]{ field.getAnnotation( HttpParameterMapping.class ) } ) );
+        } else if ( field.isAnnotationPresent( HttpParameterMappings.class ) ) {
+          mappedFields.add( new MappedField( field.getName( ), field.getAnnotation( HttpParameterMappings.class ).value( ) ) );
+        } else {
+          mappedFields.add( new MappedField( field.getName( ), null ) );
+        }
+      }
+      type = type.getSuperclass( );
+    }
+    return ImmutableList.copyOf( mappedFields );
+  }
+
+  @Nullable
+  private static Map<String,String> buildFieldMap( final List<MappedField> mappedFields ) {
+    final Map<String,String> fieldMap = new HashMap<String,String>( );
+    for ( final MappedField mappedField : mappedFields ) {
+      if ( mappedField.isVersioned( ) ) {
+        return null;
+      }
+      for ( final String parameter : mappedField.getParameters( mappedField.getMappings( ) == null ? null : mappedField.getMappings( )[0] ) ) {
+        fieldMap.put( parameter, mappedField.getName( ) );
+      }
+    }
+    return Collections.unmodifiableMap( fieldMap );
+  }
+
+  @Nullable
+  private static Field buildValueField( Class<?> type ) {
+    while ( !isBindingRoot( type ) ) {
+      for ( final Field field : type.getDeclaredFields( ) ) {
+        if ( !Modifier.isStatic( field.getModifiers( ) ) && field.isAnnotationPresent( HttpValue.class ) ) {
+          return field;
+        }
+      }
+      type = type.getSuperclass( );
+    }
+    return null;
+  }
+
+  /**
+   * A field that is mapped to one or more query parameters.
+   */
+  static final class MappedField {
+    private final String name;
+    @Nullable
+    private final HttpParameterMapping[] mappings;
+
+    private MappedField( final String name, @Nullable final HttpParameterMapping[] mappings ) {
+      this.name = name;
+      this.mappings = mappings;
+    }
+
+    String getName( ) {
+      return name;
+    }
+
+    /**
+     * The mapping annotations, null if the field is mapped by name.
+     */
+    @Nullable
+    HttpParameterMapping[] getMappings( ) {
+      return mappings;
+    }
+
+    boolean isVersioned( ) {
+      return mappings != null && mappings.length > 1;
+    }
+
+    /**
+     * The parameters for the field given the (resolved) mapping annotation.
+     */
+    String[] getParameters( @Nullable final HttpParameterMapping mapping ) {
+      return mapping != null ?
+          mapping.parameter( ) :
+          new String[]{ name.substring( 0, 1 ).toUpperCase( ).concat( name.substring( 1 ) ) };
+    }
+  }
+
+  /**
+   * Reflective information for a field.
+   */
+  static final class BoundField {
+    private final Field field;
+    private final Class<?> type;
+    @Nullable
+    private final Class<?> elementType;
+    @Nullable
+    private final HttpEmbedded[] embedded;
+
+    private BoundField( final Field field ) {
+      this.field = field;
+      this.type = field.getType( );
+      this.elementType = elementType( field );
+      if ( field.isAnnotationPresent( HttpEmbedded.class ) ) {
+        this.embedded = new HttpEmbedded[]{ field.getAnnotation( HttpEmbedded.class ) };
+      } else if ( field.isAnnotationPresent( HttpEmbeddeds.class ) ) {
+        this.embedded = field.getAnnotation( HttpEmbeddeds.class ).value( );
+      } else {
+        this.embedded = null;
+      }
+    }
+
+    Field getField( ) {
+      return field;
+    }
+
+    Class<?> getType( ) {
+      return type;
+    }
+
+    boolean isList( ) {
+      return ArrayList.class.equals( type );
+    }
+
+    boolean isData( ) {
+      return EucalyptusData.class.isAssignableFrom( type );
+    }
+
+    /**
+     * The list element type.
+     *
+     * @throws IllegalStateException If the field does not have an element type
+     */
+    Class<?> getElementType( ) {
+      if ( elementType == null ) {
+        throw new IllegalStateException( "Element type not available for field " + field.getName( ) );
+      }
+      return elementType;
+    }
+
+    /**
+     * The embedded annotations, null if the field is not embedded.
+     */
+    @Nullable
+    HttpEmbedded[] getEmbedded( ) {
+      return embedded;
+    }
+
+    @Nullable
+    private static Class<?> elementType( final Field field ) {
+      final Type genericType = field.getGenericType( );
+      if ( genericType instanceof ParameterizedType ) {
+        final Type[] arguments = ( (ParameterizedType) genericType ).getActualTypeArguments( );
+        if ( arguments.length > 0 && arguments[0] instanceof Class ) {
+          return (Class<?>) arguments[0];
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Patterns for indexed list parameters.
+   */
+  static final class ListPatterns {
+    private final Pattern simplePattern;
+    private final Pattern embeddedPattern;
+
+    private ListPatterns( final String parameter ) {
+      this.simplePattern = Pattern.compile( Pattern.quote( parameter ) + "\\.([0-9]{1,7})" );
+      this.embeddedPattern = Pattern.compile( Pattern.quote( parameter ) + "\\.([0-9]{1,7})\\.(.*)" );
+    }
+
+    /**
+     * Pattern matching "Parameter.N", group 1 is the index.
+     */
+    Pattern getSimplePattern( ) {
+      return simplePattern;
+    }
+
+    /**
+     * Pattern matching "Parameter.N.SubParameter", group 1 is the index, group
+     * 2 is the sub-parameter.
+     */
+    Pattern getEmbeddedPattern( ) {
+      return embeddedPattern;
+    }
+  }
+}
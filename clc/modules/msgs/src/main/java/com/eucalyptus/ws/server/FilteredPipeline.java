@@ -132,6 +132,31 @@ public abstract class FilteredPipeline implements HasName<FilteredPipeline>, Fil
   
   @Override
   public abstract boolean checkAccepts( HttpRequest message );
+
+  /**
+   * Is the pipeline routable.
+   *
+   * <p>A routable pipeline only accepts requests with a SOAPAction header,
+   * its checkAccepts depends only on the request URI and Host header and
+   * does not modify the request. Routable pipelines are indexed by route
+   * rather than checked for every request.</p>
+   */
+  protected boolean isRoutable( ) {
+    return false;
+  }
+
+  /**
+   * Is the checkAccepts implementation for the pipeline class declared by the
+   * given class, i.e. not overridden by a subclass.
+   */
+  protected static boolean acceptsAsDeclaredBy( final Class<? extends FilteredPipeline> pipelineClass,
+                                                final Class<? extends FilteredPipeline> declaringClass ) {
+    try {
+      return pipelineClass.getMethod( "checkAccepts", HttpRequest.class ).getDeclaringClass( ) == declaringClass;
+    } catch ( final NoSuchMethodException e ) {
+      return false;
+    }
+  }
   
   @Override
   public final int compareTo( final FilteredPipeline o ) {
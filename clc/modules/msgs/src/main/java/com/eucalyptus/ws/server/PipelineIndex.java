@@ -0,0 +1,101 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.ws.server;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Index of the pipelines to check for a request by route.
+ *
+ * <p>A routable pipeline (see FilteredPipeline#isRoutable) accepts all or
+ * none of the requests for a route, the route being the URI and Host header
+ * of a SOAP request. For each route the index holds the pipelines to check in
+ * scan order, pipelines that are not routable followed by the first routable
+ * pipeline accepting the route. Routable pipelines that do not accept the
+ * route are skipped. Requests without a SOAPAction header share a route that
+ * no routable pipeline accepts.</p>
+ *
+ * <p>Routes expire as routable pipelines accepting by host name see DNS
+ * configuration changes after a delay.</p>
+ */
+class PipelineIndex {
+  private static final String NON_SOAP_ROUTE = "";
+
+  private final List<FilteredPipeline> pipelines;
+  private final Cache<String,List<FilteredPipeline>> routes = CacheBuilder.newBuilder( )
+      .maximumSize( 1000 )
+      .expireAfterWrite( 15, TimeUnit.SECONDS )
+      .build( );
+
+  /**
+   * Create an index for the given pipelines, in scan order.
+   */
+  PipelineIndex( final Iterable<FilteredPipeline> pipelines ) {
+    this.pipelines = ImmutableList.copyOf( pipelines );
+  }
+
+  /**
+   * Find the first pipeline accepting the request.
+   *
+   * @return The pipeline or null
+   */
+  @Nullable
+  FilteredPipeline find( final HttpRequest request ) {
+    final String route = route( request );
+    List<FilteredPipeline> candidates = routes.getIfPresent( route );
+    if ( candidates == null ) {
+      candidates = candidates( request );
+      routes.put( route, candidates );
+    }
+    for ( final FilteredPipeline pipeline : candidates ) {
+      if ( pipeline.isRoutable( ) || pipeline.checkAccepts( request ) ) {
+        return pipeline;
+      }
+    }
+    return null;
+  }
+
+  private List<FilteredPipeline> candidates( final HttpRequest request ) {
+    final ImmutableList.Builder<FilteredPipeline> candidates = ImmutableList.builder( );
+    for ( final FilteredPipeline pipeline : pipelines ) {
+      if ( !pipeline.isRoutable( ) ) {
+        candidates.add( pipeline );
+      } else if ( pipeline.checkAccepts( request ) ) {
+        candidates.add( pipeline );
+        break;
+      }
+    }
+    return candidates.build( );
+  }
+
+  static String route( final HttpRequest request ) {
+    return request.getHeaderNames( ).contains( "SOAPAction" ) ?
+        request.getUri( ) + '\n' + Strings.nullToEmpty( request.getHeader( HttpHeaders.Names.HOST ) ) :
+        NON_SOAP_ROUTE;
+  }
+}
@@ -0,0 +1,66 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.ws.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Statistics for routing of HTTP requests to pipelines.
+ */
+public class PipelineRoutingStatistics {
+
+  private final AtomicLong unrouted = new AtomicLong( );
+  private final ConcurrentMap<String,AtomicLong> routedByPipeline = Maps.newConcurrentMap( );
+
+  void routed( final FilteredPipeline pipeline ) {
+    if ( pipeline == null ) {
+      unrouted.incrementAndGet( );
+    } else {
+      AtomicLong counter = routedByPipeline.get( pipeline.getName( ) );
+      if ( counter == null ) {
+        final AtomicLong newCounter = new AtomicLong( );
+        counter = routedByPipeline.putIfAbsent( pipeline.getName( ), newCounter );
+        if ( counter == null ) {
+          counter = newCounter;
+        }
+      }
+      counter.incrementAndGet( );
+    }
+  }
+
+  /**
+   * Requests not accepted by any pipeline.
+   */
+  public long getUnrouted( ) {
+    return unrouted.get( );
+  }
+
+  public Map<String,Long> getRoutedByPipeline( ) {
+    final ImmutableMap.Builder<String,Long> builder = ImmutableMap.builder( );
+    for ( final Map.Entry<String,AtomicLong> entry : routedByPipeline.entrySet( ) ) {
+      builder.put( entry.getKey( ), entry.getValue( ).get( ) );
+    }
+    return builder.build( );
+  }
+}
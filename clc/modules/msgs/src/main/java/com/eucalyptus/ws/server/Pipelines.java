@@ -68,6 +68,7 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.net.URLCodec;
 import org.apache.log4j.Logger;
@@ -97,6 +98,7 @@ import com.eucalyptus.records.EventType;
 import com.eucalyptus.records.Logs;
 import com.eucalyptus.system.Ats;
 import com.eucalyptus.util.Classes;
+import com.eucalyptus.util.Mbeans;
 import com.eucalyptus.ws.Handlers;
 import com.eucalyptus.ws.handlers.HmacHandler;
 import com.eucalyptus.ws.protocol.BaseQueryBinding;
@@ -112,6 +114,10 @@ public class Pipelines {
   private static final Set<FilteredPipeline>                                     internalPipelines = Sets.newHashSet( );
   private static final Set<FilteredPipeline>                                     pipelines         = Sets.newHashSet( );
   private static final Map<Class<? extends ComponentId>, ChannelPipelineFactory> clientPipelines   = Maps.newHashMap( );
+  private static final ConcurrentMap<FilteredPipeline, Boolean>                  soapPipelines     = Maps.newConcurrentMap( );
+  private static final PipelineRoutingStatistics                                 routingStatistics = new PipelineRoutingStatistics( );
+  private static volatile PipelineIndex                                          publicRoutes      = new PipelineIndex( pipelines );
+  private static volatile PipelineIndex                                          internalRoutes    = new PipelineIndex( internalPipelines );
   private static final Supplier<String> subDomain = new Supplier<String>() {
 
     @Override
@@ -147,13 +153,25 @@ public class Pipelines {
     return candidate;
   }
   
+  /**
+   * Find the first pipeline accepting the request.
+   *
+   * <p>Pipelines are checked in order, routable pipelines that do not accept
+   * the route of the request are skipped (see PipelineIndex)</p>
+   */
   private static FilteredPipeline findAccepting( final HttpRequest request ) {
-    final FilteredPipeline candidate = null;
-    for ( final FilteredPipeline f : pipelines ) {
-      if ( f.checkAccepts( request ) ) {
-        return f;
-      }
+    FilteredPipeline candidate = publicRoutes.find( request );
+    if ( candidate == null ) {
+      candidate = findIntercepting( request );
     }
+    if ( candidate == null ) {
+      candidate = internalRoutes.find( request );
+    }
+    routingStatistics.routed( candidate );
+    return candidate;
+  }
+
+  private static FilteredPipeline findIntercepting( final HttpRequest request ) {
     if ( request.getHeader(HttpHeaders.Names.HOST).contains( "amazonaws.com" ) 
         || request.getHeader(HttpHeaders.Names.HOST).contains( subDomain.get( ) ) ) {
       String hostHeader = request.getHeader(HttpHeaders.Names.HOST);
@@ -163,9 +181,9 @@ public class Pipelines {
           Class<? extends ComponentId> compIdClass = Ats.from( f ).get( ComponentPart.class ).value( );
           ComponentId compId = ComponentIds.lookup( compIdClass );
           if ( Ats.from( compIdClass ).has( PublicService.class ) ) {
-            if ( request.getHeaderNames().contains( "SOAPAction" ) && f.addHandlers( Channels.pipeline( ) ).get( SoapHandler.class ) == null ) {
+            if ( request.getHeaderNames().contains( "SOAPAction" ) && !handlesSoap( f ) ) {
               continue;//Skip pipeline which doesn't handle SOAP for this SOAP request
-            } else if ( !request.getHeaderNames().contains( "SOAPAction" ) && f.addHandlers( Channels.pipeline( ) ).get( SoapHandler.class ) != null ) {
+            } else if ( !request.getHeaderNames().contains( "SOAPAction" ) && handlesSoap( f ) ) {
               continue;//Skip pipeline which handles SOAP for this non-SOAP request
             }
             LOG.debug( "Maybe intercepting: " + hostHeader + " using " + f.getClass( ) );
@@ -179,14 +197,25 @@ public class Pipelines {
         }
       }
     }
-    if ( candidate == null ) {
-      for ( final FilteredPipeline f : internalPipelines ) {
-        if ( f.checkAccepts( request ) ) {
-          return f;
-        }
-      }
+    return null;
+  }
+
+  /**
+   * Does the pipeline handle SOAP requests, handlers are only built once per pipeline.
+   */
+  private static boolean handlesSoap( final FilteredPipeline pipeline ) {
+    Boolean soap = soapPipelines.get( pipeline );
+    if ( soap == null ) {
+      soap = pipeline.addHandlers( Channels.pipeline( ) ).get( SoapHandler.class ) != null;
+      soapPipelines.put( pipeline, soap );
     }
-    return candidate;
+    return soap;
+  }
+
+  private static void routesChanged( ) {
+    publicRoutes = new PipelineIndex( pipelines );
+    internalRoutes = new PipelineIndex( internalPipelines );
+    soapPipelines.clear( );
   }
   
   @Provides( Empyrean.class )
@@ -199,6 +228,8 @@ public class Pipelines {
         Pipelines.internalPipelines.add( new InternalQueryPipeline( comp ) );
         Pipelines.internalPipelines.add( new InternalSoapPipeline( comp ) );
       }
+      Pipelines.routesChanged( );
+      Mbeans.register( Pipelines.routingStatistics );
       return true;
     }
     
@@ -216,6 +247,7 @@ public class Pipelines {
           final Class<? extends FilteredPipeline> pipelineClass = candidate;
           final FilteredPipeline pipeline = Classes.newInstance( pipelineClass );
           Pipelines.pipelines.add( pipeline );
+          Pipelines.routesChanged( );
           return true;
         } catch ( final Exception ex ) {
           LOG.trace( ex, ex );
@@ -263,6 +295,11 @@ public class Pipelines {
       return ( message.getUri( ).endsWith( this.servicePath ) || message.getUri( ).endsWith( this.internalServicePath ) )
              && message.getHeaderNames( ).contains( "SOAPAction" );
     }
+
+    @Override
+    protected boolean isRoutable( ) {
+      return true;
+    }
     
     @Override
     public String getName( ) {
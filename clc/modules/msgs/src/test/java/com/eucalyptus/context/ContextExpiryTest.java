@@ -0,0 +1,87 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.context;
+
+import static org.junit.Assert.*;
+import java.util.List;
+import org.junit.Test;
+import com.eucalyptus.util.Consumer;
+import com.google.common.collect.Lists;
+
+/**
+ * Unit tests for context expiry
+ */
+public class ContextExpiryTest {
+
+  @Test
+  public void testExpiry( ) {
+    final List<String> expired = Lists.newArrayList( );
+    final ContextExpiry expiry = new ContextExpiry( 1000, 8, collector( expired ) );
+    expiry.advance( 100_000 );
+    expiry.schedule( "a", 60_000, 100_000 );
+    expiry.schedule( "b", 1_500, 100_000 );
+    expiry.advance( 101_999 );
+    assertEquals( "Expired before deadline", 0, expired.size( ) );
+    expiry.advance( 102_000 );
+    assertEquals( "Expired at deadline", Lists.newArrayList( "b" ), expired );
+    for ( long now = 102_000; now < 160_000; now += 1000 ) {
+      expiry.advance( now );
+    }
+    assertEquals( "Expired across wheel rotations", Lists.newArrayList( "b" ), expired );
+    expiry.advance( 160_000 );
+    assertEquals( "Expired after wheel rotations", Lists.newArrayList( "b", "a" ), expired );
+    assertEquals( "Expired count", 2, expiry.getExpiredContexts( ) );
+    assertEquals( "Pending count", 0, expiry.getPendingExpirations( ) );
+  }
+
+  @Test
+  public void testCancel( ) {
+    final List<String> expired = Lists.newArrayList( );
+    final ContextExpiry expiry = new ContextExpiry( 1000, 8, collector( expired ) );
+    expiry.advance( 100_000 );
+    expiry.schedule( "a", 5_000, 100_000 );
+    expiry.schedule( "b", 5_000, 100_000 );
+    expiry.cancelTimeout( "a" );
+    expiry.schedule( "b", 10_000, 100_000 );
+    expiry.advance( 120_000 );
+    assertEquals( "Expired", Lists.newArrayList( "b" ), expired );
+    assertEquals( "Cancelled count", 2, expiry.getCancelledExpirations( ) );
+    assertEquals( "Pending count", 0, expiry.getPendingExpirations( ) );
+  }
+
+  @Test
+  public void testCatchUp( ) {
+    final List<String> expired = Lists.newArrayList( );
+    final ContextExpiry expiry = new ContextExpiry( 1000, 8, collector( expired ) );
+    expiry.advance( 100_000 );
+    expiry.schedule( "a", 3_000, 100_000 );
+    expiry.advance( 1_000_000 );
+    assertEquals( "Expired", Lists.newArrayList( "a" ), expired );
+  }
+
+  private static Consumer<String> collector( final List<String> expired ) {
+    return new Consumer<String>( ) {
+      @Override
+      public void accept( final String correlationId ) {
+        expired.add( correlationId );
+      }
+    };
+  }
+}
@@ -0,0 +1,147 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.context;
+
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.mule.DefaultMuleEvent;
+import org.mule.api.MuleContext;
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleMessage;
+import org.mule.api.construct.FlowConstruct;
+import org.mule.api.endpoint.OutboundEndpoint;
+import org.mule.api.transport.MessageDispatcher;
+import org.mule.context.DefaultMuleContextFactory;
+import org.mule.module.client.MuleClient;
+import org.mule.session.DefaultMuleSession;
+import org.mule.transport.vm.VMMessageDispatcherFactory;
+import com.google.common.base.Suppliers;
+
+/**
+ * Compares per message dispatcher creation with cached dispatchers for
+ * dispatch to a VM endpoint.
+ *
+ * Messages are dispatched as by ServiceContext.dispatch. There is no
+ * receiver for the endpoint so dispatched messages are drained from the
+ * queue after each pass, passes alternate which path runs first.
+ */
+@Ignore( "Manual benchmark" )
+public class ServiceDispatchBenchmark {
+  private static final Logger LOG = Logger.getLogger( ServiceDispatchBenchmark.class );
+  private static final String DEST = "vm://ServiceDispatchBenchmark";
+  private static final int MESSAGES = 25_000;
+  private static final int ROUNDS = 4;
+
+  @Test
+  public void benchmark( ) throws Exception {
+    final MuleContext muleContext = new DefaultMuleContextFactory( ).createMuleContext( );
+    muleContext.start( );
+    try {
+      final VMMessageDispatcherFactory dispatcherFactory = new VMMessageDispatcherFactory( );
+      final ServiceDispatchers dispatchers = new ServiceDispatchers( muleContext, dispatcherFactory, Suppliers.ofInstance( 16 ) );
+      final MuleClient client = new MuleClient( muleContext );
+      for ( int i = 0; i < 3; i++ ) { // warm up
+        uncached( muleContext, dispatcherFactory, MESSAGES / 10 );
+        drain( client, MESSAGES / 10 );
+        cached( dispatchers, MESSAGES / 10 );
+        drain( client, MESSAGES / 10 );
+      }
+      long uncachedNanos = 0;
+      long cachedNanos = 0;
+      for ( int i = 0; i < ROUNDS; i++ ) {
+        for ( final boolean cachedPass : i % 2 == 0 ? new boolean[]{ false, true } : new boolean[]{ true, false } ) {
+          final long start = System.nanoTime( );
+          if ( cachedPass ) {
+            cached( dispatchers, MESSAGES );
+            cachedNanos += System.nanoTime( ) - start;
+          } else {
+            uncached( muleContext, dispatcherFactory, MESSAGES );
+            uncachedNanos += System.nanoTime( ) - start;
+          }
+          drain( client, MESSAGES );
+        }
+      }
+      LOG.info( String.format( "Uncached: %.0f messages/s", ROUNDS * MESSAGES / ( uncachedNanos / 1e9 ) ) );
+      LOG.info( String.format( "Cached: %.0f messages/s (%d dispatchers created)", ROUNDS * MESSAGES / ( cachedNanos / 1e9 ), dispatchers.getCreated( ) ) );
+      dispatchers.dispose( );
+    } finally {
+      muleContext.dispose( );
+    }
+  }
+
+  /**
+   * Endpoint lookup and dispatcher lifecycle per message, as previously done
+   * by ServiceContext.dispatch
+   */
+  private static void uncached( final MuleContext muleContext,
+                                final VMMessageDispatcherFactory dispatcherFactory,
+                                final int messages ) throws Exception {
+    for ( int i = 0; i < messages; i++ ) {
+      final OutboundEndpoint endpoint = muleContext.getEndpointFactory( ).getOutboundEndpoint( DEST );
+      final MessageDispatcher dispatcher = dispatcherFactory.create( endpoint );
+      try {
+        dispatcher.initialise( );
+        dispatcher.start( );
+        dispatch( endpoint, dispatcher, "message-" + i );
+      } finally {
+        dispatcher.dispose( );
+      }
+    }
+  }
+
+  private static void cached( final ServiceDispatchers dispatchers,
+                              final int messages ) throws Exception {
+    for ( int i = 0; i < messages; i++ ) {
+      final OutboundEndpoint endpoint = dispatchers.lookupEndpoint( DEST );
+      final MessageDispatcher dispatcher = dispatchers.borrowDispatcher( endpoint );
+      boolean reusable = false;
+      try {
+        dispatch( endpoint, dispatcher, "message-" + i );
+        reusable = true;
+      } finally {
+        dispatchers.releaseDispatcher( endpoint, dispatcher, reusable );
+      }
+    }
+  }
+
+  /**
+   * Remove dispatched messages from the endpoint queue so each pass starts
+   * with an empty queue.
+   */
+  private static void drain( final MuleClient client,
+                             final int messages ) throws Exception {
+    int drained = 0;
+    while ( client.request( DEST, 0 ) != null ) {
+      drained++;
+    }
+    if ( drained != messages ) {
+      throw new IllegalStateException( "Expected " + messages + " queued messages, found " + drained );
+    }
+  }
+
+  private static void dispatch( final OutboundEndpoint endpoint,
+                                final MessageDispatcher dispatcher,
+                                final Object msg ) throws Exception {
+    final MuleMessage muleMsg = dispatcher.createMuleMessage( msg );
+    final MuleEvent muleEvent = new DefaultMuleEvent( muleMsg, endpoint.getExchangePattern( ), (FlowConstruct) null, new DefaultMuleSession( ) );
+    dispatcher.process( muleEvent );
+  }
+}
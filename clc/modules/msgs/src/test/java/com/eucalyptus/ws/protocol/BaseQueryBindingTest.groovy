@@ -179,6 +179,20 @@ class BaseQueryBindingTest {
     assertEquals( "Data value", [ new HttpEmbeddedData( httpEmbeddedData2: new HttpEmbeddedData2( member: ["a","b","c"], ints: [3,2,1] ) ), new HttpEmbeddedData( httpEmbeddedData2: new HttpEmbeddedData2( member: ["z","y","x"], ints: [1,2,3] ) ) ], httpEmbeddedAnnotated.data )
   }
 
+  @Test
+  void testBinderEquivalence() {
+    QueryBindingTestSupport support = new QueryBindingTestSupport()
+    [
+        SingleSimpleTypes.class,
+        MultipleSimpleTypes.class,
+        HttpParameterAnnotated.class,
+        HttpEmbeddedAnnotated.class,
+        HttpEmbeddedVersioned.class,
+        NestedData.class,
+    ].each { Class clazz -> support.assertBinderEquivalence( clazz ) }
+    assertSame( "Binder reused", QueryBinder.forClass( NestedData.class ), QueryBinder.forClass( NestedData.class ) )
+  }
+
   Object bind( BaseQueryBinding binding, String url ) {
     binding.bind( new MappingHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.GET, url ) )
   }
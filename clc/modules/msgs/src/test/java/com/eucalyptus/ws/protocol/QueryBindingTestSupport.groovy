@@ -31,6 +31,8 @@ import org.jibx.binding.model.ValidationContext
 import org.jibx.binding.model.BindingElement
 import edu.ucsb.eucalyptus.msgs.BaseMessage
 import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+import java.lang.reflect.ParameterizedType
 import com.eucalyptus.system.Ats
 import com.eucalyptus.binding.HttpEmbedded
 import com.eucalyptus.binding.Binding
@@ -44,6 +46,8 @@ import com.eucalyptus.binding.HttpParameterMapping
 import java.text.SimpleDateFormat
 import com.eucalyptus.binding.HttpEmbeddeds
 import com.eucalyptus.binding.HttpParameterMappings
+import com.eucalyptus.binding.HttpValue
+import edu.ucsb.eucalyptus.msgs.BaseData
 
 /**
  * 
@@ -81,9 +85,86 @@ class QueryBindingTestSupport {
       if ( !ignoreMessageClasses.contains(clazz.getName()) ) {
         assertAnnotationsRecursively( clazz )
       }
+      assertBinderEquivalence( clazz )
     }
   }
 
+  /**
+   * Assert that the precomputed binder for the class matches the binding
+   * information determined reflectively for each bind.
+   */
+  void assertBinderEquivalence( Class target, Set<Class> checked = [] as Set ) {
+    if ( !checked.add( target ) ) return
+    QueryBinder binder = QueryBinder.forClass( target )
+
+    Map<String,String> fieldMap = binder.getFieldMap( )
+    if ( fieldMap == null ) {
+      assertTrue( "Versioned field map for " + target.getName( ), binder.getMappedFields( ).any{ it.isVersioned( ) } )
+    } else {
+      assertEquals( "Field map for " + target.getName( ), buildFieldMap( target ), fieldMap )
+    }
+    assertEquals( "Value field for " + target.getName( ), findValueField( target ), binder.getValueField( ) )
+
+    for ( Class clazz = target; !BaseMessage.class.equals( clazz ) && !Object.class.equals( clazz ); clazz = clazz.getSuperclass( ) ) {
+      clazz.getDeclaredFields( ).each { Field field ->
+        Field expected = getRecursiveField( target, field.getName( ) )
+        QueryBinder.BoundField boundField = binder.getField( field.getName( ) )
+        assertNotNull( "Bound field " + target.getName( ) + "." + field.getName( ), boundField )
+        assertEquals( "Bound field " + target.getName( ) + "." + field.getName( ), expected, boundField.getField( ) )
+        assertEquals( "Embedded " + target.getName( ) + "." + field.getName( ),
+            Ats.from( expected ).has( HttpEmbedded.class ) || Ats.from( expected ).has( HttpEmbeddeds.class ),
+            boundField.getEmbedded( ) != null )
+        def dataClass = ArrayList.equals( expected.getType( ) ) && expected.getGenericType( ) instanceof ParameterizedType ?
+            expected.getGenericType( ).getActualTypeArguments( )[0] :
+            expected.getType( )
+        if ( ArrayList.equals( expected.getType( ) ) && dataClass instanceof Class ) {
+          assertEquals( "Element type " + target.getName( ) + "." + field.getName( ), dataClass, boundField.getElementType( ) )
+        }
+        if ( dataClass instanceof Class && EucalyptusData.class.isAssignableFrom( dataClass ) ) {
+          assertBinderEquivalence( dataClass, checked )
+        }
+      }
+    }
+  }
+
+  private static Field getRecursiveField( Class clazz, String fieldName ) {
+    for ( ; !BaseMessage.class.equals( clazz ) && !Object.class.equals( clazz ); clazz = clazz.getSuperclass( ) ) {
+      Field field = clazz.getDeclaredFields( ).find{ Field declaredField -> declaredField.getName( ).equals( fieldName ) }
+      if ( field != null ) return field
+    }
+    null
+  }
+
+  private static boolean isBindingRoot( Class clazz ) {
+    BaseMessage.class.equals( clazz ) || EucalyptusMessage.class.equals( clazz ) ||
+        EucalyptusData.class.equals( clazz ) || BaseData.class.equals( clazz )
+  }
+
+  private static Field findValueField( Class clazz ) {
+    for ( ; !isBindingRoot( clazz ); clazz = clazz.getSuperclass( ) ) {
+      Field field = clazz.getDeclaredFields( ).find{ Field declaredField ->
+        !Modifier.isStatic( declaredField.getModifiers( ) ) && declaredField.isAnnotationPresent( HttpValue.class ) }
+      if ( field != null ) return field
+    }
+    null
+  }
+
+  private static Map<String,String> buildFieldMap( Class clazz ) {
+    Map<String,String> fieldMap = [:]
+    for ( ; !isBindingRoot( clazz ); clazz = clazz.getSuperclass( ) ) {
+      clazz.getDeclaredFields( ).findAll{ Field field -> !Modifier.isStatic( field.getModifiers( ) ) }.each { Field field ->
+        HttpParameterMapping mapping = field.getAnnotation( HttpParameterMapping.class ) ?:
+            ( field.getAnnotation( HttpParameterMappings.class )?.value( ) as List<HttpParameterMapping> )?.last( )
+        if ( mapping != null ) {
+          mapping.parameter( ).each { String parameter -> fieldMap.put( parameter, field.getName( ) ) }
+        } else {
+          fieldMap.put( field.getName( ).substring( 0, 1 ).toUpperCase( ) + field.getName( ).substring( 1 ), field.getName( ) )
+        }
+      }
+    }
+    fieldMap
+  }
+
   List<Class> loadRequestMessageClassesFromBindingXml( URL resource ) {
     Node binding = new XmlParser().parse( resource.toString() )
     binding.'mapping'.'@class'
@@ -0,0 +1,119 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.ws.server
+
+import static org.junit.Assert.*
+import org.jboss.netty.channel.ChannelPipeline
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest
+import org.jboss.netty.handler.codec.http.HttpMethod
+import org.jboss.netty.handler.codec.http.HttpRequest
+import org.jboss.netty.handler.codec.http.HttpVersion
+import org.junit.Test
+
+/**
+ *
+ */
+class PipelineIndexTest {
+
+  @Test
+  void testRoutablePipelineCheckedOncePerRoute() {
+    TestPipeline soapA = new TestPipeline( "a", true, { HttpRequest request -> request.getUri( ).endsWith( "/A" ) } )
+    TestPipeline soapB = new TestPipeline( "b", true, { HttpRequest request -> request.getUri( ).endsWith( "/B" ) } )
+    PipelineIndex index = new PipelineIndex( [ soapA, soapB ] )
+
+    assertSame( "First route", soapB, index.find( soapRequest( "/services/B" ) ) )
+    assertSame( "Second route", soapB, index.find( soapRequest( "/services/B" ) ) )
+    assertSame( "Other route", soapA, index.find( soapRequest( "/services/A" ) ) )
+    assertEquals( "Accept checks a", 2, soapA.checks )
+    assertEquals( "Accept checks b", 1, soapB.checks )
+  }
+
+  @Test
+  void testPipelinesCheckedInOrder() {
+    TestPipeline query = new TestPipeline( "query", false, { HttpRequest request -> request.getUri( ).contains( "Action=" ) } )
+    TestPipeline soap = new TestPipeline( "soap", true, { HttpRequest request -> true } )
+    TestPipeline rest = new TestPipeline( "rest", false, { HttpRequest request -> true } )
+    PipelineIndex index = new PipelineIndex( [ query, soap, rest ] )
+
+    assertSame( "SOAP route", soap, index.find( soapRequest( "/services/Test" ) ) )
+    assertSame( "Preceding pipeline", query, index.find( soapRequest( "/services/Test?Action=Describe" ) ) )
+    assertSame( "Indexed SOAP route", soap, index.find( soapRequest( "/services/Test" ) ) )
+    assertEquals( "Query accept checks", 3, query.checks )
+    assertEquals( "SOAP accept checks", 2, soap.checks )
+    assertEquals( "REST accept checks", 0, rest.checks )
+  }
+
+  @Test
+  void testNonSoapRequestSkipsRoutablePipelines() {
+    TestPipeline soap = new TestPipeline( "soap", true, { HttpRequest request -> request.getHeaderNames( ).contains( "SOAPAction" ) } )
+    TestPipeline query = new TestPipeline( "query", false, { HttpRequest request -> request.getUri( ).contains( "Action=" ) } )
+    PipelineIndex index = new PipelineIndex( [ soap, query ] )
+
+    assertSame( "Query route", query, index.find( request( "/services/Test?Action=Describe" ) ) )
+    assertNull( "Unrouted", index.find( request( "/services/Test" ) ) )
+    assertSame( "Query route", query, index.find( request( "/services/Test?Action=Describe" ) ) )
+    assertEquals( "SOAP accept checks", 1, soap.checks )
+    assertEquals( "Query accept checks", 3, query.checks )
+  }
+
+  private static HttpRequest request( String uri ) {
+    new DefaultHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.POST, uri )
+  }
+
+  private static HttpRequest soapRequest( String uri ) {
+    HttpRequest request = request( uri )
+    request.setHeader( "SOAPAction", "Describe" )
+    request
+  }
+
+  private static class TestPipeline extends FilteredPipeline {
+    private final String name
+    private final boolean routable
+    private final Closure<Boolean> accepts
+    private int checks = 0
+
+    TestPipeline( String name, boolean routable, Closure<Boolean> accepts ) {
+      this.name = name
+      this.routable = routable
+      this.accepts = accepts
+    }
+
+    @Override
+    String getName( ) {
+      name
+    }
+
+    @Override
+    ChannelPipeline addHandlers( final ChannelPipeline pipeline ) {
+      pipeline
+    }
+
+    @Override
+    boolean checkAccepts( final HttpRequest message ) {
+      checks++
+      accepts.call( message )
+    }
+
+    @Override
+    protected boolean isRoutable( ) {
+      routable
+    }
+  }
+}
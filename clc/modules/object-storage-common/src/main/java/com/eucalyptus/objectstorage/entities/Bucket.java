@@ -80,6 +80,10 @@ public class Bucket extends S3AccessControlledEntity<BucketState> implements Com
   @Column(name = "bucket_size")
   private Long bucketSize;
 
+  // Count of extant objects, null until the usage counters are reconciled
+  @Column(name = "object_count")
+  private Long objectCount;
+
   @PrePersist
   public void checkPrePersist() {
     if (this.getState() == null) {
@@ -117,6 +121,7 @@ public class Bucket extends S3AccessControlledEntity<BucketState> implements Com
     newBucket.setOwnerDisplayName(displayName);
     newBucket.setOwnerIamUserId(iamUserId);
     newBucket.setBucketSize(0L);
+    newBucket.setObjectCount(0L);
     newBucket.setAcl(acl);
     newBucket.setLocation(location);
     newBucket.setLoggingEnabled(false);
@@ -147,6 +152,7 @@ public class Bucket extends S3AccessControlledEntity<BucketState> implements Com
     newBucket.setOwnerDisplayName(acp.getOwner().getDisplayName());
     newBucket.setOwnerIamUserId(iamUserId);
     newBucket.setBucketSize(0L);
+    newBucket.setObjectCount(0L);
     newBucket.setAcl(acp);
     newBucket.setLocation(location);
     newBucket.setLoggingEnabled(false);
@@ -221,6 +227,14 @@ public class Bucket extends S3AccessControlledEntity<BucketState> implements Com
     this.bucketSize = bucketSize;
   }
 
+  public Long getObjectCount() {
+    return objectCount;
+  }
+
+  public void setObjectCount(Long objectCount) {
+    this.objectCount = objectCount;
+  }
+
   public String generateObjectVersionId() {
     if (ObjectStorageProperties.VersioningStatus.Enabled.equals(this.getVersioning())) {
       return UUID.randomUUID().toString().replaceAll("-", "");
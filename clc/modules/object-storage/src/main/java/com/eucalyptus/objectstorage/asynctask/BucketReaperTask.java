@@ -22,6 +22,8 @@ package com.eucalyptus.objectstorage.asynctask;
 
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.log4j.Logger;
 
@@ -33,6 +35,7 @@ import com.eucalyptus.objectstorage.PaginatedResult;
 import com.eucalyptus.objectstorage.entities.Bucket;
 import com.eucalyptus.objectstorage.entities.ObjectEntity;
 import com.eucalyptus.objectstorage.entities.ObjectStorageGlobalConfiguration;
+import com.eucalyptus.objectstorage.metadata.BucketUsage;
 import com.eucalyptus.objectstorage.providers.ObjectStorageProviders;
 import com.eucalyptus.storage.config.ConfigurationCache;
 
@@ -49,6 +52,8 @@ public class BucketReaperTask implements Runnable {
   private long startTime;
   private static final long MAX_TASK_DURATION = 30 * 1000; // 30 seconds
   private static final Random rand = new Random(System.currentTimeMillis());
+  private static final long USAGE_RECONCILE_INTERVAL = 60 * 60 * 1000; // 1 hour
+  private static final ConcurrentMap<String, Long> usageReconcileTimes = new ConcurrentHashMap<>();
   private boolean interrupted = false;
 
   public BucketReaperTask() {}
@@ -74,6 +79,7 @@ public class BucketReaperTask implements Runnable {
         b = buckets.get(idx);
         cleanObjectHistoriesInBucket(b);
         resolveBucketState(b);
+        reconcileBucketUsage(b);
         buckets.remove(idx);
       }
 
@@ -118,6 +124,35 @@ public class BucketReaperTask implements Runnable {
     }
   }
 
+  /**
+   * Recomputes the usage counters for the bucket from the object records. Done when the counters have not been initialized and otherwise
+   * periodically to correct any drift.
+   * 
+   * @param bucket
+   */
+  private void reconcileBucketUsage(Bucket bucket) {
+    if (!BucketState.extant.equals(bucket.getState())) {
+      usageReconcileTimes.remove(bucket.getBucketUuid());
+      return;
+    }
+    if (isTimedOut() || interrupted) {
+      return;
+    }
+    final Long lastReconciled = usageReconcileTimes.get(bucket.getBucketUuid());
+    if (bucket.getObjectCount() != null && lastReconciled != null && System.currentTimeMillis() - lastReconciled < USAGE_RECONCILE_INTERVAL) {
+      return;
+    }
+    LOG.trace("Reconciling usage for bucket uuid " + bucket.getBucketUuid());
+    try {
+      if (BucketUsage.reconcile(bucket) && bucket.getObjectCount() != null) {
+        LOG.info("Corrected usage counters for bucket " + bucket.getBucketName());
+      }
+      usageReconcileTimes.put(bucket.getBucketUuid(), System.currentTimeMillis());
+    } catch (Exception e) {
+      LOG.warn("Error reconciling usage for bucket uuid " + bucket.getBucketUuid(), e);
+    }
+  }
+
   private boolean isTimedOut() {
     return System.currentTimeMillis() - startTime >= MAX_TASK_DURATION;
   }
@@ -0,0 +1,192 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.metadata;
+
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.persistence.LockModeType;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.objectstorage.MpuPartMetadataManagers;
+import com.eucalyptus.objectstorage.ObjectMetadataManagers;
+import com.eucalyptus.objectstorage.ObjectState;
+import com.eucalyptus.objectstorage.entities.Bucket;
+import com.eucalyptus.objectstorage.exceptions.MetadataOperationFailureException;
+import com.eucalyptus.objectstorage.exceptions.NoSuchEntityException;
+
+/**
+ * Maintains the object count and size in bytes for each bucket.
+ * 
+ * The counters are updated in the same transaction as the object or part state transition that changes them, with the bucket row locked, so
+ * reading the usage of a bucket does not require scanning its objects. The bucket size includes objects in 'creating' or 'extant' state and
+ * multipart upload parts in 'creating' or 'extant' state, the object count includes only 'extant' objects.
+ * 
+ * Buckets with a null object count have not yet been reconciled, updates are skipped for them and usage is computed from the object records
+ * until {@link #reconcile(Bucket)} sets the counters.
+ */
+public class BucketUsage {
+  private static final Logger LOG = Logger.getLogger(BucketUsage.class);
+
+  /**
+   * Update the bucket counters for an object record change, must be called in an object transaction.
+   * 
+   * @param bucket The bucket for the object
+   * @param fromState The previous state, null for a new record
+   * @param fromSize The previous size
+   * @param toState The new state, null for a deleted record
+   * @param toSize The new size
+   */
+  static void objectChanged(@Nonnull Bucket bucket, @Nullable ObjectState fromState, @Nullable Long fromSize, @Nullable ObjectState toState,
+      @Nullable Long toSize) {
+    update(bucket, objectCount(toState) - objectCount(fromState), bytes(toState, toSize) - bytes(fromState, fromSize));
+  }
+
+  /**
+   * Update the bucket counters for a part record change, must be called in a part transaction.
+   * 
+   * @see #objectChanged(Bucket, ObjectState, Long, ObjectState, Long)
+   */
+  static void partChanged(@Nonnull Bucket bucket, @Nullable ObjectState fromState, @Nullable Long fromSize, @Nullable ObjectState toState,
+      @Nullable Long toSize) {
+    update(bucket, 0, bytes(toState, toSize) - bytes(fromState, fromSize));
+  }
+
+  /**
+   * Update the bucket size for removed parts that were counted, must be called in a part transaction.
+   */
+  static void partsRemoved(@Nonnull Bucket bucket, long size) {
+    update(bucket, 0, -size);
+  }
+
+  static long objectCount(@Nullable ObjectState state) {
+    return ObjectState.extant.equals(state) ? 1 : 0;
+  }
+
+  static long bytes(@Nullable ObjectState state, @Nullable Long size) {
+    if ((ObjectState.creating.equals(state) || ObjectState.extant.equals(state)) && size != null && size > 0) {
+      return size;
+    } else {
+      return 0;
+    }
+  }
+
+  /**
+   * Apply the change to the counters of the bucket loaded in the transaction.
+   * 
+   * The bucket row is locked and the bucket refreshed only on the first change in a transaction, so later changes in the same transaction
+   * accumulate on the managed bucket and concurrent transactions are serialized by the row lock. The counters are changed on the entity rather
+   * than by a bulk update so the cached bucket region is not evicted for every object change.
+   */
+  private static void update(@Nonnull Bucket bucket, long countDelta, long sizeDelta) {
+    if (countDelta == 0 && sizeDelta == 0) {
+      return;
+    }
+    try {
+      Bucket lockedBucket = lock(bucket);
+      if (lockedBucket.getObjectCount() != null) {
+        lockedBucket.setObjectCount(lockedBucket.getObjectCount() + countDelta);
+        lockedBucket.setBucketSize((lockedBucket.getBucketSize() == null ? 0 : lockedBucket.getBucketSize()) + sizeDelta);
+      }
+    } catch (NoSuchElementException e) {
+      // bucket removed, nothing to update
+    } catch (Exception e) {
+      throw new MetadataOperationFailureException(e);
+    }
+  }
+
+  /**
+   * Get the bucket loaded in the transaction, locked for update.
+   * 
+   * A bucket already locked in the transaction is not refreshed, as that would discard changes made to it in the transaction.
+   */
+  private static Bucket lock(@Nonnull Bucket bucket) throws Exception {
+    Bucket lockedBucket;
+    // Shortcut to avoid a lookup if we're already loaded in a transaction
+    if (!Entities.isPersistent(bucket)) {
+      lockedBucket = Entities.uniqueResult(new Bucket().withUuid(bucket.getBucketUuid()));
+    } else {
+      lockedBucket = bucket;
+    }
+    if (!LockModeType.PESSIMISTIC_WRITE.equals(Entities.getLockMode(lockedBucket))) {
+      Entities.refresh(lockedBucket, LockModeType.PESSIMISTIC_WRITE);
+    }
+    return lockedBucket;
+  }
+
+  /**
+   * Get the number of extant objects in the bucket.
+   * 
+   * @param bucket The bucket, as currently persisted
+   */
+  public static long getObjectCount(@Nonnull Bucket bucket) throws Exception {
+    if (bucket.getObjectCount() != null) {
+      return bucket.getObjectCount();
+    } else {
+      return ObjectMetadataManagers.getInstance().countValid(bucket);
+    }
+  }
+
+  /**
+   * Get the size in bytes of objects and uploaded parts in the bucket.
+   * 
+   * @param bucket The bucket, as currently persisted
+   */
+  public static long getSize(@Nonnull Bucket bucket) throws Exception {
+    if (bucket.getObjectCount() != null) {
+      return bucket.getBucketSize() == null ? 0 : bucket.getBucketSize();
+    } else {
+      return ObjectMetadataManagers.getInstance().getTotalSize(bucket) + MpuPartMetadataManagers.getInstance().getTotalSize(bucket);
+    }
+  }
+
+  /**
+   * Recompute the counters for the bucket from the object and part records.
+   * 
+   * The bucket row is locked before counting so transitions that have not committed apply their changes after the reconciled values.
+   * 
+   * @return True if the counters were changed
+   */
+  public static boolean reconcile(@Nonnull Bucket bucket) throws Exception {
+    try (TransactionResource trans = Entities.transactionFor(Bucket.class)) {
+      Bucket lockedBucket = lock(bucket);
+      long count = ObjectMetadataManagers.getInstance().countValid(lockedBucket);
+      long size = ObjectMetadataManagers.getInstance().getTotalSize(lockedBucket) + MpuPartMetadataManagers.getInstance().getTotalSize(lockedBucket);
+      boolean changed = lockedBucket.getObjectCount() == null || lockedBucket.getObjectCount() != count || lockedBucket.getBucketSize() == null
+          || lockedBucket.getBucketSize() != size;
+      if (changed) {
+        if (lockedBucket.getObjectCount() != null) {
+          LOG.debug("Reconciled usage for bucket " + lockedBucket.getBucketName() + " count " + lockedBucket.getObjectCount() + " -> " + count
+              + ", size " + lockedBucket.getBucketSize() + " -> " + size);
+        }
+        lockedBucket.setObjectCount(count);
+        lockedBucket.setBucketSize(size);
+      }
+      trans.commit();
+      return changed;
+    } catch (NoSuchElementException e) {
+      throw new NoSuchEntityException(bucket.getBucketUuid());
+    }
+  }
+}
@@ -218,7 +218,13 @@ public class DbMpuPartMetadataManagerImpl implements MpuPartMetadataManager {
   @Override
   public void delete(final @Nonnull PartEntity objectToDelete) throws IllegalResourceStateException, MetadataOperationFailureException {
     try {
-      Transactions.delete(objectToDelete);
+      Transactions.delete(objectToDelete, new Predicate<PartEntity>() {
+        @Override
+        public boolean apply(PartEntity part) {
+          BucketUsage.partChanged(part.getBucket(), part.getState(), part.getSize(), null, null);
+          return true;
+        }
+      });
     } catch (MetadataOperationFailureException | IllegalResourceStateException e) {
       throw e;
     } catch (Exception e) {
@@ -252,11 +258,16 @@ public class DbMpuPartMetadataManagerImpl implements MpuPartMetadataManager {
       public boolean apply(String uploadId) {
         try (TransactionResource db = Entities.transactionFor(PartEntity.class)) {
           // Calculate the sum size of the parts to update the bucket size.
-          PartEntity searchExample = new PartEntity().withUploadId(uploadId).withState(ObjectState.extant);
+          PartEntity searchExample = new PartEntity().withUploadId(uploadId);
           long size =
               Objects.firstNonNull(
-                  (Number) Entities.createCriteria(PartEntity.class).add(Example.create(searchExample)).setProjection(Projections.sum("size"))
-                      .setReadOnly(true).uniqueResult(), 0).longValue();
+                  (Number) Entities.createCriteria(PartEntity.class).add(Example.create(searchExample))
+                      .add(Restrictions.or(Restrictions.eq("state", ObjectState.creating), Restrictions.eq("state", ObjectState.extant)))
+                      .add(Restrictions.gt("size", 0L)).setProjection(Projections.sum("size")).setReadOnly(true).uniqueResult(), 0)
+                  .longValue();
+          if (bucket != null) {
+            BucketUsage.partsRemoved(bucket, size);
+          }
 
           // Remove all part records with this upload id
           Entities.deleteAllMatching(PartEntity.class, "where part_number IS NOT NULL and upload_id=:uploadId",
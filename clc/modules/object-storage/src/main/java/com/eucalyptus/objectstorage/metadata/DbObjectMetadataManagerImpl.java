@@ -33,6 +33,9 @@ import javax.persistence.EntityTransaction;
 
 import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Example;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
@@ -70,6 +73,8 @@ import com.google.common.base.Strings;
 public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
   private static final Logger LOG = Logger.getLogger(DbObjectMetadataManagerImpl.class);
 
+  private static final int LISTING_FETCH_SIZE = 100;
+
   public void start() throws Exception {
     LOG.trace("Starting DbObjectMetadataManager");
   }
@@ -366,7 +371,13 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
     try {
       // Delete markers can be just removed not state transitioned.
       if (objectToDelete.getIsDeleteMarker()) {
-        Transactions.delete(objectToDelete);
+        Transactions.delete(objectToDelete, new Predicate<ObjectEntity>() {
+          @Override
+          public boolean apply(ObjectEntity deleteMarker) {
+            BucketUsage.objectChanged(deleteMarker.getBucket(), deleteMarker.getState(), deleteMarker.getSize(), null, null);
+            return true;
+          }
+        });
         return;
       }
 
@@ -645,11 +656,9 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
     EntityTransaction db = Entities.get(ObjectEntity.class);
     try {
       PaginatedResult<ObjectEntity> result = new PaginatedResult<ObjectEntity>();
-      HashSet<String> commonPrefixes = new HashSet<String>();
 
       // Include zero since 'istruncated' is still valid
       if (maxEntries >= 0) {
-        final int queryStrideSize = maxEntries + 1;
         ObjectEntity searchObj = new ObjectEntity().withBucket(bucket).withState(ObjectState.extant);
 
         // Return latest version, so exclude delete markers as well.
@@ -659,16 +668,25 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
           searchObj.setIsDeleteMarker(false);
         }
 
-        Criteria objCriteria = Entities.createCriteria(ObjectEntity.class);
-        objCriteria.setReadOnly(true);
-        objCriteria.setFetchSize(queryStrideSize);
-        objCriteria.add(Example.create(searchObj));
-        objCriteria.addOrder(Order.asc("objectKey"));
-        objCriteria.addOrder(Order.desc("objectModifiedTimestamp"));
-        objCriteria.setMaxResults(queryStrideSize);
+        if (Strings.isNullOrEmpty(prefix)) {
+          prefix = "";
+        }
+
+        // Ensure not null.
+        if (Strings.isNullOrEmpty(delimiter)) {
+          delimiter = "";
+        }
+        boolean useDelimiter = !Strings.isNullOrEmpty(delimiter);
 
+        // Common prefixes already returned, including a marker that is a common prefix
+        HashSet<String> commonPrefixes = new HashSet<String>();
+        Criterion position = null;
         if (!Strings.isNullOrEmpty(fromKeyMarker)) {
-          if (!Strings.isNullOrEmpty(fromVersionId)) {
+          if (useDelimiter && fromKeyMarker.equals(getCommonPrefix(fromKeyMarker, prefix, delimiter))) {
+            // The marker is a common prefix returned by a previous listing, resume after all keys that collapse into it
+            position = seekPast(fromKeyMarker);
+            commonPrefixes.add(fromKeyMarker);
+          } else if (!Strings.isNullOrEmpty(fromVersionId)) {
             // Look for the key that matches the key-marker and version-id-marker
             ObjectEntity searchObject = new ObjectEntity(bucket, fromKeyMarker, fromVersionId);
             ObjectEntity matchingObject = null;
@@ -684,108 +702,92 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
 
             // The result set should be exclusive of the key with the key-marker version-id-marker pair. Look for keys that chronologically
             // follow the version-id-marker for the given key-marker and also the keys that follow the key-marker.
-            objCriteria.add(Restrictions.or(
+            position = Restrictions.or(
                 Restrictions.and(Restrictions.eq("objectKey", fromKeyMarker),
                     Restrictions.lt("objectModifiedTimestamp", matchingObject.getObjectModifiedTimestamp())),
-                Restrictions.gt("objectKey", fromKeyMarker)));
+                Restrictions.gt("objectKey", fromKeyMarker));
           } else { // No version-id-marker, just set the criteria the key-marker
-            objCriteria.add(Restrictions.gt("objectKey", fromKeyMarker));
+            position = Restrictions.gt("objectKey", fromKeyMarker);
           }
         } else {
           // No criteria to be set
         }
 
-        if (!Strings.isNullOrEmpty(prefix)) {
-          objCriteria.add(Restrictions.like("objectKey", prefix, MatchMode.START));
-        } else {
-          prefix = "";
-        }
-
-        objCriteria = getSearchByBucket(objCriteria, bucket);
-
-        // Ensure not null.
-        if (Strings.isNullOrEmpty(delimiter)) {
-          delimiter = "";
-        }
-
-        List<ObjectEntity> objectInfos = null;
         int resultKeyCount = 0;
-        String[] parts = null;
-        String prefixString = null;
-        boolean useDelimiter = !Strings.isNullOrEmpty(delimiter);
-        int pages = 0;
 
-        // Iterate over result sets of size maxkeys + 1 since
-        // commonPrefixes collapse the list, we may examine many more
-        // records than maxkeys + 1
-        do {
-          parts = null;
-          prefixString = null;
-
-          // Skip ahead the next page of 'queryStrideSize' results.
-          objCriteria.setFirstResult(pages++ * queryStrideSize);
-
-          objectInfos = (List<ObjectEntity>) objCriteria.list();
-          if (objectInfos == null) {
-            // nothing to do.
-            break;
-          }
-
-          for (ObjectEntity objectRecord : objectInfos) {
-            if (useDelimiter) {
-              // Check if it will get aggregated as a commonprefix
-              // Split the substring with at least 2 matches as we need a result containing trailing strings. For instance
-              // if "x" is delimiter and key string is also "x", then this key should be included in common prefixes.
-              // "x".split("x") gives 0 strings which causes the subsequent logic to skip the key where as
-              // "x".split("x", 2) gives 2 empty strings which is what the logic expects
-              parts = objectRecord.getObjectKey().substring(prefix.length()).split(delimiter, 2);
-              if (parts.length > 1) {
-                prefixString = prefix + parts[0] + delimiter;
-                if (!prefixString.equals(fromKeyMarker) && !commonPrefixes.contains(prefixString)) {
-                  if (resultKeyCount == maxEntries) {
+        // Stream records in key order. When a record collapses into a common prefix the
+        // remaining keys under that prefix are skipped by seeking past the prefix, so the
+        // number of records read is bounded by the number of keys and prefixes returned.
+        // The seek relies on the database ordering keys by character, if it does not
+        // (e.g. supplementary characters or a locale collation) keys under a returned
+        // prefix can still be read, these are skipped rather than returned again.
+        while (resultKeyCount <= maxEntries) {
+          int maxResults = maxEntries - resultKeyCount + 1;
+          Criteria objCriteria = getListingCriteria(bucket, searchObj, prefix, position, maxResults);
+          String seekPrefix = null;
+          ObjectEntity lastRecord = null;
+          int recordCount = 0;
+          ScrollableResults objectInfos = objCriteria.scroll(ScrollMode.FORWARD_ONLY);
+          try {
+            while (objectInfos.next()) {
+              ObjectEntity objectRecord = (ObjectEntity) objectInfos.get(0);
+              lastRecord = objectRecord;
+              recordCount++;
+              if (useDelimiter) {
+                // Check if it will get aggregated as a commonprefix
+                String prefixString = getCommonPrefix(objectRecord.getObjectKey(), prefix, delimiter);
+                if (prefixString != null) {
+                  if (commonPrefixes.contains(prefixString)) {
+                    // Already returned, the seek did not skip all keys under the prefix
+                    continue;
+                  } else if (resultKeyCount == maxEntries) {
                     // This is a new record, so we know
                     // we're truncating if this is true
                     result.setIsTruncated(true);
                     resultKeyCount++;
-                    break;
                   } else {
-                    // Add it to the common prefix set
+                    // Add it to the common prefix set and count
+                    // the unique commonprefix as a single return entry
                     commonPrefixes.add(prefixString);
+                    result.getCommonPrefixes().add(prefixString);
                     result.setLastEntry(prefixString);
-                    // count the unique commonprefix as a
-                    // single return entry
                     resultKeyCount++;
+                    seekPrefix = prefixString;
                   }
-                } else {
-                  // Already have this prefix, so skip
+                  break;
                 }
-                continue;
               }
-            }
 
-            if (resultKeyCount == maxEntries) {
-              // This is a new (non-commonprefix) record, so
-              // we know we're truncating
-              result.setIsTruncated(true);
+              if (resultKeyCount == maxEntries) {
+                // This is a new (non-commonprefix) record, so
+                // we know we're truncating
+                result.setIsTruncated(true);
+                resultKeyCount++;
+                break;
+              }
+
+              result.getEntityList().add(objectRecord);
+              result.setLastEntry(objectRecord);
               resultKeyCount++;
-              break;
             }
-
-            result.getEntityList().add(objectRecord);
-            result.setLastEntry(objectRecord);
-            resultKeyCount++;
+          } finally {
+            objectInfos.close();
           }
 
-          if (resultKeyCount <= maxEntries && objectInfos.size() <= maxEntries) {
+          if (seekPrefix != null) {
+            position = seekPast(seekPrefix);
+          } else if (recordCount == maxResults && resultKeyCount <= maxEntries) {
+            // Records were skipped, continue after the last record read
+            position = after(lastRecord);
+          } else {
+            // Either truncated or there are no more records, the query is
+            // limited to one more record than the entries still wanted
             break;
           }
-        } while (resultKeyCount <= maxEntries);
-
-        // Sort the prefixes from the hashtable and add to the reply
-        if (commonPrefixes != null) {
-          result.getCommonPrefixes().addAll(commonPrefixes);
-          Collections.sort(result.getCommonPrefixes());
         }
+
+        // Prefixes are found in key order, sort in case the database collation differs
+        Collections.sort(result.getCommonPrefixes());
       } else {
         throw new IllegalArgumentException("MaxKeys must be positive integer");
       }
@@ -799,6 +801,87 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
     }
   }
 
+  /**
+   * Criterion for keys that sort after all keys starting with the given common prefix.
+   * 
+   * The last character of the prefix (the end of the delimiter) is replaced with the next character so the seek does not depend on a
+   * sentinel character sorting after all others.
+   */
+  private static Criterion seekPast(@Nonnull String commonPrefix) {
+    String seekKey = getPrefixSeekKey(commonPrefix);
+    return seekKey == null ? Restrictions.gt("objectKey", commonPrefix) : Restrictions.ge("objectKey", seekKey);
+  }
+
+  /**
+   * Criterion for records that follow the given record in listing order, newer versions of a key are listed first.
+   */
+  private static Criterion after(@Nonnull ObjectEntity record) {
+    if (record.getObjectModifiedTimestamp() == null) {
+      return Restrictions.gt("objectKey", record.getObjectKey());
+    }
+    return Restrictions.or(
+        Restrictions.and(Restrictions.eq("objectKey", record.getObjectKey()),
+            Restrictions.lt("objectModifiedTimestamp", record.getObjectModifiedTimestamp())),
+        Restrictions.gt("objectKey", record.getObjectKey()));
+  }
+
+  /**
+   * Get the smallest key that sorts after all keys starting with the given prefix.
+   * 
+   * @param commonPrefix The common prefix, not empty
+   * @return The key or null if the last character of the prefix cannot be incremented
+   */
+  @Nullable
+  static String getPrefixSeekKey(@Nonnull String commonPrefix) {
+    char last = commonPrefix.charAt(commonPrefix.length() - 1);
+    if (last == Character.MAX_VALUE) {
+      return null;
+    }
+    return commonPrefix.substring(0, commonPrefix.length() - 1) + (char) (last + 1);
+  }
+
+  /**
+   * Build the criteria for one seek of an object listing, ordered by key and then newest version first.
+   */
+  private static Criteria getListingCriteria(@Nonnull Bucket bucket, @Nonnull ObjectEntity searchObj, @Nonnull String prefix,
+      @Nullable Criterion position, int maxResults) {
+    Criteria objCriteria = Entities.createCriteria(ObjectEntity.class);
+    objCriteria.setReadOnly(true);
+    objCriteria.setFetchSize(Math.min(maxResults, LISTING_FETCH_SIZE));
+    objCriteria.add(Example.create(searchObj));
+    objCriteria.addOrder(Order.asc("objectKey"));
+    objCriteria.addOrder(Order.desc("objectModifiedTimestamp"));
+    objCriteria.setMaxResults(maxResults);
+
+    if (position != null) {
+      objCriteria.add(position);
+    }
+
+    if (!prefix.isEmpty()) {
+      objCriteria.add(Restrictions.like("objectKey", prefix, MatchMode.START));
+    }
+
+    // Be sure to add the bucket restriction last
+    return getSearchByBucket(objCriteria, bucket);
+  }
+
+  /**
+   * Get the common prefix the given key rolls up into for a delimited listing.
+   * 
+   * @param key The object key
+   * @param prefix The listing prefix, not null
+   * @param delimiter The listing delimiter, not empty
+   * @return The common prefix including the delimiter or null if the key is not rolled up
+   */
+  @Nullable
+  static String getCommonPrefix(@Nonnull String key, @Nonnull String prefix, @Nonnull String delimiter) {
+    if (!key.startsWith(prefix)) {
+      return null;
+    }
+    int index = key.indexOf(delimiter, prefix.length());
+    return index < 0 ? null : key.substring(0, index + delimiter.length());
+  }
+
   @Override
   public long countValid(Bucket bucket) throws Exception {
     try (TransactionResource trans = Entities.transactionFor(ObjectEntity.class)) {
@@ -825,7 +908,7 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
       Criteria queryCriteria =
           Entities.createCriteria(ObjectEntity.class)
               .add(Restrictions.or(Restrictions.eq("state", ObjectState.creating), Restrictions.eq("state", ObjectState.extant)))
-              .setProjection(Projections.sum("size"));
+              .add(Restrictions.gt("size", 0L)).setProjection(Projections.sum("size"));
       if (bucket != null) {
         queryCriteria = getSearchByBucket(queryCriteria, bucket);
       }
@@ -82,7 +82,9 @@ public class ObjectStateTransitions {
           initializedObject.setBucket(extantBucket);
           initializedObject.setState(ObjectState.creating);
           initializedObject.updateCreationExpiration();
-          return Entities.persist(initializedObject);
+          ObjectEntity persistedObject = Entities.persist(initializedObject);
+          BucketUsage.objectChanged(extantBucket, null, null, ObjectState.creating, persistedObject.getSize());
+          return persistedObject;
         }
 
       }
@@ -114,6 +116,8 @@ public class ObjectStateTransitions {
              */
 
             // Set the new object state
+            final ObjectState fromState = updatingEntity.getState();
+            final Long fromSize = updatingEntity.getSize();
             updatingEntity.setState(ObjectState.extant);
             updatingEntity.setCreationExpiration(null);
             updatingEntity.setObjectModifiedTimestamp(entity.getObjectModifiedTimestamp());
@@ -121,6 +125,7 @@ public class ObjectStateTransitions {
             updatingEntity.seteTag(entity.geteTag());
             updatingEntity.setSize(entity.getSize());
             updatingEntity.setStoredHeaders(entity.getStoredHeaders());
+            BucketUsage.objectChanged(updatingEntity.getBucket(), fromState, fromSize, ObjectState.extant, updatingEntity.getSize());
 
             if (ObjectState.mpu_pending.equals(updatingEntity.getLastState())) {
               // Remove the parts, this will remove the sizes for the parts.
@@ -160,6 +165,8 @@ public class ObjectStateTransitions {
         try {
           ObjectEntity updatingEntity = Entities.uniqueResult(new ObjectEntity().withUuid(entity.getObjectUuid()));
           if (ObjectState.creating.equals(updatingEntity.getState())) {
+            BucketUsage.objectChanged(updatingEntity.getBucket(), ObjectState.creating, updatingEntity.getSize(), ObjectState.mpu_pending,
+                updatingEntity.getSize());
             updatingEntity.setState(ObjectState.mpu_pending);
             updatingEntity.setCreationExpiration(null);
             updatingEntity.setObjectModifiedTimestamp(entity.getObjectModifiedTimestamp());
@@ -198,6 +205,7 @@ public class ObjectStateTransitions {
           } else {
             entity = objectToUpdate;
           }
+          BucketUsage.objectChanged(entity.getBucket(), entity.getState(), entity.getSize(), ObjectState.deleting, entity.getSize());
           entity.setState(ObjectState.deleting);
           entity.setIsLatest(Boolean.FALSE);
 
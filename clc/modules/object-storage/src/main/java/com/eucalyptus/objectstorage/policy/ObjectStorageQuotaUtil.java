@@ -69,9 +69,8 @@ import com.eucalyptus.auth.AuthException;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.objectstorage.BucketMetadataManagers;
-import com.eucalyptus.objectstorage.MpuPartMetadataManagers;
-import com.eucalyptus.objectstorage.ObjectMetadataManagers;
 import com.eucalyptus.objectstorage.entities.Bucket;
+import com.eucalyptus.objectstorage.metadata.BucketUsage;
 
 public class ObjectStorageQuotaUtil {
 
@@ -93,7 +92,7 @@ public class ObjectStorageQuotaUtil {
 
   public static long countBucketObjects(String bucketName) throws AuthException {
     try {
-      return ObjectMetadataManagers.getInstance().countValid(BucketMetadataManagers.getInstance().lookupBucket(bucketName));
+      return BucketUsage.getObjectCount(BucketMetadataManagers.getInstance().lookupBucket(bucketName));
     } catch (Exception e) {
       throw new AuthException("Failed to search object", e);
     }
@@ -102,9 +101,7 @@ public class ObjectStorageQuotaUtil {
   public static long getBucketSize(String bucketName) throws AuthException {
     try (TransactionResource db = Entities.transactionFor(Bucket.class)) {
       Bucket bucket = BucketMetadataManagers.getInstance().lookupBucket(bucketName);
-      long objectSize = ObjectMetadataManagers.getInstance().getTotalSize(bucket);
-      long mpuPartsSize = MpuPartMetadataManagers.getInstance().getTotalSize(bucket);
-      return objectSize + mpuPartsSize;
+      return BucketUsage.getSize(bucket);
     } catch (Exception e) {
       throw new AuthException("Failed to get bucket total size", e);
     }
@@ -116,8 +113,7 @@ public class ObjectStorageQuotaUtil {
       List<Bucket> bucketList = BucketMetadataManagers.getInstance().lookupBucketsByOwner(canonicalId);
       long size = 0;
       for (Bucket b : bucketList) {
-        size += ObjectMetadataManagers.getInstance().getTotalSize(b);
-        size += MpuPartMetadataManagers.getInstance().getTotalSize(b);
+        size += BucketUsage.getSize(b);
       }
       return size;
     } catch (Exception e) {
@@ -130,8 +126,7 @@ public class ObjectStorageQuotaUtil {
       List<Bucket> bucketList = BucketMetadataManagers.getInstance().lookupBucketsByUser(userId);
       long size = 0;
       for (Bucket b : bucketList) {
-        size += ObjectMetadataManagers.getInstance().getTotalSize(b);
-        size += MpuPartMetadataManagers.getInstance().getTotalSize(b);
+        size += BucketUsage.getSize(b);
       }
       return size;
     } catch (Exception e) {
@@ -145,7 +140,12 @@ public class ObjectStorageQuotaUtil {
    * @return The size or -1 if the size could not be determined.
    */
   public static long getTotalObjectSize() throws Exception {
-    // return BucketMetadataManagers.getInstance().totalSizeOfAllBuckets();
-    return ObjectMetadataManagers.getInstance().getTotalSize(null) + MpuPartMetadataManagers.getInstance().getTotalSize(null);
+    try (TransactionResource db = Entities.transactionFor(Bucket.class)) {
+      long size = 0;
+      for (Bucket b : BucketMetadataManagers.getInstance().lookupBucketsByState(null)) {
+        size += BucketUsage.getSize(b);
+      }
+      return size;
+    }
   }
 }
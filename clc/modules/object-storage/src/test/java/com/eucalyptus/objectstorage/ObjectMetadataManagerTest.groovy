@@ -28,6 +28,8 @@ import com.eucalyptus.objectstorage.exceptions.IllegalResourceStateException
 import com.eucalyptus.objectstorage.exceptions.MetadataOperationFailureException
 import com.eucalyptus.objectstorage.exceptions.NoSuchEntityException
 import com.eucalyptus.objectstorage.metadata.BucketMetadataManager
+import com.eucalyptus.objectstorage.metadata.BucketUsage
+import com.eucalyptus.objectstorage.metadata.DbObjectMetadataManagerImpl
 import com.eucalyptus.objectstorage.metadata.ObjectMetadataManager
 import com.eucalyptus.objectstorage.util.ObjectStorageProperties
 import com.google.common.collect.Lists
@@ -45,6 +47,7 @@ import org.junit.Test;
 
 import com.eucalyptus.auth.principal.User;
 import com.eucalyptus.objectstorage.entities.ObjectEntity
+import com.eucalyptus.objectstorage.entities.PartEntity
 
 import javax.persistence.EntityTransaction;
 
@@ -285,6 +288,113 @@ public class ObjectMetadataManagerTest {
     assert(verifyListingOrder(listing))
   }
 
+  @Test
+  public void testListPaginatedDelimiter() {
+    UserPrincipal usr = Accounts.lookupPrincipalByUserId(UnitTestSupport.getUsersByAccountName(UnitTestSupport.getTestAccounts().first()).first(), null)
+    Bucket bucket = TestUtils.createTestBucket(mgr, 'bucket')
+    ['a/', 'b/c/', 'b/d/', 'e'].each { k ->
+      TestUtils.createNObjects(objMgr, 5, bucket, (String)k, 100, usr)
+    }
+
+    PaginatedResult<ObjectEntity> listing = objMgr.listPaginated(bucket, 1000, null, '/', null)
+    assert(listing.getCommonPrefixes() == ['a/', 'b/'])
+    assert(listing.getEntityList().size() == 5)
+    assert(!listing.getIsTruncated())
+
+    listing = objMgr.listPaginated(bucket, 1000, 'b/', '/', null)
+    assert(listing.getCommonPrefixes() == ['b/c/', 'b/d/'])
+    assert(listing.getEntityList().size() == 0)
+
+    listing = objMgr.listPaginated(bucket, 2, null, '/', null)
+    assert(listing.getCommonPrefixes() == ['a/', 'b/'])
+    assert(listing.getIsTruncated())
+    assert(listing.getLastEntry() == 'b/')
+
+    listing = objMgr.listPaginated(bucket, 2, null, '/', 'b/')
+    assert(listing.getCommonPrefixes().size() == 0)
+    assert(listing.getEntityList()*.getObjectKey() == ['e0', 'e1'])
+    assert(listing.getIsTruncated())
+  }
+
+  @Test
+  public void testBucketUsageCounters() {
+    UserPrincipal usr = Accounts.lookupPrincipalByUserId(UnitTestSupport.getUsersByAccountName(UnitTestSupport.getTestAccounts().first()).first(), null)
+    Bucket bucket = TestUtils.createTestBucket(mgr, 'bucket')
+    def objs = TestUtils.createNObjects(objMgr, 10, bucket, 'key', 100, usr)
+
+    bucket = mgr.lookupBucket(bucket.getBucketName())
+    assert(BucketUsage.getObjectCount(bucket) == 10)
+    assert(BucketUsage.getSize(bucket) == 10 * 100)
+
+    objMgr.transitionObjectToState(objs.first(), ObjectState.deleting)
+    bucket = mgr.lookupBucket(bucket.getBucketName())
+    assert(BucketUsage.getObjectCount(bucket) == objMgr.countValid(bucket))
+    assert(BucketUsage.getSize(bucket) == objMgr.getTotalSize(bucket))
+    assert(!BucketUsage.reconcile(bucket))
+  }
+
+  @Test
+  public void testBucketUsageCountersMultipartComplete() {
+    UserPrincipal usr = Accounts.lookupPrincipalByUserId(UnitTestSupport.getUsersByAccountName(UnitTestSupport.getTestAccounts().first()).first(), null)
+    Bucket bucket = TestUtils.createTestBucket(mgr, 'bucket')
+    TestUtils.createNObjects(objMgr, 2, bucket, 'key', 100, usr)
+
+    String uploadId = UUID.randomUUID().toString()
+    ObjectEntity mpuEntity = objMgr.initiateCreation(ObjectEntity.newInitializedForCreate(bucket, 'mpu', 0, usr))
+    mpuEntity = objMgr.finalizeMultipartInit(mpuEntity, new Date(), uploadId)
+    (1..3).each { int partNumber ->
+      PartEntity part = MpuPartMetadataManagers.getInstance().initiatePartCreation(
+          PartEntity.newInitializedForCreate(bucket, 'mpu', uploadId, partNumber, 50, usr))
+      MpuPartMetadataManagers.getInstance().finalizeCreation(part, new Date(), UUID.randomUUID().toString())
+    }
+
+    bucket = mgr.lookupBucket(bucket.getBucketName())
+    assert(BucketUsage.getObjectCount(bucket) == 2)
+    assert(BucketUsage.getSize(bucket) == 2 * 100 + 3 * 50)
+
+    // completion counts the object and removes the parts in one transaction
+    mpuEntity.setSize(3 * 50)
+    objMgr.finalizeCreation(mpuEntity, new Date(), UUID.randomUUID().toString())
+    bucket = mgr.lookupBucket(bucket.getBucketName())
+    assert(BucketUsage.getObjectCount(bucket) == 3)
+    assert(BucketUsage.getSize(bucket) == 2 * 100 + 3 * 50)
+    assert(!BucketUsage.reconcile(bucket))
+  }
+
+  @Test
+  public void testListPaginatedDelimiterSupplementaryCharacters() {
+    UserPrincipal usr = Accounts.lookupPrincipalByUserId(UnitTestSupport.getUsersByAccountName(UnitTestSupport.getTestAccounts().first()).first(), null)
+    Bucket bucket = TestUtils.createTestBucket(mgr, 'bucket')
+    ['a/b', 'a/\uD83D\uDE00', 'a0', 'c/\uD83D\uDE00'].each { k ->
+      TestUtils.createNObjects(objMgr, 3, bucket, (String)k, 100, usr)
+    }
+
+    PaginatedResult<ObjectEntity> listing = objMgr.listPaginated(bucket, 1000, null, '/', null)
+    assert(listing.getCommonPrefixes() == ['a/', 'c/'])
+    assert(listing.getEntityList()*.getObjectKey() == ['a00', 'a01', 'a02'])
+    assert(!listing.getIsTruncated())
+
+    listing = objMgr.listPaginated(bucket, 4, null, '/', null)
+    assert(listing.getCommonPrefixes() == ['a/'])
+    assert(listing.getEntityList()*.getObjectKey() == ['a00', 'a01', 'a02'])
+    assert(listing.getIsTruncated())
+
+    listing = objMgr.listPaginated(bucket, 5, null, '/', null)
+    assert(listing.getCommonPrefixes() == ['a/', 'c/'])
+    assert(!listing.getIsTruncated())
+
+    listing = objMgr.listPaginated(bucket, 1000, null, '/', 'a/')
+    assert(listing.getCommonPrefixes() == ['c/'])
+    assert(listing.getEntityList()*.getObjectKey() == ['a00', 'a01', 'a02'])
+  }
+
+  @Test
+  public void testPrefixSeekKey() {
+    assert(DbObjectMetadataManagerImpl.getPrefixSeekKey('a/') == 'a0')
+    assert(DbObjectMetadataManagerImpl.getPrefixSeekKey('a::') == 'a:;')
+    assert(DbObjectMetadataManagerImpl.getPrefixSeekKey('a\uffff') == null)
+  }
+
   private static boolean verifyListingOrder(PaginatedResult<ObjectEntity> listing) {
     ObjectEntity last = null;
     for(ObjectEntity e : listing.getEntityList()) {
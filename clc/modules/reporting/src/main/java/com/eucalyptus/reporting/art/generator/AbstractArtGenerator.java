@@ -22,23 +22,31 @@ package com.eucalyptus.reporting.art.generator;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.persistence.EntityTransaction;
 import org.hibernate.CacheMode;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
 import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.reporting.art.entity.ReportArtEntity;
 import com.eucalyptus.reporting.domain.ReportingAccount;
 import com.eucalyptus.reporting.domain.ReportingAccountDao;
 import com.eucalyptus.reporting.domain.ReportingUser;
 import com.eucalyptus.reporting.domain.ReportingUserDao;
 import com.eucalyptus.reporting.event_store.ReportingEventSupport;
+import com.eucalyptus.reporting.event_store.ReportingLifetimeRollup.Lifetime;
+import com.eucalyptus.reporting.event_store.ReportingLifetimeRollups;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  *
@@ -90,6 +98,36 @@ public abstract class AbstractArtGenerator implements ArtGenerator {
     return Restrictions.lt( TIMESTAMP_MS, endExclusive );
   }
 
+  /**
+   * Criterion for start events of lifetimes that overlap the period.
+   */
+  protected Criterion lifetimeStarts( final long beginInclusive,
+                                      final long endInclusive,
+                                      final Lifetime... lifetimes ) {
+    return ReportingLifetimeRollups.getInstance( ).startEvents( beginInclusive, endInclusive, lifetimes );
+  }
+
+  /**
+   * Criterion for end events of lifetimes that overlap the period.
+   */
+  protected Criterion lifetimeEnds( final long beginInclusive,
+                                    final long endInclusive,
+                                    final Lifetime... lifetimes ) {
+    return ReportingLifetimeRollups.getInstance( ).endEvents( beginInclusive, endInclusive, lifetimes );
+  }
+
+  /**
+   * Criterion for a property matching a property of the selected events.
+   */
+  protected Criterion propertyIn( final String property,
+                                  final Class<?> eventClass,
+                                  final Criterion criterion,
+                                  final String eventProperty ) {
+    return Subqueries.propertyIn( property, DetachedCriteria.forClass( eventClass )
+        .add( criterion )
+        .setProjection( Projections.property( eventProperty ) ) );
+  }
+
   protected <KT,ET extends ReportingEventSupport> Predicate<ET> buildTimestampMap(
       final ReportArtEntity report,
       final Map<KT,List<Long>> keyToTimesMap,
@@ -133,9 +171,17 @@ public abstract class AbstractArtGenerator implements ArtGenerator {
     return timeAfter;
   }
 
+  protected <ET> void foreach( final Class<ET> eventClass,
+                               final Criterion criterion,
+                               final boolean ascending,
+                               final Predicate<? super ET> callback ) {
+    foreach( eventClass, criterion, TIMESTAMP_MS, ascending, callback );
+  }
+
   @SuppressWarnings( "unchecked" )
   protected <ET> void foreach( final Class<ET> eventClass,
                                final Criterion criterion,
+                               final String orderProperty,
                                final boolean ascending,
                                final Predicate<? super ET> callback ) {
     final EntityTransaction transaction = Entities.get( eventClass );
@@ -147,7 +193,7 @@ public abstract class AbstractArtGenerator implements ArtGenerator {
           .setCacheMode( CacheMode.IGNORE )
           .setFetchSize( 100 )
           .add( criterion )
-          .addOrder( ascending ? Order.asc( TIMESTAMP_MS ) : Order.desc( TIMESTAMP_MS ) )
+          .addOrder( ascending ? Order.asc( orderProperty ) : Order.desc( orderProperty ) )
           .scroll( ScrollMode.FORWARD_ONLY );
 
       while ( results.next() ) {
@@ -163,5 +209,21 @@ public abstract class AbstractArtGenerator implements ArtGenerator {
     }
   }
 
+  /**
+   * Find the distinct values of a property for the matching entities.
+   */
+  @SuppressWarnings( "unchecked" )
+  protected <ET> Set<String> distinct( final Class<ET> entityClass,
+                                       final String property,
+                                       final Criterion criterion ) {
+    try ( final TransactionResource db = Entities.transactionFor( entityClass ) ) {
+      return Sets.newHashSet( (List<String>) Entities.createCriteria( entityClass )
+          .setReadOnly( true )
+          .setCacheable( false )
+          .add( criterion )
+          .setProjection( Projections.distinct( Projections.property( property ) ) )
+          .list( ) );
+    }
+  }
 
 }
@@ -24,7 +24,6 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
-import org.hibernate.criterion.Restrictions;
 
 import com.eucalyptus.reporting.art.entity.AccountArtEntity;
 import com.eucalyptus.reporting.art.entity.ElasticIpArtEntity;
@@ -39,6 +38,7 @@ import com.eucalyptus.reporting.event_store.ReportingElasticIpDeleteEvent;
 import com.eucalyptus.reporting.event_store.ReportingElasticIpDetachEvent;
 import com.eucalyptus.reporting.event_store.ReportingEventSupport;
 import com.eucalyptus.reporting.event_store.ReportingInstanceCreateEvent;
+import com.eucalyptus.reporting.event_store.ReportingLifetimeRollup.Lifetime;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Lists;
@@ -55,7 +55,7 @@ public class ElasticIpArtGenerator extends AbstractArtGenerator
 
 		// Find end times for the elastic ips (key is uuid)
 		final Map<String,List<Long>> ipToDeleteTimesMap = Maps.newHashMap();
-		foreachElasticIpDeleteEvent( buildTimestampMap( report, ipToDeleteTimesMap, ipUuid() ) );
+		foreachElasticIpDeleteEvent( report.getBeginMs(), report.getEndMs(), buildTimestampMap( report, ipToDeleteTimesMap, ipUuid() ) );
 
 		// cache for user/account info
 		final Map<String,ReportingUser> reportingUsersById = Maps.newHashMap();
@@ -65,7 +65,7 @@ public class ElasticIpArtGenerator extends AbstractArtGenerator
 		 * and create a Map of the instance nodes at the bottom.
 		 */
 		final Map<String,List<ElasticIpAllocation>> ipToAllocationListMap = Maps.newHashMap();
-		foreachElasticIpCreateEvent( new Predicate<ReportingElasticIpCreateEvent>() {
+		foreachElasticIpCreateEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingElasticIpCreateEvent>() {
 			@Override
 			public boolean apply( final ReportingElasticIpCreateEvent createEvent ) {
 				final Long deleteTime = findTimeAfter( ipToDeleteTimesMap, createEvent.getIp(), createEvent.getTimestampMs() );
@@ -122,7 +122,7 @@ public class ElasticIpArtGenerator extends AbstractArtGenerator
 		/* Scan instance entities so we can get the instance id from the uuid
 				 */
 		final Map<String,InstanceArtEntity> instanceEntities = Maps.newHashMap();
-		foreachInstanceCreateEvent( new Predicate<ReportingInstanceCreateEvent>() {
+		foreachInstanceCreateEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingInstanceCreateEvent>() {
 			@Override
 			public boolean apply( final ReportingInstanceCreateEvent createEvent ) {
 				if ( createEvent.getTimestampMs() > report.getEndMs() ) {
@@ -136,11 +136,11 @@ public class ElasticIpArtGenerator extends AbstractArtGenerator
 
 		// Find end times for the elastic ips (key is uuid)
 		final Map<String,List<Long>> ipToDetachTimesMap = Maps.newHashMap();
-		foreachElasticIpDetachEvent( buildTimestampMap( report, ipToDetachTimesMap, ipUuid() ) );
+		foreachElasticIpDetachEvent( report.getBeginMs(), report.getEndMs(), buildTimestampMap( report, ipToDetachTimesMap, ipUuid() ) );
 
 		/* Find attachment start times
 				 */
-		foreachElasticIpAttachEvent( new Predicate<ReportingElasticIpAttachEvent>() {
+		foreachElasticIpAttachEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingElasticIpAttachEvent>() {
 			@Override
 			public boolean apply( final ReportingElasticIpAttachEvent attachEvent ) {
 				// tolerate missing detach events by accounting for delete events also
@@ -231,24 +231,33 @@ public class ElasticIpArtGenerator extends AbstractArtGenerator
 		throw new IllegalStateException("Unsupported event type: " + event.getClass());
 	}
 
-	protected void foreachElasticIpCreateEvent( final Predicate<? super ReportingElasticIpCreateEvent> callback ) {
-		foreach( ReportingElasticIpCreateEvent.class, Restrictions.conjunction(), true, callback );
+	protected void foreachElasticIpCreateEvent( final long beginInclusive, final long endInclusive, final Predicate<? super ReportingElasticIpCreateEvent> callback ) {
+		foreach( ReportingElasticIpCreateEvent.class, lifetimeStarts( beginInclusive, endInclusive, Lifetime.ELASTIC_IP ), true, callback );
 	}
 
-	protected void foreachElasticIpDeleteEvent( final Predicate<? super ReportingElasticIpDeleteEvent> callback ) {
-		foreach( ReportingElasticIpDeleteEvent.class, Restrictions.conjunction(), true, callback );
+	/**
+	 * Deletes end both allocations and attachments.
+	 */
+	protected void foreachElasticIpDeleteEvent( final long beginInclusive, final long endInclusive, final Predicate<? super ReportingElasticIpDeleteEvent> callback ) {
+		foreach( ReportingElasticIpDeleteEvent.class, lifetimeEnds( beginInclusive, endInclusive, Lifetime.ELASTIC_IP, Lifetime.ELASTIC_IP_ATTACHMENT ), true, callback );
 	}
 
-	protected void foreachElasticIpAttachEvent( final Predicate<? super ReportingElasticIpAttachEvent> callback ) {
-		foreach( ReportingElasticIpAttachEvent.class, Restrictions.conjunction(), true, callback );
+	protected void foreachElasticIpAttachEvent( final long beginInclusive, final long endInclusive, final Predicate<? super ReportingElasticIpAttachEvent> callback ) {
+		foreach( ReportingElasticIpAttachEvent.class, lifetimeStarts( beginInclusive, endInclusive, Lifetime.ELASTIC_IP_ATTACHMENT ), true, callback );
 	}
 
-	protected void foreachElasticIpDetachEvent( final Predicate<? super ReportingElasticIpDetachEvent> callback ) {
-		foreach( ReportingElasticIpDetachEvent.class, Restrictions.conjunction(), true, callback );
+	protected void foreachElasticIpDetachEvent( final long beginInclusive, final long endInclusive, final Predicate<? super ReportingElasticIpDetachEvent> callback ) {
+		foreach( ReportingElasticIpDetachEvent.class, lifetimeEnds( beginInclusive, endInclusive, Lifetime.ELASTIC_IP_ATTACHMENT ), true, callback );
 	}
 
-	protected void foreachInstanceCreateEvent( final Predicate<? super ReportingInstanceCreateEvent> callback ) {
-		foreach( ReportingInstanceCreateEvent.class, Restrictions.conjunction(), true, callback );
+	/**
+	 * Instances are only needed for the attachments in the report.
+	 */
+	protected void foreachInstanceCreateEvent( final long beginInclusive, final long endInclusive, final Predicate<? super ReportingInstanceCreateEvent> callback ) {
+		foreach( ReportingInstanceCreateEvent.class,
+				propertyIn( "uuid", ReportingElasticIpAttachEvent.class, lifetimeStarts( beginInclusive, endInclusive, Lifetime.ELASTIC_IP_ATTACHMENT ), "instanceUuid" ),
+				true,
+				callback );
 	}
 
 	private static void updateUsageTotals( ElasticIpUsageArtEntity totalEntity, ElasticIpUsageArtEntity newEntity ) {
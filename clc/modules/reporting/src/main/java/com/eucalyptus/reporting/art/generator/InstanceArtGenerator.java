@@ -64,12 +64,19 @@ package com.eucalyptus.reporting.art.generator;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.reporting.art.entity.*;
 import com.eucalyptus.reporting.domain.*;
 import com.eucalyptus.reporting.event_store.ReportingInstanceCreateEvent;
 import com.eucalyptus.reporting.event_store.ReportingInstanceUsageEvent;
+import com.eucalyptus.reporting.event_store.ReportingInstanceUsageRollup;
+import com.eucalyptus.reporting.event_store.ReportingInstanceUsageRollups;
 import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 public class InstanceArtGenerator extends AbstractArtGenerator {
   private static Logger log = Logger.getLogger( InstanceArtGenerator.class );
@@ -92,16 +99,34 @@ public class InstanceArtGenerator extends AbstractArtGenerator {
   public static final String DIM_EXTERNAL = "external";
 
   private static final long USAGE_SEARCH_PERIOD = TimeUnit.DAYS.toMillis( 12 );
+  private static final long DAY_MS = ReportingInstanceUsageRollups.DAY_MS;
+  private static final String DAY_MS_PROPERTY = "dayMs";
+  private static final int UUID_QUERY_BATCH_SIZE = 500;
 
   @Override
   public ReportArtEntity generateReportArt( final ReportArtEntity report ) {
     log.debug( "Generating report ART" );
 
-    /* Find all instance create events. These will be used to populate the ART tree with instances etc,
-     * if there is usage for them within the report boundaries (determined below).
+    /* Usage is read from the daily rollups for whole days, and from the usage events for
+     * days that are not rolled up or that include the start or end of the report.
      */
+    final List<UsagePeriod> usagePeriods = usagePeriods(
+        report,
+        report.getBeginMs() - USAGE_SEARCH_PERIOD,
+        report.getEndMs() + USAGE_SEARCH_PERIOD,
+        getInstanceUsageRolledUpToMs() );
+
+    /* Find the instance create events for instances with usage. These will be used to populate the ART tree
+     * with instances etc, if there is usage for them within the report boundaries (determined below).
+     */
+    final Set<String> uuids = Sets.newHashSet();
+    for ( final UsagePeriod period : usagePeriods ) {
+      uuids.addAll( period.rollup ?
+          findInstanceUuidsWithUsageRollups( period.beginMs, period.endMs ) :
+          findInstanceUuidsWithUsage( period.beginMs, period.endMs ) );
+    }
     final Map<String, ReportingInstanceCreateEvent> createEvents = Maps.newHashMap();
-    foreachInstanceCreateEvent( report.getEndMs(), new Predicate<ReportingInstanceCreateEvent>() {
+    foreachInstanceCreateEvent( report.getEndMs(), uuids, new Predicate<ReportingInstanceCreateEvent>() {
       @Override
       public boolean apply( final ReportingInstanceCreateEvent createEvent ) {
         final ReportingInstanceCreateEvent prevEvent = createEvents.put( createEvent.getUuid(), createEvent );
@@ -112,98 +137,28 @@ public class InstanceArtGenerator extends AbstractArtGenerator {
       }
     } );
 
-    /* Scan through usage events in order, and populate the ART tree with nodes and usage.
+    /* Scan through usage in order, and populate the ART tree with nodes and usage.
      */
-    final Map<InstanceMetricDimensionKey, MetricPrevData> prevDataMap = Maps.newHashMap();
-    final Map<String, InstanceUsageArtEntity> usageEntities = Maps.newHashMap();
-    foreachInstanceUsageEvent(
-        report.getBeginMs() - USAGE_SEARCH_PERIOD,
-        report.getEndMs() + USAGE_SEARCH_PERIOD,
-        new Predicate<ReportingInstanceUsageEvent>() {
+    final UsageAccumulator usage = new UsageAccumulator( report, createEvents );
+    for ( final UsagePeriod period : usagePeriods ) {
+      if ( period.rollup ) {
+        foreachInstanceUsageRollup( period.beginMs, period.endMs, new Predicate<ReportingInstanceUsageRollup>() {
+          @Override
+          public boolean apply( final ReportingInstanceUsageRollup rollup ) {
+            usage.addRollup( rollup, period.inReport );
+            return true;
+          }
+        } );
+      } else {
+        foreachInstanceUsageEvent( period.beginMs, period.endMs, new Predicate<ReportingInstanceUsageEvent>() {
           @Override
           public boolean apply( final ReportingInstanceUsageEvent event ) {
-            final InstanceMetricDimensionKey key =
-                new InstanceMetricDimensionKey( event.getUuid(), event.getMetric(),
-                    event.getDimension() );
-            final long eventMs = event.getTimestampMs();
-            if ( event.getValue() == null ) return true;
-
-            if ( !usageEntities.containsKey( event.getUuid() ) ) {
-              usageEntities.put( event.getUuid(), new InstanceUsageArtEntity() );
-            }
-            final InstanceUsageArtEntity usageEntity = usageEntities.get( event.getUuid() );
-            final ReportingInstanceCreateEvent createEvent = createEvents.get( event.getUuid() );
-            if ( createEvent == null ) {
-              log.error( "Usage event without create event:" + event.getUuid() );
-              return true;
-            }
-
-            /* Populate the nodes in the tree for this usage, if the usage falls within report boundaries */
-            if ( eventMs >= report.getBeginMs() || eventMs <= report.getEndMs() ) {
-              if (!addParentNodes( report, createEvent, usageEntity )) {
-                return true;
-              }
-            }
-
-            /* Update the total usage in the usage art entity, for this uuid/metric/dimension combo.
-             * Metric values are cumulative, so we must subtract each from the last. For this reason,
-             * we must retain previous values of each uuid/metric/dim combo, the earliest and latest times
-             * for each combo (to update the duration), and the sequence numbers (to detect sensor resets)
-             */
-            if ( !prevDataMap.containsKey( key ) ) {
-              /* No prior value. Use usage from instance creation to present
-               * Equivalent to inserting a zero-usage event at instance creation time
-               *
-               * Find the fraction of this period which falls within report boundaries. This is
-               * needed because period boundaries do not align with report boundaries.
-               */
-              usageEntity.setDurationMs( Math.max( usageEntity.getDurationMs(),
-                  overlap( report.getBeginMs(), report.getEndMs(), createEvent.getTimestampMs(), eventMs ) ) );
-              Double fractionalVal = fractionalUsage( report.getBeginMs(), report.getEndMs(),
-                  createEvent.getTimestampMs(), eventMs, event.getValue() );
-              addMetricValueToUsageEntity( usageEntity, event.getMetric(), event.getDimension(),
-                  fractionalVal );
-              log.debug( String.format( "new metric time:%d-%d report:%d-%d uuid:%s metric:%s dim:%s val:%f fraction:%f",
-                  createEvent.getTimestampMs(), eventMs, report.getBeginMs(), report.getEndMs(),
-                  event.getUuid(), event.getMetric(), event.getDimension(), event.getValue(), fractionalVal ) );
-              prevDataMap.put( key, new MetricPrevData( eventMs, eventMs, event.getValue(), event.getSequenceNum() ) );
-            } else {
-              /* Previous value exists */
-              final MetricPrevData prevData = prevDataMap.get( key );
-
-              /* We have a period (firstMs to now); update the instance duration if necessary */
-              usageEntity.setDurationMs( Math.max( usageEntity.getDurationMs(),
-                  overlap( report.getBeginMs(), report.getEndMs(), prevData.firstMs, eventMs ) ) );
-
-              if ( event.getSequenceNum() < prevData.lastSeq || event.getSequenceNum()==0 ) {
-                /* SENSOR RESET; we lost data; just take whatever amount greater than 0 */
-
-                /* Find the fraction of this period which falls within report boundaries. */
-                Double fractionalVal = fractionalUsage( report.getBeginMs(), report.getEndMs(),
-                    prevData.lastMs, eventMs, event.getValue() );
-                addMetricValueToUsageEntity( usageEntity, event.getMetric(), event.getDimension(),
-                    fractionalVal );
-                log.debug( String.format( "reset time:%d-%d report:%d-%d uuid:%s metric:%s dim:%s val:%f fraction:%f",
-                    prevData.lastMs, eventMs, report.getBeginMs(), report.getEndMs(), event.getUuid(), event.getMetric(),
-                    event.getDimension(), event.getValue(), fractionalVal ) );
-              } else {
-                /* Increase total by val minus lastVal */
-
-                /* Find the fraction of this period which falls within report boundaries. */
-                Double fractionalVal = fractionalUsage( report.getBeginMs(), report.getEndMs(),
-                    prevData.lastMs, eventMs, event.getValue() - prevData.lastVal );
-                addMetricValueToUsageEntity( usageEntity, event.getMetric(), event.getDimension(),
-                    fractionalVal );
-                log.debug( String.format( "event time:%d-%d report:%d-%d uuid:%s metric:%s dim:%s val:%f lastVal:%f fraction:%f",
-                    prevData.lastMs, eventMs, report.getBeginMs(), report.getEndMs(), event.getUuid(), event.getMetric(),
-                    event.getDimension(), event.getValue(), prevData.lastVal, fractionalVal ) );
-              }
-              prevDataMap.put( key, new MetricPrevData( prevData.firstMs, eventMs, event.getValue(), event.getSequenceNum() ) );
-            }
+            usage.addEvent( event );
             return true;
           }
         } );
-
+      }
+    }
 
     /* Perform totals and summations
        */
@@ -225,6 +180,175 @@ public class InstanceArtGenerator extends AbstractArtGenerator {
     return report;
   }
 
+  /**
+   * Split the usage search period into periods read from rollups or from usage events.
+   *
+   * Rollups are used for whole days that are rolled up and are either
+   * entirely within or entirely outside the report.
+   */
+  private static List<UsagePeriod> usagePeriods( final ReportArtEntity report,
+                                                 final long beginMs,
+                                                 final long endMs,
+                                                 final long rolledUpToMs ) {
+    final List<UsagePeriod> periods = Lists.newArrayList();
+    for ( long dayMs = ReportingInstanceUsageRollups.dayStart( beginMs ); dayMs < endMs; dayMs += DAY_MS ) {
+      final long dayEndMs = dayMs + DAY_MS;
+      final boolean inReport = dayMs >= report.getBeginMs() && dayEndMs <= report.getEndMs();
+      final boolean outsideReport = dayEndMs <= report.getBeginMs() || dayMs >= report.getEndMs();
+      final boolean rollup = dayMs >= beginMs && dayEndMs <= endMs && dayEndMs <= rolledUpToMs &&
+          ( inReport || outsideReport );
+      final UsagePeriod last = periods.isEmpty() ? null : periods.get( periods.size() - 1 );
+      if ( last != null && last.rollup == rollup && last.inReport == ( rollup && inReport ) ) {
+        last.endMs = Math.min( dayEndMs, endMs );
+      } else {
+        periods.add( new UsagePeriod(
+            Math.max( dayMs, beginMs ), Math.min( dayEndMs, endMs ), rollup, rollup && inReport ) );
+      }
+    }
+    return periods;
+  }
+
+  private static final class UsagePeriod {
+    private final long beginMs;
+    private long endMs;
+    private final boolean rollup;
+    private final boolean inReport;
+
+    private UsagePeriod( final long beginMs, final long endMs, final boolean rollup, final boolean inReport ) {
+      this.beginMs = beginMs;
+      this.endMs = endMs;
+      this.rollup = rollup;
+      this.inReport = inReport;
+    }
+  }
+
+  /**
+   * Accumulates usage for instances, usage must be added in time order for each instance metric and dimension.
+   */
+  private final class UsageAccumulator {
+    private final ReportArtEntity report;
+    private final Map<String, ReportingInstanceCreateEvent> createEvents;
+    private final Map<InstanceMetricDimensionKey, MetricPrevData> prevDataMap = Maps.newHashMap();
+    private final Map<String, InstanceUsageArtEntity> usageEntities = Maps.newHashMap();
+
+    private UsageAccumulator( final ReportArtEntity report,
+                              final Map<String, ReportingInstanceCreateEvent> createEvents ) {
+      this.report = report;
+      this.createEvents = createEvents;
+    }
+
+    /**
+     * Add usage for an event.
+     *
+     * @return true if the usage was added
+     */
+    private boolean addEvent( final ReportingInstanceUsageEvent event ) {
+      final InstanceMetricDimensionKey key =
+          new InstanceMetricDimensionKey( event.getUuid(), event.getMetric(),
+              event.getDimension() );
+      final long eventMs = event.getTimestampMs();
+      if ( event.getValue() == null ) return false;
+
+      if ( !usageEntities.containsKey( event.getUuid() ) ) {
+        usageEntities.put( event.getUuid(), new InstanceUsageArtEntity() );
+      }
+      final InstanceUsageArtEntity usageEntity = usageEntities.get( event.getUuid() );
+      final ReportingInstanceCreateEvent createEvent = createEvents.get( event.getUuid() );
+      if ( createEvent == null ) {
+        log.error( "Usage event without create event:" + event.getUuid() );
+        return false;
+      }
+
+      /* Populate the nodes in the tree for this usage, if the usage falls within report boundaries */
+      if ( eventMs >= report.getBeginMs() || eventMs <= report.getEndMs() ) {
+        if (!addParentNodes( report, createEvent, usageEntity )) {
+          return false;
+        }
+      }
+
+      /* Update the total usage in the usage art entity, for this uuid/metric/dimension combo.
+       * Metric values are cumulative, so we must subtract each from the last. For this reason,
+       * we must retain previous values of each uuid/metric/dim combo, the earliest and latest times
+       * for each combo (to update the duration), and the sequence numbers (to detect sensor resets)
+       */
+      if ( !prevDataMap.containsKey( key ) ) {
+        /* No prior value. Use usage from instance creation to present
+         * Equivalent to inserting a zero-usage event at instance creation time
+         *
+         * Find the fraction of this period which falls within report boundaries. This is
+         * needed because period boundaries do not align with report boundaries.
+         */
+        usageEntity.setDurationMs( Math.max( usageEntity.getDurationMs(),
+            overlap( report.getBeginMs(), report.getEndMs(), createEvent.getTimestampMs(), eventMs ) ) );
+        Double fractionalVal = fractionalUsage( report.getBeginMs(), report.getEndMs(),
+            createEvent.getTimestampMs(), eventMs, event.getValue() );
+        addMetricValueToUsageEntity( usageEntity, event.getMetric(), event.getDimension(),
+            fractionalVal );
+        log.debug( String.format( "new metric time:%d-%d report:%d-%d uuid:%s metric:%s dim:%s val:%f fraction:%f",
+            createEvent.getTimestampMs(), eventMs, report.getBeginMs(), report.getEndMs(),
+            event.getUuid(), event.getMetric(), event.getDimension(), event.getValue(), fractionalVal ) );
+        prevDataMap.put( key, new MetricPrevData( eventMs, eventMs, event.getValue(), event.getSequenceNum() ) );
+      } else {
+        /* Previous value exists */
+        final MetricPrevData prevData = prevDataMap.get( key );
+
+        /* We have a period (firstMs to now); update the instance duration if necessary */
+        usageEntity.setDurationMs( Math.max( usageEntity.getDurationMs(),
+            overlap( report.getBeginMs(), report.getEndMs(), prevData.firstMs, eventMs ) ) );
+
+        if ( event.getSequenceNum() < prevData.lastSeq || event.getSequenceNum()==0 ) {
+          /* SENSOR RESET; we lost data; just take whatever amount greater than 0 */
+
+          /* Find the fraction of this period which falls within report boundaries. */
+          Double fractionalVal = fractionalUsage( report.getBeginMs(), report.getEndMs(),
+              prevData.lastMs, eventMs, event.getValue() );
+          addMetricValueToUsageEntity( usageEntity, event.getMetric(), event.getDimension(),
+              fractionalVal );
+          log.debug( String.format( "reset time:%d-%d report:%d-%d uuid:%s metric:%s dim:%s val:%f fraction:%f",
+              prevData.lastMs, eventMs, report.getBeginMs(), report.getEndMs(), event.getUuid(), event.getMetric(),
+              event.getDimension(), event.getValue(), fractionalVal ) );
+        } else {
+          /* Increase total by val minus lastVal */
+
+          /* Find the fraction of this period which falls within report boundaries. */
+          Double fractionalVal = fractionalUsage( report.getBeginMs(), report.getEndMs(),
+              prevData.lastMs, eventMs, event.getValue() - prevData.lastVal );
+          addMetricValueToUsageEntity( usageEntity, event.getMetric(), event.getDimension(),
+              fractionalVal );
+          log.debug( String.format( "event time:%d-%d report:%d-%d uuid:%s metric:%s dim:%s val:%f lastVal:%f fraction:%f",
+              prevData.lastMs, eventMs, report.getBeginMs(), report.getEndMs(), event.getUuid(), event.getMetric(),
+              event.getDimension(), event.getValue(), prevData.lastVal, fractionalVal ) );
+        }
+        prevDataMap.put( key, new MetricPrevData( prevData.firstMs, eventMs, event.getValue(), event.getSequenceNum() ) );
+      }
+      return true;
+    }
+
+    /**
+     * Add usage for a day from a rollup.
+     *
+     * This is equivalent to adding each of the day's usage events. The usage
+     * between the first and last events for the day is either entirely
+     * within the report or not in the report at all.
+     */
+    private void addRollup( final ReportingInstanceUsageRollup rollup, final boolean inReport ) {
+      if ( !addEvent( rollup.getFirstSample() ) || rollup.getSampleCount() < 2 ) {
+        return;
+      }
+      final InstanceMetricDimensionKey key =
+          new InstanceMetricDimensionKey( rollup.getUuid(), rollup.getMetric(), rollup.getDimension() );
+      final MetricPrevData prevData = prevDataMap.get( key );
+      final InstanceUsageArtEntity usageEntity = usageEntities.get( rollup.getUuid() );
+      usageEntity.setDurationMs( Math.max( usageEntity.getDurationMs(),
+          overlap( report.getBeginMs(), report.getEndMs(), prevData.firstMs, rollup.getLastMs() ) ) );
+      if ( inReport ) {
+        addMetricValueToUsageEntity( usageEntity, rollup.getMetric(), rollup.getDimension(), rollup.getTotal() );
+      }
+      prevDataMap.put( key, new MetricPrevData(
+          prevData.firstMs, rollup.getLastMs(), rollup.getLastValue(), rollup.getLastSequenceNum() ) );
+    }
+  }
+
   private boolean addParentNodes( final ReportArtEntity report,
                                   final ReportingInstanceCreateEvent createEvent,
                                   final InstanceUsageArtEntity usageEntity ) {
@@ -395,8 +519,37 @@ public class InstanceArtGenerator extends AbstractArtGenerator {
   }
 
   protected void foreachInstanceCreateEvent( long endExclusive,
+                                             Collection<String> uuids,
                                              Predicate<? super ReportingInstanceCreateEvent> callback ) {
-    foreach( ReportingInstanceCreateEvent.class, before( endExclusive ), true, callback );
+    for ( final List<String> uuidBatch : Iterables.partition( uuids, UUID_QUERY_BATCH_SIZE ) ) {
+      foreach( ReportingInstanceCreateEvent.class,
+          Restrictions.conjunction( ).add( before( endExclusive ) ).add( Restrictions.in( "uuid", uuidBatch ) ),
+          true,
+          callback );
+    }
+  }
+
+  protected void foreachInstanceUsageRollup( long startInclusive, long endExclusive,
+                                             Predicate<? super ReportingInstanceUsageRollup> callback ) {
+    foreach( ReportingInstanceUsageRollup.class, dayBetween( startInclusive, endExclusive ), DAY_MS_PROPERTY, true, callback );
+  }
+
+  protected Set<String> findInstanceUuidsWithUsage( long startInclusive, long endExclusive ) {
+    return distinct( ReportingInstanceUsageEvent.class, "uuid", between( startInclusive, endExclusive ) );
+  }
+
+  protected Set<String> findInstanceUuidsWithUsageRollups( long startInclusive, long endExclusive ) {
+    return distinct( ReportingInstanceUsageRollup.class, "uuid", dayBetween( startInclusive, endExclusive ) );
+  }
+
+  protected long getInstanceUsageRolledUpToMs() {
+    return ReportingInstanceUsageRollups.getInstance().getRolledUpToMs();
+  }
+
+  private static Criterion dayBetween( final long beginInclusive, final long endExclusive ) {
+    return Restrictions.conjunction()
+        .add( Restrictions.ge( DAY_MS_PROPERTY, beginInclusive ) )
+        .add( Restrictions.lt( DAY_MS_PROPERTY, endExclusive ) );
   }
 
 }
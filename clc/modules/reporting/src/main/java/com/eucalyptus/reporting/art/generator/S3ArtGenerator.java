@@ -65,12 +65,14 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
+import org.hibernate.criterion.Restrictions;
 
 import com.eucalyptus.reporting.art.entity.AccountArtEntity;
 import com.eucalyptus.reporting.art.entity.BucketUsageArtEntity;
 import com.eucalyptus.reporting.art.entity.ReportArtEntity;
 import com.eucalyptus.reporting.art.entity.UserArtEntity;
 import com.eucalyptus.reporting.domain.ReportingUser;
+import com.eucalyptus.reporting.event_store.ReportingLifetimeRollup.Lifetime;
 import com.eucalyptus.reporting.event_store.ReportingS3ObjectCreateEvent;
 import com.eucalyptus.reporting.event_store.ReportingS3ObjectDeleteEvent;
 import com.eucalyptus.reporting.units.SizeUnit;
@@ -101,7 +103,7 @@ public class S3ArtGenerator
 				 * objects which are created and deleted repeatedly during a single period.
 				 */
 		final Map<S3ObjectKey,List<Long>> endTimesMap = Maps.newHashMap();
-		foreachReportingS3ObjectDeleteEvent( report.getEndMs(), buildTimestampMap( report, endTimesMap, key() ) );
+		foreachReportingS3ObjectDeleteEvent( report.getBeginMs(), report.getEndMs(), buildTimestampMap( report, endTimesMap, key() ) );
 
 		/* Generate a tree of zones, accounts, users, and bucket usages.
 		 * Retain a Map of bucket usages at the leaf nodes.
@@ -113,7 +115,7 @@ public class S3ArtGenerator
 		final Map<String,ReportingUser> users = Maps.newHashMap();
 		final Map<String,String> accounts = Maps.newHashMap();
 		final Map<BucketUsageArtEntity,List<S3ObjectData>> bucketObjectData = Maps.newHashMap();
-		foreachReportingS3ObjectCreateEvent( report.getEndMs(), new Predicate<ReportingS3ObjectCreateEvent>() {
+		foreachReportingS3ObjectCreateEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingS3ObjectCreateEvent>() {
 			@Override
 			public boolean apply( final ReportingS3ObjectCreateEvent createEvent ) {
 				final S3ObjectKey objectKey = new S3ObjectKey(createEvent.getS3BucketName(),
@@ -295,11 +297,17 @@ public class S3ArtGenerator
 		}
 	}
 	
-	protected void foreachReportingS3ObjectCreateEvent( final long endExclusive, final Predicate<ReportingS3ObjectCreateEvent> callback ) {
-		foreach( ReportingS3ObjectCreateEvent.class, before( endExclusive ), true, callback );
+	protected void foreachReportingS3ObjectCreateEvent( final long beginInclusive, final long endExclusive, final Predicate<ReportingS3ObjectCreateEvent> callback ) {
+		foreach( ReportingS3ObjectCreateEvent.class,
+				Restrictions.and( before( endExclusive ), lifetimeStarts( beginInclusive, endExclusive, Lifetime.S3_OBJECT ) ),
+				true,
+				callback );
 	}
 
-	protected void foreachReportingS3ObjectDeleteEvent( final long endExclusive, final Predicate<ReportingS3ObjectDeleteEvent> callback ) {
-		foreach( ReportingS3ObjectDeleteEvent.class, before( endExclusive ), true, callback );
+	protected void foreachReportingS3ObjectDeleteEvent( final long beginInclusive, final long endExclusive, final Predicate<ReportingS3ObjectDeleteEvent> callback ) {
+		foreach( ReportingS3ObjectDeleteEvent.class,
+				Restrictions.and( before( endExclusive ), lifetimeEnds( beginInclusive, endExclusive, Lifetime.S3_OBJECT ) ),
+				true,
+				callback );
 	}
 }
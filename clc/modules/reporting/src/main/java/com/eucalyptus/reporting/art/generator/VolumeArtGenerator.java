@@ -65,6 +65,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
 
 import com.eucalyptus.reporting.art.entity.AccountArtEntity;
 import com.eucalyptus.reporting.art.entity.AvailabilityZoneArtEntity;
@@ -78,6 +80,7 @@ import com.eucalyptus.reporting.art.util.DurationCalculator;
 import com.eucalyptus.reporting.art.util.StartEndTimes;
 import com.eucalyptus.reporting.domain.ReportingUser;
 import com.eucalyptus.reporting.event_store.*;
+import com.eucalyptus.reporting.event_store.ReportingLifetimeRollup.Lifetime;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Maps;
 
@@ -99,7 +102,7 @@ public class VolumeArtGenerator extends AbstractArtGenerator
 		 */
 		final Map<String,VolumeArtEntity> volumeEntities = Maps.newHashMap();
 		final Map<String,StartEndTimes> volStartEndTimes = Maps.newHashMap();
-		foreachReportingVolumeCreateEvent( report.getEndMs(), new Predicate<ReportingVolumeCreateEvent>() {
+		foreachReportingVolumeCreateEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingVolumeCreateEvent>() {
 			@Override
 			public boolean apply( final ReportingVolumeCreateEvent createEvent ) {
 				if (! report.getZones().containsKey(createEvent.getAvailabilityZone())) {
@@ -140,7 +143,7 @@ public class VolumeArtGenerator extends AbstractArtGenerator
 
 		/* Find end times for the volumes
 		 */
-		foreachReportingVolumeDeleteEvent( report.getEndMs(), new Predicate<ReportingVolumeDeleteEvent>() {
+		foreachReportingVolumeDeleteEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingVolumeDeleteEvent>() {
 			@Override
 			public boolean apply( final ReportingVolumeDeleteEvent deleteEvent ) {
 				long endTime = deleteEvent.getTimestampMs();
@@ -173,7 +176,7 @@ public class VolumeArtGenerator extends AbstractArtGenerator
 		/* Scan instance entities so we can get the instance id from the uuid
 		 */
 		final Map<String,InstanceArtEntity> instanceEntities = new HashMap<String,InstanceArtEntity>();
-		foreachInstanceCreateEvent( report.getEndMs(), new Predicate<ReportingInstanceCreateEvent>() {
+		foreachInstanceCreateEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingInstanceCreateEvent>() {
 			@Override
 			public boolean apply( final ReportingInstanceCreateEvent createEvent ) {
 				InstanceArtEntity instance = new InstanceArtEntity(createEvent.getInstanceType(), createEvent.getInstanceId());
@@ -185,7 +188,7 @@ public class VolumeArtGenerator extends AbstractArtGenerator
 		/* Find attachment end times
 		 */
 		final AttachDurationCalculator<String,String> durationCalc = new AttachDurationCalculator<String,String>(report.getBeginMs(), report.getEndMs());
-		foreachReportingVolumeDetachEvent( report.getEndMs(), new Predicate<ReportingVolumeDetachEvent>() {
+		foreachReportingVolumeDetachEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingVolumeDetachEvent>() {
 			@Override
 			public boolean apply( final ReportingVolumeDetachEvent detachEvent ) {
 				durationCalc.detach( detachEvent.getInstanceUuid(), detachEvent.getVolumeUuid(),
@@ -196,7 +199,7 @@ public class VolumeArtGenerator extends AbstractArtGenerator
 
 		/* Find attachment end times and set durations
 		 */
-		foreachReportingVolumeAttachEvent( report.getEndMs(), new Predicate<ReportingVolumeAttachEvent>() {
+		foreachReportingVolumeAttachEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingVolumeAttachEvent>() {
 			@Override
 			public boolean apply( final ReportingVolumeAttachEvent attachEvent ) {
 				long durationMs = durationCalc.attach(attachEvent.getInstanceUuid(),
@@ -246,36 +249,54 @@ public class VolumeArtGenerator extends AbstractArtGenerator
 		return report;
 	}
 
-	protected void foreachReportingVolumeCreateEvent( final long endExclusive, final Predicate<ReportingVolumeCreateEvent> callback ) {
+	/**
+	 * All volumes created before the end of the report are listed, including
+	 * volumes deleted before the report, so volume creates are not selected
+	 * by lifetime.
+	 */
+	protected void foreachReportingVolumeCreateEvent( final long beginInclusive, final long endExclusive, final Predicate<ReportingVolumeCreateEvent> callback ) {
 		foreach( ReportingVolumeCreateEvent.class,
 				before( endExclusive ),
 				true,
 				validateCreate( callback ) );
 	}
 
-	protected void foreachReportingVolumeDeleteEvent( final long endExclusive, final Predicate<ReportingVolumeDeleteEvent> callback ) {
+	/**
+	 * Deletes before the report are needed to list volumes without usage.
+	 */
+	protected void foreachReportingVolumeDeleteEvent( final long beginInclusive, final long endExclusive, final Predicate<ReportingVolumeDeleteEvent> callback ) {
 		foreach( ReportingVolumeDeleteEvent.class,
 				before( endExclusive ),
 				true,
 				validateDelete( callback ) );
 	}
 
-	protected void foreachReportingVolumeAttachEvent( final long endExclusive, final Predicate<ReportingVolumeAttachEvent> callback ) {
+	protected void foreachReportingVolumeAttachEvent( final long beginInclusive, final long endExclusive, final Predicate<ReportingVolumeAttachEvent> callback ) {
 		foreach( ReportingVolumeAttachEvent.class,
-				before( endExclusive ),
+				attachEvents( beginInclusive, endExclusive ),
 				true,
 				validateAttach( callback ) );
 	}
 
-	protected void foreachReportingVolumeDetachEvent( final long endExclusive, final Predicate<ReportingVolumeDetachEvent> callback ) {
+	protected void foreachReportingVolumeDetachEvent( final long beginInclusive, final long endExclusive, final Predicate<ReportingVolumeDetachEvent> callback ) {
 		foreach( ReportingVolumeDetachEvent.class,
-				before( endExclusive ),
+				Restrictions.and( before( endExclusive ), lifetimeEnds( beginInclusive, endExclusive, Lifetime.VOLUME_ATTACHMENT ) ),
 				true,
 				validateDetach( callback ) );
 	}
 
-	protected void foreachInstanceCreateEvent( final long endExclusive, final Predicate<? super ReportingInstanceCreateEvent> callback ) {
-		foreach( ReportingInstanceCreateEvent.class, before( endExclusive ), true, callback );
+	/**
+	 * Instances are only needed for the attachments in the report.
+	 */
+	protected void foreachInstanceCreateEvent( final long beginInclusive, final long endExclusive, final Predicate<? super ReportingInstanceCreateEvent> callback ) {
+		foreach( ReportingInstanceCreateEvent.class,
+				Restrictions.and( before( endExclusive ), propertyIn( "uuid", ReportingVolumeAttachEvent.class, attachEvents( beginInclusive, endExclusive ), "instanceUuid" ) ),
+				true,
+				callback );
+	}
+
+	private Criterion attachEvents( final long beginInclusive, final long endExclusive ) {
+		return Restrictions.and( before( endExclusive ), lifetimeStarts( beginInclusive, endExclusive, Lifetime.VOLUME_ATTACHMENT ) );
 	}
 
 	private Predicate<ReportingVolumeCreateEvent> validateCreate(
@@ -65,6 +65,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.Restrictions;
 
 import com.eucalyptus.reporting.art.entity.AccountArtEntity;
 import com.eucalyptus.reporting.art.entity.AvailabilityZoneArtEntity;
@@ -76,6 +78,7 @@ import com.eucalyptus.reporting.domain.ReportingAccount;
 import com.eucalyptus.reporting.domain.ReportingAccountDao;
 import com.eucalyptus.reporting.domain.ReportingUser;
 import com.eucalyptus.reporting.domain.ReportingUserDao;
+import com.eucalyptus.reporting.event_store.ReportingLifetimeRollup.Lifetime;
 import com.eucalyptus.reporting.event_store.ReportingVolumeCreateEvent;
 import com.eucalyptus.reporting.event_store.ReportingVolumeSnapshotCreateEvent;
 import com.eucalyptus.reporting.event_store.ReportingVolumeSnapshotDeleteEvent;
@@ -97,7 +100,7 @@ public class VolumeSnapshotArtGenerator
 
 		/* Find delete times */
 		final Map<String, Long> snapshotEndTimes = new HashMap<String, Long>();
-		foreachReportingSnapshotDeleteEvent( report.getEndMs(), new Predicate<ReportingVolumeSnapshotDeleteEvent>() {
+		foreachReportingSnapshotDeleteEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingVolumeSnapshotDeleteEvent>() {
 			@Override
 			public boolean apply( final ReportingVolumeSnapshotDeleteEvent deleteEvent ) {
 				snapshotEndTimes.put(deleteEvent.getUuid(), deleteEvent.getTimestampMs());
@@ -108,7 +111,7 @@ public class VolumeSnapshotArtGenerator
 		/* Find volume create events */
 		final Map<String, ReportingVolumeCreateEvent> volumeCreateEvents =
 			new HashMap<String, ReportingVolumeCreateEvent>();
-		foreachReportingVolumeCreateEvent( report.getEndMs(), new Predicate<ReportingVolumeCreateEvent>() {
+		foreachReportingVolumeCreateEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingVolumeCreateEvent>() {
 			@Override
 			public boolean apply( final ReportingVolumeCreateEvent createEvent ) {
 				volumeCreateEvents.put(createEvent.getUuid(), createEvent);
@@ -117,7 +120,7 @@ public class VolumeSnapshotArtGenerator
 		});
 		
 		/* Scan through snapshot usage events, and create tree */
-		foreachReportingSnapshotCreateEvent( report.getEndMs(), new Predicate<ReportingVolumeSnapshotCreateEvent>() {
+		foreachReportingSnapshotCreateEvent( report.getBeginMs(), report.getEndMs(), new Predicate<ReportingVolumeSnapshotCreateEvent>() {
 			@Override
 			public boolean apply( final ReportingVolumeSnapshotCreateEvent createEvent ) {
 				long endTime = snapshotEndTimes.containsKey(createEvent.getUuid()) 
@@ -219,25 +222,32 @@ public class VolumeSnapshotArtGenerator
 	}
 	
 	
-	protected void foreachReportingVolumeCreateEvent( final long endExclusive, final Predicate<ReportingVolumeCreateEvent> callback ) {
+	/**
+	 * Volumes are only needed for the snapshots in the report.
+	 */
+	protected void foreachReportingVolumeCreateEvent( final long beginInclusive, final long endExclusive, final Predicate<ReportingVolumeCreateEvent> callback ) {
 		foreach( ReportingVolumeCreateEvent.class,
-				before( endExclusive ),
+				Restrictions.and( before( endExclusive ), propertyIn( "uuid", ReportingVolumeSnapshotCreateEvent.class, snapshotCreateEvents( beginInclusive, endExclusive ), "volumeUuid" ) ),
 				true,
 				callback );
 	}
 
-	protected void foreachReportingSnapshotCreateEvent( final long endExclusive, final Predicate<ReportingVolumeSnapshotCreateEvent> callback ) {
+	protected void foreachReportingSnapshotCreateEvent( final long beginInclusive, final long endExclusive, final Predicate<ReportingVolumeSnapshotCreateEvent> callback ) {
 		foreach( ReportingVolumeSnapshotCreateEvent.class,
-				before( endExclusive ),
+				snapshotCreateEvents( beginInclusive, endExclusive ),
 				true,
 				callback );
 	}
 
-	protected void foreachReportingSnapshotDeleteEvent( final long endExclusive, final Predicate<ReportingVolumeSnapshotDeleteEvent> callback ) {
+	protected void foreachReportingSnapshotDeleteEvent( final long beginInclusive, final long endExclusive, final Predicate<ReportingVolumeSnapshotDeleteEvent> callback ) {
 		foreach( ReportingVolumeSnapshotDeleteEvent.class,
-				before( endExclusive ),
+				Restrictions.and( before( endExclusive ), lifetimeEnds( beginInclusive, endExclusive, Lifetime.VOLUME_SNAPSHOT ) ),
 				true,
 				callback );
 	}
 
+	private Criterion snapshotCreateEvents( final long beginInclusive, final long endExclusive ) {
+		return Restrictions.and( before( endExclusive ), lifetimeStarts( beginInclusive, endExclusive, Lifetime.VOLUME_SNAPSHOT ) );
+	}
+
 }
@@ -19,24 +19,18 @@
  ************************************************************************/
 package com.eucalyptus.reporting.event_store;
 
-import javax.persistence.EntityTransaction;
-import com.eucalyptus.entities.Entities;
-import com.eucalyptus.util.Exceptions;
-
 /**
  * Support class for event stores
  */
 class EventStoreSupport {
 
+  /**
+   * Persist the event, the event is queued and written asynchronously.
+   *
+   * @see ReportingEventWriter
+   */
   protected void persist( final Object event ) {
-    final EntityTransaction db = Entities.get(event);
-    try {
-      Entities.persist( event );
-      db.commit();
-    } catch ( final Exception e ) {
-      db.rollback();
-      throw Exceptions.toUndeclared(e);
-    }
+    ReportingEventWriter.getInstance( ).write( event );
   }
 
 }
@@ -0,0 +1,339 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.event_store;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.log4j.Logger;
+import org.hibernate.exception.ConstraintViolationException;
+import com.eucalyptus.bootstrap.OrderedShutdown;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.util.Exceptions;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Write-behind sink for reporting events.
+ *
+ * Events are queued and written by a single thread in batches, one
+ * transaction per batch. A batch is written when enough events are queued
+ * or when the write interval elapses. Events are written in the order they
+ * were queued so the events for a resource are stored in order.
+ *
+ * If a batch cannot be written its events are written individually so an
+ * invalid event (e.g. a duplicate) does not prevent others being stored.
+ */
+@ConfigurableClass(root = "reporting", description = "Parameters controlling reporting event writes")
+public class ReportingEventWriter {
+  private static final Logger logger = Logger.getLogger( ReportingEventWriter.class );
+
+  @ConfigurableField(initial = "500", description = "Maximum number of reporting events written in a transaction")
+  public static Integer EVENT_WRITE_BATCH_SIZE = 500;
+
+  @ConfigurableField(initial = "5", description = "Maximum time in seconds reporting events are queued before they are written")
+  public static Integer EVENT_WRITE_INTERVAL_SECS = 5;
+
+  private static final int MAX_QUEUED_EVENTS =
+      Integer.getInteger( "com.eucalyptus.reporting.eventWriteQueueSize", 100000 );
+  private static final long SHUTDOWN_FLUSH_TIMEOUT_SECS = 60;
+
+  private static final ReportingEventWriter instance = new ReportingEventWriter( );
+
+  private final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>( MAX_QUEUED_EVENTS );
+  private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor( new ThreadFactory( ) {
+    @Override
+    public Thread newThread( final Runnable runnable ) {
+      final Thread thread = new Thread( runnable, "Reporting event writer" );
+      thread.setDaemon( true );
+      return thread;
+    }
+  } );
+  private final Runnable flushTask = new Runnable( ) {
+    @Override
+    public void run( ) {
+      flushQueue( );
+    }
+  };
+  private final boolean managed;
+  private final ReadWriteLock stopLock = new ReentrantReadWriteLock( );
+  private final AtomicBoolean started = new AtomicBoolean( false );
+  private final AtomicBoolean stopped = new AtomicBoolean( false );
+  private final AtomicBoolean flushPending = new AtomicBoolean( false );
+  private final AtomicLong written = new AtomicLong( );
+  private final AtomicLong failed = new AtomicLong( );
+  private final AtomicLong batches = new AtomicLong( );
+  private final AtomicLong lastBatchSize = new AtomicLong( );
+  private final AtomicLong lastFlushMillis = new AtomicLong( );
+  private final AtomicLong totalFlushMillis = new AtomicLong( );
+
+  public static ReportingEventWriter getInstance( ) {
+    return instance;
+  }
+
+  protected ReportingEventWriter( ) {
+    this( true );
+  }
+
+  /**
+   * @param managed False to skip MBean and shutdown hook registration and
+   *                periodic writes, queued events are then written only when
+   *                flushed or when a batch is full.
+   */
+  protected ReportingEventWriter( final boolean managed ) {
+    this.managed = managed;
+  }
+
+  /**
+   * Queue an event for writing, blocks while the queue is full.
+   */
+  public void write( final Object event ) {
+    start( );
+    stopLock.readLock( ).lock( );
+    try {
+      if ( stopped.get( ) ) {
+        writeBatch( Collections.singletonList( event ) );
+        return;
+      }
+      queue.put( event );
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+      throw Exceptions.toUndeclared( e );
+    } finally {
+      stopLock.readLock( ).unlock( );
+    }
+    if ( queue.size( ) >= batchSize( ) ) {
+      requestFlush( );
+    }
+  }
+
+  /**
+   * Write all queued events, waiting for the write to complete.
+   */
+  public void flush( ) {
+    try {
+      writer.submit( flushTask ).get( );
+    } catch ( final RejectedExecutionException e ) {
+      flushQueue( );
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+    } catch ( final ExecutionException e ) {
+      logger.error( "Error flushing reporting events", e.getCause( ) );
+    }
+  }
+
+  public int getQueueDepth( ) {
+    return queue.size( );
+  }
+
+  public long getWrittenCount( ) {
+    return written.get( );
+  }
+
+  public long getFailedCount( ) {
+    return failed.get( );
+  }
+
+  public long getBatchCount( ) {
+    return batches.get( );
+  }
+
+  public long getLastBatchSize( ) {
+    return lastBatchSize.get( );
+  }
+
+  public double getAverageBatchSize( ) {
+    final long batches = this.batches.get( );
+    return batches == 0 ? 0d : ( written.get( ) + failed.get( ) ) / (double) batches;
+  }
+
+  public long getLastFlushMillis( ) {
+    return lastFlushMillis.get( );
+  }
+
+  public double getAverageFlushMillis( ) {
+    final long batches = this.batches.get( );
+    return batches == 0 ? 0d : totalFlushMillis.get( ) / (double) batches;
+  }
+
+  protected void persist( final List<Object> events ) {
+    try ( final TransactionResource db = Entities.transactionFor( events.get( 0 ) ) ) {
+      for ( final Object event : events ) {
+        Entities.persist( event );
+      }
+      db.commit( );
+    }
+    markLateDays( events );
+  }
+
+  /**
+   * Mark days dirty for events written after their day may have been rolled up.
+   *
+   * Days are marked after the events are stored so a rollup run that misses
+   * the events leaves the mark for the next run.
+   */
+  private void markLateDays( final List<Object> events ) {
+    final long now = System.currentTimeMillis( );
+    final Set<Long> lateDays = Sets.newTreeSet( );
+    for ( final Object event : events ) {
+      if ( event instanceof ReportingEventSupport ) {
+        final Long lateDay = ReportingRollups.lateDay( (ReportingEventSupport) event, now );
+        if ( lateDay != null ) {
+          lateDays.add( lateDay );
+        }
+      }
+    }
+    if ( lateDays.isEmpty( ) ) {
+      return;
+    }
+    try ( final TransactionResource db = Entities.transactionFor( ReportingRollupDirtyDay.class ) ) {
+      for ( final Long lateDay : lateDays ) {
+        ReportingRollups.markDirty( lateDay );
+      }
+      db.commit( );
+    } catch ( final Exception e ) {
+      logger.warn( "Error marking reporting rollup days " + lateDays + " for late events", e );
+    }
+  }
+
+  private void start( ) {
+    if ( started.compareAndSet( false, true ) && managed ) {
+      Mbeans.register( this );
+      OrderedShutdown.registerPreShutdownHook( new Runnable( ) {
+        @Override
+        public void run( ) {
+          stop( );
+        }
+      } );
+      scheduleFlush( );
+    }
+  }
+
+  /**
+   * Stop queueing events and write those already queued.
+   *
+   * Once stopped events are written by the caller. Setting the stopped flag
+   * excludes concurrent writes so no event is queued after the final flush.
+   */
+  void stop( ) {
+    stopLock.writeLock( ).lock( );
+    try {
+      stopped.set( true );
+    } finally {
+      stopLock.writeLock( ).unlock( );
+    }
+    writer.shutdown( );
+    try {
+      if ( !writer.awaitTermination( SHUTDOWN_FLUSH_TIMEOUT_SECS, TimeUnit.SECONDS ) ) {
+        throw new TimeoutException( "Timed out waiting for reporting event writer" );
+      }
+      flushQueue( );
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+    } catch ( final TimeoutException e ) {
+      logger.warn( e.getMessage( ) + ", " + queue.size( ) + " events not written" );
+    }
+  }
+
+  private void scheduleFlush( ) {
+    try {
+      writer.schedule( new Runnable( ) {
+        @Override
+        public void run( ) {
+          try {
+            flushQueue( );
+          } finally {
+            scheduleFlush( );
+          }
+        }
+      }, Math.max( 1, EVENT_WRITE_INTERVAL_SECS ), TimeUnit.SECONDS );
+    } catch ( final RejectedExecutionException e ) {
+      // shutting down, the remaining events are written on stop
+    }
+  }
+
+  private void requestFlush( ) {
+    if ( flushPending.compareAndSet( false, true ) ) {
+      try {
+        writer.execute( flushTask );
+      } catch ( final RejectedExecutionException e ) {
+        flushPending.set( false );
+      }
+    }
+  }
+
+  private static int batchSize( ) {
+    return Math.max( 1, EVENT_WRITE_BATCH_SIZE );
+  }
+
+  private void flushQueue( ) {
+    flushPending.set( false );
+    final List<Object> batch = Lists.newArrayList( );
+    while ( queue.drainTo( batch, batchSize( ) ) > 0 ) {
+      writeBatch( batch );
+      batch.clear( );
+    }
+  }
+
+  private void writeBatch( final List<Object> batch ) {
+    final long start = System.currentTimeMillis( );
+    try {
+      persist( batch );
+      written.addAndGet( batch.size( ) );
+    } catch ( final Exception e ) {
+      logger.debug( "Error writing batch of " + batch.size( ) + " reporting events, writing individually", e );
+      for ( final Object event : batch ) {
+        try {
+          persist( Collections.singletonList( event ) );
+          written.incrementAndGet( );
+        } catch ( final Exception ex ) {
+          failed.incrementAndGet( );
+          if ( Exceptions.isCausedBy( ex, ConstraintViolationException.class ) ) {
+            logger.debug( "Reporting event already exists " + event, ex );
+          } else {
+            logger.error( "Error writing reporting event " + event, ex );
+          }
+        }
+      }
+    }
+    final long elapsed = System.currentTimeMillis( ) - start;
+    batches.incrementAndGet( );
+    lastBatchSize.set( batch.size( ) );
+    lastFlushMillis.set( elapsed );
+    totalFlushMillis.addAndGet( elapsed );
+  }
+}
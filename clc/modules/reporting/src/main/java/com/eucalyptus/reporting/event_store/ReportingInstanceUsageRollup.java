@@ -0,0 +1,172 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.event_store;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Table;
+import org.hibernate.annotations.Index;
+import com.eucalyptus.component.annotation.RemotablePersistence;
+
+/**
+ * Daily rollup of usage events for an instance metric and dimension.
+ *
+ * The rollup holds the first and last usage samples for the day and the
+ * total of the usage between consecutive samples within the day, so a
+ * report covering the whole day need not read the individual events.
+ */
+@Entity
+@PersistenceContext(name="eucalyptus_reporting_backend")
+@RemotablePersistence
+@Table(name="reporting_instance_usage_rollups")
+public class ReportingInstanceUsageRollup implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  @Column(name="id", nullable=false, updatable=false)
+  private String id;
+  @Index(name="reporting_instance_usage_rollups_day_idx")
+  @Column(name="day_ms", nullable=false)
+  private Long dayMs;
+  @Column(name="uuid", nullable=false)
+  private String uuid;
+  @Column(name="metric", nullable=false)
+  private String metric;
+  @Column(name="dimension", nullable=false)
+  private String dimension;
+  @Column(name="first_ms", nullable=false)
+  private Long firstMs;
+  @Column(name="first_value", nullable=false)
+  private Double firstValue;
+  @Column(name="first_sequence_num", nullable=false)
+  private Long firstSequenceNum;
+  @Column(name="last_ms", nullable=false)
+  private Long lastMs;
+  @Column(name="last_value", nullable=false)
+  private Double lastValue;
+  @Column(name="last_sequence_num", nullable=false)
+  private Long lastSequenceNum;
+  @Column(name="sample_count", nullable=false)
+  private Integer sampleCount;
+  @Column(name="total", nullable=false)
+  private Long total;
+
+  protected ReportingInstanceUsageRollup() {
+  }
+
+  ReportingInstanceUsageRollup( final long dayMs,
+                                final ReportingInstanceUsageEvent first ) {
+    this.id = first.getUuid() + "/" + first.getMetric() + "/" + first.getDimension() + "/" + dayMs;
+    this.dayMs = dayMs;
+    this.uuid = first.getUuid();
+    this.metric = first.getMetric();
+    this.dimension = first.getDimension();
+    this.firstMs = first.getTimestampMs();
+    this.firstValue = first.getValue();
+    this.firstSequenceNum = first.getSequenceNum();
+    this.lastMs = firstMs;
+    this.lastValue = firstValue;
+    this.lastSequenceNum = firstSequenceNum;
+    this.sampleCount = 1;
+    this.total = 0L;
+  }
+
+  /**
+   * Add the next sample for the day, samples must be added in time order.
+   *
+   * The usage for the period since the last sample is the difference in the
+   * (cumulative) values, or the new value if the sensor was reset.
+   */
+  void add( final ReportingInstanceUsageEvent event ) {
+    if ( event.getTimestampMs() > lastMs ) {
+      final double usage = event.getSequenceNum() < lastSequenceNum || event.getSequenceNum() == 0 ?
+          event.getValue() :
+          event.getValue() - lastValue;
+      total += (long) usage;
+    }
+    lastMs = event.getTimestampMs();
+    lastValue = event.getValue();
+    lastSequenceNum = event.getSequenceNum();
+    sampleCount++;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Long getDayMs() {
+    return dayMs;
+  }
+
+  public String getUuid() {
+    return uuid;
+  }
+
+  public String getMetric() {
+    return metric;
+  }
+
+  public String getDimension() {
+    return dimension;
+  }
+
+  public Long getLastMs() {
+    return lastMs;
+  }
+
+  public Double getLastValue() {
+    return lastValue;
+  }
+
+  public Long getLastSequenceNum() {
+    return lastSequenceNum;
+  }
+
+  public Integer getSampleCount() {
+    return sampleCount;
+  }
+
+  /**
+   * Usage between the first and last samples for the day.
+   */
+  public Long getTotal() {
+    return total;
+  }
+
+  /**
+   * The first usage sample for the day as an event.
+   */
+  public ReportingInstanceUsageEvent getFirstSample() {
+    return new ReportingInstanceUsageEvent( uuid, metric, firstSequenceNum, dimension, firstValue, firstMs );
+  }
+
+  @Override
+  public String toString() {
+    return "ReportingInstanceUsageRollup [uuid=" + uuid
+        + ", metric=" + metric
+        + ", dimension=" + dimension
+        + ", dayMs=" + dayMs
+        + ", samples=" + sampleCount
+        + ", total=" + total + "]";
+  }
+}
@@ -0,0 +1,192 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.event_store;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.google.common.collect.Maps;
+
+/**
+ * Maintains daily rollups of instance usage events.
+ *
+ * Days are rolled up in order once complete, so all days before the latest
+ * rolled up day are also rolled up. Usage events arriving after their day
+ * is rolled up mark the day dirty and the day is rolled up again.
+ *
+ * @see ReportingRollups
+ */
+public class ReportingInstanceUsageRollups {
+  private static final Logger logger = Logger.getLogger( ReportingInstanceUsageRollups.class );
+
+  public static final long DAY_MS = TimeUnit.DAYS.toMillis( 1 );
+
+  private static final ReportingInstanceUsageRollups instance = new ReportingInstanceUsageRollups();
+
+  public static ReportingInstanceUsageRollups getInstance() {
+    return instance;
+  }
+
+  protected ReportingInstanceUsageRollups() {
+  }
+
+  /**
+   * Start of the (UTC) day for the given time.
+   */
+  public static long dayStart( final long timestampMs ) {
+    return timestampMs - ( timestampMs % DAY_MS );
+  }
+
+  /**
+   * Build rollups for a day from the day's usage events.
+   *
+   * @param dayMs The start of the day
+   * @param events The usage events for the day in time order
+   * @return The rollups, one for each instance metric and dimension
+   */
+  public static Collection<ReportingInstanceUsageRollup> rollup( final long dayMs,
+                                                                 final Iterable<ReportingInstanceUsageEvent> events ) {
+    final RollupBuilder builder = new RollupBuilder( dayMs );
+    for ( final ReportingInstanceUsageEvent event : events ) {
+      builder.add( event );
+    }
+    return builder.rollups.values();
+  }
+
+  /**
+   * Get the time up to which usage is rolled up.
+   *
+   * @return The end of the latest rolled up day, or zero if there are no rollups
+   */
+  public long getRolledUpToMs() {
+    try ( final TransactionResource db = Entities.transactionFor( ReportingInstanceUsageRollup.class ) ) {
+      final Long lastDay = (Long) Entities.createCriteria( ReportingInstanceUsageRollup.class )
+          .setProjection( Projections.max( "dayMs" ) )
+          .uniqueResult();
+      return lastDay == null ? 0 : lastDay + DAY_MS;
+    }
+  }
+
+  /**
+   * Roll up usage for each day that is not yet rolled up and ends before the given time.
+   */
+  public void rollupBefore( final long endMs ) {
+    long dayMs = getRolledUpToMs();
+    if ( dayMs == 0 ) {
+      final Long firstEventMs;
+      try ( final TransactionResource db = Entities.transactionFor( ReportingInstanceUsageEvent.class ) ) {
+        firstEventMs = (Long) Entities.createCriteria( ReportingInstanceUsageEvent.class )
+            .setProjection( Projections.min( "timestampMs" ) )
+            .uniqueResult();
+      }
+      if ( firstEventMs == null ) return;
+      dayMs = dayStart( firstEventMs );
+    }
+    for ( ; dayMs + DAY_MS <= endMs; dayMs += DAY_MS ) {
+      rollupDay( dayMs );
+    }
+  }
+
+  /**
+   * Delete the rollups for the given day and later days, must be called in a reporting transaction.
+   *
+   * The days are rolled up again by the next call to rollupBefore.
+   */
+  void rewindTo( final long dayMs ) {
+    final int deleted = Entities.deleteAllMatching( ReportingInstanceUsageRollup.class,
+        "where dayMs >= :dayMs",
+        Collections.singletonMap( "dayMs", dayMs ) );
+    logger.debug( "Deleted " + deleted + " instance usage rollups from day " + dayMs );
+  }
+
+  /**
+   * Delete all rollups, they will be rebuilt from the usage events.
+   *
+   * @see ReportingRollups#rebuildAfter
+   */
+  public void deleteAll() {
+    try ( final TransactionResource db = Entities.transactionFor( ReportingInstanceUsageRollup.class ) ) {
+      Entities.deleteAll( ReportingInstanceUsageRollup.class );
+      db.commit();
+    }
+  }
+
+  private void rollupDay( final long dayMs ) {
+    final long start = System.currentTimeMillis();
+    final RollupBuilder builder = new RollupBuilder( dayMs );
+    try ( final TransactionResource db = Entities.transactionFor( ReportingInstanceUsageRollup.class ) ) {
+      ScrollableResults results = null;
+      try {
+        results = Entities.createCriteria( ReportingInstanceUsageEvent.class )
+            .setReadOnly( true )
+            .setCacheable( false )
+            .setCacheMode( CacheMode.IGNORE )
+            .setFetchSize( 100 )
+            .add( Restrictions.ge( "timestampMs", dayMs ) )
+            .add( Restrictions.lt( "timestampMs", dayMs + DAY_MS ) )
+            .addOrder( Order.asc( "timestampMs" ) )
+            .scroll( ScrollMode.FORWARD_ONLY );
+        while ( results.next() ) {
+          final ReportingInstanceUsageEvent event = (ReportingInstanceUsageEvent) results.get( 0 );
+          builder.add( event );
+          Entities.evict( event );
+        }
+      } finally {
+        if ( results != null ) try { results.close(); } catch( Exception e ) { }
+      }
+      for ( final ReportingInstanceUsageRollup rollup : builder.rollups.values() ) {
+        Entities.persist( rollup );
+      }
+      db.commit();
+    }
+    logger.debug( "Rolled up " + builder.rollups.size() + " instance usage metrics for day " + dayMs +
+        " in " + ( System.currentTimeMillis() - start ) + "ms" );
+  }
+
+  private static final class RollupBuilder {
+    private final long dayMs;
+    private final Map<String,ReportingInstanceUsageRollup> rollups = Maps.newLinkedHashMap();
+
+    private RollupBuilder( final long dayMs ) {
+      this.dayMs = dayMs;
+    }
+
+    private void add( final ReportingInstanceUsageEvent event ) {
+      if ( event.getValue() == null ) return;
+      final String key = event.getUuid() + "/" + event.getMetric() + "/" + event.getDimension();
+      final ReportingInstanceUsageRollup rollup = rollups.get( key );
+      if ( rollup == null ) {
+        rollups.put( key, new ReportingInstanceUsageRollup( dayMs, event ) );
+      } else {
+        rollup.add( event );
+      }
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.event_store;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Table;
+import org.hibernate.annotations.Index;
+import com.eucalyptus.component.annotation.RemotablePersistence;
+
+/**
+ * Rollup of the lifetime of a resource or attachment.
+ *
+ * The lifetime is identified by the event that started it and holds the
+ * event that ended it, if any, so a report can find the events for the
+ * lifetimes overlapping the report without reading all earlier events.
+ */
+@Entity
+@PersistenceContext(name="eucalyptus_reporting_backend")
+@RemotablePersistence
+@Table(name="reporting_lifetime_rollups")
+public class ReportingLifetimeRollup implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The kinds of lifetime, with the events that start and end them.
+   *
+   * Lifetimes end at the first end event after the start, or at the same
+   * time for resources with unique identifiers, matching how the report
+   * generators pair the events.
+   */
+  public enum Lifetime {
+    VOLUME_ATTACHMENT( true, ReportingVolumeAttachEvent.class, ReportingVolumeDetachEvent.class ) {
+      @Override
+      String key( final ReportingEventSupport event ) {
+        return event instanceof ReportingVolumeAttachEvent ?
+            ((ReportingVolumeAttachEvent) event).getVolumeUuid() + "/" + ((ReportingVolumeAttachEvent) event).getInstanceUuid() :
+            ((ReportingVolumeDetachEvent) event).getVolumeUuid() + "/" + ((ReportingVolumeDetachEvent) event).getInstanceUuid();
+      }
+    },
+    VOLUME_SNAPSHOT( true, ReportingVolumeSnapshotCreateEvent.class, ReportingVolumeSnapshotDeleteEvent.class ) {
+      @Override
+      String key( final ReportingEventSupport event ) {
+        return event instanceof ReportingVolumeSnapshotCreateEvent ?
+            ((ReportingVolumeSnapshotCreateEvent) event).getUuid() :
+            ((ReportingVolumeSnapshotDeleteEvent) event).getUuid();
+      }
+    },
+    S3_OBJECT( false, ReportingS3ObjectCreateEvent.class, ReportingS3ObjectDeleteEvent.class ) {
+      @Override
+      String key( final ReportingEventSupport event ) {
+        return event instanceof ReportingS3ObjectCreateEvent ?
+            ((ReportingS3ObjectCreateEvent) event).getS3BucketName() + "/" +
+                ((ReportingS3ObjectCreateEvent) event).getS3ObjectKey() + "/" +
+                ((ReportingS3ObjectCreateEvent) event).getObjectVersion() :
+            ((ReportingS3ObjectDeleteEvent) event).getS3BucketName() + "/" +
+                ((ReportingS3ObjectDeleteEvent) event).getS3ObjectKey() + "/" +
+                ((ReportingS3ObjectDeleteEvent) event).getObjectVersion();
+      }
+    },
+    ELASTIC_IP( false, ReportingElasticIpCreateEvent.class, ReportingElasticIpDeleteEvent.class ) {
+      @Override
+      String key( final ReportingEventSupport event ) {
+        return event instanceof ReportingElasticIpCreateEvent ?
+            ((ReportingElasticIpCreateEvent) event).getIp() :
+            ((ReportingElasticIpDeleteEvent) event).getIp();
+      }
+    },
+    /**
+     * Elastic IP attachments also end when the address is released.
+     */
+    ELASTIC_IP_ATTACHMENT( false, ReportingElasticIpAttachEvent.class, ReportingElasticIpDetachEvent.class, ReportingElasticIpDeleteEvent.class ) {
+      @Override
+      String key( final ReportingEventSupport event ) {
+        if ( event instanceof ReportingElasticIpAttachEvent ) {
+          return ((ReportingElasticIpAttachEvent) event).getIp();
+        } else if ( event instanceof ReportingElasticIpDetachEvent ) {
+          return ((ReportingElasticIpDetachEvent) event).getIp();
+        } else {
+          return ((ReportingElasticIpDeleteEvent) event).getIp();
+        }
+      }
+    };
+
+    private final boolean endInclusive;
+    private final Class<? extends ReportingEventSupport> startEventClass;
+    private final Class<? extends ReportingEventSupport>[] endEventClasses;
+
+    @SafeVarargs
+    Lifetime( final boolean endInclusive,
+              final Class<? extends ReportingEventSupport> startEventClass,
+              final Class<? extends ReportingEventSupport>... endEventClasses ) {
+      this.endInclusive = endInclusive;
+      this.startEventClass = startEventClass;
+      this.endEventClasses = endEventClasses;
+    }
+
+    public Class<? extends ReportingEventSupport> getStartEventClass() {
+      return startEventClass;
+    }
+
+    public Class<? extends ReportingEventSupport>[] getEndEventClasses() {
+      return endEventClasses;
+    }
+
+    /**
+     * Is a lifetime starting at the given time ended by the event.
+     */
+    public boolean isEndedBy( final long startMs, final ReportingEventSupport event ) {
+      return endInclusive ?
+          event.getTimestampMs() >= startMs :
+          event.getTimestampMs() > startMs;
+    }
+
+    /**
+     * The key that matches the start and end events for a lifetime.
+     */
+    abstract String key( ReportingEventSupport event );
+  }
+
+  @Id
+  @Column(name="id", nullable=false, updatable=false)
+  private String id;
+  @Enumerated(EnumType.STRING)
+  @Column(name="lifetime", nullable=false, updatable=false)
+  private Lifetime lifetime;
+  @Index(name="reporting_lifetime_rollups_key_idx")
+  @Column(name="resource_key", nullable=false, updatable=false, length=1024)
+  private String key;
+  @Index(name="reporting_lifetime_rollups_day_idx")
+  @Column(name="day_ms", nullable=false, updatable=false)
+  private Long dayMs;
+  @Index(name="reporting_lifetime_rollups_start_idx")
+  @Column(name="start_ms", nullable=false, updatable=false)
+  private Long startMs;
+  @Index(name="reporting_lifetime_rollups_end_idx")
+  @Column(name="end_ms")
+  private Long endMs;
+  @Column(name="end_event_id")
+  private String endEventId;
+
+  protected ReportingLifetimeRollup() {
+  }
+
+  ReportingLifetimeRollup( final long dayMs,
+                           final Lifetime lifetime,
+                           final ReportingEventSupport start ) {
+    this.id = start.getId();
+    this.lifetime = lifetime;
+    this.key = lifetime.key( start );
+    this.dayMs = dayMs;
+    this.startMs = start.getTimestampMs();
+  }
+
+  /**
+   * End the lifetime, the end event must be after the start of the lifetime.
+   */
+  void end( final ReportingEventSupport event ) {
+    this.endMs = event.getTimestampMs();
+    this.endEventId = event.getId();
+  }
+
+  /**
+   * Clear the end of the lifetime, so it can be ended again.
+   */
+  void reopen() {
+    this.endMs = null;
+    this.endEventId = null;
+  }
+
+  /**
+   * The identifier of the start event.
+   */
+  public String getId() {
+    return id;
+  }
+
+  public Lifetime getLifetime() {
+    return lifetime;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public Long getDayMs() {
+    return dayMs;
+  }
+
+  public Long getStartMs() {
+    return startMs;
+  }
+
+  public Long getEndMs() {
+    return endMs;
+  }
+
+  public String getEndEventId() {
+    return endEventId;
+  }
+
+  @Override
+  public String toString() {
+    return "ReportingLifetimeRollup [lifetime=" + lifetime
+        + ", key=" + key
+        + ", startMs=" + startMs
+        + ", endMs=" + endMs + "]";
+  }
+}
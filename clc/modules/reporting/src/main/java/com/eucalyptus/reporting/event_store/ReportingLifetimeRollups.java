@@ -0,0 +1,320 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.event_store;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.log4j.Logger;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.reporting.event_store.ReportingLifetimeRollup.Lifetime;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Maintains daily rollups of resource and attachment lifetimes.
+ *
+ * Days are rolled up in order once complete, as for instance usage. A
+ * lifetime is rolled up on the day it starts and is ended when a later day
+ * contains its end event. Reports use the rollups to select only the start
+ * and end events for lifetimes that overlap the report, events after the
+ * rolled up days are always selected. Events arriving after their day is
+ * rolled up mark the day dirty and the day is rolled up again.
+ *
+ * @see ReportingInstanceUsageRollups
+ * @see ReportingRollups
+ */
+public class ReportingLifetimeRollups {
+  private static final Logger logger = Logger.getLogger( ReportingLifetimeRollups.class );
+
+  private static final long DAY_MS = ReportingInstanceUsageRollups.DAY_MS;
+  private static final int KEY_BATCH_SIZE = 500;
+
+  private static final ReportingLifetimeRollups instance = new ReportingLifetimeRollups();
+
+  public static ReportingLifetimeRollups getInstance() {
+    return instance;
+  }
+
+  protected ReportingLifetimeRollups() {
+  }
+
+  /**
+   * Build lifetime rollups from start events.
+   *
+   * @param dayMs The start of the day
+   * @param lifetime The lifetime started by the events
+   * @param events The start events for the day
+   * @return The rollups, one for each start event
+   */
+  public static List<ReportingLifetimeRollup> start( final long dayMs,
+                                                     final Lifetime lifetime,
+                                                     final Iterable<? extends ReportingEventSupport> events ) {
+    final List<ReportingLifetimeRollup> rollups = Lists.newArrayList();
+    for ( final ReportingEventSupport event : events ) {
+      rollups.add( new ReportingLifetimeRollup( dayMs, lifetime, event ) );
+    }
+    return rollups;
+  }
+
+  /**
+   * End open lifetime rollups using end events.
+   *
+   * Each rollup is ended by the first event with the same key that is after
+   * the start of the lifetime, so several rollups can be ended by one event.
+   *
+   * @param lifetime The lifetime ended by the events
+   * @param rollups The open rollups for the lifetime
+   * @param events The end events for the lifetime
+   * @return The rollups that were ended
+   */
+  public static List<ReportingLifetimeRollup> end( final Lifetime lifetime,
+                                                   final Iterable<ReportingLifetimeRollup> rollups,
+                                                   final Iterable<? extends ReportingEventSupport> events ) {
+    final Map<String,List<ReportingEventSupport>> eventsByKey = Maps.newHashMap();
+    for ( final ReportingEventSupport event : events ) {
+      final String key = lifetime.key( event );
+      List<ReportingEventSupport> keyEvents = eventsByKey.get( key );
+      if ( keyEvents == null ) {
+        keyEvents = Lists.newArrayList();
+        eventsByKey.put( key, keyEvents );
+      }
+      keyEvents.add( event );
+    }
+    for ( final List<ReportingEventSupport> keyEvents : eventsByKey.values() ) {
+      Collections.sort( keyEvents, TimestampComparator.INSTANCE );
+    }
+
+    final List<ReportingLifetimeRollup> ended = Lists.newArrayList();
+    for ( final ReportingLifetimeRollup rollup : rollups ) {
+      if ( rollup.getLifetime() != lifetime || rollup.getEndMs() != null ) continue;
+      final List<ReportingEventSupport> keyEvents = eventsByKey.get( rollup.getKey() );
+      if ( keyEvents == null ) continue;
+      for ( final ReportingEventSupport event : keyEvents ) {
+        if ( lifetime.isEndedBy( rollup.getStartMs(), event ) ) {
+          rollup.end( event );
+          ended.add( rollup );
+          break;
+        }
+      }
+    }
+    return ended;
+  }
+
+  /**
+   * Criterion for the start events of lifetimes overlapping the given period.
+   *
+   * @param beginMs The start of the period (inclusive)
+   * @param endMs The end of the period (inclusive)
+   * @param lifetimes The lifetimes started by the events
+   * @return The criterion
+   */
+  public Criterion startEvents( final long beginMs,
+                                final long endMs,
+                                final Lifetime... lifetimes ) {
+    return events( beginMs, endMs, "id", lifetimes );
+  }
+
+  /**
+   * Criterion for the end events of lifetimes overlapping the given period.
+   *
+   * @param beginMs The start of the period (inclusive)
+   * @param endMs The end of the period (inclusive)
+   * @param lifetimes The lifetimes ended by the events
+   * @return The criterion
+   */
+  public Criterion endEvents( final long beginMs,
+                              final long endMs,
+                              final Lifetime... lifetimes ) {
+    return events( beginMs, endMs, "endEventId", lifetimes );
+  }
+
+  /**
+   * Get the time up to which lifetimes are rolled up.
+   *
+   * @return The end of the latest rolled up day, or zero if there are no rollups
+   */
+  public long getRolledUpToMs() {
+    try ( final TransactionResource db = Entities.transactionFor( ReportingLifetimeRollup.class ) ) {
+      final Long lastDay = (Long) Entities.createCriteria( ReportingLifetimeRollup.class )
+          .setProjection( Projections.max( "dayMs" ) )
+          .uniqueResult();
+      return lastDay == null ? 0 : lastDay + DAY_MS;
+    }
+  }
+
+  /**
+   * Roll up lifetimes for each day that is not yet rolled up and ends before the given time.
+   */
+  public void rollupBefore( final long endMs ) {
+    long dayMs = getRolledUpToMs();
+    if ( dayMs == 0 ) {
+      Long firstEventMs = null;
+      for ( final Lifetime lifetime : Lifetime.values() ) {
+        try ( final TransactionResource db = Entities.transactionFor( lifetime.getStartEventClass() ) ) {
+          final Long eventMs = (Long) Entities.createCriteria( lifetime.getStartEventClass() )
+              .setProjection( Projections.min( "timestampMs" ) )
+              .uniqueResult();
+          if ( eventMs != null && ( firstEventMs == null || eventMs < firstEventMs ) ) {
+            firstEventMs = eventMs;
+          }
+        }
+      }
+      if ( firstEventMs == null ) return;
+      dayMs = ReportingInstanceUsageRollups.dayStart( firstEventMs );
+    }
+    for ( ; dayMs + DAY_MS <= endMs; dayMs += DAY_MS ) {
+      rollupDay( dayMs );
+    }
+  }
+
+  /**
+   * Delete the rollups for lifetimes starting on the given day or later days
+   * and reopen lifetimes ending on those days, must be called in a reporting
+   * transaction.
+   *
+   * The days are rolled up again by the next call to rollupBefore.
+   */
+  void rewindTo( final long dayMs ) {
+    final int deleted = Entities.deleteAllMatching( ReportingLifetimeRollup.class,
+        "where dayMs >= :dayMs",
+        Collections.singletonMap( "dayMs", dayMs ) );
+    @SuppressWarnings( "unchecked" )
+    final List<ReportingLifetimeRollup> ended = (List<ReportingLifetimeRollup>)
+        Entities.createCriteria( ReportingLifetimeRollup.class )
+            .add( Restrictions.ge( "endMs", dayMs ) )
+            .list( );
+    for ( final ReportingLifetimeRollup rollup : ended ) {
+      rollup.reopen( );
+    }
+    logger.debug( "Deleted " + deleted + " lifetime rollups and reopened " + ended.size() + " from day " + dayMs );
+  }
+
+  /**
+   * Delete all rollups, they will be rebuilt from the events.
+   *
+   * @see ReportingRollups#rebuildAfter
+   */
+  public void deleteAll() {
+    try ( final TransactionResource db = Entities.transactionFor( ReportingLifetimeRollup.class ) ) {
+      Entities.deleteAll( ReportingLifetimeRollup.class );
+      db.commit();
+    }
+  }
+
+  private Criterion events( final long beginMs,
+                            final long endMs,
+                            final String idProperty,
+                            final Lifetime... lifetimes ) {
+    final DetachedCriteria rollups = DetachedCriteria.forClass( ReportingLifetimeRollup.class )
+        .add( Restrictions.in( "lifetime", lifetimes ) )
+        .add( Restrictions.le( "startMs", endMs ) )
+        .add( Restrictions.or( Restrictions.isNull( "endMs" ), Restrictions.ge( "endMs", beginMs ) ) )
+        .setProjection( Projections.property( idProperty ) );
+    return Restrictions.or(
+        Restrictions.ge( "timestampMs", getRolledUpToMs( ) ),
+        Subqueries.propertyIn( "id", rollups ) );
+  }
+
+  private void rollupDay( final long dayMs ) {
+    final long start = System.currentTimeMillis();
+    int started = 0;
+    int ended = 0;
+    try ( final TransactionResource db = Entities.transactionFor( ReportingLifetimeRollup.class ) ) {
+      for ( final Lifetime lifetime : Lifetime.values() ) {
+        final List<ReportingEventSupport> startEvents = Lists.newArrayList();
+        scrollDay( lifetime.getStartEventClass(), dayMs, startEvents );
+        for ( final ReportingLifetimeRollup rollup : start( dayMs, lifetime, startEvents ) ) {
+          Entities.persist( rollup );
+          started++;
+        }
+
+        final List<ReportingEventSupport> endEvents = Lists.newArrayList();
+        for ( final Class<? extends ReportingEventSupport> endEventClass : lifetime.getEndEventClasses() ) {
+          scrollDay( endEventClass, dayMs, endEvents );
+        }
+        final Set<String> keys = Sets.newLinkedHashSet();
+        for ( final ReportingEventSupport event : endEvents ) {
+          keys.add( lifetime.key( event ) );
+        }
+        for ( final List<String> keyBatch : Iterables.partition( keys, KEY_BATCH_SIZE ) ) {
+          @SuppressWarnings( "unchecked" )
+          final List<ReportingLifetimeRollup> open = (List<ReportingLifetimeRollup>)
+              Entities.createCriteria( ReportingLifetimeRollup.class )
+                  .add( Restrictions.eq( "lifetime", lifetime ) )
+                  .add( Restrictions.in( "key", keyBatch ) )
+                  .add( Restrictions.isNull( "endMs" ) )
+                  .list( );
+          ended += end( lifetime, open, endEvents ).size();
+        }
+      }
+      db.commit();
+    }
+    logger.debug( "Rolled up " + started + " lifetimes started and " + ended + " ended for day " + dayMs +
+        " in " + ( System.currentTimeMillis() - start ) + "ms" );
+  }
+
+  private static void scrollDay( final Class<? extends ReportingEventSupport> eventClass,
+                                 final long dayMs,
+                                 final List<ReportingEventSupport> events ) {
+    ScrollableResults results = null;
+    try {
+      results = Entities.createCriteria( eventClass )
+          .setReadOnly( true )
+          .setCacheable( false )
+          .setCacheMode( CacheMode.IGNORE )
+          .setFetchSize( 100 )
+          .add( Restrictions.ge( "timestampMs", dayMs ) )
+          .add( Restrictions.lt( "timestampMs", dayMs + DAY_MS ) )
+          .addOrder( Order.asc( "timestampMs" ) )
+          .scroll( ScrollMode.FORWARD_ONLY );
+      while ( results.next() ) {
+        final ReportingEventSupport event = (ReportingEventSupport) results.get( 0 );
+        events.add( event );
+        Entities.evict( event );
+      }
+    } finally {
+      if ( results != null ) try { results.close(); } catch( Exception e ) { }
+    }
+  }
+
+  private enum TimestampComparator implements Comparator<ReportingEventSupport> {
+    INSTANCE;
+
+    @Override
+    public int compare( final ReportingEventSupport event1, final ReportingEventSupport event2 ) {
+      return event1.getTimestampMs().compareTo( event2.getTimestampMs() );
+    }
+  }
+}
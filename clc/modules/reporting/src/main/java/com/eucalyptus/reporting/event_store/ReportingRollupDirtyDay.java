@@ -0,0 +1,64 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.event_store;
+
+import java.io.Serializable;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Table;
+import com.eucalyptus.component.annotation.RemotablePersistence;
+
+/**
+ * A day with events written after the day may have been rolled up.
+ *
+ * The rollups for the day and any later days are rebuilt on the next
+ * rollup run so the late events are included.
+ *
+ * @see ReportingRollups
+ */
+@Entity
+@PersistenceContext(name="eucalyptus_reporting_backend")
+@RemotablePersistence
+@Table(name="reporting_rollup_dirty_days")
+public class ReportingRollupDirtyDay implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  @Id
+  @Column(name="day_ms", nullable=false, updatable=false)
+  private Long dayMs;
+
+  protected ReportingRollupDirtyDay() {
+  }
+
+  ReportingRollupDirtyDay( final long dayMs ) {
+    this.dayMs = dayMs;
+  }
+
+  public Long getDayMs() {
+    return dayMs;
+  }
+
+  @Override
+  public String toString() {
+    return "ReportingRollupDirtyDay [dayMs=" + dayMs + "]";
+  }
+}
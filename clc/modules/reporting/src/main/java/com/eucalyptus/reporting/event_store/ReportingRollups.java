@@ -0,0 +1,135 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.event_store;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+import org.apache.log4j.Logger;
+import org.hibernate.criterion.Projections;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+
+/**
+ * Coordinates the daily rollups of reporting events.
+ *
+ * A day is rolled up once it ended at least the rollup delay ago. Events
+ * written later for a day that may be rolled up mark the day dirty, the
+ * next rollup run rewinds the rollups to the earliest dirty day and rolls
+ * up the days again.
+ *
+ * Rolling up and deleting rollups are serialized, so a rollup built from
+ * events that are then deleted or replaced (e.g. on import) is not stored.
+ *
+ * @see ReportingInstanceUsageRollups
+ * @see ReportingLifetimeRollups
+ */
+public class ReportingRollups {
+  private static final Logger logger = Logger.getLogger( ReportingRollups.class );
+
+  public static final long ROLLUP_DELAY_MS = TimeUnit.HOURS.toMillis( 6 );
+
+  private static final Lock rollupLock = new ReentrantLock();
+
+  /**
+   * Get the end of the days that can be rolled up at the given time.
+   */
+  public static long rollupEndMs( final long timeMs ) {
+    return ReportingInstanceUsageRollups.dayStart( timeMs - ROLLUP_DELAY_MS );
+  }
+
+  /**
+   * Get the day for an event written at the given time if the day may be rolled up.
+   *
+   * @return The start of the day or null if the day is not rolled up
+   */
+  @Nullable
+  static Long lateDay( final ReportingEventSupport event,
+                       final long timeMs ) {
+    final Long timestampMs = event.getTimestampMs();
+    return timestampMs != null && timestampMs < rollupEndMs( timeMs ) ?
+        ReportingInstanceUsageRollups.dayStart( timestampMs ) :
+        null;
+  }
+
+  /**
+   * Mark the day dirty, must be called in a reporting transaction.
+   */
+  static void markDirty( final long dayMs ) {
+    Entities.mergeDirect( new ReportingRollupDirtyDay( dayMs ) );
+  }
+
+  /**
+   * Roll up all days that can be rolled up at the given time, rolling up
+   * dirty days again.
+   */
+  public static void rollup( final long timeMs ) {
+    rollupLock.lock();
+    try {
+      rewindDirty();
+      final long rollupEndMs = rollupEndMs( timeMs );
+      ReportingInstanceUsageRollups.getInstance().rollupBefore( rollupEndMs );
+      ReportingLifetimeRollups.getInstance().rollupBefore( rollupEndMs );
+    } finally {
+      rollupLock.unlock();
+    }
+  }
+
+  /**
+   * Change events and then delete all rollups, so they are rebuilt from the
+   * changed events.
+   *
+   * No rollup runs while the events are changed.
+   */
+  public static <T> T rebuildAfter( final Callable<T> eventChange ) throws Exception {
+    rollupLock.lock();
+    try {
+      return eventChange.call();
+    } finally {
+      try {
+        ReportingInstanceUsageRollups.getInstance().deleteAll();
+        ReportingLifetimeRollups.getInstance().deleteAll();
+        try ( final TransactionResource db = Entities.transactionFor( ReportingRollupDirtyDay.class ) ) {
+          Entities.deleteAll( ReportingRollupDirtyDay.class );
+          db.commit();
+        }
+      } finally {
+        rollupLock.unlock();
+      }
+    }
+  }
+
+  private static void rewindDirty() {
+    try ( final TransactionResource db = Entities.transactionFor( ReportingRollupDirtyDay.class ) ) {
+      final Long dirtyDayMs = (Long) Entities.createCriteria( ReportingRollupDirtyDay.class )
+          .setProjection( Projections.min( "dayMs" ) )
+          .uniqueResult();
+      if ( dirtyDayMs != null ) {
+        logger.info( "Rolling up reporting events again from day " + dirtyDayMs + " for late events" );
+        ReportingInstanceUsageRollups.getInstance().rewindTo( dirtyDayMs );
+        ReportingLifetimeRollups.getInstance().rewindTo( dirtyDayMs );
+        Entities.deleteAll( ReportingRollupDirtyDay.class );
+      }
+      db.commit();
+    }
+  }
+}
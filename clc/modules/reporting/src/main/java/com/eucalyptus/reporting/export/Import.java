@@ -38,6 +38,8 @@ import com.eucalyptus.entities.Entities;
 import com.eucalyptus.reporting.domain.ReportingAccount;
 import com.eucalyptus.reporting.domain.ReportingUser;
 import com.eucalyptus.reporting.event_store.ReportingEventSupport;
+import com.eucalyptus.reporting.event_store.ReportingRollups;
+import com.eucalyptus.util.Exceptions;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
@@ -75,7 +77,13 @@ public class Import {
 
   public static ImportResult importData( final InputStream in,
                                         final Runnable preImportCallback ) throws Exception {
-    return new Import().doImport( in, preImportCallback );
+    // rollups are rebuilt to include the imported events
+    return ReportingRollups.rebuildAfter( new Callable<ImportResult>() {
+      @Override
+      public ImportResult call() throws Exception {
+        return new Import().doImport( in, preImportCallback );
+      }
+    } );
   }
 
   protected void resetStats() {
@@ -173,11 +181,21 @@ public class Import {
 
   public static int deleteAll( @Nonnull  final Iterable<Class<?>> entityClasses,
                                @Nullable final Date createdTimestamp ) {
-    int deleted = 0;
-    for ( final Class<?> reportingClass : entityClasses ) {
-      deleted += deleteAll( reportingClass, createdTimestamp );
+    // rollups are rebuilt from the remaining events
+    try {
+      return ReportingRollups.rebuildAfter( new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          int deleted = 0;
+          for ( final Class<?> reportingClass : entityClasses ) {
+            deleted += deleteAll( reportingClass, createdTimestamp );
+          }
+          return deleted;
+        }
+      } );
+    } catch ( final Exception e ) {
+      throw Exceptions.toUndeclared( e );
     }
-    return deleted;
   }
 
   private static int deleteAll( @Nonnull  final Class<?> persistentClass,
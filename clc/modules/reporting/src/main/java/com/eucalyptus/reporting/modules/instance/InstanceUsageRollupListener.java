@@ -0,0 +1,83 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.modules.instance;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.log4j.Logger;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.bootstrap.BootstrapArgs;
+import com.eucalyptus.bootstrap.Hosts;
+import com.eucalyptus.component.id.Reporting;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.reporting.event_store.ReportingRollups;
+import com.eucalyptus.system.Threads;
+
+/**
+ * Periodically rolls up instance usage and resource lifetimes for completed days.
+ *
+ * Days are rolled up once usage for the day is not expected to change, any
+ * days missed while the service was not running are caught up on the next
+ * run. Days with events written after they were rolled up are rolled up
+ * again.
+ */
+public class InstanceUsageRollupListener implements EventListener<Hertz> {
+  private static final Logger LOG = Logger.getLogger( InstanceUsageRollupListener.class );
+  private static final long ROLLUP_INTERVAL_SECS = TimeUnit.HOURS.toSeconds( 1 );
+  private static final AtomicBoolean busy = new AtomicBoolean( false );
+
+  public static void register() {
+    Listeners.register( Hertz.class, new InstanceUsageRollupListener() );
+  }
+
+  @Override
+  public void fireEvent( final Hertz event ) {
+    if ( !Bootstrap.isOperational() ||
+        !BootstrapArgs.isCloudController() ||
+        !event.isAsserted( ROLLUP_INTERVAL_SECS ) ||
+        !Hosts.isCoordinator() ) {
+      return;
+    }
+
+    if ( busy.compareAndSet( false, true ) ) {
+      try {
+        Threads.lookup( Reporting.class, InstanceUsageRollupListener.class ).limitTo( 1 ).submit( new Callable<Void>() {
+          @Override
+          public Void call() {
+            try {
+              ReportingRollups.rollup( System.currentTimeMillis() );
+            } catch ( final Exception e ) {
+              LOG.error( "Error rolling up reporting events", e );
+            } finally {
+              busy.set( false );
+            }
+            return null;
+          }
+        } );
+      } catch ( final RuntimeException e ) {
+        busy.set( false );
+        throw e;
+      }
+    }
+  }
+}
@@ -301,27 +301,27 @@ class ElasticIpArtGeneratorTest {
 
     new ElasticIpArtGenerator() {
       @Override
-      protected void foreachElasticIpCreateEvent(final Predicate<? super ReportingElasticIpCreateEvent> callback) {
+      protected void foreachElasticIpCreateEvent(final long beginInclusive, final long endInclusive, final Predicate<? super ReportingElasticIpCreateEvent> callback) {
         createList.every { event -> callback.apply( event ) }
       }
 
       @Override
-      protected void foreachElasticIpDeleteEvent(final Predicate<? super ReportingElasticIpDeleteEvent> callback) {
+      protected void foreachElasticIpDeleteEvent(final long beginInclusive, final long endInclusive, final Predicate<? super ReportingElasticIpDeleteEvent> callback) {
         deleteList.every { event -> callback.apply( event ) }
       }
 
       @Override
-      protected void foreachElasticIpAttachEvent(final Predicate<? super ReportingElasticIpAttachEvent> callback) {
+      protected void foreachElasticIpAttachEvent(final long beginInclusive, final long endInclusive, final Predicate<? super ReportingElasticIpAttachEvent> callback) {
         attachList.every { event -> callback.apply( event ) }
       }
 
       @Override
-      protected void foreachElasticIpDetachEvent(final Predicate<? super ReportingElasticIpDetachEvent> callback) {
+      protected void foreachElasticIpDetachEvent(final long beginInclusive, final long endInclusive, final Predicate<? super ReportingElasticIpDetachEvent> callback) {
         detachList.every { event -> callback.apply( event ) }
       }
 
       @Override
-      protected void foreachInstanceCreateEvent(final Predicate<? super ReportingInstanceCreateEvent> callback) {
+      protected void foreachInstanceCreateEvent(final long beginInclusive, final long endInclusive, final Predicate<? super ReportingInstanceCreateEvent> callback) {
         instanceCreateList.every { event -> callback.apply( event ) }
       }
 
@@ -23,6 +23,8 @@ import static org.junit.Assert.*
 import org.junit.Test
 import com.eucalyptus.reporting.event_store.ReportingInstanceCreateEvent
 import com.eucalyptus.reporting.event_store.ReportingInstanceUsageEvent
+import com.eucalyptus.reporting.event_store.ReportingInstanceUsageRollup
+import com.eucalyptus.reporting.event_store.ReportingInstanceUsageRollups
 import com.eucalyptus.reporting.domain.ReportingUser
 import com.eucalyptus.reporting.domain.ReportingAccount
 import java.text.SimpleDateFormat
@@ -130,6 +132,37 @@ class InstanceArtGeneratorTest {
     assertArt( art )
   }
 
+  @Test
+  void testInterpolatedUsageReportPeriodRolledUp(){
+    InstanceArtGenerator generator = testGeneratorWith( interpolatedUsageWithDates( "2012-08-31T12:00:00", "2012-09-02T00:00:00", 3 ), "2012-08-01T01:00:00", millis("2013-01-01T00:00:00") )
+    ReportArtEntity art = generator.generateReportArt( new ReportArtEntity( millis("2012-09-01T00:00:00"), millis("2012-09-01T12:00:00") ) )
+    assertArt( art )
+  }
+
+  @Test
+  void testRolledUpUsageMatchesEvents() {
+    List<ReportingInstanceUsageEvent> usage = []
+    long timestamp = millis("2012-08-28T00:00:00")
+    for ( int i = 1; i <= 40; i++ ) {
+      int sequence = i == 25 ? 0 : i // sensor reset
+      usage << new ReportingInstanceUsageEvent( uuid(INSTANCE1), "NetworkIn", sequence, "total", mbd(i * 10), timestamp )
+      usage << new ReportingInstanceUsageEvent( uuid(INSTANCE1), "DiskReadOps", sequence, "vda", (double) (i * 1000), timestamp )
+      timestamp += TimeUnit.HOURS.toMillis( 5 )
+    }
+    [ [ "2012-08-29T00:00:00", "2012-09-02T00:00:00" ],
+      [ "2012-08-29T07:00:00", "2012-09-01T13:00:00" ] ].each { begin, end ->
+      ReportArtEntity eventsArt = testGeneratorWith( usage, "2012-08-01T01:00:00" )
+          .generateReportArt( new ReportArtEntity( millis(begin), millis(end) ) )
+      ReportArtEntity rollupsArt = testGeneratorWith( usage, "2012-08-01T01:00:00", millis("2013-01-01T00:00:00") )
+          .generateReportArt( new ReportArtEntity( millis(begin), millis(end) ) )
+      InstanceUsageArtEntity eventsUsage = eventsArt.getZones().get(ZONE1).getUsageTotals().getInstanceTotals()
+      InstanceUsageArtEntity rollupsUsage = rollupsArt.getZones().get(ZONE1).getUsageTotals().getInstanceTotals()
+      assertEquals( "Network in " + begin, eventsUsage.getNetTotalInBytes(), rollupsUsage.getNetTotalInBytes() )
+      assertEquals( "Disk read ops " + begin, eventsUsage.getDiskReadOps(), rollupsUsage.getDiskReadOps() )
+      assertEquals( "Duration " + begin, eventsUsage.getDurationMs(), rollupsUsage.getDurationMs() )
+    }
+  }
+
   @Test
   void testSequenceResetEntering() {
     InstanceArtGenerator generator = testGeneratorWith( sequenceResetUsageEntering() )
@@ -769,16 +802,17 @@ class InstanceArtGeneratorTest {
     instanceUsageList
   }
 
-  private InstanceArtGenerator testGeneratorWith( List<ReportingInstanceUsageEvent> usage, String instance1CreateTime="2012-08-01T01:00:00" ) {
+  private InstanceArtGenerator testGeneratorWith( List<ReportingInstanceUsageEvent> usage, String instance1CreateTime="2012-08-01T01:00:00", long rolledUpToMs=0 ) {
     List<ReportingInstanceCreateEvent> instanceCreateList = [
         instanceCreate( INSTANCE1, USER1, instance1CreateTime, VMTYPE1, ZONE1 ),
         instanceCreate( INSTANCE2, USER2, "2012-09-01T00:00:00", VMTYPE2, ZONE2 ),
     ]
-    testGeneratorWith( instanceCreateList, usage )
+    testGeneratorWith( instanceCreateList, usage, rolledUpToMs )
   }
 
   private InstanceArtGenerator testGeneratorWith( List<ReportingInstanceCreateEvent> create,
-                                                  List<ReportingInstanceUsageEvent> usage ) {
+                                                  List<ReportingInstanceUsageEvent> usage,
+                                                  long rolledUpToMs=0 ) {
     List<ReportingInstanceCreateEvent> instanceCreateList = create.sort{ event -> event.getTimestampMs() }
     List<ReportingInstanceUsageEvent> instanceUsageList = usage.sort{ event -> event.getTimestampMs() }
     new InstanceArtGenerator() {
@@ -792,11 +826,47 @@ class InstanceArtGeneratorTest {
         }.every { event -> callback.apply( event ) }
       }
 
+      @Override
+      protected void foreachInstanceUsageRollup( final long startInclusive,
+                                                 final long endExclusive,
+                                                 final Predicate<? super ReportingInstanceUsageRollup> callback ) {
+        rollups( startInclusive, endExclusive ).every { rollup -> callback.apply( rollup ) }
+      }
+
       @Override
       protected void foreachInstanceCreateEvent( final long endExclusive,
+                                                 final Collection<String> uuids,
                                                  final Predicate<? super ReportingInstanceCreateEvent> callback ) {
         instanceCreateList.findAll{ event ->
-          event.getTimestampMs() < endExclusive }.every { event -> callback.apply( event ) }
+          event.getTimestampMs() < endExclusive && uuids.contains( event.getUuid() ) }.every { event -> callback.apply( event ) }
+      }
+
+      @Override
+      protected Set<String> findInstanceUuidsWithUsage( final long startInclusive,
+                                                        final long endExclusive ) {
+        instanceUsageList.findAll{ event ->
+          startInclusive <= event.getTimestampMs() && event.getTimestampMs() < endExclusive
+        }.collect{ event -> event.getUuid() } as Set<String>
+      }
+
+      @Override
+      protected Set<String> findInstanceUuidsWithUsageRollups( final long startInclusive,
+                                                               final long endExclusive ) {
+        rollups( startInclusive, endExclusive ).collect{ rollup -> rollup.getUuid() } as Set<String>
+      }
+
+      @Override
+      protected long getInstanceUsageRolledUpToMs() {
+        rolledUpToMs
+      }
+
+      private List<ReportingInstanceUsageRollup> rollups( final long startInclusive,
+                                                          final long endExclusive ) {
+        instanceUsageList.findAll{ event ->
+          startInclusive <= event.getTimestampMs() && event.getTimestampMs() < endExclusive
+        }.groupBy{ event -> ReportingInstanceUsageRollups.dayStart( event.getTimestampMs() ) }.collectMany{ day, events ->
+          ReportingInstanceUsageRollups.rollup( day, events ) as List<ReportingInstanceUsageRollup>
+        }
       }
 
       @Override
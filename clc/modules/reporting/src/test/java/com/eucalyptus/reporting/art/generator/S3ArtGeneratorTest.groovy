@@ -395,14 +395,16 @@ class S3ArtGeneratorTest {
     new S3ArtGenerator() {
 
       @Override
-      protected void foreachReportingS3ObjectCreateEvent( final long endExclusive,
+      protected void foreachReportingS3ObjectCreateEvent( final long beginInclusive,
+                                                          final long endExclusive,
                                                           final Predicate<ReportingS3ObjectCreateEvent> callback ) {
         data.objectCreateList.findAll{ event -> event.getTimestampMs() < endExclusive }
             .every{ event -> callback.apply( event ) }
       }
 
       @Override
-      protected void foreachReportingS3ObjectDeleteEvent( final long endExclusive,
+      protected void foreachReportingS3ObjectDeleteEvent( final long beginInclusive,
+                                                          final long endExclusive,
                                                           final Predicate<ReportingS3ObjectDeleteEvent> callback ) {
         data.objectDeleteList.findAll{ event -> event.getTimestampMs() < endExclusive }
             .every{ event -> callback.apply( event ) }
@@ -224,6 +224,30 @@ class VolumeArtGeneratorTest {
     assertEquals( "Total usage count", 0L, totals.getVolumeTotals().getVolumeCnt() )
   }
 
+  @Test
+  void testDeletedBeforePeriodGeneration() {
+    VolumeArtGenerator generator = testGenerator( true, false )
+    ReportArtEntity art = generator.generateReportArt( new ReportArtEntity( millis("2012-09-01T12:05:00"), millis("2012-09-01T12:10:00") ) )
+
+    Map<String,AvailabilityZoneArtEntity> zones = art.getZones()
+    assertEquals( "Zones", Sets.newHashSet(ZONE1, ZONE2), zones.keySet() )
+
+    VolumeUsageArtEntity zone1Usage = zones.get(ZONE1).getUsageTotals().getVolumeTotals()
+    assertEquals( "Zone1 usage count", 1L, zone1Usage.getVolumeCnt() )
+    assertEquals( "Zone1 usage GBs", 0L, zone1Usage.getGBSecs() )
+
+    UserArtEntity zone1User1ArtEntity = zones.get(ZONE1).getAccounts().get( name(ACCOUNT1) ).users.get(name(USER1))
+    assertEquals( "Zone1 Account1 user1 volumes", Sets.newHashSet( uuid(VOLUME1) ), zone1User1ArtEntity.getVolumes().keySet() )
+    assertEquals( "Zone1 User1 volume1 usage count", 1, zone1User1ArtEntity.getVolumes().get( uuid(VOLUME1) ).getUsage().getVolumeCnt() )
+
+    VolumeUsageArtEntity zone2Usage = zones.get(ZONE2).getUsageTotals().getVolumeTotals()
+    assertEquals( "Zone2 usage count", 1L, zone2Usage.getVolumeCnt() )
+    assertEquals( "Zone2 usage GBs", 0L, zone2Usage.getGBSecs() )
+
+    UserArtEntity zone2User1ArtEntity = zones.get(ZONE2).getAccounts().get( name(ACCOUNT1) ).users.get(name(USER1))
+    assertEquals( "Zone2 Account1 user1 volumes", Sets.newHashSet( uuid(VOLUME2) ), zone2User1ArtEntity.getVolumes().keySet() )
+  }
+
   @Test
   void testAttachDetachGeneration() {
     VolumeArtGenerator generator = testGenerator( false, true )
@@ -348,35 +372,40 @@ class VolumeArtGeneratorTest {
 
     new VolumeArtGenerator() {
       @Override
-      protected void foreachReportingVolumeCreateEvent( long endExclusive,
+      protected void foreachReportingVolumeCreateEvent( long beginInclusive,
+                                                        long endExclusive,
                                                         Predicate<ReportingVolumeCreateEvent> callback ) {
         createList.findAll{ event ->
           event.getTimestampMs() < endExclusive }.every { event -> callback.apply( event ) }
       }
 
       @Override
-      protected void foreachReportingVolumeDeleteEvent( long endExclusive,
+      protected void foreachReportingVolumeDeleteEvent( long beginInclusive,
+                                                        long endExclusive,
                                                         Predicate<ReportingVolumeDeleteEvent> callback ) {
         deleteList.findAll{ event ->
           event.getTimestampMs() < endExclusive }.every { event -> callback.apply( event ) }
       }
 
       @Override
-      protected void foreachReportingVolumeAttachEvent( long endExclusive,
+      protected void foreachReportingVolumeAttachEvent( long beginInclusive,
+                                                        long endExclusive,
                                                         Predicate<ReportingVolumeAttachEvent> callback ) {
         attachList.findAll{ event ->
           event.getTimestampMs() < endExclusive }.every { event -> callback.apply( event ) }
       }
 
       @Override
-      protected void foreachReportingVolumeDetachEvent( long endExclusive,
+      protected void foreachReportingVolumeDetachEvent( long beginInclusive,
+                                                        long endExclusive,
                                                         Predicate<ReportingVolumeDetachEvent> callback ) {
         detachList.findAll{ event ->
           event.getTimestampMs() < endExclusive }.every { event -> callback.apply( event ) }
       }
 
       @Override
-      protected void foreachInstanceCreateEvent( long endExclusive,
+      protected void foreachInstanceCreateEvent( long beginInclusive,
+                                                 long endExclusive,
                                                  Predicate<? super ReportingInstanceCreateEvent> callback ) {
         instanceCreateList.findAll{ event ->
           event.getTimestampMs() < endExclusive }.every { event -> callback.apply( event ) }
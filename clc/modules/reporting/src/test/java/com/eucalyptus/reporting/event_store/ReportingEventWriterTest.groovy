@@ -0,0 +1,87 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.event_store
+
+import static org.junit.Assert.*
+import org.junit.Test
+
+/**
+ *
+ */
+class ReportingEventWriterTest {
+
+  @Test
+  void testBatchWrite() {
+    List<List<Object>> persisted = []
+    ReportingEventWriter writer = new ReportingEventWriter( false ) {
+      @Override protected void persist( final List<Object> events ) {
+        persisted.add( new ArrayList<Object>( events ) )
+      }
+    }
+
+    writer.write( "event-1" )
+    writer.write( "event-2" )
+    writer.write( "event-3" )
+    writer.flush( )
+
+    assertEquals( "Persisted batches", [ [ "event-1", "event-2", "event-3" ] ], persisted )
+    assertEquals( "Written count", 3, writer.getWrittenCount( ) )
+    assertEquals( "Queue depth", 0, writer.getQueueDepth( ) )
+  }
+
+  @Test
+  void testFailedBatchWrittenIndividually() {
+    List<Object> persisted = []
+    ReportingEventWriter writer = new ReportingEventWriter( false ) {
+      @Override protected void persist( final List<Object> events ) {
+        if ( events.contains( "invalid" ) ) throw new IllegalStateException( "Invalid event" )
+        persisted.addAll( events )
+      }
+    }
+
+    writer.write( "event-1" )
+    writer.write( "invalid" )
+    writer.write( "event-2" )
+    writer.flush( )
+
+    assertEquals( "Persisted events", [ "event-1", "event-2" ], persisted )
+    assertEquals( "Written count", 2, writer.getWrittenCount( ) )
+    assertEquals( "Failed count", 1, writer.getFailedCount( ) )
+  }
+
+  @Test
+  void testWriteAfterStop() {
+    List<List<Object>> persisted = []
+    ReportingEventWriter writer = new ReportingEventWriter( false ) {
+      @Override protected void persist( final List<Object> events ) {
+        persisted.add( new ArrayList<Object>( events ) )
+      }
+    }
+
+    writer.write( "event-1" )
+    writer.write( "event-2" )
+    writer.stop( )
+    writer.write( "event-3" )
+
+    assertEquals( "Persisted batches", [ [ "event-1", "event-2" ], [ "event-3" ] ], persisted )
+    assertEquals( "Written count", 3, writer.getWrittenCount( ) )
+    assertEquals( "Queue depth", 0, writer.getQueueDepth( ) )
+  }
+}
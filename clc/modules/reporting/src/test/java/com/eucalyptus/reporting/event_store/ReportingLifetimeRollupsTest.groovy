@@ -0,0 +1,95 @@
+/*************************************************************************
+ * Copyright 2009-2015 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.reporting.event_store
+
+import static org.junit.Assert.*
+import org.junit.Test
+import com.eucalyptus.reporting.event_store.ReportingLifetimeRollup.Lifetime
+
+/**
+ *
+ */
+class ReportingLifetimeRollupsTest {
+
+  @Test
+  void testEndAtStartForUniqueResource() {
+    List<ReportingLifetimeRollup> rollups = ReportingLifetimeRollups.start( 0, Lifetime.VOLUME_SNAPSHOT, [
+        new ReportingVolumeSnapshotCreateEvent( "uuid-1", "volume-uuid-1", "snap-00000001", 1000L, "user-1", 1L )
+    ] )
+
+    List<ReportingLifetimeRollup> ended = ReportingLifetimeRollups.end( Lifetime.VOLUME_SNAPSHOT, rollups, [
+        new ReportingVolumeSnapshotDeleteEvent( "uuid-1", 1000L )
+    ] )
+
+    assertEquals( "Ended count", 1, ended.size( ) )
+    assertEquals( "End time", 1000L, ended.get( 0 ).getEndMs( ) )
+  }
+
+  @Test
+  void testEndAfterStart() {
+    List<ReportingLifetimeRollup> rollups = ReportingLifetimeRollups.start( 0, Lifetime.S3_OBJECT, [
+        new ReportingS3ObjectCreateEvent( "bucket", "key", "null", 1L, 1000L, "user-1" )
+    ] )
+
+    List<ReportingLifetimeRollup> ended = ReportingLifetimeRollups.end( Lifetime.S3_OBJECT, rollups, [
+        new ReportingS3ObjectDeleteEvent( "bucket", "key", "null", 1000L ),
+        new ReportingS3ObjectDeleteEvent( "bucket", "other", "null", 1500L ),
+    ] )
+    assertEquals( "Ended count", 0, ended.size( ) )
+    assertNull( "End time", rollups.get( 0 ).getEndMs( ) )
+
+    ended = ReportingLifetimeRollups.end( Lifetime.S3_OBJECT, rollups, [
+        new ReportingS3ObjectDeleteEvent( "bucket", "key", "null", 2000L )
+    ] )
+    assertEquals( "Ended count", 1, ended.size( ) )
+    assertEquals( "End time", 2000L, rollups.get( 0 ).getEndMs( ) )
+  }
+
+  @Test
+  void testEndByFirstEventOfAnyEndType() {
+    List<ReportingLifetimeRollup> rollups = ReportingLifetimeRollups.start( 0, Lifetime.ELASTIC_IP_ATTACHMENT, [
+        new ReportingElasticIpAttachEvent( "10.0.0.1", "instance-1", 1000L )
+    ] )
+
+    ReportingLifetimeRollups.end( Lifetime.ELASTIC_IP_ATTACHMENT, rollups, [
+        new ReportingElasticIpDetachEvent( "10.0.0.1", "instance-1", 3000L ),
+        new ReportingElasticIpDetachEvent( "10.0.0.1", "instance-1", 500L ),
+        new ReportingElasticIpDeleteEvent( "10.0.0.1", 2000L ),
+    ] )
+
+    assertEquals( "End time", 2000L, rollups.get( 0 ).getEndMs( ) )
+  }
+
+  @Test
+  void testEndSeveralByOneEvent() {
+    List<ReportingLifetimeRollup> rollups = ReportingLifetimeRollups.start( 0, Lifetime.S3_OBJECT, [
+        new ReportingS3ObjectCreateEvent( "bucket", "key", "null", 1L, 1000L, "user-1" ),
+        new ReportingS3ObjectCreateEvent( "bucket", "key", "null", 1L, 1500L, "user-1" ),
+        new ReportingS3ObjectCreateEvent( "bucket", "key", "null", 1L, 2500L, "user-1" ),
+    ] )
+
+    List<ReportingLifetimeRollup> ended = ReportingLifetimeRollups.end( Lifetime.S3_OBJECT, rollups, [
+        new ReportingS3ObjectDeleteEvent( "bucket", "key", "null", 2000L )
+    ] )
+
+    assertEquals( "Ended count", 2, ended.size( ) )
+    assertEquals( "End times", [ 2000L, 2000L, null ], rollups*.getEndMs( ) )
+  }
+}
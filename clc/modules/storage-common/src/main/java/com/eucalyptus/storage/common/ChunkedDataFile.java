@@ -66,14 +66,30 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 
 import org.apache.log4j.Logger;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.FileRegion;
 import org.jboss.netty.handler.stream.ChunkedFile;
 
 import edu.ucsb.eucalyptus.constants.IsData;
 
 public class ChunkedDataFile extends ChunkedFile implements IsData {
   private static Logger LOG = Logger.getLogger(ChunkedDataFile.class);
+  private final RandomAccessFile file;
+  private final long offset;
+  private final long length;
 
   public ChunkedDataFile(RandomAccessFile file, long offset, long length, int chunkSize) throws IOException {
     super(file, offset, length, chunkSize);
+    this.file = file;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Get a region for the same file data that can be written to a channel without copying through buffers (sendfile). Use instead of this
+   * input, not in addition to it, and close this input once the region is written.
+   */
+  public FileRegion toFileRegion() {
+    return new DefaultFileRegion(file.getChannel(), offset, length);
   }
 }
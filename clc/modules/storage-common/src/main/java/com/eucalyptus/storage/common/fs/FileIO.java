@@ -74,6 +74,15 @@ public abstract class FileIO {
 
   public abstract void write(byte[] bytes) throws IOException;
 
+  /**
+   * Write the remaining bytes of the buffer.
+   */
+  public void write(ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
   public abstract ByteBuffer getBuffer();
 
   public abstract void finish();
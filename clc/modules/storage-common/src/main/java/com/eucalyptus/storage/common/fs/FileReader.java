@@ -93,6 +93,9 @@ public class FileReader extends FileIO {
 
   public void write(byte[] bytes) throws IOException {}
 
+  @Override
+  public void write(ByteBuffer buffer) throws IOException {}
+
   public ByteBuffer getBuffer() {
     return buffer;
   }
@@ -67,6 +67,7 @@ import java.nio.ByteBuffer;
 public class WalrusDataMessage {
   private Header header;
   private byte[] payload;
+  private ByteBuffer payloadBuffer;
   private static final String DELIMITER = "/";
 
   public enum Header {
@@ -82,9 +83,24 @@ public class WalrusDataMessage {
   }
 
   public byte[] getPayload() {
+    if (payload == null && payloadBuffer != null) {
+      byte[] bytes = new byte[payloadBuffer.remaining()];
+      payloadBuffer.duplicate().get(bytes);
+      return bytes;
+    }
     return payload;
   }
 
+  /**
+   * Get the payload as a buffer positioned at the start of the data, the buffer is not shared with other callers.
+   */
+  public ByteBuffer getPayloadBuffer() {
+    if (payloadBuffer != null) {
+      return payloadBuffer.duplicate();
+    }
+    return payload == null ? null : ByteBuffer.wrap(payload);
+  }
+
   public void setPayload(byte[] payload) {
     this.payload = payload;
   }
@@ -118,6 +134,15 @@ public class WalrusDataMessage {
     return new WalrusDataMessage(Header.DATA, bytes);
   }
 
+  /**
+   * Data message for the remaining bytes of the buffer. The data is not copied so the buffer content must not be modified after this call.
+   */
+  public static WalrusDataMessage DataMessage(ByteBuffer buffer) {
+    WalrusDataMessage message = new WalrusDataMessage(Header.DATA, null);
+    message.payloadBuffer = buffer.slice();
+    return message;
+  }
+
   public static WalrusDataMessage DataMessage(ByteBuffer buffer, int length) {
     byte[] bytes = new byte[length];
     buffer.get(bytes, 0, length);
@@ -577,7 +577,12 @@ public class WalrusFSManager extends WalrusManager {
           break;
         } else {
           assert (WalrusDataMessage.isData(dataMessage));
-          byte[] data = dataMessage.getPayload();
+          ByteBuffer data = dataMessage.getPayloadBuffer();
+          int length = data.remaining();
+          // calculate md5 on the fly
+          if (digest != null) {
+            digest.update(data.duplicate());
+          }
           // start writing object (but do not commit yet)
           try {
             if (fileIO != null)
@@ -585,11 +590,7 @@ public class WalrusFSManager extends WalrusManager {
           } catch (IOException ex) {
             LOG.error(ex);
           }
-          // calculate md5 on the fly
-          size += data.length;
-          if (digest != null) {
-            digest.update(data);
-          }
+          size += length;
         }
       }
       if (dataMessage == null) {
@@ -2000,7 +2001,12 @@ public class WalrusFSManager extends WalrusManager {
           break;
         } else {
           assert (WalrusDataMessage.isData(dataMessage));
-          byte[] data = dataMessage.getPayload();
+          ByteBuffer data = dataMessage.getPayloadBuffer();
+          int length = data.remaining();
+          // calculate md5 on the fly
+          if (digest != null) {
+            digest.update(data.duplicate());
+          }
           // start writing object (but do not commit yet)
           try {
             if (fileIO != null)
@@ -2008,11 +2014,7 @@ public class WalrusFSManager extends WalrusManager {
           } catch (IOException ex) {
             LOG.error(ex);
           }
-          // calculate md5 on the fly
-          size += data.length;
-          if (digest != null) {
-            digest.update(data);
-          }
+          size += length;
         }
       }
     } catch (InterruptedException e) {
@@ -78,9 +78,11 @@ import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.handler.ssl.SslHandler;
 import org.jboss.netty.handler.stream.ChunkedInput;
 
 import com.eucalyptus.http.MappingHttpResponse;
+import com.eucalyptus.storage.common.ChunkedDataFile;
 import com.eucalyptus.storage.common.DateFormatter;
 import com.eucalyptus.storage.msgs.s3.MetaDataEntry;
 import com.eucalyptus.walrus.exceptions.HeadExceptionInterface;
@@ -106,6 +108,7 @@ import edu.ucsb.eucalyptus.msgs.ExceptionResponseType;
 
 public class WalrusOutboundHandler extends MessageStackHandler {
   private static Logger LOG = Logger.getLogger(WalrusOutboundHandler.class);
+  private static final boolean ZERO_COPY_ENABLED = System.getProperty("euca.walrus.zerocopy.disable") == null;
 
   @Override
   public void handleDownstream(final ChannelHandlerContext ctx, final ChannelEvent channelEvent) throws Exception {
@@ -253,8 +256,15 @@ public class WalrusOutboundHandler extends MessageStackHandler {
       Channels.write(ctx, writeFuture, httpResponse);
       List<ChunkedInput> dataStreams = response.getDataInputStream();
       if (dataStreams != null) {
+        final boolean zeroCopy = isZeroCopySupported(ctx);
         for (final ChunkedInput dataStream : dataStreams) {
-          channel.write(dataStream).addListener(new ChannelFutureListener() {
+          final Object data;
+          if (zeroCopy && dataStream instanceof ChunkedDataFile) {
+            data = ((ChunkedDataFile) dataStream).toFileRegion();
+          } else {
+            data = dataStream;
+          }
+          channel.write(data).addListener(new ChannelFutureListener() {
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
               dataStream.close();
@@ -267,6 +277,14 @@ public class WalrusOutboundHandler extends MessageStackHandler {
     }
   }
 
+  /**
+   * Uncompressed file data can be sent without copying when the pipeline does not transform it, i.e. there is no SSL. The SSL handler removes
+   * itself from the pipeline for plain HTTP connections.
+   */
+  protected boolean isZeroCopySupported(final ChannelHandlerContext ctx) {
+    return ZERO_COPY_ENABLED && ctx.getPipeline().get(SslHandler.class) == null;
+  }
+
   // TODO: zhill - this should all be done in bindings, just need 2-way bindings
   protected DefaultHttpResponse createHttpResponse(WalrusDataGetResponseType reply) {
     DefaultHttpResponse httpResponse = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
@@ -1292,10 +1292,9 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
   private void handleHttpChunk(HttpChunk httpChunk) throws Exception {
     ChannelBuffer buffer = httpChunk.getContent();
     try {
-      buffer.markReaderIndex();
-      byte[] read = new byte[buffer.readableBytes()];
-      buffer.readBytes(read);
-      while ((putQueue != null) && (!putQueue.offer(WalrusDataMessage.DataMessage(read), 500, TimeUnit.MILLISECONDS)));
+      // chunk content is not reused by the decoder so can be queued without copying
+      WalrusDataMessage dataMessage = WalrusDataMessage.DataMessage(buffer.toByteBuffer());
+      while ((putQueue != null) && (!putQueue.offer(dataMessage, 500, TimeUnit.MILLISECONDS)));
       if (httpChunk.isLast()) {
         while ((putQueue != null) && (!putQueue.offer(WalrusDataMessage.EOF(), 1000, TimeUnit.MILLISECONDS)));
       }
@@ -1308,10 +1307,7 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
     ChannelBuffer buffer = httpRequest.getContent();
     try {
       putQueue.put(WalrusDataMessage.StartOfData(dataLength));
-      buffer.markReaderIndex();
-      byte[] read = new byte[buffer.readableBytes()];
-      buffer.readBytes(read);
-      putQueue.put(WalrusDataMessage.DataMessage(read));
+      putQueue.put(WalrusDataMessage.DataMessage(buffer.toByteBuffer()));
       if (!httpRequest.isChunked())
         putQueue.put(WalrusDataMessage.EOF());
     } catch (Exception ex) {
@@ -1323,9 +1319,7 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
   private void handleFirstChunk(MappingHttpRequest httpRequest, ChannelBuffer firstChunk, long dataLength) throws Exception {
     try {
       putQueue.put(WalrusDataMessage.StartOfData(dataLength));
-      byte[] read = new byte[firstChunk.readableBytes()];
-      firstChunk.readBytes(read);
-      putQueue.put(WalrusDataMessage.DataMessage(read));
+      putQueue.put(WalrusDataMessage.DataMessage(firstChunk.toByteBuffer()));
       if (!httpRequest.isChunked())
         putQueue.put(WalrusDataMessage.EOF());
     } catch (Exception ex) {
@@ -1352,16 +1346,11 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
     }
 
     public void run() {
-      byte[] bytes = new byte[DATA_MESSAGE_SIZE];
-
       try {
         Logs.extreme().trace("Starting upload");
         putQueue.put(WalrusDataMessage.StartOfData(dataLength));
 
-        firstBuffer.markReaderIndex();
-        byte[] read = new byte[firstBuffer.readableBytes()];
-        firstBuffer.readBytes(read);
-        putQueue.put(WalrusDataMessage.DataMessage(read));
+        putQueue.put(WalrusDataMessage.DataMessage(firstBuffer.toByteBuffer()));
         // putQueue.put(WalrusDataMessage.EOF());
 
       } catch (Exception ex) {
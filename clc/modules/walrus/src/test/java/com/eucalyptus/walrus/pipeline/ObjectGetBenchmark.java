@@ -0,0 +1,151 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.walrus.pipeline;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.eucalyptus.storage.common.ChunkedDataFile;
+
+/**
+ * Compares buffered chunked writes with zero-copy file region writes for
+ * object data sent over a loopback connection.
+ */
+@Ignore( "Manual benchmark" )
+public class ObjectGetBenchmark {
+  private static final Logger LOG = Logger.getLogger( ObjectGetBenchmark.class );
+  private static final long FILE_SIZE = 256L * 1024 * 1024;
+  private static final int ITERATIONS = 10;
+
+  @Test
+  public void benchmark( ) throws Exception {
+    final File file = File.createTempFile( "walrus-get-benchmark", ".data" );
+    try {
+      try ( final RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+        raf.setLength( FILE_SIZE );
+      }
+      for ( int i = 0; i < 2; i++ ) { // warm up
+        transfer( file, false );
+        transfer( file, true );
+      }
+      long chunkedNanos = 0;
+      long zeroCopyNanos = 0;
+      for ( int i = 0; i < ITERATIONS; i++ ) {
+        chunkedNanos += transfer( file, false );
+        zeroCopyNanos += transfer( file, true );
+      }
+      LOG.info( String.format( "Chunked: %.1f MB/s", throughput( chunkedNanos ) ) );
+      LOG.info( String.format( "Zero-copy: %.1f MB/s", throughput( zeroCopyNanos ) ) );
+    } finally {
+      file.delete( );
+    }
+  }
+
+  private static double throughput( final long nanos ) {
+    return ( FILE_SIZE * ITERATIONS / ( 1024d * 1024d ) ) / ( nanos / 1e9 );
+  }
+
+  /**
+   * Send the file to a client that discards it, returning the elapsed time
+   */
+  private static long transfer( final File file, final boolean zeroCopy ) throws Exception {
+    final ServerBootstrap server = new ServerBootstrap( new NioServerSocketChannelFactory(
+        Executors.newCachedThreadPool( ), Executors.newCachedThreadPool( ) ) );
+    final ClientBootstrap client = new ClientBootstrap( new NioClientSocketChannelFactory(
+        Executors.newCachedThreadPool( ), Executors.newCachedThreadPool( ) ) );
+    try {
+      server.setPipelineFactory( new ChannelPipelineFactory( ) {
+        @Override
+        public ChannelPipeline getPipeline( ) throws Exception {
+          return Channels.pipeline( new ChunkedWriteHandler( ), new SimpleChannelUpstreamHandler( ) {
+            @Override
+            public void channelConnected( final ChannelHandlerContext ctx, final ChannelStateEvent e ) throws Exception {
+              final ChunkedDataFile data = new ChunkedDataFile( new RandomAccessFile( file, "r" ), 0, FILE_SIZE, 8192 );
+              ctx.getChannel( ).write( zeroCopy ? data.toFileRegion( ) : data ).addListener( new ChannelFutureListener( ) {
+                @Override
+                public void operationComplete( final ChannelFuture future ) throws Exception {
+                  data.close( );
+                  future.getChannel( ).close( );
+                }
+              } );
+            }
+          } );
+        }
+      } );
+      final Channel serverChannel = server.bind( new InetSocketAddress( "127.0.0.1", 0 ) );
+
+      final AtomicLong received = new AtomicLong( );
+      final CountDownLatch closed = new CountDownLatch( 1 );
+      client.setPipelineFactory( new ChannelPipelineFactory( ) {
+        @Override
+        public ChannelPipeline getPipeline( ) throws Exception {
+          return Channels.pipeline( new SimpleChannelUpstreamHandler( ) {
+            @Override
+            public void messageReceived( final ChannelHandlerContext ctx, final MessageEvent e ) throws Exception {
+              received.addAndGet( ( (ChannelBuffer) e.getMessage( ) ).readableBytes( ) );
+            }
+
+            @Override
+            public void channelClosed( final ChannelHandlerContext ctx, final ChannelStateEvent e ) throws Exception {
+              closed.countDown( );
+            }
+          } );
+        }
+      } );
+
+      final long start = System.nanoTime( );
+      client.connect( serverChannel.getLocalAddress( ) ).awaitUninterruptibly( );
+      if ( !closed.await( 5, TimeUnit.MINUTES ) || received.get( ) != FILE_SIZE ) {
+        throw new IllegalStateException( "Transfer incomplete, received " + received.get( ) + " of " + FILE_SIZE );
+      }
+      final long elapsed = System.nanoTime( ) - start;
+      serverChannel.close( ).awaitUninterruptibly( );
+      return elapsed;
+    } finally {
+      client.releaseExternalResources( );
+      server.releaseExternalResources( );
+    }
+  }
+}
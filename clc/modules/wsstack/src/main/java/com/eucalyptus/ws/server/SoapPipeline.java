@@ -50,6 +50,7 @@ public abstract class SoapPipeline extends FilteredPipeline {
   private final String defaultNamespace;
   private final String namespacePattern;
   private final UnrollableStage auth = new SoapUserAuthenticationStage( ); // default, see getAuthenticationStage
+  private final boolean routable = acceptsAsDeclaredBy( getClass( ), SoapPipeline.class );
 
   protected SoapPipeline( final String name,
                           final Class<? extends ComponentId> component,
@@ -85,6 +86,14 @@ public abstract class SoapPipeline extends FilteredPipeline {
                 ( noPath && resolvesByHost( message.getHeader( HttpHeaders.Names.HOST ) ) ) );
   }
 
+  /**
+   * Routable unless a subclass changes which requests are accepted.
+   */
+  @Override
+  protected boolean isRoutable( ) {
+    return routable;
+  }
+
   @Override
   public String getName( ) {
     return name;